@@ -3,6 +3,8 @@ package microsim.alignment.multiple;
 import java.util.Collection;
 import org.apache.commons.collections4.Predicate;
 
+import microsim.statistics.FilterRegistry;
+
 /**
  * Multiple choice alignment methods, where there are in general many
  * (> 2) possible outcomes/states to align.  Note that binary alignment
@@ -46,4 +48,19 @@ public abstract class AbstractMultiProbabilityAlignment<T> {
 	 */
 	public abstract void align(Collection<T> agents, Predicate<T> filter, AlignmentMultiProbabilityClosure<T> closure, double[] targetShare);
 
+	/**
+	 * Align the agents of a selection of a filter registry, whose bitmap is shared with the other
+	 * consumers of the registry instead of evaluating a filter again.
+	 * 
+	 * @param selection - the selected sub-population of agents to be aligned
+	 * @param closure - specifies the method returning the unaligned probabilities 
+	 * 	of outcomes for the agent and the method that samples the aligned probabilities
+	 *  to specify the outcome.
+	 * @param targetShare - a set of target shares of the selected sub-population for which the outcomes 
+	 *  (defined by the AlignmentMultiProbabilityClosure) must be true.
+	 */
+	public void align(FilterRegistry.Selection<T> selection, AlignmentMultiProbabilityClosure<T> closure, double[] targetShare) {
+		align(selection.toList(), null, closure, targetShare);
+	}
+
 }
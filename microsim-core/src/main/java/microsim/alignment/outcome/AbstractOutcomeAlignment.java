@@ -3,6 +3,8 @@ package microsim.alignment.outcome;
 import java.util.Collection;
 import org.apache.commons.collections4.Predicate;
 
+import microsim.statistics.FilterRegistry;
+
 /**
  * 
  * Abstract class for BINARY OUTCOME alignment methods (for Binary
@@ -49,5 +51,31 @@ public abstract class AbstractOutcomeAlignment<T> {
 	public abstract void align(Collection<T> agents, Predicate<T> filter, AlignmentOutcomeClosure<T> closure, double targetShare, int maxResamplingAttempts);
 	
 	public abstract void align(Collection<T> agents, Predicate<T> filter, AlignmentOutcomeClosure<T> closure, int targetNumber, int maxResamplingAttempts);
+
+	/**
+	 * Align the agents of a selection of a filter registry, whose bitmap is shared with the other
+	 * consumers of the registry instead of evaluating a filter again.
+	 * 
+	 * @param selection - the selected sub-population of agents to be aligned
+	 * @param closure - specifies the outcome of the agents and the method to resample it
+	 * @param targetShare - the target share of the selected sub-population for which the outcome must be true
+	 * @param maxResamplingAttempts - the maximum number of resampling attempts, or a negative number for the default
+	 */
+	public void align(FilterRegistry.Selection<T> selection, AlignmentOutcomeClosure<T> closure, double targetShare, int maxResamplingAttempts) {
+		align(selection.toList(), null, closure, targetShare, maxResamplingAttempts);
+	}
+
+	/**
+	 * Align the agents of a selection of a filter registry, whose bitmap is shared with the other
+	 * consumers of the registry instead of evaluating a filter again.
+	 * 
+	 * @param selection - the selected sub-population of agents to be aligned
+	 * @param closure - specifies the outcome of the agents and the method to resample it
+	 * @param targetNumber - the target number of the selected sub-population for which the outcome must be true
+	 * @param maxResamplingAttempts - the maximum number of resampling attempts, or a negative number for the default
+	 */
+	public void align(FilterRegistry.Selection<T> selection, AlignmentOutcomeClosure<T> closure, int targetNumber, int maxResamplingAttempts) {
+		align(selection.toList(), null, closure, targetNumber, maxResamplingAttempts);
+	}
 	
 }
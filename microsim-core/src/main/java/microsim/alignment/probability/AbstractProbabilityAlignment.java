@@ -9,6 +9,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import microsim.statistics.FilterRegistry;
+
 import org.apache.commons.collections4.Predicate;
 
 /**
@@ -56,6 +58,21 @@ public abstract class AbstractProbabilityAlignment<T> {
 	 */
 	public abstract void align(Collection<T> agents, Predicate<T> filter, AlignmentProbabilityClosure<T> closure, double targetShare);
 
+	/**
+	 * Align the agents of a selection of a filter registry, whose bitmap is shared with the other
+	 * consumers of the registry instead of evaluating a filter again.
+	 * 
+	 * @param selection - the selected sub-population of agents to be aligned
+	 * @param closure - specifies the method returning the unaligned probability 
+	 * 	of the positive outcome for the agent and the method that samples the aligned 
+	 *  probabilities to specify the outcome.
+	 * @param targetShare - a target share of the selected sub-population for which the outcome 
+	 *  (defined by the AlignmentProbabilityClosure) must be true.
+	 */
+	public void align(FilterRegistry.Selection<T> selection, AlignmentProbabilityClosure<T> closure, double targetShare) {
+		align(selection.toList(), null, closure, targetShare);
+	}
+
 	/**
 	 * 
 	 * Sorting of objects of type T (usually the agents)
@@ -8,6 +8,8 @@ import org.apache.commons.collections4.Predicate;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.IterableUtils;
 
+import microsim.statistics.FilterRegistry;
+
 public class Aggregate {
 
 	public static <T> void applyToFilter(Iterable<T> collection, Predicate<T> predicate, Closure<T> closure) {
@@ -15,5 +17,10 @@ public class Aggregate {
 		CollectionUtils.select(collection, predicate, filtered);
 		IterableUtils.forEach(filtered, closure);
 	}
+
+	public static <T> void applyToSelection(FilterRegistry.Selection<T> selection, Closure<T> closure) {
+		for (int i = selection.nextSelected(0); i >= 0; i = selection.nextSelected(i + 1))
+			closure.execute(selection.getAgent(i));
+	}
 	
 }
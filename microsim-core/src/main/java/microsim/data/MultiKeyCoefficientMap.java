@@ -15,6 +15,9 @@ public class MultiKeyCoefficientMap extends MultiKeyMap {// implements Cloneable
 	protected String[] keys;
 	protected Map<String, Integer> valuesMap;
 	
+	/** The number of modifications of the map, see getVersion(). */
+	private long version = 0;
+	
 	/**
 	 * Creates an empty new MultiKeyCoefficientMap with the names of the keys and 
 	 * values categories specified by String[] keys and String[] values arguments.
@@ -144,6 +147,7 @@ public class MultiKeyCoefficientMap extends MultiKeyMap {// implements Cloneable
 	}
 
 	public void putValue(Object ... keyValues) {		
+		version++;
 		if (keyValues.length == keys.length + 1) {
 			switch (keyValues.length) {
 				case 1:
@@ -253,6 +257,115 @@ public class MultiKeyCoefficientMap extends MultiKeyMap {// implements Cloneable
 		return valuesClone;
 	}
 	
+	/**
+	 * Returns the number of modifications of the map made through its methods (putValue(), put(), 
+	 * putAll(), remove(), removeMultiKey(), removeAll() and clear()), so that the objects caching 
+	 * values computed from the map, as the regressions compiling its coefficients, can tell when 
+	 * they are out of date.  The modifications made through the iterators and the views of the map, 
+	 * or to the arrays of values held by the map, are not counted.
+	 * 
+	 * @return the number of modifications of the map
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	@Override
+	public Object put(MultiKey key, Object value) {
+		version++;
+		return super.put(key, value);
+	}
+	
+	@Override
+	public Object put(Object key1, Object key2, Object value) {
+		version++;
+		return super.put(key1, key2, value);
+	}
+	
+	@Override
+	public Object put(Object key1, Object key2, Object key3, Object value) {
+		version++;
+		return super.put(key1, key2, key3, value);
+	}
+	
+	@Override
+	public Object put(Object key1, Object key2, Object key3, Object key4, Object value) {
+		version++;
+		return super.put(key1, key2, key3, key4, value);
+	}
+	
+	@Override
+	public Object put(Object key1, Object key2, Object key3, Object key4, Object key5, Object value) {
+		version++;
+		return super.put(key1, key2, key3, key4, key5, value);
+	}
+	
+	@Override
+	public void putAll(Map map) {
+		version++;
+		super.putAll(map);
+	}
+	
+	@Override
+	public Object remove(Object key) {
+		version++;
+		return super.remove(key);
+	}
+	
+	@Override
+	public Object removeMultiKey(Object key1, Object key2) {
+		version++;
+		return super.removeMultiKey(key1, key2);
+	}
+	
+	@Override
+	public Object removeMultiKey(Object key1, Object key2, Object key3) {
+		version++;
+		return super.removeMultiKey(key1, key2, key3);
+	}
+	
+	@Override
+	public Object removeMultiKey(Object key1, Object key2, Object key3, Object key4) {
+		version++;
+		return super.removeMultiKey(key1, key2, key3, key4);
+	}
+	
+	@Override
+	public Object removeMultiKey(Object key1, Object key2, Object key3, Object key4, Object key5) {
+		version++;
+		return super.removeMultiKey(key1, key2, key3, key4, key5);
+	}
+	
+	@Override
+	public boolean removeAll(Object key1) {
+		version++;
+		return super.removeAll(key1);
+	}
+	
+	@Override
+	public boolean removeAll(Object key1, Object key2) {
+		version++;
+		return super.removeAll(key1, key2);
+	}
+	
+	@Override
+	public boolean removeAll(Object key1, Object key2, Object key3) {
+		version++;
+		return super.removeAll(key1, key2, key3);
+	}
+	
+	@Override
+	public boolean removeAll(Object key1, Object key2, Object key3, Object key4) {
+		version++;
+		return super.removeAll(key1, key2, key3, key4);
+	}
+	
+	@Override
+	public void clear() {
+		version++;
+		super.clear();
+	}
+	
 	/**
 	 * Returns a deep clone copy of the MultiKeyCoefficientMap object
 	 * 
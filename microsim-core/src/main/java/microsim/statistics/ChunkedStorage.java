@@ -0,0 +1,278 @@
+package microsim.statistics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An append-only storage of primitive values organised in fixed-size chunks, used as an alternative
+ * backend for long <i>Series</i>.<br>
+ * Appending a value never copies the values already stored: when a chunk is full a new one is allocated,
+ * and only the (small) chunk directory grows geometrically. Each chunk is a buffer of 4 or 8 byte
+ * elements, so the same class stores int, float, long or double values without boxing.<br>
+ * Optionally, the chunks which are not among the most recent ones ("cold" chunks) can be spilled to a
+ * file: their content is written to the file and the heap buffer is released, so that the heap
+ * occupancy of the series stays bounded. A cold value is read back by loading its whole chunk into a
+ * single reusable buffer, so reading the values in order costs one positional read per chunk. The
+ * chunks are neither memory-mapped nor kept open individually: the file is opened when the first
+ * chunk is spilled, and released by <i>close()</i>.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class ChunkedStorage {
+
+	/** The default number of elements per chunk. */
+	public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+	private final int elementBytes;
+	private final int chunkShift;
+	private final int chunkMask;
+
+	private ByteBuffer[] chunks = new ByteBuffer[8];
+	private int chunkCount = 0;
+	private int size = 0;
+
+	private File spillPath;
+	private RandomAccessFile spillFile;
+	private FileChannel spillChannel;
+	private int hotChunks;
+	private int spilledChunks = 0;
+
+	/** The buffer holding the last cold chunk read back from the file. */
+	private ByteBuffer coldChunk;
+	private int coldChunkIndex = -1;
+
+	/** Create a storage with the default chunk size.
+	 * @param elementBytes The size of an element in bytes: 4 for int and float values, 8 for long and double values.
+	 */
+	public ChunkedStorage(int elementBytes) {
+		this(elementBytes, DEFAULT_CHUNK_SIZE);
+	}
+
+	/** Create a storage with the given chunk size.
+	 * @param elementBytes The size of an element in bytes: 4 for int and float values, 8 for long and double values.
+	 * @param chunkSize The number of elements per chunk, rounded up to a power of two.
+	 */
+	public ChunkedStorage(int elementBytes, int chunkSize) {
+		if (elementBytes != 4 && elementBytes != 8)
+			throw new IllegalArgumentException("ChunkedStorage supports only 4 or 8 byte elements, got " + elementBytes);
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("The chunk size must be positive, got " + chunkSize);
+		this.elementBytes = elementBytes;
+		int shift = 32 - Integer.numberOfLeadingZeros(chunkSize - 1);
+		this.chunkShift = shift;
+		this.chunkMask = (1 << shift) - 1;
+	}
+
+	/**
+	 * Enable the spill of cold chunks to a file. Only the most recent <i>hotChunks</i> chunks are kept
+	 * on the heap. The file is created (or truncated) when the first chunk is spilled, and is deleted
+	 * when the storage is closed.
+	 * @param file The backing file.
+	 * @param hotChunks The number of most recent chunks kept on the heap, at least 1.
+	 * @throws IOException If chunks have to be spilled at once and the file cannot be written.
+	 */
+	public void enableSpill(File file, int hotChunks) throws IOException {
+		if (hotChunks < 1)
+			throw new IllegalArgumentException("At least one chunk must be kept on the heap.");
+		if (spillPath != null)
+			throw new IllegalStateException("The spill of this storage is already enabled.");
+		this.hotChunks = hotChunks;
+		spillPath = file;
+		spillColdChunks();
+	}
+
+	/** @return The number of stored elements. */
+	public int size() {
+		return size;
+	}
+
+	/** @return The number of chunks spilled to the backing file. */
+	public int getSpilledChunkCount() {
+		return spilledChunks;
+	}
+
+	/** @return The number of bytes used on the heap by the chunk buffers. */
+	public long getHeapBytes() {
+		return (long) (chunkCount - spilledChunks) * (chunkMask + 1) * elementBytes;
+	}
+
+	public void addDouble(double value) {
+		nextSlot().putDouble(slotOffset(size++), value);
+	}
+
+	public void addLong(long value) {
+		nextSlot().putLong(slotOffset(size++), value);
+	}
+
+	public void addFloat(float value) {
+		nextSlot().putFloat(slotOffset(size++), value);
+	}
+
+	public void addInt(int value) {
+		nextSlot().putInt(slotOffset(size++), value);
+	}
+
+	public double getDouble(int index) {
+		return chunkOf(index).getDouble(slotOffset(index));
+	}
+
+	public long getLong(int index) {
+		return chunkOf(index).getLong(slotOffset(index));
+	}
+
+	public float getFloat(int index) {
+		return chunkOf(index).getFloat(slotOffset(index));
+	}
+
+	public int getInt(int index) {
+		return chunkOf(index).getInt(slotOffset(index));
+	}
+
+	/** @return A copy of the stored values, read as doubles. */
+	public double[] toDoubleArray() {
+		double[] result = new double[size];
+		for (int i = 0; i < size; i++)
+			result[i] = getDouble(i);
+		return result;
+	}
+
+	/** @return A copy of the stored values, read as longs. */
+	public long[] toLongArray() {
+		long[] result = new long[size];
+		for (int i = 0; i < size; i++)
+			result[i] = getLong(i);
+		return result;
+	}
+
+	/** @return A copy of the stored values, read as floats. */
+	public float[] toFloatArray() {
+		float[] result = new float[size];
+		for (int i = 0; i < size; i++)
+			result[i] = getFloat(i);
+		return result;
+	}
+
+	/** @return A copy of the stored values, read as ints. */
+	public int[] toIntArray() {
+		int[] result = new int[size];
+		for (int i = 0; i < size; i++)
+			result[i] = getInt(i);
+		return result;
+	}
+
+	/**
+	 * Remove all the stored values. The heap chunks are released, while the backing file, if any,
+	 * is kept and reused for the chunks spilled afterwards.
+	 */
+	public void clear() {
+		for (int i = 0; i < chunkCount; i++)
+			chunks[i] = null;
+		chunkCount = 0;
+		spilledChunks = 0;
+		coldChunkIndex = -1;
+		size = 0;
+	}
+
+	/**
+	 * Close and delete the backing file, if any. The spilled values are no longer readable afterwards,
+	 * and the chunks spilled later are written to a new file.
+	 * @throws IOException In case of IO error.
+	 */
+	public void close() throws IOException {
+		coldChunk = null;
+		coldChunkIndex = -1;
+		if (spillFile != null) {
+			spillChannel.close();
+			spillFile.close();
+			spillFile = null;
+			spillChannel = null;
+			spillPath.delete();
+		}
+	}
+
+	private ByteBuffer chunkOf(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException(index + " is out of bounds, size is " + size);
+		int chunk = index >>> chunkShift;
+		if (chunk >= spilledChunks)
+			return chunks[chunk];
+		if (chunk != coldChunkIndex)
+			readColdChunk(chunk);
+		return coldChunk;
+	}
+
+	private void readColdChunk(int chunk) {
+		if (spillChannel == null)
+			throw new IllegalStateException("The backing file of the storage has been closed, the spilled values are no longer readable.");
+		if (coldChunk == null)
+			coldChunk = ByteBuffer.allocate((chunkMask + 1) * elementBytes);
+		coldChunkIndex = -1;
+		coldChunk.clear();
+		try {
+			long position = (long) chunk * coldChunk.capacity();
+			while (coldChunk.hasRemaining())
+				if (spillChannel.read(coldChunk, position + coldChunk.position()) < 0)
+					throw new IOException("Unexpected end of file " + spillPath);
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot read series data from the backing file: " + e.getMessage(), e);
+		}
+		coldChunkIndex = chunk;
+	}
+
+	private int slotOffset(int index) {
+		return (index & chunkMask) * elementBytes;
+	}
+
+	/** Return the chunk where the next element will be stored, allocating a new one if needed. */
+	private ByteBuffer nextSlot() {
+		int chunk = size >>> chunkShift;
+		if (chunk == chunkCount) {
+			if (chunkCount == chunks.length) {
+				ByteBuffer[] grown = new ByteBuffer[chunks.length * 2];
+				System.arraycopy(chunks, 0, grown, 0, chunkCount);
+				chunks = grown;
+			}
+			chunks[chunkCount++] = ByteBuffer.allocate((chunkMask + 1) * elementBytes);
+			if (spillPath != null) {
+				try {
+					spillColdChunks();
+				} catch (IOException e) {
+					throw new IllegalStateException("Cannot spill series data to the backing file: " + e.getMessage(), e);
+				}
+			}
+		}
+		return chunks[chunk];
+	}
+
+	/** Write the chunks exceeding the hot ones to the backing file, opening it if needed, and release their heap buffers. */
+	private void spillColdChunks() throws IOException {
+		while (chunkCount - spilledChunks > hotChunks) {
+			if (spillFile == null) {
+				spillFile = new RandomAccessFile(spillPath, "rw");
+				spillFile.setLength(0);
+				spillChannel = spillFile.getChannel();
+			}
+			int chunk = spilledChunks;
+			ByteBuffer heap = chunks[chunk];
+			heap.clear();
+			long position = (long) chunk * heap.capacity();
+			while (heap.hasRemaining())
+				spillChannel.write(heap, position + heap.position());
+			chunks[chunk] = null;
+			spilledChunks++;
+		}
+	}
+
+}
@@ -0,0 +1,487 @@
+package microsim.statistics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import microsim.event.CommonEventType;
+import microsim.event.EventListener;
+import microsim.reflection.ReflectionUtils;
+import microsim.statistics.reflectors.DoubleInvoker;
+import microsim.statistics.reflectors.FloatInvoker;
+import microsim.statistics.reflectors.IntegerInvoker;
+import microsim.statistics.reflectors.LongInvoker;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A columnar copy of some numeric and enum attributes of a population of agents.<br>
+ * Each attribute is mirrored into a primitive array (a column), where the value of the agent in
+ * slot <i>i</i> is stored at position <i>i</i>. Enum attributes are stored as the ordinal of their
+ * value, -1 standing for null. The columns are filled at explicit synchronisation points: at each
+ * update event, once per simulation time, the population is traversed once and all the columns are
+ * read, using the generated accessors of the invokers. The slot of an agent is its position in the
+ * population at the last synchronisation, and a single agent changed afterwards can be copied again
+ * with <i>sync(agent)</i>.<br>
+ * The columns implement the array source interfaces, so any array function (mean, sum, percentiles,
+ * histograms, ...) can be computed directly on them with contiguous scans, and the whole store can
+ * be exported row by row with <i>writeCSV()</i>.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class ColumnStore<T> implements EventListener, IUpdatableSource, ISourceObjectArray {
+	private static Logger log = Logger.getLogger(ColumnStore.class);
+
+	private final Collection<? extends T> population;
+	private final Class<?> objectClass;
+	private final TimeChecker timeChecker = new TimeChecker();
+	private final Map<String, Column> columns = new LinkedHashMap<String, Column>();
+
+	private Object[] agents = new Object[0];
+	private IdentityHashMap<Object, Integer> slots = null;
+	private boolean stale = true;
+
+	/** Create an empty store on a population.
+	 * @param population The collection of agents.
+	 * @param objectClass The class of the agents, declaring the mirrored attributes.
+	 */
+	public ColumnStore(Collection<? extends T> population, Class<?> objectClass) {
+		this.population = population;
+		this.objectClass = objectClass;
+	}
+
+	/**
+	 * Add a column mirroring an attribute. The kind of column is chosen from the type of the attribute:
+	 * double, float, long and int values, their wrappers and enums are supported.
+	 * @param name The name of the field or the method returning the attribute, used as column name.
+	 * @param getFromMethod Specifies if name is a method or a property value.
+	 * @return The column.
+	 * @throws IllegalArgumentException If the attribute does not exist or its type is not supported.
+	 */
+	public Column addColumn(String name, boolean getFromMethod) {
+		if (columns.containsKey(name))
+			throw new IllegalArgumentException("A column named " + name + " is already defined.");
+		Member member = (getFromMethod ? ReflectionUtils.searchMethod(objectClass, name) : ReflectionUtils.searchField(objectClass, name));
+		if (member == null)
+			throw new IllegalArgumentException("The " + (getFromMethod ? "method " : "field ") + name + " of class " + objectClass.getName() + " does not exist.");
+		Class<?> type = (getFromMethod ? ((Method) member).getReturnType() : ((Field) member).getType());
+
+		Column column;
+		if (type == Double.TYPE || type == Double.class)
+			column = new DoubleColumn(this, name, new DoubleInvoker(objectClass, name, getFromMethod));
+		else if (type == Float.TYPE || type == Float.class)
+			column = new FloatColumn(this, name, new FloatInvoker(objectClass, name, getFromMethod));
+		else if (type == Long.TYPE || type == Long.class)
+			column = new LongColumn(this, name, new LongInvoker(objectClass, name, getFromMethod));
+		else if (type == Integer.TYPE || type == Integer.class)
+			column = new IntColumn(this, name, new IntegerInvoker(objectClass, name, getFromMethod));
+		else if (type.isEnum())
+			column = new EnumColumn(this, name, member, type);
+		else
+			throw new IllegalArgumentException("The attribute " + name + " of type " + type.getName() + " cannot be stored in a column.");
+
+		columns.put(name, column);
+		stale = true;
+		return column;
+	}
+
+	/** Force a new synchronisation at the next request, even within the same simulation time. */
+	public void invalidate() {
+		stale = true;
+	}
+
+	/** Return the current status of the time checker. A time checker avoid the object to update
+	 * more than one time per simulation step. The default value is enabled (true).
+	 * @return True if the computer is currently checking time before update cached data, false if disabled.
+	 */
+	public boolean isCheckingTime() {
+		return timeChecker.isEnabled();
+	}
+
+	/** Set the current status of the time checker. A time checker avoid the object to update
+	 * more than one time per simulation step. The default value is enabled (true).
+	 * @param b True if the computer is currently checking time before update cached data, false if disabled.
+	 */
+	public void setCheckingTime(boolean b) {
+		timeChecker.setEnabled(b);
+	}
+
+	/**
+	 * ISimEventListener callback function. It supports only jas.engine.Sim.EVENT_UPDATE event.
+	 * @throws UnsupportedOperationException If actionType is not supported.
+	 */
+	public void onEvent(Enum<?> type) {
+		if (type.equals(CommonEventType.Update))
+			updateSource();
+		else
+			throw new UnsupportedOperationException("The ColumnStore object does not support " + type + " operation.");
+	}
+
+	/** Copy the attributes of the whole population into the columns, once per simulation time. */
+	public void updateSource() {
+		if (timeChecker.isUpToDate() && !stale)
+			return;
+		stale = false;
+
+		agents = population.toArray();
+		slots = null;
+		for (Column column : columns.values())
+			column.resize(agents.length);
+		// The columns are filled one at a time, so each loop writes a single contiguous array
+		for (Column column : columns.values())
+			for (int i = 0; i < agents.length; i++)
+				column.read(agents[i], i);
+	}
+
+	/** Copy again the attributes of one agent into the columns, after it has changed.
+	 * @param agent An agent of the population at the last synchronisation.
+	 * @return The slot of the agent, or -1 if it was not in the population.
+	 */
+	public int sync(T agent) {
+		int slot = getSlot(agent);
+		if (slot >= 0)
+			for (Column column : columns.values())
+				column.read(agent, slot);
+		return slot;
+	}
+
+	/** @param agent An agent.
+	 * @return The slot of the agent at the last synchronisation, or -1 if it was not in the population. */
+	public int getSlot(Object agent) {
+		if (slots == null) {
+			slots = new IdentityHashMap<Object, Integer>(agents.length * 2);
+			for (int i = 0; i < agents.length; i++)
+				slots.put(agents[i], i);
+		}
+		Integer slot = slots.get(agent);
+		return (slot == null ? -1 : slot);
+	}
+
+	/** @param slot A slot.
+	 * @return The agent in the slot at the last synchronisation. */
+	@SuppressWarnings("unchecked")
+	public T getAgent(int slot) {
+		return (T) agents[slot];
+	}
+
+	/** @return The number of agents at the last synchronisation. */
+	public int size() {
+		return agents.length;
+	}
+
+	public Object[] getSourceArray() {
+		return agents;
+	}
+
+	/** @param name The name of a column.
+	 * @return The column. */
+	public Column getColumn(String name) {
+		Column column = columns.get(name);
+		if (column == null)
+			throw new IllegalArgumentException("No column named " + name + " is defined.");
+		return column;
+	}
+
+	/** @return The columns, in the order they were added. */
+	public List<Column> getColumns() {
+		return new ArrayList<Column>(columns.values());
+	}
+
+	/**
+	 * Write the columns as comma separated values, one row per agent slot. Enum values are written by name.
+	 * @param out The output stream.
+	 * @param separator The character used to separate data.
+	 * @throws IOException In case of IO error.
+	 */
+	public void writeCSV(BufferedWriter out, char separator) throws IOException {
+		updateSource();
+		Column[] cols = columns.values().toArray(new Column[columns.size()]);
+		for (int j = 0; j < cols.length; j++) {
+			if (j > 0)
+				out.write(separator);
+			out.write(cols[j].getName());
+		}
+		out.newLine();
+		for (int i = 0; i < agents.length; i++) {
+			for (int j = 0; j < cols.length; j++) {
+				if (j > 0)
+					out.write(separator);
+				out.write(cols[j].format(i));
+			}
+			out.newLine();
+		}
+	}
+
+	/**
+	 * Write the columns to a file, overwriting it.
+	 * @param path The optional path string, ignored if null or empty.
+	 * @param fileName The name of the output file.
+	 */
+	public void saveToFile(String path, String fileName) {
+		File file = (path == null || path.isEmpty()) ? new File(fileName) : new File(path + File.separator + fileName);
+		try {
+			BufferedWriter out = new BufferedWriter(new FileWriter(file));
+			writeCSV(out, ',');
+			out.close();
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+			log.error("Error saving " + file.getPath() + " " + ioe.getMessage());
+		}
+	}
+
+	/**
+	 * A column of the store. Reading the values of a column through the array source interfaces
+	 * synchronises the store first, if this has not been done in the current simulation time.
+	 */
+	public static abstract class Column implements IUpdatableSource, ISourceObjectArray {
+		protected final ColumnStore<?> store;
+		protected final String name;
+
+		protected Column(ColumnStore<?> store, String name) {
+			this.store = store;
+			this.name = name;
+		}
+
+		/** @return The name of the column. */
+		public String getName() {
+			return name;
+		}
+
+		/** @param slot A slot.
+		 * @return The value of the slot as a double, NaN for a null enum value. */
+		public abstract double getDouble(int slot);
+
+		abstract void resize(int size);
+
+		abstract void read(Object agent, int slot);
+
+		String format(int slot) {
+			return Double.toString(getDouble(slot));
+		}
+
+		public void updateSource() {
+			store.updateSource();
+		}
+
+		public Object[] getSourceArray() {
+			return store.getSourceArray();
+		}
+	}
+
+	public static class DoubleColumn extends Column implements IDoubleArraySource {
+		private final DoubleInvoker invoker;
+		private double[] values = new double[0];
+
+		DoubleColumn(ColumnStore<?> store, String name, DoubleInvoker invoker) {
+			super(store, name);
+			this.invoker = invoker;
+		}
+
+		void resize(int size) {
+			if (values.length != size)
+				values = new double[size];
+		}
+
+		void read(Object agent, int slot) {
+			values[slot] = invoker.getDouble(agent);
+		}
+
+		public double getDouble(int slot) {
+			return values[slot];
+		}
+
+		/** Set the value of a slot, without changing the agent.
+		 * @param slot A slot.
+		 * @param value The value. */
+		public void set(int slot, double value) {
+			values[slot] = value;
+		}
+
+		/** @return The column array, which must not be modified. */
+		public double[] getDoubleArray() {
+			return values;
+		}
+	}
+
+	public static class FloatColumn extends Column implements IFloatArraySource {
+		private final FloatInvoker invoker;
+		private float[] values = new float[0];
+
+		FloatColumn(ColumnStore<?> store, String name, FloatInvoker invoker) {
+			super(store, name);
+			this.invoker = invoker;
+		}
+
+		void resize(int size) {
+			if (values.length != size)
+				values = new float[size];
+		}
+
+		void read(Object agent, int slot) {
+			values[slot] = invoker.getFloat(agent);
+		}
+
+		public double getDouble(int slot) {
+			return values[slot];
+		}
+
+		String format(int slot) {
+			return Float.toString(values[slot]);
+		}
+
+		/** Set the value of a slot, without changing the agent.
+		 * @param slot A slot.
+		 * @param value The value. */
+		public void set(int slot, float value) {
+			values[slot] = value;
+		}
+
+		/** @return The column array, which must not be modified. */
+		public float[] getFloatArray() {
+			return values;
+		}
+	}
+
+	public static class LongColumn extends Column implements ILongArraySource {
+		private final LongInvoker invoker;
+		private long[] values = new long[0];
+
+		LongColumn(ColumnStore<?> store, String name, LongInvoker invoker) {
+			super(store, name);
+			this.invoker = invoker;
+		}
+
+		void resize(int size) {
+			if (values.length != size)
+				values = new long[size];
+		}
+
+		void read(Object agent, int slot) {
+			values[slot] = invoker.getLong(agent);
+		}
+
+		public double getDouble(int slot) {
+			return values[slot];
+		}
+
+		String format(int slot) {
+			return Long.toString(values[slot]);
+		}
+
+		/** Set the value of a slot, without changing the agent.
+		 * @param slot A slot.
+		 * @param value The value. */
+		public void set(int slot, long value) {
+			values[slot] = value;
+		}
+
+		/** @return The column array, which must not be modified. */
+		public long[] getLongArray() {
+			return values;
+		}
+	}
+
+	public static class IntColumn extends Column implements IIntArraySource {
+		private final IntegerInvoker invoker;
+		protected int[] values = new int[0];
+
+		IntColumn(ColumnStore<?> store, String name, IntegerInvoker invoker) {
+			super(store, name);
+			this.invoker = invoker;
+		}
+
+		void resize(int size) {
+			if (values.length != size)
+				values = new int[size];
+		}
+
+		void read(Object agent, int slot) {
+			values[slot] = invoker.getInt(agent);
+		}
+
+		public double getDouble(int slot) {
+			return values[slot];
+		}
+
+		String format(int slot) {
+			return Integer.toString(values[slot]);
+		}
+
+		/** Set the value of a slot, without changing the agent.
+		 * @param slot A slot.
+		 * @param value The value. */
+		public void set(int slot, int value) {
+			values[slot] = value;
+		}
+
+		/** @return The column array, which must not be modified. */
+		public int[] getIntArray() {
+			return values;
+		}
+	}
+
+	/** A column of enum values, stored as ordinals. The int array source returns the ordinals. */
+	public static class EnumColumn extends IntColumn {
+		private final Field field;
+		private final Method method;
+		private final Object[] constants;
+
+		EnumColumn(ColumnStore<?> store, String name, Member member, Class<?> type) {
+			super(store, name, null);
+			field = (member instanceof Field ? (Field) member : null);
+			method = (member instanceof Method ? (Method) member : null);
+			constants = type.getEnumConstants();
+		}
+
+		void read(Object agent, int slot) {
+			Object value;
+			try {
+				value = (field != null ? field.get(agent) : method.invoke(agent));
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				//Thrown rather than logged, so that a failing column does not report once per agent
+				throw new IllegalStateException("ColumnStore: cannot read " + name + " of object " + agent, e);
+			}
+			values[slot] = (value == null ? -1 : ((Enum<?>) value).ordinal());
+		}
+
+		public double getDouble(int slot) {
+			return (values[slot] < 0 ? Double.NaN : values[slot]);
+		}
+
+		String format(int slot) {
+			return (values[slot] < 0 ? "" : constants[values[slot]].toString());
+		}
+
+		/** @param slot A slot.
+		 * @return The enum value of the slot, or null. */
+		public Object getValue(int slot) {
+			return (values[slot] < 0 ? null : constants[values[slot]]);
+		}
+
+		/** @return The enum constants, indexed by the stored ordinals. */
+		public Object[] getConstants() {
+			return constants.clone();
+		}
+	}
+
+}
@@ -40,6 +40,9 @@ public abstract class CrossSection implements EventListener, IUpdatableSource, I
 	protected TimeChecker timeChecker = new TimeChecker();;
 	
 	protected ICollectionFilter filter = null;
+
+	protected FilterRegistry<?> registry = null;
+	protected String selectionName = null;
 	
 	public abstract void updateSource();
 
@@ -115,6 +118,14 @@ public abstract class CrossSection implements EventListener, IUpdatableSource, I
 		public void updateSource() {
 			if (timeChecker.isUpToDate())
 				return;
+
+			if (registry != null) {
+				sourceList = registry.getSelection(selectionName).toArray();
+				valueList = new double[sourceList.length];
+				for (int i = 0; i < sourceList.length; i++)
+					valueList[i] = (invoker != null ? invoker.getDouble(sourceList[i]) : ((IDoubleSource) sourceList[i]).getDoubleValue(valueID));
+				return;
+			}
 				
 			valueList = new double[target.size()];
 			sourceList = new Object[valueList.length];
@@ -235,6 +246,14 @@ public abstract class CrossSection implements EventListener, IUpdatableSource, I
 		public void updateSource() {
 			if (timeChecker.isUpToDate())
 				return;
+
+			if (registry != null) {
+				sourceList = registry.getSelection(selectionName).toArray();
+				valueList = new long[sourceList.length];
+				for (int i = 0; i < sourceList.length; i++)
+					valueList[i] = (invoker != null ? invoker.getLong(sourceList[i]) : ((ILongSource) sourceList[i]).getLongValue(valueID));
+				return;
+			}
 				
 			valueList = new long[target.size()];
 			sourceList = new Object[valueList.length];
@@ -352,6 +371,14 @@ public abstract class CrossSection implements EventListener, IUpdatableSource, I
 		public void updateSource() {
 			if (timeChecker.isUpToDate())
 				return;
+
+			if (registry != null) {
+				sourceList = registry.getSelection(selectionName).toArray();
+				valueList = new int[sourceList.length];
+				for (int i = 0; i < sourceList.length; i++)
+					valueList[i] = (invoker != null ? invoker.getInt(sourceList[i]) : ((IIntSource) sourceList[i]).getIntValue(valueID));
+				return;
+			}
 				
 			valueList = new int[target.size()];
 			sourceList = new Object[valueList.length];
@@ -469,6 +496,14 @@ public abstract class CrossSection implements EventListener, IUpdatableSource, I
 		public void updateSource() {
 			if (timeChecker.isUpToDate())
 				return;
+
+			if (registry != null) {
+				sourceList = registry.getSelection(selectionName).toArray();
+				valueList = new float[sourceList.length];
+				for (int i = 0; i < sourceList.length; i++)
+					valueList[i] = (invoker != null ? invoker.getFloat(sourceList[i]) : ((IFloatSource) sourceList[i]).getFloatValue(valueID));
+				return;
+			}
 				
 			valueList = new float[target.size()];
 			sourceList = new Object[valueList.length];
@@ -532,6 +567,18 @@ public abstract class CrossSection implements EventListener, IUpdatableSource, I
 		this.filter = filter;
 	}
 
+	/** Restrict the cross section to the agents of a selection of a filter registry, instead of
+	 * iterating the source collection. The bitmap of the selection is computed once per time step
+	 * and shared with all the other consumers of the registry. The agents are read from the population
+	 * of the registry, and the filter set by <i>setFilter()</i> is ignored.
+	 * @param registry The filter registry, or null to iterate the source collection again.
+	 * @param selectionName The name of a selection registered in the registry.
+	 */
+	public void setSelection(FilterRegistry<?> registry, String selectionName) {
+		this.registry = registry;
+		this.selectionName = selectionName;
+	}
+
 	/** Return the current status of the time checker. A time checker avoid the object to update
 	 * more than one time per simulation step. The default value is enabled (true). 
 	 * @return True if the computer is currently checking time before update cached data, false if disabled.
@@ -0,0 +1,279 @@
+package microsim.statistics;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A registry of named filters on a population, evaluated at most once per simulation time.<br>
+ * The first time a selection is requested in a time step the population is copied into an array,
+ * which defines a stable index of the agents for the whole step. Each registered filter is then
+ * evaluated once over the population and stored as a compact bitmap (<i>Selection</i>), which is
+ * shared by all the consumers: cross sections (see <i>CrossSection.setSelection()</i>), alignment
+ * procedures and <i>Aggregate.applyToSelection()</i>. Filters combining other filters with and, or
+ * and not are evaluated on the bitmaps, without calling the underlying filters again.<br>
+ * If the population or the agents' state changes within a time step, <i>invalidate()</i> forces a
+ * new evaluation.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class FilterRegistry<T> {
+
+	private static final int OP_FILTER = 0;
+	private static final int OP_AND = 1;
+	private static final int OP_OR = 2;
+	private static final int OP_NOT = 3;
+
+	private final Collection<T> population;
+	private final Map<String, Definition> definitions = new LinkedHashMap<String, Definition>();
+	private final TimeChecker timeChecker = new TimeChecker();
+
+	private Object[] agents = new Object[0];
+	private boolean stale = true;
+
+	/** Create a registry on a population.
+	 * @param population The collection of agents the filters are evaluated on.
+	 */
+	public FilterRegistry(Collection<T> population) {
+		this.population = population;
+	}
+
+	/** Register a filter.
+	 * @param name The unique name of the selection.
+	 * @param filter The filter, called once per agent and time step.
+	 */
+	public void register(String name, ICollectionFilter filter) {
+		if (filter == null)
+			throw new IllegalArgumentException("The filter of selection " + name + " is null.");
+		define(name, new Definition(OP_FILTER, filter, null));
+	}
+
+	/** Register the intersection of other selections.
+	 * @param name The unique name of the selection.
+	 * @param names The names of the selections to be intersected, already registered.
+	 */
+	public void registerAnd(String name, String... names) {
+		define(name, new Definition(OP_AND, null, names));
+	}
+
+	/** Register the union of other selections.
+	 * @param name The unique name of the selection.
+	 * @param names The names of the selections to be joined, already registered.
+	 */
+	public void registerOr(String name, String... names) {
+		define(name, new Definition(OP_OR, null, names));
+	}
+
+	/** Register the complement of another selection.
+	 * @param name The unique name of the selection.
+	 * @param other The name of the selection to be negated, already registered.
+	 */
+	public void registerNot(String name, String other) {
+		define(name, new Definition(OP_NOT, null, new String[] { other }));
+	}
+
+	private void define(String name, Definition definition) {
+		if (definitions.containsKey(name))
+			throw new IllegalArgumentException("A selection named " + name + " is already registered.");
+		if (definition.operands != null)
+			for (String operand : definition.operands)
+				if (!definitions.containsKey(operand))
+					throw new IllegalArgumentException("The selection " + operand + " used by " + name + " is not registered.");
+		definitions.put(name, definition);
+	}
+
+	/** Force the evaluation of all the selections at the next request, even within the same time step. */
+	public void invalidate() {
+		stale = true;
+	}
+
+	/** Return the selection with the given name, evaluating it if this has not been done in the current time step.
+	 * @param name The name of the selection.
+	 * @return The selection.
+	 */
+	public Selection<T> getSelection(String name) {
+		Definition definition = definitions.get(name);
+		if (definition == null)
+			throw new IllegalArgumentException("No selection named " + name + " is registered.");
+		refresh();
+		return evaluate(definition);
+	}
+
+	/** Return the agents of the population, in the order defining the indices of the current time step.
+	 * @return The array of agents, which must not be modified.
+	 */
+	public Object[] getAgents() {
+		refresh();
+		return agents;
+	}
+
+	/** @return The number of agents in the population at the current time step. */
+	public int getPopulationSize() {
+		refresh();
+		return agents.length;
+	}
+
+	private void refresh() {
+		if (timeChecker.isUpToDate() && !stale)
+			return;
+		stale = false;
+		agents = population.toArray();
+		for (Definition definition : definitions.values())
+			definition.selection = null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Selection<T> evaluate(Definition definition) {
+		if (definition.selection != null)
+			return (Selection<T>) definition.selection;
+		BitSet bits;
+		switch (definition.operation) {
+			case OP_FILTER:
+				bits = new BitSet(agents.length);
+				for (int i = 0; i < agents.length; i++)
+					if (definition.filter.isFiltered(agents[i]))
+						bits.set(i);
+				break;
+			case OP_NOT:
+				bits = (BitSet) evaluate(definitions.get(definition.operands[0])).bits.clone();
+				bits.flip(0, agents.length);
+				break;
+			default:
+				bits = (BitSet) evaluate(definitions.get(definition.operands[0])).bits.clone();
+				for (int k = 1; k < definition.operands.length; k++) {
+					BitSet other = evaluate(definitions.get(definition.operands[k])).bits;
+					if (definition.operation == OP_AND)
+						bits.and(other);
+					else
+						bits.or(other);
+				}
+		}
+		Selection<T> selection = new Selection<T>(agents, bits);
+		definition.selection = selection;
+		return selection;
+	}
+
+	private static class Definition {
+		final int operation;
+		final ICollectionFilter filter;
+		final String[] operands;
+		Selection<?> selection;
+
+		Definition(int operation, ICollectionFilter filter, String[] operands) {
+			this.operation = operation;
+			this.filter = filter;
+			this.operands = operands;
+		}
+	}
+
+	/**
+	 * The agents of a population selected by a filter, stored as a bitmap over the agent indices
+	 * of one time step. Selections of the same time step can be combined with <i>and()</i>,
+	 * <i>or()</i> and <i>not()</i>, which return new selections and leave the operands unchanged.
+	 */
+	public static class Selection<T> {
+		private final Object[] agents;
+		private final BitSet bits;
+
+		private Selection(Object[] agents, BitSet bits) {
+			this.agents = agents;
+			this.bits = bits;
+		}
+
+		/** @return The number of selected agents. */
+		public int size() {
+			return bits.cardinality();
+		}
+
+		/** @param index The index of an agent in the population.
+		 * @return True if the agent is selected. */
+		public boolean isSelected(int index) {
+			return bits.get(index);
+		}
+
+		/** Return the index of the first selected agent from the given index on. The selected agents
+		 * are visited with <i>for (int i = s.nextSelected(0); i &gt;= 0; i = s.nextSelected(i + 1))</i>.
+		 * @param fromIndex The first index to be checked.
+		 * @return The index of the next selected agent, or -1 if there are no more selected agents. */
+		public int nextSelected(int fromIndex) {
+			return bits.nextSetBit(fromIndex);
+		}
+
+		/** @param index The index of an agent in the population.
+		 * @return The agent. */
+		@SuppressWarnings("unchecked")
+		public T getAgent(int index) {
+			return (T) agents[index];
+		}
+
+		/** @return A new list of the selected agents, in population order. */
+		@SuppressWarnings("unchecked")
+		public List<T> toList() {
+			List<T> list = new ArrayList<T>(bits.cardinality());
+			for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1))
+				list.add((T) agents[i]);
+			return list;
+		}
+
+		/** @return A new array of the selected agents, in population order. */
+		public Object[] toArray() {
+			Object[] array = new Object[bits.cardinality()];
+			int j = 0;
+			for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1))
+				array[j++] = agents[i];
+			return array;
+		}
+
+		/** @param other A selection of the same time step.
+		 * @return The agents selected by both selections. */
+		public Selection<T> and(Selection<T> other) {
+			checkCompatible(other);
+			BitSet result = (BitSet) bits.clone();
+			result.and(other.bits);
+			return new Selection<T>(agents, result);
+		}
+
+		/** @param other A selection of the same time step.
+		 * @return The agents selected by either selection. */
+		public Selection<T> or(Selection<T> other) {
+			checkCompatible(other);
+			BitSet result = (BitSet) bits.clone();
+			result.or(other.bits);
+			return new Selection<T>(agents, result);
+		}
+
+		/** @param other A selection of the same time step.
+		 * @return The agents selected by this selection and not by the other one. */
+		public Selection<T> andNot(Selection<T> other) {
+			checkCompatible(other);
+			BitSet result = (BitSet) bits.clone();
+			result.andNot(other.bits);
+			return new Selection<T>(agents, result);
+		}
+
+		/** @return The agents of the population not selected by this selection. */
+		public Selection<T> not() {
+			BitSet result = (BitSet) bits.clone();
+			result.flip(0, agents.length);
+			return new Selection<T>(agents, result);
+		}
+
+		private void checkCompatible(Selection<T> other) {
+			if (other.agents != agents)
+				throw new IllegalArgumentException("Selections evaluated on different snapshots of the population cannot be combined.");
+		}
+	}
+
+}
@@ -0,0 +1,606 @@
+package microsim.statistics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Iterator;
+
+import org.apache.log4j.Logger;
+
+import microsim.engine.SimulationEngine;
+import microsim.event.CommonEventType;
+import microsim.event.EventListener;
+import microsim.reflection.ReflectionUtils;
+import microsim.statistics.reflectors.DoubleInvoker;
+import microsim.statistics.reflectors.IntegerInvoker;
+
+/**
+ * A grouped cross section computes per-group statistics of a variable over a collection of agents,
+ * such as the mean income by region x sex x age band, in a single traversal of the collection.<br>
+ * Each agent is assigned to a group by an <i>IGroupKey</i>, and the count, sum, mean, minimum and
+ * maximum of the probed variable are stored in a dense table indexed by group. This replaces the
+ * creation of one filtered <i>CrossSection</i> per cell, each of them scanning the whole population.<br>
+ * Results are addressable by group index or by key values, can be tracked over time through the
+ * <i>IDoubleSource</i> returned by <i>getGroupSource()</i>, and can be exported to a .csv file.
+ * Only the selected statistics are computed and exported: the variable is not read at all when
+ * only the count is selected, and the count is always available.
+ * An optional <i>ICollectionFilter</i> restricts the agents considered.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class GroupedCrossSection implements EventListener, IUpdatableSource {
+
+	private static Logger log = Logger.getLogger(GroupedCrossSection.class);
+
+	public enum Variables {
+		/** The number of agents in the group. */
+		Count,
+		/** The sum of the values in the group. */
+		Sum,
+		/** The mean of the values in the group, NaN if the group is empty. */
+		Mean,
+		/** The minimum value in the group, NaN if the group is empty. */
+		Min,
+		/** The maximum value in the group, NaN if the group is empty. */
+		Max;
+	}
+
+	/** The character used to separate data in the output file. */
+	public static final char DEFAULT_SEPARATOR = ',';
+
+	protected TimeChecker timeChecker = new TimeChecker();
+
+	protected ICollectionFilter filter = null;
+
+	protected final Collection<?> target;
+	protected final IGroupKey key;
+	protected final EnumSet<Variables> statistics;
+
+	protected DoubleInvoker invoker;
+	protected Enum<?> valueID;
+
+	protected final int[] counts;
+	protected final double[] sums;
+	protected final double[] mins;
+	protected final double[] maxs;
+
+	private final boolean summing, minimising, maximising;
+
+	private boolean headerWritten = false;
+
+	/** Create a grouped cross section on a collection of IDoubleSource objects.
+	 *  @param source The collection containing IDoubleSource objects.
+	 *  @param key The key assigning each object to a group.
+	 *  @param valueID The value identifier defined by source objects.
+	 *  @param statistics The statistics computed and exported to .csv files. */
+	public GroupedCrossSection(Collection<?> source, IGroupKey key, Enum<?> valueID, EnumSet<Variables> statistics) {
+		this.target = source;
+		this.key = key;
+		this.valueID = valueID;
+		this.statistics = EnumSet.copyOf(statistics);
+		summing = statistics.contains(Variables.Sum) || statistics.contains(Variables.Mean);
+		minimising = statistics.contains(Variables.Min);
+		maximising = statistics.contains(Variables.Max);
+		int groups = key.getGroupCount();
+		counts = new int[groups];
+		sums = new double[groups];
+		mins = new double[groups];
+		maxs = new double[groups];
+	}
+
+	/** Create a grouped cross section on a collection of IDoubleSource objects, exporting all the statistics.
+	 *  @param source The collection containing IDoubleSource objects.
+	 *  @param key The key assigning each object to a group.
+	 *  @param valueID The value identifier defined by source objects. */
+	public GroupedCrossSection(Collection<?> source, IGroupKey key, Enum<?> valueID) {
+		this(source, key, valueID, EnumSet.allOf(Variables.class));
+	}
+
+	/** Create a grouped cross section on a collection of generic objects.
+	 *  @param source A collection of generic objects.
+	 *  @param key The key assigning each object to a group.
+	 *  @param objectClass The class of the objects contained by collection source.
+	 *  @param valueName The name of the field or the method returning the variable to be probed.
+	 *  @param getFromMethod Specifies if valueName is a method or a property value.
+	 *  @param statistics The statistics computed and exported to .csv files. */
+	public GroupedCrossSection(Collection<?> source, IGroupKey key, Class<?> objectClass, String valueName, boolean getFromMethod, EnumSet<Variables> statistics) {
+		this(source, key, IDoubleSource.Variables.Default, statistics);
+		invoker = new DoubleInvoker(objectClass, valueName, getFromMethod);
+	}
+
+	/** Create a grouped cross section on a collection of generic objects, exporting all the statistics.
+	 *  @param source A collection of generic objects.
+	 *  @param key The key assigning each object to a group.
+	 *  @param objectClass The class of the objects contained by collection source.
+	 *  @param valueName The name of the field or the method returning the variable to be probed.
+	 *  @param getFromMethod Specifies if valueName is a method or a property value. */
+	public GroupedCrossSection(Collection<?> source, IGroupKey key, Class<?> objectClass, String valueName, boolean getFromMethod) {
+		this(source, key, objectClass, valueName, getFromMethod, EnumSet.allOf(Variables.class));
+	}
+
+	/** Create a grouped cross section counting the objects of a collection by group.
+	 *  No variable is probed, so only the Count statistic is meaningful.
+	 *  @param source A collection of generic objects.
+	 *  @param key The key assigning each object to a group. */
+	public GroupedCrossSection(Collection<?> source, IGroupKey key) {
+		this(source, key, null, EnumSet.of(Variables.Count));
+	}
+
+	/**
+	 * ISimEventListener callback function. It supports only jas.engine.Sim.EVENT_UPDATE event.
+	 * @throws UnsupportedOperationException If actionType is not supported.
+	 */
+	public void onEvent(Enum<?> type) {
+		if (type.equals(CommonEventType.Update))
+			updateSource();
+		else
+			throw new UnsupportedOperationException("The GroupedCrossSection object does not support " + type + " operation.");
+	}
+
+	/** Traverse the collection once and recompute the statistics of all the groups. */
+	public void updateSource() {
+		if (timeChecker.isUpToDate())
+			return;
+
+		Arrays.fill(counts, 0);
+		Arrays.fill(sums, 0.);
+		Arrays.fill(mins, Double.POSITIVE_INFINITY);
+		Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+
+		boolean probing = (invoker != null || valueID != null) && (summing || minimising || maximising);
+		for (Iterator<?> it = target.iterator(); it.hasNext(); )
+		{
+			Object obj = it.next();
+			if (filter != null && !filter.isFiltered(obj))
+				continue;
+			int group = key.getGroup(obj);
+			if (group < 0)
+				continue;
+
+			counts[group]++;
+			if (probing) {
+				double value = (invoker != null ? invoker.getDouble(obj) : ((IDoubleSource) obj).getDoubleValue(valueID));
+				if (summing)
+					sums[group] += value;
+				if (minimising && value < mins[group])
+					mins[group] = value;
+				if (maximising && value > maxs[group])
+					maxs[group] = value;
+			}
+		}
+	}
+
+	/** Return a statistic of a group.
+	 *  @param statistic The statistic.
+	 *  @param group The group index.
+	 *  @return The value of the statistic computed at the last update.
+	 *  @throws UnsupportedOperationException If the statistic is not one of the selected statistics. */
+	public double getValue(Variables statistic, int group) {
+		if (statistic != Variables.Count && !statistics.contains(statistic))
+			throw new UnsupportedOperationException("The statistic " + statistic + " is not computed by this GroupedCrossSection, the selected statistics are " + statistics + ".");
+		switch (statistic)
+		{
+			case Count:	return counts[group];
+			case Sum:	return sums[group];
+			case Mean:	return counts[group] > 0 ? sums[group] / counts[group] : Double.NaN;
+			case Min:	return counts[group] > 0 ? mins[group] : Double.NaN;
+			case Max:	return counts[group] > 0 ? maxs[group] : Double.NaN;
+			default: throw new UnsupportedOperationException("The statistic " + statistic + " is not supported.");
+		}
+	}
+
+	/** Return a statistic of the group identified by the given key values.
+	 *  @param statistic The statistic.
+	 *  @param keyValues One value per component of the key, e.g. <i>Region.North, Gender.Female, 3</i>.
+	 *  @return The value of the statistic computed at the last update.
+	 *  @throws IllegalArgumentException If the key values do not identify a group. */
+	public double getValueByKey(Variables statistic, Object... keyValues) {
+		int group = key.getGroupIndex(keyValues);
+		if (group < 0)
+			throw new IllegalArgumentException("The key values " + Arrays.toString(keyValues) + " do not identify a group.");
+		return getValue(statistic, group);
+	}
+
+	/** Return a source reading the statistics of a single group, which can be tracked by a Series or a TimeSeries.
+	 *  The returned object updates this cross section before reading the values.
+	 *  @param group The group index.
+	 *  @return An IDoubleSource accepting the <i>GroupedCrossSection.Variables</i> identifiers. */
+	public IDoubleSource getGroupSource(final int group) {
+		if (group < 0 || group >= counts.length)
+			throw new IndexOutOfBoundsException(group + " is out of max bound " + counts.length);
+		return new GroupSource(group);
+	}
+
+	private class GroupSource implements IDoubleSource, IUpdatableSource {
+		private final int group;
+
+		GroupSource(int group) {
+			this.group = group;
+		}
+
+		public void updateSource() {
+			GroupedCrossSection.this.updateSource();
+		}
+
+		public double getDoubleValue(Enum<?> variableID) {
+			return getValue((GroupedCrossSection.Variables) variableID, group);
+		}
+	}
+
+	/** @return The group key. */
+	public IGroupKey getKey() {
+		return key;
+	}
+
+	/** @return The number of groups. */
+	public int getGroupCount() {
+		return counts.length;
+	}
+
+	/** @return The statistics computed and exported to .csv files. */
+	public EnumSet<Variables> getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Write the current table to the given writer, one row per group, preceded by the current run and time.
+	 * @param out The destination writer.
+	 * @param withHeader If true a header line is written first.
+	 * @param separator The character used to separate data.
+	 * @throws IOException In case of IO error.
+	 */
+	public void writeCSV(BufferedWriter out, boolean withHeader, char separator) throws IOException {
+		if (withHeader) {
+			out.write("run");
+			out.write(separator);
+			out.write("time");
+			for (String name : key.getComponentNames()) {
+				out.write(separator);
+				out.write(name);
+			}
+			for (Variables statistic : statistics) {
+				out.write(separator);
+				out.write(statistic.name());
+			}
+			out.newLine();
+		}
+
+		String run = Integer.toString(SimulationEngine.getInstance().getCurrentRunNumber());
+		String time = Double.toString(SimulationEngine.getInstance().getTime());
+		for (int group = 0; group < counts.length; group++) {
+			out.write(run);
+			out.write(separator);
+			out.write(time);
+			for (String label : key.getGroupLabels(group)) {
+				out.write(separator);
+				out.write(label);
+			}
+			for (Variables statistic : statistics) {
+				out.write(separator);
+				if (statistic == Variables.Count)
+					out.write(Integer.toString(counts[group]));
+				else
+					out.write(Double.toString(getValue(statistic, group)));
+			}
+			out.newLine();
+		}
+	}
+
+	/**
+	 * Append the current table to the given .csv file, using the default separator. The header is
+	 * written the first time the method is called, if the file does not already exist.
+	 * It can be called at every simulation step to build a panel of group statistics.
+	 * @param path The optional path string. Passing an empty string it is ignored.
+	 * @param fileName The name of the output file.
+	 */
+	public void saveToFile(String path, String fileName) {
+		File file = (path == null || path.isEmpty()) ? new File(fileName) : new File(path + File.separator + fileName);
+		boolean withHeader = !headerWritten && !file.exists();
+		try {
+			BufferedWriter out = new BufferedWriter(new FileWriter(file, true));
+			writeCSV(out, withHeader, DEFAULT_SEPARATOR);
+			out.close();
+			headerWritten = true;
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+			log.error("Error saving " + file.getPath() + " " + ioe.getMessage());
+		}
+	}
+
+	/**
+	 * @return The collection filter, null if not set.
+	 */
+	public ICollectionFilter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * @param filter The filter restricting the agents considered, null to consider them all.
+	 */
+	public void setFilter(ICollectionFilter filter) {
+		this.filter = filter;
+	}
+
+	/** Return the current status of the time checker. A time checker avoid the object to update
+	 * more than one time per simulation step. The default value is enabled (true).
+	 * @return True if the computer is currently checking time before update cached data, false if disabled.
+	 */
+	public boolean isCheckingTime() {
+		return timeChecker.isEnabled();
+	}
+
+	/** Set the current status of the time checker. A time checker avoid the object to update
+	 * more than one time per simulation step. The default value is enabled (true).
+	 * @param b True if the computer is currently checking time before update cached data, false if disabled.
+	 */
+	public void setCheckingTime(boolean b) {
+		timeChecker.setEnabled(b);
+	}
+
+	/**
+	 * A key grouping the objects by the value of an enum variable. The enum constant is read either from
+	 * objects implementing <i>IObjectSource</i> or by reflection, from a field or a method.
+	 * Objects returning null are ignored.
+	 */
+	public static class EnumKey<E extends Enum<E>> implements IGroupKey {
+		protected final Class<E> enumType;
+		protected final E[] constants;
+		protected final String name;
+		protected Enum<?> variableID;
+		protected Field field;
+		protected Method method;
+
+		/** Create a key reading the enum value from objects implementing IObjectSource.
+		 *  @param enumType The enum class.
+		 *  @param variableID The variable identifier passed to <i>getObjectValue()</i>. */
+		public EnumKey(Class<E> enumType, Enum<?> variableID) {
+			this.enumType = enumType;
+			this.constants = enumType.getEnumConstants();
+			this.name = variableID.name();
+			this.variableID = variableID;
+		}
+
+		/** Create a key reading the enum value by reflection.
+		 *  @param enumType The enum class.
+		 *  @param objectClass The class of the grouped objects.
+		 *  @param valueName The name of the field or the method returning the enum value.
+		 *  @param getFromMethod Specifies if valueName is a method or a property value. */
+		public EnumKey(Class<E> enumType, Class<?> objectClass, String valueName, boolean getFromMethod) {
+			this.enumType = enumType;
+			this.constants = enumType.getEnumConstants();
+			this.name = valueName;
+			if (getFromMethod)
+				method = ReflectionUtils.searchMethod(objectClass, valueName);
+			else
+				field = ReflectionUtils.searchField(objectClass, valueName);
+			if (method == null && field == null)
+				throw new IllegalArgumentException("EnumKey: " + valueName + " of class " + objectClass + " does not exist.");
+		}
+
+		public int getGroupCount() {
+			return constants.length;
+		}
+
+		public int getArity() {
+			return 1;
+		}
+
+		public int getGroup(Object object) {
+			Object value;
+			if (variableID != null)
+				value = ((IObjectSource) object).getObjectValue(variableID);
+			else
+				try {
+					value = (method != null ? method.invoke(object) : field.get(object));
+				} catch (IllegalAccessException | InvocationTargetException e) {
+					throw new IllegalStateException("EnumKey: cannot read " + name + " of object " + object, e);
+				}
+			return (value == null ? -1 : ordinal(value));
+		}
+
+		public int getGroupIndex(Object... keyValues) {
+			if (keyValues.length != 1 || !(keyValues[0] instanceof Enum<?>))
+				return -1;
+			return ordinal(keyValues[0]);
+		}
+
+		/** @throws IllegalArgumentException If the value is not a constant of the enum type of the key. */
+		private int ordinal(Object value) {
+			if (!(value instanceof Enum<?>) || ((Enum<?>) value).getDeclaringClass() != enumType)
+				throw new IllegalArgumentException("EnumKey: " + value + " of " + name + " is not a constant of " + enumType.getName() + ".");
+			return ((Enum<?>) value).ordinal();
+		}
+
+		public String[] getGroupLabels(int group) {
+			return new String[] { constants[group].name() };
+		}
+
+		public String[] getComponentNames() {
+			return new String[] { name };
+		}
+	}
+
+	/**
+	 * A key grouping the objects by bands of an integer variable, e.g. age bands. The band of a value v is
+	 * (v - lowerBound) / bandWidth; values outside the range of bands are ignored. The integer is read
+	 * either from objects implementing <i>IIntSource</i> or by reflection.
+	 */
+	public static class IntKey implements IGroupKey {
+		protected final int lowerBound;
+		protected final int bandWidth;
+		protected final int bands;
+		protected final String name;
+		protected Enum<?> variableID;
+		protected IntegerInvoker invoker;
+
+		/** Create a key reading the value from objects implementing IIntSource.
+		 *  @param variableID The variable identifier passed to <i>getIntValue()</i>.
+		 *  @param lowerBound The lowest value of the first band.
+		 *  @param bandWidth The width of each band.
+		 *  @param bands The number of bands. */
+		public IntKey(Enum<?> variableID, int lowerBound, int bandWidth, int bands) {
+			this(variableID.name(), lowerBound, bandWidth, bands);
+			this.variableID = variableID;
+		}
+
+		/** Create a key reading the value by reflection.
+		 *  @param objectClass The class of the grouped objects.
+		 *  @param valueName The name of the field or the method returning the int value.
+		 *  @param getFromMethod Specifies if valueName is a method or a property value.
+		 *  @param lowerBound The lowest value of the first band.
+		 *  @param bandWidth The width of each band.
+		 *  @param bands The number of bands. */
+		public IntKey(Class<?> objectClass, String valueName, boolean getFromMethod, int lowerBound, int bandWidth, int bands) {
+			this(valueName, lowerBound, bandWidth, bands);
+			this.invoker = new IntegerInvoker(objectClass, valueName, getFromMethod);
+		}
+
+		private IntKey(String name, int lowerBound, int bandWidth, int bands) {
+			if (bandWidth <= 0 || bands <= 0)
+				throw new IllegalArgumentException("IntKey: band width and number of bands must be positive.");
+			this.name = name;
+			this.lowerBound = lowerBound;
+			this.bandWidth = bandWidth;
+			this.bands = bands;
+		}
+
+		public int getGroupCount() {
+			return bands;
+		}
+
+		public int getArity() {
+			return 1;
+		}
+
+		public int getGroup(Object object) {
+			int value = (invoker != null ? invoker.getInt(object) : ((IIntSource) object).getIntValue(variableID));
+			return band(value);
+		}
+
+		private int band(int value) {
+			if (value < lowerBound)
+				return -1;
+			int band = (value - lowerBound) / bandWidth;
+			return (band < bands ? band : -1);
+		}
+
+		public int getGroupIndex(Object... keyValues) {
+			if (keyValues.length != 1 || !(keyValues[0] instanceof Number))
+				return -1;
+			return band(((Number) keyValues[0]).intValue());
+		}
+
+		public String[] getGroupLabels(int group) {
+			int from = lowerBound + group * bandWidth;
+			if (bandWidth == 1)
+				return new String[] { Integer.toString(from) };
+			return new String[] { from + "-" + (from + bandWidth - 1) };
+		}
+
+		public String[] getComponentNames() {
+			return new String[] { name };
+		}
+	}
+
+	/**
+	 * The cartesian product of several keys, e.g. region x sex x age band. Groups are numbered in
+	 * row-major order, the last component varying fastest. An object is ignored if any component ignores it.
+	 */
+	public static class CompositeKey implements IGroupKey {
+		protected final IGroupKey[] components;
+		protected final int[] strides;
+		protected final int groups;
+		protected final int arity;
+
+		/** Create the product of the given keys.
+		 *  @param components The component keys, in order. */
+		public CompositeKey(IGroupKey... components) {
+			this.components = components.clone();
+			strides = new int[components.length];
+			long size = 1;
+			int a = 0;
+			for (int i = components.length - 1; i >= 0; i--) {
+				strides[i] = (int) size;
+				size *= components[i].getGroupCount();
+				a += components[i].getArity();
+			}
+			if (size > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("CompositeKey: too many groups (" + size + ")");
+			groups = (int) size;
+			arity = a;
+		}
+
+		public int getGroupCount() {
+			return groups;
+		}
+
+		public int getArity() {
+			return arity;
+		}
+
+		public int getGroup(Object object) {
+			int group = 0;
+			for (int i = 0; i < components.length; i++) {
+				int g = components[i].getGroup(object);
+				if (g < 0)
+					return -1;
+				group += g * strides[i];
+			}
+			return group;
+		}
+
+		public int getGroupIndex(Object... keyValues) {
+			if (keyValues.length != arity)
+				return -1;
+			int group = 0, offset = 0;
+			for (int i = 0; i < components.length; i++) {
+				int componentArity = components[i].getArity();
+				int g = components[i].getGroupIndex(Arrays.copyOfRange(keyValues, offset, offset + componentArity));
+				if (g < 0)
+					return -1;
+				group += g * strides[i];
+				offset += componentArity;
+			}
+			return group;
+		}
+
+		public String[] getGroupLabels(int group) {
+			String[] labels = new String[arity];
+			int offset = 0;
+			for (int i = 0; i < components.length; i++) {
+				String[] componentLabels = components[i].getGroupLabels((group / strides[i]) % components[i].getGroupCount());
+				System.arraycopy(componentLabels, 0, labels, offset, componentLabels.length);
+				offset += componentLabels.length;
+			}
+			return labels;
+		}
+
+		public String[] getComponentNames() {
+			String[] names = new String[arity];
+			int offset = 0;
+			for (IGroupKey component : components) {
+				String[] componentNames = component.getComponentNames();
+				System.arraycopy(componentNames, 0, names, offset, componentNames.length);
+				offset += componentNames.length;
+			}
+			return names;
+		}
+	}
+
+}
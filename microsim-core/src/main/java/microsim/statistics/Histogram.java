@@ -0,0 +1,353 @@
+package microsim.statistics;
+
+import java.util.Arrays;
+
+import cern.colt.GenericSorting;
+import cern.colt.Swapper;
+import cern.colt.function.IntComparator;
+
+/**
+ * A frequency distribution of values over a fixed set of bins, with (weighted) counts stored in a
+ * primitive array.<br>
+ * The bins are defined by <i>k + 1</i> strictly increasing edges: bin <i>i</i> covers the interval
+ * <i>[edges[i], edges[i+1])</i>, except the last one which is closed on both sides. Values below the
+ * first edge or above the last one are counted as underflow and overflow, NaN values are ignored.
+ * Equally spaced bins are located arithmetically, while arbitrary edges (e.g. the quantile based ones
+ * returned by <i>quantileEdges()</i>) are located by binary search.<br>
+ * Two histograms with the same edges can be merged, so that the distributions computed on different
+ * partitions of a population or on different simulation runs can be combined.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class Histogram {
+
+	private final double[] edges;
+	private final double[] counts;
+	private final boolean uniform;
+	private final double lower, upper, binsPerUnit;
+
+	private double underflow = 0.;
+	private double overflow = 0.;
+	private double total = 0.;
+
+	/** Create a histogram of equally spaced bins.
+	 * @param min The lower edge of the first bin.
+	 * @param max The upper edge of the last bin.
+	 * @param bins The number of bins.
+	 */
+	public Histogram(double min, double max, int bins) {
+		if (bins < 1)
+			throw new IllegalArgumentException("The number of bins must be positive, got " + bins);
+		if (!(max > min))
+			throw new IllegalArgumentException("The upper edge must be greater than the lower one: [" + min + ", " + max + "]");
+		edges = new double[bins + 1];
+		for (int i = 0; i <= bins; i++)
+			edges[i] = min + (max - min) * i / bins;
+		edges[bins] = max;
+		counts = new double[bins];
+		uniform = true;
+		lower = min;
+		upper = max;
+		binsPerUnit = bins / (max - min);
+	}
+
+	/** Create a histogram with the given bin edges.
+	 * @param edges The strictly increasing bin edges, at least two.
+	 */
+	public Histogram(double[] edges) {
+		if (edges.length < 2)
+			throw new IllegalArgumentException("At least two edges are needed to define a bin.");
+		for (int i = 1; i < edges.length; i++)
+			if (!(edges[i] > edges[i - 1]))
+				throw new IllegalArgumentException("The bin edges must be strictly increasing: " + Arrays.toString(edges));
+		this.edges = edges.clone();
+		counts = new double[edges.length - 1];
+		uniform = false;
+		lower = edges[0];
+		upper = edges[edges.length - 1];
+		binsPerUnit = 0.;
+	}
+
+	/**
+	 * Compute bin edges such that each bin holds (approximately) the same share of the given values.
+	 * Repeated quantiles are merged, so fewer bins than requested are returned when the values have
+	 * many ties.
+	 * @param data The values.
+	 * @param weights The weights of the values, or null to count each value once.
+	 * @param bins The requested number of bins.
+	 * @return The strictly increasing bin edges, from the minimum to the maximum of the values.
+	 * @throws IllegalArgumentException If there are not at least two distinct values with positive weight.
+	 */
+	public static double[] quantileEdges(double[] data, double[] weights, int bins) {
+		if (bins < 1)
+			throw new IllegalArgumentException("The number of bins must be positive, got " + bins);
+		int n = 0;
+		final double[] values = new double[data.length];
+		final double[] w = new double[data.length];
+		double totalWeight = 0.;
+		for (int i = 0; i < data.length; i++) {
+			double wi = (weights == null ? 1. : weights[i]);
+			if (wi > 0. && !Double.isNaN(data[i])) {
+				values[n] = data[i];
+				w[n++] = wi;
+				totalWeight += wi;
+			}
+		}
+		GenericSorting.quickSort(0, n, new IntComparator() {
+			public int compare(int a, int b) {
+				return Double.compare(values[a], values[b]);
+			}
+		}, new Swapper() {
+			public void swap(int a, int b) {
+				double t = values[a]; values[a] = values[b]; values[b] = t;
+				t = w[a]; w[a] = w[b]; w[b] = t;
+			}
+		});
+		if (n == 0 || !(values[n - 1] > values[0]))
+			throw new IllegalArgumentException("Quantile bins need at least two distinct values.");
+
+		double[] result = new double[bins + 1];
+		int size = 0;
+		result[size++] = values[0];
+		double cumulated = 0.;
+		int j = 0;
+		for (int b = 1; b < bins; b++) {
+			double target = totalWeight * b / bins;
+			while (j < n && cumulated + w[j] < target)
+				cumulated += w[j++];
+			double edge = values[Math.min(j, n - 1)];
+			if (edge > result[size - 1] && edge < values[n - 1])
+				result[size++] = edge;
+		}
+		result[size++] = values[n - 1];
+		return Arrays.copyOf(result, size);
+	}
+
+	/** Return the bin the given value falls in.
+	 * @param x The value.
+	 * @return The bin index, -1 for underflow or NaN, <i>getBinCount()</i> for overflow.
+	 */
+	public int getBin(double x) {
+		if (!(x >= lower))
+			return -1;
+		if (x > upper)
+			return counts.length;
+		int bin;
+		if (uniform) {
+			bin = (int) ((x - lower) * binsPerUnit);
+			// Correct the rounding of the arithmetic location against the stored edges
+			if (bin >= counts.length)
+				bin = counts.length - 1;
+			else if (x < edges[bin])
+				bin--;
+			else if (bin + 1 < counts.length && x >= edges[bin + 1])
+				bin++;
+		} else {
+			int lo = 0, hi = counts.length - 1;
+			while (lo < hi) {
+				int mid = (lo + hi + 1) >>> 1;
+				if (edges[mid] <= x)
+					lo = mid;
+				else
+					hi = mid - 1;
+			}
+			bin = lo;
+		}
+		return bin;
+	}
+
+	/** Count a value once.
+	 * @param x The value.
+	 */
+	public void add(double x) {
+		add(x, 1.);
+	}
+
+	/** Count a value with the given weight.
+	 * @param x The value.
+	 * @param weight The weight of the value.
+	 */
+	public void add(double x, double weight) {
+		if (Double.isNaN(x))
+			return;
+		int bin = getBin(x);
+		if (bin < 0)
+			underflow += weight;
+		else if (bin == counts.length)
+			overflow += weight;
+		else
+			counts[bin] += weight;
+		total += weight;
+	}
+
+	public void addAll(double[] data) {
+		for (int i = 0; i < data.length; i++)
+			add(data[i], 1.);
+	}
+
+	public void addAll(float[] data) {
+		for (int i = 0; i < data.length; i++)
+			add(data[i], 1.);
+	}
+
+	public void addAll(int[] data) {
+		for (int i = 0; i < data.length; i++)
+			add(data[i], 1.);
+	}
+
+	public void addAll(long[] data) {
+		for (int i = 0; i < data.length; i++)
+			add(data[i], 1.);
+	}
+
+	public void addAll(double[] data, double[] weights) {
+		for (int i = 0; i < data.length; i++)
+			add(data[i], weights[i]);
+	}
+
+	public void addAll(float[] data, double[] weights) {
+		for (int i = 0; i < data.length; i++)
+			add(data[i], weights[i]);
+	}
+
+	public void addAll(int[] data, double[] weights) {
+		for (int i = 0; i < data.length; i++)
+			add(data[i], weights[i]);
+	}
+
+	public void addAll(long[] data, double[] weights) {
+		for (int i = 0; i < data.length; i++)
+			add(data[i], weights[i]);
+	}
+
+	/** Add the counts of another histogram to this one. The other histogram is not modified.
+	 * @param other A histogram with the same bin edges.
+	 * @throws IllegalArgumentException If the bin edges differ.
+	 */
+	public void merge(Histogram other) {
+		if (!Arrays.equals(edges, other.edges))
+			throw new IllegalArgumentException("Histograms with different bin edges cannot be merged.");
+		for (int i = 0; i < counts.length; i++)
+			counts[i] += other.counts[i];
+		underflow += other.underflow;
+		overflow += other.overflow;
+		total += other.total;
+	}
+
+	/** Set all the counts to zero, keeping the bins. */
+	public void reset() {
+		Arrays.fill(counts, 0.);
+		underflow = overflow = total = 0.;
+	}
+
+	/** @return The number of bins. */
+	public int getBinCount() {
+		return counts.length;
+	}
+
+	/** @return A copy of the bin edges. */
+	public double[] getEdges() {
+		return edges.clone();
+	}
+
+	/** @param bin The bin index.
+	 * @return The lower edge of the bin. */
+	public double getLowerEdge(int bin) {
+		return edges[bin];
+	}
+
+	/** @param bin The bin index.
+	 * @return The upper edge of the bin. */
+	public double getUpperEdge(int bin) {
+		return edges[bin + 1];
+	}
+
+	/** @param bin The bin index.
+	 * @return The (weighted) count of the values in the bin. */
+	public double getCount(int bin) {
+		return counts[bin];
+	}
+
+	/** @return A copy of the (weighted) counts of all the bins. */
+	public double[] getCounts() {
+		return counts.clone();
+	}
+
+	/** @param bin The bin index.
+	 * @return The share of the counted values falling in the bin, or 0 if nothing has been counted. */
+	public double getFrequency(int bin) {
+		return (total > 0. ? counts[bin] / total : 0.);
+	}
+
+	/** @param bin The bin index.
+	 * @return The frequency of the bin divided by its width. */
+	public double getDensity(int bin) {
+		return getFrequency(bin) / (edges[bin + 1] - edges[bin]);
+	}
+
+	/** @return The (weighted) count of the values below the first edge. */
+	public double getUnderflow() {
+		return underflow;
+	}
+
+	/** @return The (weighted) count of the values above the last edge. */
+	public double getOverflow() {
+		return overflow;
+	}
+
+	/** @return The (weighted) count of all the values, underflow and overflow included. */
+	public double getTotal() {
+		return total;
+	}
+
+	/** @param bin The bin index.
+	 * @return A label describing the interval of the bin, such as "[0.0,10.0)". */
+	public String getBinLabel(int bin) {
+		return "[" + edges[bin] + "," + edges[bin + 1] + (bin == counts.length - 1 ? "]" : ")");
+	}
+
+	/**
+	 * A source exposing the count (or the frequency) of one bin of a histogram, so that the bins
+	 * can be collected by a <i>TimeSeries</i>. If an owner is given, it is updated before the value is read.
+	 */
+	public static class BinSource implements IDoubleSource, IUpdatableSource {
+		private final Histogram histogram;
+		private final int bin;
+		private final boolean frequency;
+		private final IUpdatableSource owner;
+
+		/** Create a source on a bin.
+		 * @param histogram The histogram.
+		 * @param bin The bin index.
+		 * @param frequency If true the frequency of the bin is returned, otherwise its count.
+		 * @param owner The object filling the histogram, updated before reading, or null.
+		 */
+		public BinSource(Histogram histogram, int bin, boolean frequency, IUpdatableSource owner) {
+			if (bin < 0 || bin >= histogram.getBinCount())
+				throw new IndexOutOfBoundsException(bin + " is not a valid bin index");
+			this.histogram = histogram;
+			this.bin = bin;
+			this.frequency = frequency;
+			this.owner = owner;
+		}
+
+		public void updateSource() {
+			if (owner != null)
+				owner.updateSource();
+		}
+
+		public double getDoubleValue(Enum<?> valueID) {
+			return (frequency ? histogram.getFrequency(bin) : histogram.getCount(bin));
+		}
+	}
+
+}
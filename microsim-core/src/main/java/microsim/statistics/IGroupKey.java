@@ -0,0 +1,61 @@
+package microsim.statistics;
+
+/**
+ * A group key maps each element of a collection into one of a fixed number of groups,
+ * identified by a dense index between 0 and <i>getGroupCount() - 1</i>. It is used by the
+ * <i>GroupedCrossSection</i> to compute per-group statistics in a single traversal of the collection.<br>
+ * A key is made of one or more components (its arity): a key on the sex of the agents has arity 1,
+ * while a composite key such as region x sex x age band has arity 3.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public interface IGroupKey {
+
+	/**
+	 * Return the number of groups defined by the key.
+	 * @return The number of groups.
+	 */
+	public int getGroupCount();
+
+	/**
+	 * Return the number of components of the key.
+	 * @return The arity of the key.
+	 */
+	public int getArity();
+
+	/**
+	 * Return the group the given object belongs to.
+	 * @param object An element of the collection.
+	 * @return The group index, or -1 if the object does not belong to any group and must be ignored.
+	 */
+	public int getGroup(Object object);
+
+	/**
+	 * Return the group identified by the given key values.
+	 * @param keyValues One value per component of the key, such as enum constants or integers.
+	 * @return The group index, or -1 if the values do not identify a group.
+	 */
+	public int getGroupIndex(Object... keyValues);
+
+	/**
+	 * Return the labels of the key components for the given group.
+	 * @param group The group index.
+	 * @return An array of <i>getArity()</i> labels.
+	 */
+	public String[] getGroupLabels(int group);
+
+	/**
+	 * Return the names of the key components, used as column headers.
+	 * @return An array of <i>getArity()</i> names.
+	 */
+	public String[] getComponentNames();
+}
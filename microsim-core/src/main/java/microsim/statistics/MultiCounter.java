@@ -0,0 +1,354 @@
+package microsim.statistics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import microsim.event.CommonEventType;
+import microsim.event.EventListener;
+import microsim.exception.SimulationRuntimeException;
+import microsim.statistics.reflectors.DoubleInvoker;
+
+import org.apache.commons.collections4.Predicate;
+
+/**
+ * A collector of many counts and conditional sums over a population, all computed in a single
+ * traversal.<br>
+ * Each term is identified by a name, and is defined by a predicate selecting the agents (null to
+ * select all of them) and optionally by the value to be summed over the selected agents. Terms
+ * sharing the same predicate object evaluate it only once per agent. At each update the population
+ * is visited once, and for each term the number of selected agents and the sum of their values are
+ * computed, so that counts, sums and means are available together.<br>
+ * In parallel mode the population is split into chunks of a fixed size, which are processed by the
+ * common fork-join pool and whose partial results are merged in chunk order, so the results do not
+ * depend on the number of threads. The predicates and the value extractors must then be safe to
+ * call from several threads, which is the case when they only read the agents.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class MultiCounter<T> implements EventListener, IUpdatableSource {
+
+	/** The default number of agents processed by each parallel task. */
+	public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+	/** Extract the value of an agent to be summed. */
+	public interface ValueExtractor<T> {
+		double getValue(T agent);
+	}
+
+	private final Collection<T> population;
+	private final TimeChecker timeChecker = new TimeChecker();
+
+	private final List<String> names = new ArrayList<String>();
+	private final List<Predicate<? super T>> predicates = new ArrayList<Predicate<? super T>>();
+	private final List<ValueExtractor<? super T>> extractors = new ArrayList<ValueExtractor<? super T>>();
+	/** The index in predicates of the predicate of each term, -1 if the term selects all the agents. */
+	private int[] termPredicate = new int[0];
+
+	private boolean parallel = false;
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	private boolean stale = true;
+	private long[] counts = new long[0];
+	private double[] sums = new double[0];
+
+	/** Create a counter on a population.
+	 * @param population The collection of agents.
+	 */
+	public MultiCounter(Collection<T> population) {
+		this.population = population;
+	}
+
+	/** Add a term counting the agents selected by a predicate.
+	 * @param name The unique name of the term.
+	 * @param predicate The predicate, or null to count all the agents.
+	 * @return The index of the term.
+	 */
+	public int addCount(String name, Predicate<? super T> predicate) {
+		return addTerm(name, predicate, null);
+	}
+
+	/** Add a term summing a value over the agents selected by a predicate.
+	 * @param name The unique name of the term.
+	 * @param predicate The predicate, or null to sum over all the agents.
+	 * @param extractor The extractor of the value.
+	 * @return The index of the term.
+	 */
+	public int addSum(String name, Predicate<? super T> predicate, ValueExtractor<? super T> extractor) {
+		if (extractor == null)
+			throw new IllegalArgumentException("The value extractor of term " + name + " is null.");
+		return addTerm(name, predicate, extractor);
+	}
+
+	/** Add a term summing a field or a method of the agents selected by a predicate.
+	 * @param name The unique name of the term.
+	 * @param predicate The predicate, or null to sum over all the agents.
+	 * @param objectClass The class of the agents.
+	 * @param valueName The name of the field or the method returning the value.
+	 * @param getFromMethod Specifies if valueName is a method or a property value.
+	 * @return The index of the term.
+	 */
+	public int addSum(String name, Predicate<? super T> predicate, Class<?> objectClass, String valueName, boolean getFromMethod) {
+		final DoubleInvoker invoker = new DoubleInvoker(objectClass, valueName, getFromMethod);
+		return addTerm(name, predicate, new ValueExtractor<T>() {
+			public double getValue(T agent) {
+				return invoker.getDouble(agent);
+			}
+		});
+	}
+
+	/** Add a term summing a value of the agents selected by a predicate, the agents being <i>IDoubleSource</i> objects.
+	 * @param name The unique name of the term.
+	 * @param predicate The predicate, or null to sum over all the agents.
+	 * @param valueID The value identifier defined by the agents.
+	 * @return The index of the term.
+	 */
+	public int addSum(String name, Predicate<? super T> predicate, final Enum<?> valueID) {
+		return addTerm(name, predicate, new ValueExtractor<T>() {
+			public double getValue(T agent) {
+				return ((IDoubleSource) agent).getDoubleValue(valueID);
+			}
+		});
+	}
+
+	private int addTerm(String name, Predicate<? super T> predicate, ValueExtractor<? super T> extractor) {
+		if (names.contains(name))
+			throw new IllegalArgumentException("A term named " + name + " is already defined.");
+		int p = -1;
+		if (predicate != null) {
+			for (int i = 0; i < predicates.size() && p < 0; i++)
+				if (predicates.get(i) == predicate)
+					p = i;
+			if (p < 0) {
+				predicates.add(predicate);
+				p = predicates.size() - 1;
+			}
+		}
+		names.add(name);
+		extractors.add(extractor);
+		int terms = names.size();
+		int[] tp = new int[terms];
+		System.arraycopy(termPredicate, 0, tp, 0, terms - 1);
+		tp[terms - 1] = p;
+		termPredicate = tp;
+		counts = new long[terms];
+		sums = new double[terms];
+		stale = true;
+		return terms - 1;
+	}
+
+	/** Set whether the population is processed in parallel chunks.
+	 * @param parallel True to use the common fork-join pool.
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	/** Set the number of agents processed by each parallel task.
+	 * @param chunkSize The chunk size.
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("The chunk size must be positive, got " + chunkSize);
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * ISimEventListener callback function. It supports only jas.engine.Sim.EVENT_UPDATE event.
+	 * @throws UnsupportedOperationException If actionType is not supported.
+	 */
+	public void onEvent(Enum<?> type) {
+		if (type.equals(CommonEventType.Update))
+			updateSource();
+		else
+			throw new UnsupportedOperationException("The MultiCounter object does not support " + type + " operation.");
+	}
+
+	/** Compute all the terms in one traversal of the population, once per simulation time. */
+	public void updateSource() {
+		if (timeChecker.isUpToDate() && !stale)
+			return;
+		stale = false;
+
+		if (!parallel || population.size() <= chunkSize) {
+			Partial partial = new Partial();
+			for (T agent : population)
+				partial.add(agent);
+			counts = partial.counts;
+			sums = partial.sums;
+			return;
+		}
+
+		@SuppressWarnings("unchecked")
+		final T[] agents = (T[]) population.toArray();
+		List<Callable<Partial>> tasks = new ArrayList<Callable<Partial>>();
+		for (int start = 0; start < agents.length; start += chunkSize) {
+			final int from = start;
+			final int to = Math.min(start + chunkSize, agents.length);
+			tasks.add(new Callable<Partial>() {
+				public Partial call() {
+					Partial partial = new Partial();
+					for (int i = from; i < to; i++)
+						partial.add(agents[i]);
+					return partial;
+				}
+			});
+		}
+
+		Partial total = new Partial();
+		try {
+			for (Future<Partial> future : ForkJoinPool.commonPool().invokeAll(tasks))
+				total.merge(future.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SimulationRuntimeException("MultiCounter: the computation has been interrupted.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw new SimulationRuntimeException("MultiCounter: a predicate or an extractor raised the following error:\n" + e.getCause(), e.getCause());
+		}
+		counts = total.counts;
+		sums = total.sums;
+	}
+
+	/** The counts and the sums of a set of agents. */
+	private class Partial {
+		final long[] counts = new long[names.size()];
+		final double[] sums = new double[names.size()];
+		final boolean[] selected = new boolean[predicates.size()];
+
+		void add(T agent) {
+			for (int p = 0; p < selected.length; p++)
+				selected[p] = predicates.get(p).evaluate(agent);
+			for (int t = 0; t < counts.length; t++) {
+				int p = termPredicate[t];
+				if (p >= 0 && !selected[p])
+					continue;
+				counts[t]++;
+				ValueExtractor<? super T> extractor = extractors.get(t);
+				if (extractor != null)
+					sums[t] += extractor.getValue(agent);
+			}
+		}
+
+		void merge(Partial other) {
+			for (int t = 0; t < counts.length; t++) {
+				counts[t] += other.counts[t];
+				sums[t] += other.sums[t];
+			}
+		}
+	}
+
+	private int indexOf(String name) {
+		int index = names.indexOf(name);
+		if (index < 0)
+			throw new IllegalArgumentException("No term named " + name + " is defined.");
+		return index;
+	}
+
+	/** @return The names of the terms, in the order of their indices. */
+	public List<String> getNames() {
+		return new ArrayList<String>(names);
+	}
+
+	/** @param index The index of a term.
+	 * @return The number of agents selected by the term at the last update. */
+	public long getCount(int index) {
+		return counts[index];
+	}
+
+	/** @param name The name of a term.
+	 * @return The number of agents selected by the term at the last update. */
+	public long getCount(String name) {
+		return counts[indexOf(name)];
+	}
+
+	/** @param index The index of a term.
+	 * @return The sum of the values of the selected agents, or 0 for a counting term. */
+	public double getSum(int index) {
+		return sums[index];
+	}
+
+	/** @param name The name of a term.
+	 * @return The sum of the values of the selected agents, or 0 for a counting term. */
+	public double getSum(String name) {
+		return sums[indexOf(name)];
+	}
+
+	/** @param name The name of a term.
+	 * @return The mean of the values of the selected agents, or NaN if no agent is selected. */
+	public double getMean(String name) {
+		int index = indexOf(name);
+		return (counts[index] > 0 ? sums[index] / counts[index] : Double.NaN);
+	}
+
+	/** Return a source exposing a term, updating the counter before the value is read.
+	 * @param name The name of a term.
+	 * @param sum If true the sum of the term is returned, otherwise its count.
+	 * @return The source.
+	 */
+	public IDoubleSource getSource(String name, boolean sum) {
+		return new Term(indexOf(name), sum);
+	}
+
+	/**
+	 * Add all the terms to the given time series: the counts for the counting terms and the sums
+	 * for the summing ones. The series are named <i>name.term</i>.
+	 * @param timeSeries The time series.
+	 * @param name The prefix of the series names.
+	 */
+	public void addToTimeSeries(TimeSeries timeSeries, String name) {
+		for (int t = 0; t < names.size(); t++)
+			timeSeries.addSeries(name + "." + names.get(t), new Term(t, extractors.get(t) != null), IDoubleSource.Variables.Default);
+	}
+
+	/** Return the current status of the time checker. A time checker avoid the object to update
+	 * more than one time per simulation step. The default value is enabled (true).
+	 * @return True if the computer is currently checking time before update cached data, false if disabled.
+	 */
+	public boolean isCheckingTime() {
+		return timeChecker.isEnabled();
+	}
+
+	/** Set the current status of the time checker. A time checker avoid the object to update
+	 * more than one time per simulation step. The default value is enabled (true).
+	 * @param b True if the computer is currently checking time before update cached data, false if disabled.
+	 */
+	public void setCheckingTime(boolean b) {
+		timeChecker.setEnabled(b);
+	}
+
+	private class Term implements IDoubleSource, IUpdatableSource {
+		private final int index;
+		private final boolean sum;
+
+		Term(int index, boolean sum) {
+			this.index = index;
+			this.sum = sum;
+		}
+
+		public void updateSource() {
+			MultiCounter.this.updateSource();
+		}
+
+		public double getDoubleValue(Enum<?> valueID) {
+			return (sum ? sums[index] : counts[index]);
+		}
+	}
+
+}
@@ -0,0 +1,329 @@
+package microsim.statistics;
+
+import cern.colt.GenericSorting;
+import cern.colt.Swapper;
+import cern.colt.function.IntComparator;
+
+/**
+ * A compact, mergeable summary of a (weighted) distribution of double values, which is able to
+ * estimate quantiles without storing all the observations.<br>
+ * The sketch is a merging t-digest: incoming values are buffered and periodically merged into
+ * a bounded set of centroids (mean, weight). Centroids are kept small near the tails of the
+ * distribution and larger around the median, so that extreme quantiles are estimated with
+ * a higher relative accuracy. The memory occupancy depends only on the compression parameter,
+ * not on the number of values added.<br>
+ * Two sketches can be merged, for instance to combine partial results computed on different
+ * partitions of a population or on different simulation runs.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class QuantileSketch {
+
+	/** The default compression, giving an accuracy of roughly 1% around the median and better in the tails. */
+	public static final double DEFAULT_COMPRESSION = 100.;
+
+	private final double compression;
+
+	private double[] means;
+	private double[] weights;
+	private int centroids;
+
+	private double[] bufferValues;
+	private double[] bufferWeights;
+	private int buffered;
+
+	//Reused by compress() to sort the centroids and the buffer together
+	private double[] scratchValues;
+	private double[] scratchWeights;
+
+	private double totalWeight;
+	private long nanCount;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	/** Create a sketch using the default compression. */
+	public QuantileSketch() {
+		this(DEFAULT_COMPRESSION);
+	}
+
+	/** Create a sketch with the given compression.
+	 * @param compression The maximum number of centroids is proportional to this value. Higher values
+	 * 	give more accurate quantiles at the cost of memory. It must be at least 10.
+	 */
+	public QuantileSketch(double compression) {
+		if (compression < 10.)
+			throw new IllegalArgumentException("The compression of a QuantileSketch must be at least 10, got " + compression);
+		this.compression = compression;
+		int size = (int) Math.ceil(compression) * 2 + 10;
+		means = new double[size];
+		weights = new double[size];
+		bufferValues = new double[size * 5];
+		bufferWeights = new double[size * 5];
+	}
+
+	/** Add a value with unit weight.
+	 * @param value The value to be added.
+	 */
+	public void add(double value) {
+		add(value, 1.);
+	}
+
+	/** Add a weighted value. Values with a non-positive weight are ignored. NaN values are not
+	 * rejected, so that the sketch accepts the same data as the exact weighted percentiles (which sort
+	 * them after all the other values): they are skipped, and counted by <i>getNaNCount()</i>.
+	 * @param value The value to be added.
+	 * @param weight The weight of the value.
+	 */
+	public void add(double value, double weight) {
+		if (weight <= 0.)
+			return;
+		if (Double.isNaN(value)) {
+			nanCount++;
+			return;
+		}
+		buffer(value, weight);
+		totalWeight += weight;
+		if (value < min)
+			min = value;
+		if (value > max)
+			max = value;
+	}
+
+	/** Add all the values of the given arrays.
+	 * @param values An array of values.
+	 * @param weights The array of weights, having the same length as values.
+	 */
+	public void addAll(double[] values, double[] weights) {
+		if (values.length != weights.length)
+			throw new IllegalArgumentException("Error: length of data array ( = " + values.length + ") and length of weights array ( = " + weights.length + ") do not match!");
+		for (int i = 0; i < values.length; i++)
+			add(values[i], weights[i]);
+	}
+
+	/** Merge the content of another sketch into this one. The other sketch is not modified: its
+	 * centroids and its buffered values are copied as they are, so it must not be updated by another
+	 * thread during the merge.
+	 * @param other The sketch to be merged.
+	 */
+	public void merge(QuantileSketch other) {
+		if (other == this)
+			throw new IllegalArgumentException("A QuantileSketch cannot be merged into itself");
+		int otherCentroids = other.centroids;
+		int otherBuffered = other.buffered;
+		double[] otherMeans = java.util.Arrays.copyOf(other.means, otherCentroids);
+		double[] otherWeights = java.util.Arrays.copyOf(other.weights, otherCentroids);
+		double[] otherBufferValues = java.util.Arrays.copyOf(other.bufferValues, otherBuffered);
+		double[] otherBufferWeights = java.util.Arrays.copyOf(other.bufferWeights, otherBuffered);
+
+		for (int i = 0; i < otherCentroids; i++)
+			buffer(otherMeans[i], otherWeights[i]);
+		for (int i = 0; i < otherBuffered; i++)
+			buffer(otherBufferValues[i], otherBufferWeights[i]);
+		totalWeight += other.totalWeight;
+		nanCount += other.nanCount;
+		if (other.min < min)
+			min = other.min;
+		if (other.max > max)
+			max = other.max;
+	}
+
+	private void buffer(double value, double weight) {
+		if (buffered == bufferValues.length)
+			compress();
+		bufferValues[buffered] = value;
+		bufferWeights[buffered++] = weight;
+	}
+
+	/** Remove all the values from the sketch. */
+	public void reset() {
+		centroids = 0;
+		buffered = 0;
+		totalWeight = 0.;
+		nanCount = 0;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+	}
+
+	/** Estimate the given quantile of the distribution.
+	 * @param p The probability level, between 0 and 1.
+	 * @return The estimated quantile, or NaN if the sketch is empty.
+	 */
+	public double getQuantile(double p) {
+		if (p < 0. || p > 1.)
+			throw new IllegalArgumentException("The quantile probability must lie in [0, 1], got " + p);
+		compress();
+		if (centroids == 0)
+			return Double.NaN;
+		if (centroids == 1)
+			return means[0];
+
+		double target = p * totalWeight;
+		double firstMid = weights[0] / 2.;
+		if (target < firstMid)
+			return min + (means[0] - min) * (target / firstMid);
+
+		double cumulated = 0.;
+		for (int i = 0; i < centroids - 1; i++) {
+			double leftMid = cumulated + weights[i] / 2.;
+			double rightMid = cumulated + weights[i] + weights[i + 1] / 2.;
+			if (target <= rightMid) {
+				double span = rightMid - leftMid;
+				return means[i] + (means[i + 1] - means[i]) * ((target - leftMid) / span);
+			}
+			cumulated += weights[i];
+		}
+
+		double lastMid = totalWeight - weights[centroids - 1] / 2.;
+		double tail = totalWeight - lastMid;
+		return means[centroids - 1] + (max - means[centroids - 1]) * ((target - lastMid) / tail);
+	}
+
+	/** Estimate the fraction of the total weight lying at or below the given value.
+	 * @param value The value.
+	 * @return The estimated cumulative distribution function, or NaN if the sketch is empty.
+	 */
+	public double getCdf(double value) {
+		compress();
+		if (centroids == 0)
+			return Double.NaN;
+		if (value < min)
+			return 0.;
+		if (value >= max)
+			return 1.;
+
+		double cumulated = 0.;
+		double previousMean = min;
+		double previousMid = 0.;
+		for (int i = 0; i < centroids; i++) {
+			double mid = cumulated + weights[i] / 2.;
+			if (value < means[i]) {
+				double span = means[i] - previousMean;
+				double frac = span > 0. ? (value - previousMean) / span : 1.;
+				return (previousMid + (mid - previousMid) * frac) / totalWeight;
+			}
+			cumulated += weights[i];
+			previousMean = means[i];
+			previousMid = mid;
+		}
+		double span = max - previousMean;
+		double frac = span > 0. ? (value - previousMean) / span : 1.;
+		return (previousMid + (totalWeight - previousMid) * frac) / totalWeight;
+	}
+
+	/** @return The number of NaN values skipped by the sketch, which are not part of the total weight. */
+	public long getNaNCount() {
+		return nanCount;
+	}
+
+	/** @return The total weight of the values added to the sketch. */
+	public double getTotalWeight() {
+		return totalWeight;
+	}
+
+	/** @return The minimum value added to the sketch, or +Infinity if empty. */
+	public double getMin() {
+		return min;
+	}
+
+	/** @return The maximum value added to the sketch, or -Infinity if empty. */
+	public double getMax() {
+		return max;
+	}
+
+	/** @return The compression parameter of the sketch. */
+	public double getCompression() {
+		return compression;
+	}
+
+	/** @return The current number of centroids, after merging any buffered value. */
+	public int getCentroidCount() {
+		compress();
+		return centroids;
+	}
+
+	/**
+	 * Merge the buffered values into the centroids. The buffer and the centroids are sorted
+	 * together and then swept once, growing each centroid until the k1 scale function
+	 * bound is reached.
+	 */
+	private void compress() {
+		if (buffered == 0)
+			return;
+
+		int n = centroids + buffered;
+		if (scratchValues == null || scratchValues.length < n) {
+			scratchValues = new double[Math.max(n, bufferValues.length + means.length)];
+			scratchWeights = new double[scratchValues.length];
+		}
+		final double[] v = scratchValues;
+		final double[] w = scratchWeights;
+		System.arraycopy(means, 0, v, 0, centroids);
+		System.arraycopy(weights, 0, w, 0, centroids);
+		System.arraycopy(bufferValues, 0, v, centroids, buffered);
+		System.arraycopy(bufferWeights, 0, w, centroids, buffered);
+		buffered = 0;
+
+		GenericSorting.quickSort(0, n, new IntComparator() {
+			public int compare(int a, int b) {
+				return Double.compare(v[a], v[b]);
+			}
+		}, new Swapper() {
+			public void swap(int a, int b) {
+				double t = v[a]; v[a] = v[b]; v[b] = t;
+				t = w[a]; w[a] = w[b]; w[b] = t;
+			}
+		});
+
+		double total = 0.;
+		for (int i = 0; i < n; i++)
+			total += w[i];
+
+		int out = 0;
+		double currentMean = v[0];
+		double currentWeight = w[0];
+		double weightSoFar = 0.;
+		double limit = total * qLimit(0.);
+		for (int i = 1; i < n; i++) {
+			double proposed = currentWeight + w[i];
+			if (weightSoFar + proposed <= limit) {
+				currentWeight = proposed;
+				currentMean += (v[i] - currentMean) * w[i] / currentWeight;
+			} else {
+				out = emit(out, currentMean, currentWeight);
+				weightSoFar += currentWeight;
+				limit = total * qLimit(weightSoFar / total);
+				currentMean = v[i];
+				currentWeight = w[i];
+			}
+		}
+		centroids = emit(out, currentMean, currentWeight);
+	}
+
+	private int emit(int index, double mean, double weight) {
+		if (index == means.length) {
+			means = cern.colt.Arrays.ensureCapacity(means, index * 2);
+			weights = cern.colt.Arrays.ensureCapacity(weights, index * 2);
+		}
+		means[index] = mean;
+		weights[index] = weight;
+		return index + 1;
+	}
+
+	/** The right quantile bound of a centroid starting at q, according to the k1 scale function. */
+	private double qLimit(double q) {
+		double k = compression / (2. * Math.PI) * Math.asin(2. * q - 1.) + 1.;
+		if (k >= compression / 4.)
+			return 1.;
+		return (Math.sin(2. * Math.PI * k / compression) + 1.) / 2.;
+	}
+
+}
@@ -0,0 +1,335 @@
+package microsim.statistics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import microsim.engine.MultiRunListener;
+import microsim.engine.SimulationEngine;
+import microsim.statistics.functions.MultiTraceFunction;
+import microsim.statistics.functions.OnlineMoments;
+
+import org.apache.commons.math3.distribution.TDistribution;
+import org.apache.log4j.Logger;
+
+/**
+ * An in-memory aggregator of the results of the replications of a <i>MultiRun</i> experiment.<br>
+ * The aggregator is attached to the experiment as a <i>MultiRunListener</i>. During each run the model
+ * registers the <i>TimeSeries</i> and <i>MultiTraceFunction</i> objects to be aggregated, and optionally
+ * the key of its parameter configuration. When the run completes, every value is merged into a
+ * <i>OnlineMoments</i> accumulator and a <i>QuantileSketch</i>, one per configuration, variable and time,
+ * so that nothing of the run needs to be kept. For each time series, a value is aggregated for each
+ * series and each row; for each multi trace function, its statistics at the end of the run are aggregated
+ * as variables named <i>name.Statistic</i>, and the moments of the traced values are also pooled across
+ * the runs.<br>
+ * The summary reports, by configuration, variable and time, the number of runs, the mean and the variance
+ * across runs, the confidence interval of the mean (Student's t) and a set of quantiles. If an output file
+ * is set, it is rewritten after each run, so that a partial summary is available while the experiment runs.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class ReplicationAggregator implements MultiRunListener {
+	private static Logger log = Logger.getLogger(ReplicationAggregator.class);
+
+	/** The character used to separate data in the output file. */
+	public static final char DEFAULT_SEPARATOR = ',';
+
+	private final double confidenceLevel;
+	private final double[] quantiles;
+	private final double compression;
+
+	private final Map<String, Map<String, TreeMap<Double, Cell>>> results =
+			new LinkedHashMap<String, Map<String, TreeMap<Double, Cell>>>();
+	private final Map<String, Map<String, OnlineMoments>> pooled = new LinkedHashMap<String, Map<String, OnlineMoments>>();
+	private final Map<String, Integer> runCounts = new LinkedHashMap<String, Integer>();
+
+	private final Map<String, TimeSeries> runTimeSeries = new LinkedHashMap<String, TimeSeries>();
+	private final Map<String, MultiTraceFunction> runFunctions = new LinkedHashMap<String, MultiTraceFunction>();
+	private String runConfiguration = null;
+
+	private String path = null;
+	private String fileName = null;
+
+	/** Create an aggregator reporting the 95% confidence interval of the mean and the 5th, 50th and 95th percentiles. */
+	public ReplicationAggregator() {
+		this(0.95, new double[] { 0.05, 0.5, 0.95 }, QuantileSketch.DEFAULT_COMPRESSION);
+	}
+
+	/** Create an aggregator.
+	 * @param confidenceLevel The confidence level of the interval of the mean, in (0, 1).
+	 * @param quantiles The probabilities of the reported quantiles.
+	 * @param compression The compression of the quantile sketches.
+	 */
+	public ReplicationAggregator(double confidenceLevel, double[] quantiles, double compression) {
+		if (!(confidenceLevel > 0. && confidenceLevel < 1.))
+			throw new IllegalArgumentException("The confidence level must lie in (0, 1), got " + confidenceLevel);
+		for (double p : quantiles)
+			if (p < 0. || p > 1.)
+				throw new IllegalArgumentException("The quantile probability must lie in [0, 1], got " + p);
+		this.confidenceLevel = confidenceLevel;
+		this.quantiles = quantiles.clone();
+		this.compression = compression;
+	}
+
+	/** Set the file the summary is written to after each run.
+	 * @param path The optional path string, ignored if null or empty.
+	 * @param fileName The name of the output file, or null to disable the automatic output.
+	 */
+	public void setOutputFile(String path, String fileName) {
+		this.path = path;
+		this.fileName = fileName;
+	}
+
+	/** Register a time series of the current run. It must be called again at each run.
+	 * @param name The name of the time series, used as prefix of the variable names.
+	 * @param timeSeries The time series, which must retain its history.
+	 */
+	public synchronized void addTimeSeries(String name, TimeSeries timeSeries) {
+		runTimeSeries.put(name, timeSeries);
+	}
+
+	/** Register a multi trace function of the current run. It must be called again at each run.
+	 * @param name The name of the function, used as prefix of the variable names.
+	 * @param function The function.
+	 */
+	public synchronized void addFunction(String name, MultiTraceFunction function) {
+		runFunctions.put(name, function);
+	}
+
+	/** Set the key of the parameter configuration of the current run. The runs sharing the same key are
+	 * aggregated together. If not set, the multi run identifier of the engine is used.
+	 * @param configuration The configuration key.
+	 */
+	public synchronized void setConfiguration(String configuration) {
+		runConfiguration = configuration;
+	}
+
+	public void beforeSimulationStart(SimulationEngine engine) {
+	}
+
+	/** Merge the registered objects of the completed run, and write the summary if an output file is set. */
+	public synchronized void afterSimulationCompleted(SimulationEngine engine) {
+		String configuration = (runConfiguration != null ? runConfiguration : engine.getMultiRunId());
+		if (configuration == null)
+			configuration = "";
+
+		for (Map.Entry<String, TimeSeries> entry : runTimeSeries.entrySet()) {
+			TimeSeries ts = entry.getValue();
+			int rows = ts.getRowCount();
+			for (int j = 0; j < ts.getSeriesCount(); j++) {
+				Series s = ts.getSeries(j);
+				String variable = entry.getKey() + "." + ts.getSeriesName(j);
+				for (int i = 0; i < rows && i < s.size(); i++) {
+					add(configuration, variable, ts.getTime(i), s.getDouble(i));
+				}
+			}
+		}
+
+		double time = engine.getEventQueue().getTime();
+		for (Map.Entry<String, MultiTraceFunction> entry : runFunctions.entrySet()) {
+			MultiTraceFunction function = entry.getValue();
+			for (MultiTraceFunction.Variables v : MultiTraceFunction.Variables.values())
+				add(configuration, entry.getKey() + "." + v.name(), time, function.getDoubleValue(v));
+
+			Map<String, OnlineMoments> byName = pooled.get(configuration);
+			if (byName == null) {
+				byName = new LinkedHashMap<String, OnlineMoments>();
+				pooled.put(configuration, byName);
+			}
+			OnlineMoments moments = byName.get(entry.getKey());
+			if (moments == null) {
+				moments = new OnlineMoments();
+				byName.put(entry.getKey(), moments);
+			}
+			moments.merge(function.getMoments());
+		}
+
+		Integer runs = runCounts.get(configuration);
+		runCounts.put(configuration, (runs == null ? 1 : runs + 1));
+
+		runTimeSeries.clear();
+		runFunctions.clear();
+		runConfiguration = null;
+
+		if (fileName != null)
+			saveToFile(path, fileName);
+	}
+
+	private void add(String configuration, String variable, double time, double value) {
+		if (Double.isNaN(value))
+			return;
+		Map<String, TreeMap<Double, Cell>> byVariable = results.get(configuration);
+		if (byVariable == null) {
+			byVariable = new LinkedHashMap<String, TreeMap<Double, Cell>>();
+			results.put(configuration, byVariable);
+		}
+		TreeMap<Double, Cell> byTime = byVariable.get(variable);
+		if (byTime == null) {
+			byTime = new TreeMap<Double, Cell>();
+			byVariable.put(variable, byTime);
+		}
+		Cell cell = byTime.get(time);
+		if (cell == null) {
+			cell = new Cell(compression);
+			byTime.put(time, cell);
+		}
+		cell.moments.add(value);
+		cell.sketch.add(value);
+	}
+
+	/** @return An unmodifiable view of the keys of the configurations aggregated so far. */
+	public synchronized Set<String> getConfigurations() {
+		return Collections.unmodifiableSet(results.keySet());
+	}
+
+	/** @param configuration A configuration key.
+	 * @return The number of runs aggregated for the configuration. */
+	public synchronized int getRunCount(String configuration) {
+		Integer runs = runCounts.get(configuration);
+		return (runs == null ? 0 : runs);
+	}
+
+	/** @param configuration A configuration key.
+	 * @return The names of the variables aggregated for the configuration. */
+	public synchronized List<String> getVariables(String configuration) {
+		Map<String, TreeMap<Double, Cell>> byVariable = results.get(configuration);
+		return (byVariable == null ? new ArrayList<String>() : new ArrayList<String>(byVariable.keySet()));
+	}
+
+	/** @param configuration A configuration key.
+	 * @param variable A variable name.
+	 * @return The times at which the variable has been aggregated, in increasing order. */
+	public synchronized double[] getTimes(String configuration, String variable) {
+		TreeMap<Double, Cell> byTime = getCells(configuration, variable);
+		double[] times = new double[byTime.size()];
+		int i = 0;
+		for (Double t : byTime.keySet())
+			times[i++] = t;
+		return times;
+	}
+
+	/** @param configuration A configuration key.
+	 * @param variable A variable name.
+	 * @param time A simulation time.
+	 * @return The moments of the variable across runs at the given time, or null if not available. */
+	public synchronized OnlineMoments getMoments(String configuration, String variable, double time) {
+		Cell cell = getCells(configuration, variable).get(time);
+		return (cell == null ? null : cell.moments);
+	}
+
+	/** @param configuration A configuration key.
+	 * @param variable A variable name.
+	 * @param time A simulation time.
+	 * @return The quantile sketch of the variable across runs at the given time, or null if not available. */
+	public synchronized QuantileSketch getSketch(String configuration, String variable, double time) {
+		Cell cell = getCells(configuration, variable).get(time);
+		return (cell == null ? null : cell.sketch);
+	}
+
+	/** Return the moments of all the values traced by a multi trace function, pooled across the runs.
+	 * @param configuration A configuration key.
+	 * @param name The name the function has been registered with.
+	 * @return The pooled moments, or null if not available. */
+	public synchronized OnlineMoments getPooledMoments(String configuration, String name) {
+		Map<String, OnlineMoments> byName = pooled.get(configuration);
+		return (byName == null ? null : byName.get(name));
+	}
+
+	private TreeMap<Double, Cell> getCells(String configuration, String variable) {
+		Map<String, TreeMap<Double, Cell>> byVariable = results.get(configuration);
+		TreeMap<Double, Cell> byTime = (byVariable == null ? null : byVariable.get(variable));
+		if (byTime == null)
+			throw new IllegalArgumentException("No variable " + variable + " has been aggregated for configuration " + configuration);
+		return byTime;
+	}
+
+	/**
+	 * Write the summary as comma separated values, one row per configuration, variable and time.
+	 * @param out The output stream.
+	 * @param separator The character used to separate data.
+	 * @throws IOException In case of IO error.
+	 */
+	public synchronized void writeCSV(BufferedWriter out, char separator) throws IOException {
+		out.write("configuration" + separator + "variable" + separator + "time" + separator + "runs" + separator
+				+ "mean" + separator + "variance" + separator + "ciLower" + separator + "ciUpper");
+		for (double p : quantiles)
+			out.write(separator + "p" + formatProbability(p));
+		out.newLine();
+
+		Map<Long, Double> criticalValues = new TreeMap<Long, Double>();
+		for (Map.Entry<String, Map<String, TreeMap<Double, Cell>>> byConfiguration : results.entrySet()) {
+			for (Map.Entry<String, TreeMap<Double, Cell>> byVariable : byConfiguration.getValue().entrySet()) {
+				for (Map.Entry<Double, Cell> byTime : byVariable.getValue().entrySet()) {
+					OnlineMoments m = byTime.getValue().moments;
+					long n = m.getCount();
+					double halfWidth = Double.NaN;
+					if (n > 1) {
+						Double t = criticalValues.get(n);
+						if (t == null) {
+							t = new TDistribution(null, n - 1).inverseCumulativeProbability(0.5 + confidenceLevel / 2.);
+							criticalValues.put(n, t);
+						}
+						halfWidth = t * m.getStandardDeviation() / Math.sqrt(n);
+					}
+					out.write(byConfiguration.getKey() + separator + byVariable.getKey() + separator + byTime.getKey()
+							+ separator + n + separator + m.getMean() + separator + m.getVariance()
+							+ separator + (m.getMean() - halfWidth) + separator + (m.getMean() + halfWidth));
+					for (double p : quantiles)
+						out.write(separator + Double.toString(byTime.getValue().sketch.getQuantile(p)));
+					out.newLine();
+				}
+			}
+		}
+	}
+
+	private static String formatProbability(double p) {
+		double percent = p * 100.;
+		if (percent == Math.rint(percent))
+			return Long.toString((long) percent);
+		return Double.toString(percent);
+	}
+
+	/**
+	 * Write the summary to a file, overwriting it.
+	 * @param path The optional path string, ignored if null or empty.
+	 * @param fileName The name of the output file.
+	 */
+	public synchronized void saveToFile(String path, String fileName) {
+		File file = (path == null || path.isEmpty()) ? new File(fileName) : new File(path + File.separator + fileName);
+		try {
+			BufferedWriter out = new BufferedWriter(new FileWriter(file));
+			writeCSV(out, DEFAULT_SEPARATOR);
+			out.close();
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+			log.error("Error saving " + file.getPath() + " " + ioe.getMessage());
+		}
+	}
+
+	private static class Cell {
+		final OnlineMoments moments = new OnlineMoments();
+		final QuantileSketch sketch;
+
+		Cell(double compression) {
+			sketch = new QuantileSketch(compression);
+		}
+	}
+
+}
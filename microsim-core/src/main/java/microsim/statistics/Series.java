@@ -36,9 +36,52 @@ import cern.colt.list.LongArrayList;
 public abstract class Series implements EventListener, IUpdatableSource
 {
 	protected TimeChecker timeChecker = new TimeChecker();
+	
+	/** The optional chunked backend. When null values are kept in the default array list. */
+	protected ChunkedStorage storage = null;
 			
 	public abstract void updateSource();
 
+	/** Return the number of values collected so far.
+	 * @return The length of the series.
+	 */
+	public abstract int size();
+
+	/** Return a collected value, converted to double.
+	 * @param index The position of the value in the series.
+	 * @return The value collected at the given position.
+	 */
+	public abstract double getDouble(int index);
+
+	/** Store the values of the series in a chunked storage instead of a single growing array.
+	 * This is advisable for very long series, since appending values never copies the collected ones
+	 * and cold chunks can be spilled to a file (see <i>ChunkedStorage.enableSpill()</i>).
+	 * The values collected before the call are moved to the new storage, which can be set only once.
+	 * Note that the <i>get*ArrayList()</i> methods then return a copy of the values, not the live list.
+	 * @param chunkSize The number of values per chunk.
+	 * @return The new storage, which can be further configured.
+	 * @throws IllegalStateException If the series already uses a chunked storage.
+	 */
+	public abstract ChunkedStorage useChunkedStorage(int chunkSize);
+
+	/** Remove all the collected values, keeping the storage configuration of the series.
+	 * Used by <i>TimeSeries</i> when the rows are streamed to a sink and the history is not retained.
+	 */
+	public abstract void clear();
+
+	/** @throws IllegalStateException If the series already uses a chunked storage, whose file would be leaked by a new one. */
+	protected void checkDefaultStorage() {
+		if (storage != null)
+			throw new IllegalStateException("The series already uses a chunked storage, it can only be set once.");
+	}
+
+	/** Return the chunked storage of the series.
+	 * @return The chunked storage, or null if the series uses the default array list.
+	 */
+	public ChunkedStorage getStorage() {
+		return storage;
+	}
+
 	/**
 	 * ISimEventListener callback function. It supports only jas.engine.Sim.EVENT_UPDATE event.
 	 * @throws UnsupportedOperationException If actionType is not supported.
@@ -148,11 +191,49 @@ public abstract class Series implements EventListener, IUpdatableSource
 
 		public double[] getDoubleArray() 
 		{ 
+			if (storage != null)
+				return storage.toDoubleArray();
 			double[] elements = cern.colt.Arrays.trimToCapacity(valueList.elements(), valueList.size());
 			return elements;	
 		}
 	
-		public DoubleArrayList getDoubleArrayList(){ return valueList; }
+		/** @return The collected values: the live list with the default storage, a copy of the values with a chunked storage. */
+		public DoubleArrayList getDoubleArrayList()
+		{
+			if (storage != null)
+				return new DoubleArrayList(storage.toDoubleArray());
+			return valueList;
+		}
+
+		public int size()
+		{
+			return (storage != null ? storage.size() : valueList.size());
+		}
+
+		public double getDouble(int index)
+		{
+			return (storage != null ? storage.getDouble(index) : valueList.get(index));
+		}
+
+		public ChunkedStorage useChunkedStorage(int chunkSize)
+		{
+			checkDefaultStorage();
+			ChunkedStorage newStorage = new ChunkedStorage(8, chunkSize);
+			for (int i = 0; i < size(); i++)
+				newStorage.addDouble(valueList.getQuick(i));
+			storage = newStorage;
+			valueList.clear();
+			valueList.trimToSize();
+			return storage;
+		}
+
+		public void clear()
+		{
+			if (storage != null)
+				storage.clear();
+			else
+				valueList.clear();
+		}
 		
 
 		public void updateSource() {
@@ -160,7 +241,10 @@ public abstract class Series implements EventListener, IUpdatableSource
 				return;
 			if (target instanceof IUpdatableSource)
 				((IUpdatableSource) target).updateSource();				
-			valueList.add( target.getDoubleValue(valueID) );
+			if (storage != null)
+				storage.addDouble( target.getDoubleValue(valueID) );
+			else
+				valueList.add( target.getDoubleValue(valueID) );
 		}
 		
 		public String toString()
@@ -217,12 +301,20 @@ public abstract class Series implements EventListener, IUpdatableSource
 		
 		public long[] getLongArray() 
 		{ 
+			if (storage != null)
+				return storage.toLongArray();
 			long[] elements = cern.colt.Arrays.trimToCapacity(valueList.elements(), valueList.size());
 			return elements;	
 		}
 	
 		public double[] getDoubleArray() 
 		{ 
+			if (storage != null) {
+				double[] list = new double[storage.size()];
+				for (int i = 0; i < list.length; i++)
+					list[i] = storage.getLong(i);
+				return list;
+			}
 			long[] elements = valueList.elements();
 			double[] list = new double[valueList.size()];
 			for (int i = 0; i < list.length; i++)
@@ -231,7 +323,52 @@ public abstract class Series implements EventListener, IUpdatableSource
 			return list;	
 		}
 			
-		public LongArrayList getLongArrayList(){ return valueList; }
+		/** @return The collected values: the live list with the default storage, a copy of the values with a chunked storage. */
+		public LongArrayList getLongArrayList()
+		{
+			if (storage != null)
+				return new LongArrayList(storage.toLongArray());
+			return valueList;
+		}
+
+		public int size()
+		{
+			return (storage != null ? storage.size() : valueList.size());
+		}
+
+		public double getDouble(int index)
+		{
+			return (storage != null ? storage.getLong(index) : valueList.get(index));
+		}
+
+		/** Return a collected value without loss of precision.
+		 * @param index The position of the value in the series.
+		 * @return The value collected at the given position.
+		 */
+		public long getLong(int index)
+		{
+			return (storage != null ? storage.getLong(index) : valueList.get(index));
+		}
+
+		public ChunkedStorage useChunkedStorage(int chunkSize)
+		{
+			checkDefaultStorage();
+			ChunkedStorage newStorage = new ChunkedStorage(8, chunkSize);
+			for (int i = 0; i < size(); i++)
+				newStorage.addLong(valueList.getQuick(i));
+			storage = newStorage;
+			valueList.clear();
+			valueList.trimToSize();
+			return storage;
+		}
+
+		public void clear()
+		{
+			if (storage != null)
+				storage.clear();
+			else
+				valueList.clear();
+		}
 
 		public String toString()
 		{
@@ -251,7 +388,10 @@ public abstract class Series implements EventListener, IUpdatableSource
 				return;
 			if (target instanceof IUpdatableSource)
 				((IUpdatableSource) target).updateSource();
-			valueList.add( target.getLongValue(valueID) );
+			if (storage != null)
+				storage.addLong( target.getLongValue(valueID) );
+			else
+				valueList.add( target.getLongValue(valueID) );
 		}
 	}
 	
@@ -296,12 +436,20 @@ public abstract class Series implements EventListener, IUpdatableSource
 
 		public int[] getIntArray() 
 		{ 
+			if (storage != null)
+				return storage.toIntArray();
 			int[] elements = cern.colt.Arrays.trimToCapacity(valueList.elements(), valueList.size());
 			return elements;	
 		}
 		
 		public double[] getDoubleArray() 
 		{ 
+			if (storage != null) {
+				double[] list = new double[storage.size()];
+				for (int i = 0; i < list.length; i++)
+					list[i] = storage.getInt(i);
+				return list;
+			}
 			int[] elements = valueList.elements();
 			double[] list = new double[valueList.size()];
 			for (int i = 0; i < list.length; i++)
@@ -310,7 +458,43 @@ public abstract class Series implements EventListener, IUpdatableSource
 			return list;	
 		}	
 	
-		public IntArrayList getIntArrayList(){ return valueList; }
+		/** @return The collected values: the live list with the default storage, a copy of the values with a chunked storage. */
+		public IntArrayList getIntArrayList()
+		{
+			if (storage != null)
+				return new IntArrayList(storage.toIntArray());
+			return valueList;
+		}
+
+		public int size()
+		{
+			return (storage != null ? storage.size() : valueList.size());
+		}
+
+		public double getDouble(int index)
+		{
+			return (storage != null ? storage.getInt(index) : valueList.get(index));
+		}
+
+		public ChunkedStorage useChunkedStorage(int chunkSize)
+		{
+			checkDefaultStorage();
+			ChunkedStorage newStorage = new ChunkedStorage(4, chunkSize);
+			for (int i = 0; i < size(); i++)
+				newStorage.addInt(valueList.getQuick(i));
+			storage = newStorage;
+			valueList.clear();
+			valueList.trimToSize();
+			return storage;
+		}
+
+		public void clear()
+		{
+			if (storage != null)
+				storage.clear();
+			else
+				valueList.clear();
+		}
 		
 		public String toString()
 		{
@@ -329,7 +513,10 @@ public abstract class Series implements EventListener, IUpdatableSource
 				return;
 			if (target instanceof IUpdatableSource)
 				((IUpdatableSource) target).updateSource();
-			valueList.add( target.getIntValue(valueID) );
+			if (storage != null)
+				storage.addInt( target.getIntValue(valueID) );
+			else
+				valueList.add( target.getIntValue(valueID) );
 		}
 	}
 	
@@ -375,12 +562,20 @@ public abstract class Series implements EventListener, IUpdatableSource
 			
 		public float[] getFloatArray() 
 		{ 
+			if (storage != null)
+				return storage.toFloatArray();
 			float[] elements = cern.colt.Arrays.trimToCapacity(valueList.elements(), valueList.size());
 			return elements;	
 		}
 	
 		public double[] getDoubleArray() 
 		{ 
+			if (storage != null) {
+				double[] list = new double[storage.size()];
+				for (int i = 0; i < list.length; i++)
+					list[i] = storage.getFloat(i);
+				return list;
+			}
 			float[] elements = valueList.elements();
 			double[] list = new double[valueList.size()];
 			for (int i = 0; i < list.length; i++)
@@ -389,7 +584,43 @@ public abstract class Series implements EventListener, IUpdatableSource
 			return list;	
 		}	
 			
-		public FloatArrayList getFloatArrayList(){ return valueList; }
+		/** @return The collected values: the live list with the default storage, a copy of the values with a chunked storage. */
+		public FloatArrayList getFloatArrayList()
+		{
+			if (storage != null)
+				return new FloatArrayList(storage.toFloatArray());
+			return valueList;
+		}
+
+		public int size()
+		{
+			return (storage != null ? storage.size() : valueList.size());
+		}
+
+		public double getDouble(int index)
+		{
+			return (storage != null ? storage.getFloat(index) : valueList.get(index));
+		}
+
+		public ChunkedStorage useChunkedStorage(int chunkSize)
+		{
+			checkDefaultStorage();
+			ChunkedStorage newStorage = new ChunkedStorage(4, chunkSize);
+			for (int i = 0; i < size(); i++)
+				newStorage.addFloat(valueList.getQuick(i));
+			storage = newStorage;
+			valueList.clear();
+			valueList.trimToSize();
+			return storage;
+		}
+
+		public void clear()
+		{
+			if (storage != null)
+				storage.clear();
+			else
+				valueList.clear();
+		}
 		
 		public String toString()
 		{
@@ -408,7 +639,10 @@ public abstract class Series implements EventListener, IUpdatableSource
 				return;
 			if (target instanceof IUpdatableSource)
 				((IUpdatableSource) target).updateSource();
-			valueList.add( target.getFloatValue(valueID) );
+			if (storage != null)
+				storage.addFloat( target.getFloatValue(valueID) );
+			else
+				valueList.add( target.getFloatValue(valueID) );
 		}
 	}
 
@@ -1,8 +1,7 @@
 package microsim.statistics;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -15,9 +14,6 @@ import microsim.reflection.ReflectionUtils;
 import org.apache.log4j.Logger;
 
 import cern.colt.list.DoubleArrayList;
-import cern.colt.list.FloatArrayList;
-import cern.colt.list.IntArrayList;
-import cern.colt.list.LongArrayList;
 
 /**
  * It is a collection of series (data panel). It contains more series synching
@@ -63,15 +59,21 @@ public class TimeSeries implements EventListener, IUpdatableSource {
 	private double lastTimeUpdate = -1.;
 
 	protected ArrayList<Series> series;
+	protected ArrayList<String> names;
 //	protected LongArrayList absTimes;
 	protected DoubleArrayList absTimes;
 	protected ArrayList<String> descTimes;
 
+	protected ArrayList<TimeSeriesSink> sinks;
+	private boolean retainHistory = true;
+
 	/** Create a new time series container. */
 	public TimeSeries() {
 		series = new ArrayList<Series>();
+		names = new ArrayList<String>();
 		absTimes = new DoubleArrayList();
 		descTimes = new ArrayList<String>();
+		sinks = new ArrayList<TimeSeriesSink>();
 	}
 
 	/**
@@ -102,6 +104,23 @@ public class TimeSeries implements EventListener, IUpdatableSource {
 	 *             If the series name already exists.
 	 */
 	public void addSeries(Series aSeries) {
+		addSeries("Series" + series.size(), aSeries);
+	}
+
+	/**
+	 * Add a new series.
+	 * 
+	 * @param name
+	 *            Name of the series, used as column header.
+	 * @param aSeries
+	 *            An instance of the SeriesStats class.
+	 */
+	public void addSeries(String name, Series aSeries) {
+		for (int i = 0; i < sinks.size(); i++)
+			if (sinks.get(i).isOpen())
+				throw new IllegalStateException(
+						"Series cannot be added after the sinks have been opened.");
+		names.add(name);
 		series.add(aSeries);
 	}
 
@@ -116,7 +135,7 @@ public class TimeSeries implements EventListener, IUpdatableSource {
 	 *            The value identifier defined by source object.
 	 */
 	public void addSeries(String name, IDoubleSource source, Enum<?> valueID) {
-		series.add(new Series.Double(source, valueID));
+		addSeries(name, new Series.Double(source, valueID));
 	}
 
 	/**
@@ -130,7 +149,7 @@ public class TimeSeries implements EventListener, IUpdatableSource {
 	 *            The value identifier defined by source object.
 	 */
 	public void addSeries(String name, IFloatSource source, Enum<?> valueID) {
-		series.add(new Series.Float(source, valueID));
+		addSeries(name, new Series.Float(source, valueID));
 	}
 
 	/**
@@ -144,7 +163,7 @@ public class TimeSeries implements EventListener, IUpdatableSource {
 	 *            The value identifier defined by source object.
 	 */
 	public void addSeries(String name, IIntSource source, Enum<?> valueID) {
-		series.add(new Series.Integer(source, valueID));
+		addSeries(name, new Series.Integer(source, valueID));
 	}
 
 	/**
@@ -158,7 +177,7 @@ public class TimeSeries implements EventListener, IUpdatableSource {
 	 *            The value identifier defined by source object.
 	 */
 	public void addSeries(String name, ILongSource source, Enum<?> valueID) {
-		series.add(new Series.Long(source, valueID));
+		addSeries(name, new Series.Long(source, valueID));
 	}
 
 	/**
@@ -191,7 +210,7 @@ public class TimeSeries implements EventListener, IUpdatableSource {
 			throw new IllegalArgumentException(
 					"The passed argument is not a valid number source");
 
-		series.add(aSeries);
+		addSeries(variableName, aSeries);
 	}
 
 	/** Update all the contained time series and the current time. */
@@ -209,6 +228,81 @@ public class TimeSeries implements EventListener, IUpdatableSource {
 
 		lastTimeUpdate = SimulationEngine.getInstance().getEventQueue()
 				.getTime();
+
+		if (!sinks.isEmpty()) {
+			writeToSinks(absTimes.size() - 1);
+			if (!retainHistory) {
+				for (int i = 0; i < series.size(); i++)
+					series.get(i).clear();
+				absTimes.clear();
+				descTimes.clear();
+			}
+		}
+	}
+
+	private void writeToSinks(int index) {
+		for (int i = 0; i < sinks.size(); i++) {
+			TimeSeriesSink sink = sinks.get(i);
+			try {
+				if (!sink.isOpen())
+					sink.open(names, series);
+				sink.writeRow(absTimes.get(index), descTimes.get(index), index);
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+				log.error("Error writing time series row " + ioe.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Add a sink receiving each row of the time series as soon as it is
+	 * collected. The sink is opened at the first update, so all the series must
+	 * be added before the simulation starts.
+	 * 
+	 * @param sink
+	 *            A time series sink, such as <i>TimeSeriesSink.CSV</i> or
+	 *            <i>TimeSeriesSink.Binary</i>.
+	 */
+	public void addSink(TimeSeriesSink sink) {
+		sinks.add(sink);
+	}
+
+	/**
+	 * Set whether the collected values are kept in memory. When false, and at
+	 * least one sink is attached, the series are emptied after each row has been
+	 * written to the sinks, so that the memory occupancy does not grow with the
+	 * length of the run. The <i>saveToFile()</i> methods then write only the
+	 * last rows. The default is true.
+	 * 
+	 * @param retainHistory
+	 *            False to stream the rows without keeping them.
+	 */
+	public void setRetainHistory(boolean retainHistory) {
+		this.retainHistory = retainHistory;
+	}
+
+	/** Flush the pending rows of all the sinks to their streams. */
+	public void flushSinks() {
+		for (int i = 0; i < sinks.size(); i++) {
+			try {
+				sinks.get(i).flush();
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+				log.error("Error flushing time series sink " + ioe.getMessage());
+			}
+		}
+	}
+
+	/** Flush and close all the sinks. */
+	public void closeSinks() {
+		for (int i = 0; i < sinks.size(); i++) {
+			try {
+				sinks.get(i).close();
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+				log.error("Error closing time series sink " + ioe.getMessage());
+			}
+		}
 	}
 
 	/**
@@ -246,6 +340,38 @@ public class TimeSeries implements EventListener, IUpdatableSource {
 		return series.size();
 	}
 
+	/**
+	 * Return the name of a series.
+	 * 
+	 * @param seriesIndex
+	 *            The index of the series.
+	 * @return The name given when the series was added.
+	 */
+	public String getSeriesName(int seriesIndex) {
+		return names.get(seriesIndex);
+	}
+
+	/**
+	 * Return the number of rows currently held in memory.
+	 * 
+	 * @return The number of collected time steps, or the ones not yet
+	 *         discarded if the history is not retained.
+	 */
+	public int getRowCount() {
+		return absTimes.size();
+	}
+
+	/**
+	 * Return the time of a row.
+	 * 
+	 * @param index
+	 *            The index of the row.
+	 * @return The simulation time the row was collected at.
+	 */
+	public double getTime(int index) {
+		return absTimes.get(index);
+	}
+
 	/**
 	 * Store the entire data content on the output file. It is used the default
 	 * separator and the time description is stored with the absolute one.
@@ -313,45 +439,12 @@ public class TimeSeries implements EventListener, IUpdatableSource {
 		File file = new File(path);
 
 		try {
-			BufferedWriter out = new BufferedWriter(new FileWriter(file));
-			if (withTimes)
-				out.write("real time" + separator);
-			out.write("time" + separator);
-
-			// String[] rowLabels = getSeriesNames();
-			// for (int i = 0; i < rowLabels.length; i++)
-			// out.write(rowLabels[i] + separator);
-			// out.newLine();
-
-			for (int i = 0; i < absTimes.size() - 1; i++) {
-				if (withTimes)
-					out.write(descTimes.get(i).toString() + separator);
-				out.write("" + absTimes.get(i) + separator);
-
-				Iterator<Series> it = series.iterator();
-				while (it.hasNext()) {
-					Series s = it.next();
-					if (s instanceof Series.Double) {
-						DoubleArrayList dl;
-						dl = ((Series.Double) s).getDoubleArrayList();
-						out.write("" + dl.get(i) + separator);
-					} else if (s instanceof Series.Integer) {
-						IntArrayList dl;
-						dl = ((Series.Integer) s).getIntArrayList();
-						out.write("" + dl.get(i) + separator);
-					} else if (s instanceof Series.Float) {
-						FloatArrayList dl;
-						dl = ((Series.Float) s).getFloatArrayList();
-						out.write("" + dl.get(i) + separator);
-					} else {
-						LongArrayList dl;
-						dl = ((Series.Long) s).getLongArrayList();
-						out.write("" + dl.get(i) + separator);
-					}
-					out.newLine();
-				}
-			}
-			out.newLine();
+			TimeSeriesSink.CSV out = new TimeSeriesSink.CSV(
+					new FileOutputStream(file), withTimes, separator);
+			out.setFlushInterval(Integer.MAX_VALUE);
+			out.open(names, series);
+			for (int i = 0; i < absTimes.size(); i++)
+				out.writeRow(absTimes.get(i), descTimes.get(i), i);
 			out.close();
 		} catch (IOException ioe) {
 			ioe.printStackTrace();
@@ -380,7 +473,7 @@ public class TimeSeries implements EventListener, IUpdatableSource {
 	 *            One of the following actions:<br>
 	 *            <i>Sim.EVENT_UPDATE</i> calls the <i>update()</i> method.<br>
 	 *            <i>TimeSeries.EVENT_SAVE</i> calls the <i>saveToFile()</i>
-	 *            method.<br>
+	 *            method, or flushes the sinks if any is attached.<br>
 	 * */
 	public void onEvent(Enum<?> type) {
 		if (type instanceof CommonEventType) {
@@ -389,7 +482,10 @@ public class TimeSeries implements EventListener, IUpdatableSource {
 				updateSource();
 				break;
 			case Save:
-				saveToFile();
+				if (sinks.isEmpty())
+					saveToFile();
+				else
+					flushSinks();
 				break;
 			}
 		}
@@ -0,0 +1,441 @@
+package microsim.statistics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A time series sink receives the rows of a <i>TimeSeries</i> as soon as they are collected,
+ * and appends them to an output stream. Used with <i>TimeSeries.setRetainHistory(false)</i>, the memory
+ * occupancy stays constant regardless of the length of the run, and the rows already flushed
+ * survive a crash of the simulation.<br>
+ * The type of each series is resolved once, when the sink is opened, so no type dispatch is done per row.
+ * Two implementations are provided: <i>TimeSeriesSink.CSV</i> writes buffered text rows, and
+ * <i>TimeSeriesSink.Binary</i> writes a compact columnar binary format, organised in blocks of rows.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public abstract class TimeSeriesSink {
+
+	protected static final byte TYPE_DBL = 0;
+	protected static final byte TYPE_FLT = 1;
+	protected static final byte TYPE_INT = 2;
+	protected static final byte TYPE_LNG = 3;
+
+	protected String[] names;
+	protected Series[] series;
+	protected byte[] types;
+
+	private boolean open = false;
+
+	/**
+	 * Bind the sink to the series of a time series and write the header.
+	 * @param seriesNames The names of the series, used as column headers.
+	 * @param seriesList The series, in column order.
+	 * @throws IOException In case of IO error.
+	 */
+	public void open(List<String> seriesNames, List<Series> seriesList) throws IOException {
+		if (open)
+			throw new IllegalStateException("The sink is already open.");
+		names = seriesNames.toArray(new String[seriesNames.size()]);
+		series = seriesList.toArray(new Series[seriesList.size()]);
+		types = new byte[series.length];
+		for (int i = 0; i < series.length; i++) {
+			if (series[i] instanceof Series.Double)
+				types[i] = TYPE_DBL;
+			else if (series[i] instanceof Series.Float)
+				types[i] = TYPE_FLT;
+			else if (series[i] instanceof Series.Integer)
+				types[i] = TYPE_INT;
+			else
+				types[i] = TYPE_LNG;
+		}
+		writeHeader();
+		open = true;
+	}
+
+	/** @return True if the sink has been opened and not yet closed. */
+	public boolean isOpen() {
+		return open;
+	}
+
+	/**
+	 * Write the values stored at the given position of the series.
+	 * @param time The simulation time of the row.
+	 * @param timeDescription The description of the time of the row, written in the "real time" column.
+	 * @param index The position of the values in the series.
+	 * @throws IOException In case of IO error.
+	 */
+	public abstract void writeRow(double time, String timeDescription, int index) throws IOException;
+
+	protected abstract void writeHeader() throws IOException;
+
+	/**
+	 * Push all the pending rows to the underlying stream.
+	 * @throws IOException In case of IO error.
+	 */
+	public abstract void flush() throws IOException;
+
+	/**
+	 * Flush the pending rows and close the underlying stream.
+	 * @throws IOException In case of IO error.
+	 */
+	public void close() throws IOException {
+		open = false;
+	}
+
+	/**
+	 * A sink writing comma separated text rows, with the same layout used by <i>TimeSeries.saveToFile()</i>.
+	 * The optional "real time" column holds the time description of each row.
+	 * Rows are buffered and flushed to the stream every <i>flushInterval</i> rows.
+	 */
+	public static class CSV extends TimeSeriesSink {
+		private final Writer out;
+		private final char separator;
+		private final boolean withTimes;
+		private int flushInterval = 1;
+		private int pendingRows = 0;
+
+		/** Create a csv sink on a stream.
+		 * @param stream The output stream.
+		 * @param withTimes If true the real time column is written.
+		 * @param separator The character used to separate data.
+		 */
+		public CSV(OutputStream stream, boolean withTimes, char separator) {
+			this.out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+			this.withTimes = withTimes;
+			this.separator = separator;
+		}
+
+		/** Create a csv sink on a new file, using the default separator.
+		 * @param file The output file, overwritten if it exists.
+		 * @throws IOException If the file cannot be created.
+		 */
+		public CSV(File file) throws IOException {
+			this(new FileOutputStream(file), true, TimeSeries.DEFAULT_SEPARATOR);
+		}
+
+		/** Set how often the rows are flushed to the stream. With the default value of 1 every row
+		 * is pushed to the stream as soon as it is written.
+		 * @param rows The number of rows written between two flushes.
+		 */
+		public void setFlushInterval(int rows) {
+			if (rows < 1)
+				throw new IllegalArgumentException("The flush interval must be at least one row.");
+			flushInterval = rows;
+		}
+
+		protected void writeHeader() throws IOException {
+			if (withTimes) {
+				out.write("real time");
+				out.write(separator);
+			}
+			out.write("time");
+			for (String name : names) {
+				out.write(separator);
+				out.write(name);
+			}
+			out.write('\n');
+			out.flush();
+		}
+
+		public void writeRow(double time, String timeDescription, int index) throws IOException {
+			if (withTimes) {
+				out.write(timeDescription);
+				out.write(separator);
+			}
+			out.write(Double.toString(time));
+			for (int i = 0; i < series.length; i++) {
+				out.write(separator);
+				switch (types[i]) {
+					case TYPE_DBL:	out.write(Double.toString(series[i].getDouble(index))); break;
+					case TYPE_FLT:	out.write(Float.toString((float) series[i].getDouble(index))); break;
+					case TYPE_INT:	out.write(Integer.toString((int) series[i].getDouble(index))); break;
+					default:		out.write(Long.toString(((Series.Long) series[i]).getLong(index)));
+				}
+			}
+			out.write('\n');
+			if (++pendingRows >= flushInterval)
+				flush();
+		}
+
+		public void flush() throws IOException {
+			out.flush();
+			pendingRows = 0;
+		}
+
+		public void close() throws IOException {
+			super.close();
+			out.close();
+		}
+	}
+
+	/**
+	 * A sink writing a compact binary columnar format. Rows are accumulated into blocks, and each block
+	 * is written column by column: an int with the number of rows, the times as doubles, then the values
+	 * of each series in its native type. A block is written when it is full or when the sink is flushed,
+	 * so at most one block of rows is lost in case of a crash. The file starts with a header holding a
+	 * magic number, the number of series and, for each series, its type code and its name.
+	 * The <i>read()</i> method loads a file back, ignoring a truncated final block.
+	 */
+	public static class Binary extends TimeSeriesSink {
+		/** The magic number starting a binary time series file ("JTS1"). */
+		public static final int MAGIC = 0x4A545331;
+		/** The default number of rows per block. */
+		public static final int DEFAULT_BLOCK_SIZE = 256;
+
+		private final DataOutputStream out;
+		private final int blockSize;
+		private double[] times;
+		private long[][] values;
+		private int rows = 0;
+
+		/** Create a binary sink on a stream.
+		 * @param stream The output stream.
+		 * @param blockSize The number of rows per block.
+		 */
+		public Binary(OutputStream stream, int blockSize) {
+			if (blockSize < 1)
+				throw new IllegalArgumentException("The block size must be at least one row.");
+			this.out = new DataOutputStream(new BufferedOutputStream(stream));
+			this.blockSize = blockSize;
+		}
+
+		/** Create a binary sink on a new file, using the default block size.
+		 * @param file The output file, overwritten if it exists.
+		 * @throws IOException If the file cannot be created.
+		 */
+		public Binary(File file) throws IOException {
+			this(new FileOutputStream(file), DEFAULT_BLOCK_SIZE);
+		}
+
+		protected void writeHeader() throws IOException {
+			times = new double[blockSize];
+			values = new long[series.length][blockSize];
+			out.writeInt(MAGIC);
+			out.writeInt(series.length);
+			for (int i = 0; i < series.length; i++) {
+				out.writeByte(types[i]);
+				out.writeUTF(names[i]);
+			}
+			out.flush();
+		}
+
+		/** Write a row. The time description is not stored in the binary format. */
+		public void writeRow(double time, String timeDescription, int index) throws IOException {
+			times[rows] = time;
+			for (int i = 0; i < series.length; i++) {
+				switch (types[i]) {
+					case TYPE_DBL:	values[i][rows] = Double.doubleToRawLongBits(series[i].getDouble(index)); break;
+					case TYPE_FLT:	values[i][rows] = Float.floatToRawIntBits((float) series[i].getDouble(index)); break;
+					case TYPE_INT:	values[i][rows] = (int) series[i].getDouble(index); break;
+					default:		values[i][rows] = ((Series.Long) series[i]).getLong(index);
+				}
+			}
+			if (++rows == blockSize)
+				flush();
+		}
+
+		public void flush() throws IOException {
+			if (rows > 0) {
+				out.writeInt(rows);
+				for (int r = 0; r < rows; r++)
+					out.writeDouble(times[r]);
+				for (int i = 0; i < series.length; i++) {
+					long[] column = values[i];
+					switch (types[i]) {
+						case TYPE_DBL:
+						case TYPE_LNG:
+							for (int r = 0; r < rows; r++)
+								out.writeLong(column[r]);
+							break;
+						default:
+							for (int r = 0; r < rows; r++)
+								out.writeInt((int) column[r]);
+					}
+				}
+				rows = 0;
+			}
+			out.flush();
+		}
+
+		public void close() throws IOException {
+			flush();
+			super.close();
+			out.close();
+		}
+
+		/**
+		 * Load a binary time series file.
+		 * @param file The file written by a binary sink.
+		 * @return The table of names, times and values.
+		 * @throws IOException If the file cannot be read or is not a binary time series file.
+		 */
+		public static Table read(File file) throws IOException {
+			InputStream stream = new FileInputStream(file);
+			try {
+				return read(stream);
+			} finally {
+				stream.close();
+			}
+		}
+
+		/**
+		 * Load a binary time series from a stream. A truncated final block, left by a crash, is ignored.
+		 * @param stream The input stream.
+		 * @return The table of names, times and values.
+		 * @throws IOException If the stream cannot be read or is not a binary time series.
+		 */
+		public static Table read(InputStream stream) throws IOException {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+			if (in.readInt() != MAGIC)
+				throw new IOException("The stream does not contain a binary time series.");
+			int columns = in.readInt();
+			Table table = new Table(columns);
+			for (int i = 0; i < columns; i++) {
+				table.types[i] = in.readByte();
+				table.names[i] = in.readUTF();
+			}
+
+			while (true) {
+				int rows;
+				try {
+					rows = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				//The block is read into the spare capacity of the table, and only counted once complete
+				try {
+					table.ensureCapacity(table.size + rows);
+					int start = table.size;
+					for (int r = 0; r < rows; r++)
+						table.times[start + r] = in.readDouble();
+					for (int i = 0; i < columns; i++) {
+						if (table.types[i] == TYPE_LNG) {
+							long[] column = table.longColumns[i];
+							for (int r = 0; r < rows; r++)
+								column[start + r] = in.readLong();
+						} else {
+							double[] column = table.columns[i];
+							for (int r = 0; r < rows; r++)
+								switch (table.types[i]) {
+									case TYPE_DBL:	column[start + r] = in.readDouble(); break;
+									case TYPE_FLT:	column[start + r] = in.readFloat(); break;
+									default:		column[start + r] = in.readInt();
+								}
+						}
+					}
+					table.size += rows;
+				} catch (EOFException e) {
+					break;
+				}
+			}
+			table.trimToSize();
+			return table;
+		}
+
+		/** The content of a binary time series file. The values of the long series are kept as longs,
+		 * the ones of the other series are converted to double. */
+		public static class Table {
+			private final String[] names;
+			private final byte[] types;
+			private int size = 0;
+			private double[] times = new double[0];
+			private final double[][] columns;
+			private final long[][] longColumns;
+
+			private Table(int columnCount) {
+				names = new String[columnCount];
+				types = new byte[columnCount];
+				columns = new double[columnCount][];
+				longColumns = new long[columnCount][];
+			}
+
+			/** Grow the arrays geometrically, so that reading a file takes linear time. */
+			private void ensureCapacity(int capacity) {
+				if (capacity <= times.length)
+					return;
+				int grown = Math.max(capacity, times.length * 2);
+				times = Arrays.copyOf(times, grown);
+				for (int i = 0; i < types.length; i++) {
+					if (types[i] == TYPE_LNG)
+						longColumns[i] = (longColumns[i] == null ? new long[grown] : Arrays.copyOf(longColumns[i], grown));
+					else
+						columns[i] = (columns[i] == null ? new double[grown] : Arrays.copyOf(columns[i], grown));
+				}
+			}
+
+			private void trimToSize() {
+				times = Arrays.copyOf(times, size);
+				for (int i = 0; i < types.length; i++) {
+					if (types[i] == TYPE_LNG)
+						longColumns[i] = (longColumns[i] == null ? new long[0] : Arrays.copyOf(longColumns[i], size));
+					else
+						columns[i] = (columns[i] == null ? new double[0] : Arrays.copyOf(columns[i], size));
+				}
+			}
+
+			/** @return The names of the series. */
+			public String[] getNames() {
+				return names;
+			}
+
+			/** @return The times of the rows. */
+			public double[] getTimes() {
+				return times;
+			}
+
+			/** @param column The index of the series.
+			 * @return True if the series holds long values, which are exactly returned by <i>getLongColumn()</i>. */
+			public boolean isLongColumn(int column) {
+				return types[column] == TYPE_LNG;
+			}
+
+			/** @param column The index of the series.
+			 * @return The values of the series, converted to double. The values of a long series above 2^53
+			 * lose precision: use <i>getLongColumn()</i> to read them exactly. */
+			public double[] getColumn(int column) {
+				if (types[column] != TYPE_LNG)
+					return columns[column];
+				long[] values = longColumns[column];
+				double[] converted = new double[values.length];
+				for (int r = 0; r < values.length; r++)
+					converted[r] = values[r];
+				return converted;
+			}
+
+			/** @param column The index of a long series.
+			 * @return The values of the series.
+			 * @throws IllegalArgumentException If the series does not hold long values. */
+			public long[] getLongColumn(int column) {
+				if (types[column] != TYPE_LNG)
+					throw new IllegalArgumentException("The series " + names[column] + " does not hold long values.");
+				return longColumns[column];
+			}
+		}
+	}
+
+}
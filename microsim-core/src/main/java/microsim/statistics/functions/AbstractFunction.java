@@ -8,6 +8,11 @@ import microsim.statistics.TimeChecker;
 
 /**
  * An abstract skeleton for the statistical function able to manage update time checking.
+ * Functions computing a value per time step (such as the array functions) can be evaluated lazily:
+ * the update events only mark them as out of date, and the computation is done when a value
+ * is requested, at most once per simulation time. Since upstream sources (cross sections,
+ * other functions) are themselves updated through their time checkers, a source shared by
+ * several lazy functions is computed once per time step, and only if some result is actually read.
  * <p>Title: JAS</p>
  * <p>Description: Java Agent-based Simulation library</p>
  * <p>Copyright (C) 2002 Michele Sonnessa</p>
@@ -31,6 +36,10 @@ public abstract class AbstractFunction implements EventListener, IUpdatableSourc
 
 	protected TimeChecker timeChecker;
 
+	/** When true the update events do not compute the function, which is evaluated on demand. */
+	protected boolean lazy = false;
+	private boolean dirty = false;
+
 	public AbstractFunction()
 	{
 		timeChecker = new TimeChecker();
@@ -41,8 +50,12 @@ public abstract class AbstractFunction implements EventListener, IUpdatableSourc
 	 * @throws UnsupportedOperationException if actionId is not equal to the jas.engine.Sim.EVENT_UPDATE value.
 	 */	
 	public void onEvent(Enum<?> type) {
-		if (type.equals(CommonEventType.Update))
-			updateSource();
+		if (type.equals(CommonEventType.Update)) {
+			if (lazy)
+				invalidate();
+			else
+				updateSource();
+		}
 		else
 			throw new SimulationRuntimeException("The action " + type + " is not supported by an ArrayFunction");
 	}
@@ -67,10 +80,34 @@ public abstract class AbstractFunction implements EventListener, IUpdatableSourc
 	 */
 	public void updateSource()
 	{
-		if (timeChecker.isUpToDate())
+		if (timeChecker.isUpToDate() && !dirty)
 			return;
+		dirty = false;
 		applyFunction();
 	}
+
+	/** Mark the function as out of date, so that it is computed again at the next request,
+	 * even within the same simulation time. It is useful when the source is known to have
+	 * changed after the function has been evaluated.
+	 */
+	public void invalidate() {
+		dirty = true;
+	}
+
+	/** Return true if the function is evaluated on demand.
+	 * @return True if lazy evaluation is enabled.
+	 */
+	public boolean isLazy() {
+		return lazy;
+	}
+
+	/** Bring the function up to date before one of its values is read, if it is lazy.
+	 * It must be called by the value getters of the functions supporting lazy evaluation.
+	 */
+	protected void validate() {
+		if (lazy)
+			updateSource();
+	}
 		
 	public abstract void applyFunction();
 }
@@ -0,0 +1,114 @@
+package microsim.statistics.functions;
+
+import microsim.statistics.IDoubleSource;
+import microsim.statistics.IFloatSource;
+import microsim.statistics.IIntSource;
+import microsim.statistics.ILongSource;
+import microsim.statistics.IUpdatableSource;
+import microsim.statistics.reflectors.DoubleInvoker;
+
+/**
+ * The base class of the functions computing statistics on the sequence of values read
+ * from a single data source, one value per update. The source can be any of the
+ * <i>IDoubleSource</i>, <i>IFloatSource</i>, <i>IIntSource</i> and <i>ILongSource</i> objects,
+ * or a field or method of a generic object. Its type is resolved once in the constructor, and
+ * the value is read as a double by the <i>readSource()</i> method.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public abstract class AbstractTraceFunction extends AbstractFunction implements IDoubleSource {
+
+	protected static final int TYPE_DBL = 0;
+	protected static final int TYPE_FLT = 1;
+	protected static final int TYPE_INT = 2;
+	protected static final int TYPE_LNG = 3;
+
+	protected IDoubleSource dblSource;
+	protected IFloatSource fltSource;
+	protected IIntSource intSource;
+	protected ILongSource lngSource;
+
+	protected int type;
+	protected Enum<?> valueID;
+
+	/** Create a function on a IDoubleSource object.
+	 *  @param source The IDoubleSource object.
+	 *  @param valueID The value identifier defined by source object. */
+	public AbstractTraceFunction(IDoubleSource source, Enum<?> valueID) {
+		super();
+		dblSource = source;
+		type = TYPE_DBL;
+		this.valueID = valueID;
+	}
+
+	/** Create a function on a IFloatSource object.
+	 *  @param source The IFloatSource object.
+	 *  @param valueID The value identifier defined by source object. */
+	public AbstractTraceFunction(IFloatSource source, Enum<?> valueID) {
+		super();
+		fltSource = source;
+		type = TYPE_FLT;
+		this.valueID = valueID;
+	}
+
+	/** Create a function on a ILongSource object.
+	 *  @param source The ILongSource object.
+	 *  @param valueID The value identifier defined by source object. */
+	public AbstractTraceFunction(ILongSource source, Enum<?> valueID) {
+		super();
+		lngSource = source;
+		type = TYPE_LNG;
+		this.valueID = valueID;
+	}
+
+	/** Create a function on a IIntSource object.
+	 *  @param source The IIntSource object.
+	 *  @param valueID The value identifier defined by source object. */
+	public AbstractTraceFunction(IIntSource source, Enum<?> valueID) {
+		super();
+		intSource = source;
+		type = TYPE_INT;
+		this.valueID = valueID;
+	}
+
+	/** Create a function on a generic object.
+	 *  @param source A generic source object.
+	 *  @param valueName The name of the field or the method returning the variable to be probed.
+	 *  @param getFromMethod Specifies if valueName is a method or a property value. */
+	public AbstractTraceFunction(Object source, String valueName, boolean getFromMethod) {
+		this(new DoubleInvoker(source, valueName, getFromMethod), IDoubleSource.Variables.Default);
+	}
+
+	/** Read the current value of the source, updating it first if it is an <i>IUpdatableSource</i>.
+	 * @return The value, converted to double. */
+	protected double readSource() {
+		switch (type) {
+			case TYPE_FLT:
+				if (fltSource instanceof IUpdatableSource)
+					((IUpdatableSource) fltSource).updateSource();
+				return fltSource.getFloatValue(valueID);
+			case TYPE_INT:
+				if (intSource instanceof IUpdatableSource)
+					((IUpdatableSource) intSource).updateSource();
+				return intSource.getIntValue(valueID);
+			case TYPE_LNG:
+				if (lngSource instanceof IUpdatableSource)
+					((IUpdatableSource) lngSource).updateSource();
+				return lngSource.getLongValue(valueID);
+			default:
+				if (dblSource instanceof IUpdatableSource)
+					((IUpdatableSource) dblSource).updateSource();
+				return dblSource.getDoubleValue(valueID);
+		}
+	}
+
+}
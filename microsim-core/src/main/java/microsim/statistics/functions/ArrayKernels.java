@@ -0,0 +1,308 @@
+package microsim.statistics.functions;
+
+/**
+ * Reduction kernels over primitive arrays, used by the array functions.<br>
+ * Each loop keeps four independent accumulators, so the additions and comparisons of consecutive
+ * elements do not wait for each other: the sums, minima and maxima are unrolled by four, and the
+ * sums of squares by two, with a sum and a sum of squares per element. The JIT compiler can then keep
+ * the accumulators in separate (vector) registers, and the throughput is bounded by the memory
+ * bandwidth rather than by the latency of a single chain of operations.<br>
+ * Floating point sums are accumulated in double precision. Because the order of the additions
+ * differs from a plain loop, the result may differ from it in the last bits. Integer sums are
+ * exact: int values are summed as long, long values wrap around as in a plain loop. Comparisons
+ * skip NaN values, as the original loops did.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public final class ArrayKernels {
+
+	private ArrayKernels() {
+	}
+
+	public static double sum(double[] data) {
+		double s0 = 0., s1 = 0., s2 = 0., s3 = 0.;
+		int n = data.length, i = 0;
+		for (; i < n - 3; i += 4) {
+			s0 += data[i];
+			s1 += data[i + 1];
+			s2 += data[i + 2];
+			s3 += data[i + 3];
+		}
+		for (; i < n; i++)
+			s0 += data[i];
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	public static double sum(float[] data) {
+		double s0 = 0., s1 = 0., s2 = 0., s3 = 0.;
+		int n = data.length, i = 0;
+		for (; i < n - 3; i += 4) {
+			s0 += data[i];
+			s1 += data[i + 1];
+			s2 += data[i + 2];
+			s3 += data[i + 3];
+		}
+		for (; i < n; i++)
+			s0 += data[i];
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	public static long sum(int[] data) {
+		long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int n = data.length, i = 0;
+		for (; i < n - 3; i += 4) {
+			s0 += data[i];
+			s1 += data[i + 1];
+			s2 += data[i + 2];
+			s3 += data[i + 3];
+		}
+		for (; i < n; i++)
+			s0 += data[i];
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	public static long sum(long[] data) {
+		long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int n = data.length, i = 0;
+		for (; i < n - 3; i += 4) {
+			s0 += data[i];
+			s1 += data[i + 1];
+			s2 += data[i + 2];
+			s3 += data[i + 3];
+		}
+		for (; i < n; i++)
+			s0 += data[i];
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	/** Sum long values in double precision, so that the result cannot overflow. */
+	public static double doubleSum(long[] data) {
+		double s0 = 0., s1 = 0., s2 = 0., s3 = 0.;
+		int n = data.length, i = 0;
+		for (; i < n - 3; i += 4) {
+			s0 += data[i];
+			s1 += data[i + 1];
+			s2 += data[i + 2];
+			s3 += data[i + 3];
+		}
+		for (; i < n; i++)
+			s0 += data[i];
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	/** Compute in one pass the sum and the sum of squares of the values.
+	 * @param data The values.
+	 * @param result An array of at least two elements, receiving the sum and the sum of squares.
+	 */
+	public static void sumAndSumOfSquares(double[] data, double[] result) {
+		double s0 = 0., s1 = 0., q0 = 0., q1 = 0.;
+		int n = data.length, i = 0;
+		for (; i < n - 1; i += 2) {
+			double a = data[i], b = data[i + 1];
+			s0 += a;
+			q0 += a * a;
+			s1 += b;
+			q1 += b * b;
+		}
+		if (i < n) {
+			double a = data[i];
+			s0 += a;
+			q0 += a * a;
+		}
+		result[0] = s0 + s1;
+		result[1] = q0 + q1;
+	}
+
+	public static void sumAndSumOfSquares(float[] data, double[] result) {
+		double s0 = 0., s1 = 0., q0 = 0., q1 = 0.;
+		int n = data.length, i = 0;
+		for (; i < n - 1; i += 2) {
+			double a = data[i], b = data[i + 1];
+			s0 += a;
+			q0 += a * a;
+			s1 += b;
+			q1 += b * b;
+		}
+		if (i < n) {
+			double a = data[i];
+			s0 += a;
+			q0 += a * a;
+		}
+		result[0] = s0 + s1;
+		result[1] = q0 + q1;
+	}
+
+	public static void sumAndSumOfSquares(int[] data, double[] result) {
+		double s0 = 0., s1 = 0., q0 = 0., q1 = 0.;
+		int n = data.length, i = 0;
+		for (; i < n - 1; i += 2) {
+			double a = data[i], b = data[i + 1];
+			s0 += a;
+			q0 += a * a;
+			s1 += b;
+			q1 += b * b;
+		}
+		if (i < n) {
+			double a = data[i];
+			s0 += a;
+			q0 += a * a;
+		}
+		result[0] = s0 + s1;
+		result[1] = q0 + q1;
+	}
+
+	public static void sumAndSumOfSquares(long[] data, double[] result) {
+		double s0 = 0., s1 = 0., q0 = 0., q1 = 0.;
+		int n = data.length, i = 0;
+		for (; i < n - 1; i += 2) {
+			double a = data[i], b = data[i + 1];
+			s0 += a;
+			q0 += a * a;
+			s1 += b;
+			q1 += b * b;
+		}
+		if (i < n) {
+			double a = data[i];
+			s0 += a;
+			q0 += a * a;
+		}
+		result[0] = s0 + s1;
+		result[1] = q0 + q1;
+	}
+
+	/** @param data The values.
+	 * @param initial The value returned for an empty array.
+	 * @return The minimum of the initial value and the values. */
+	public static double min(double[] data, double initial) {
+		double m0 = initial, m1 = initial, m2 = initial, m3 = initial;
+		int n = data.length, i = 0;
+		for (; i < n - 3; i += 4) {
+			if (data[i] < m0) m0 = data[i];
+			if (data[i + 1] < m1) m1 = data[i + 1];
+			if (data[i + 2] < m2) m2 = data[i + 2];
+			if (data[i + 3] < m3) m3 = data[i + 3];
+		}
+		for (; i < n; i++)
+			if (data[i] < m0) m0 = data[i];
+		if (m1 < m0) m0 = m1;
+		if (m3 < m2) m2 = m3;
+		return (m2 < m0 ? m2 : m0);
+	}
+
+	public static float min(float[] data, float initial) {
+		float m0 = initial, m1 = initial, m2 = initial, m3 = initial;
+		int n = data.length, i = 0;
+		for (; i < n - 3; i += 4) {
+			if (data[i] < m0) m0 = data[i];
+			if (data[i + 1] < m1) m1 = data[i + 1];
+			if (data[i + 2] < m2) m2 = data[i + 2];
+			if (data[i + 3] < m3) m3 = data[i + 3];
+		}
+		for (; i < n; i++)
+			if (data[i] < m0) m0 = data[i];
+		if (m1 < m0) m0 = m1;
+		if (m3 < m2) m2 = m3;
+		return (m2 < m0 ? m2 : m0);
+	}
+
+	public static int min(int[] data, int initial) {
+		int m0 = initial, m1 = initial, m2 = initial, m3 = initial;
+		int n = data.length, i = 0;
+		for (; i < n - 3; i += 4) {
+			m0 = Math.min(m0, data[i]);
+			m1 = Math.min(m1, data[i + 1]);
+			m2 = Math.min(m2, data[i + 2]);
+			m3 = Math.min(m3, data[i + 3]);
+		}
+		for (; i < n; i++)
+			m0 = Math.min(m0, data[i]);
+		return Math.min(Math.min(m0, m1), Math.min(m2, m3));
+	}
+
+	public static long min(long[] data, long initial) {
+		long m0 = initial, m1 = initial, m2 = initial, m3 = initial;
+		int n = data.length, i = 0;
+		for (; i < n - 3; i += 4) {
+			m0 = Math.min(m0, data[i]);
+			m1 = Math.min(m1, data[i + 1]);
+			m2 = Math.min(m2, data[i + 2]);
+			m3 = Math.min(m3, data[i + 3]);
+		}
+		for (; i < n; i++)
+			m0 = Math.min(m0, data[i]);
+		return Math.min(Math.min(m0, m1), Math.min(m2, m3));
+	}
+
+	/** @param data The values.
+	 * @param initial The value returned for an empty array.
+	 * @return The maximum of the initial value and the values. */
+	public static double max(double[] data, double initial) {
+		double m0 = initial, m1 = initial, m2 = initial, m3 = initial;
+		int n = data.length, i = 0;
+		for (; i < n - 3; i += 4) {
+			if (data[i] > m0) m0 = data[i];
+			if (data[i + 1] > m1) m1 = data[i + 1];
+			if (data[i + 2] > m2) m2 = data[i + 2];
+			if (data[i + 3] > m3) m3 = data[i + 3];
+		}
+		for (; i < n; i++)
+			if (data[i] > m0) m0 = data[i];
+		if (m1 > m0) m0 = m1;
+		if (m3 > m2) m2 = m3;
+		return (m2 > m0 ? m2 : m0);
+	}
+
+	public static float max(float[] data, float initial) {
+		float m0 = initial, m1 = initial, m2 = initial, m3 = initial;
+		int n = data.length, i = 0;
+		for (; i < n - 3; i += 4) {
+			if (data[i] > m0) m0 = data[i];
+			if (data[i + 1] > m1) m1 = data[i + 1];
+			if (data[i + 2] > m2) m2 = data[i + 2];
+			if (data[i + 3] > m3) m3 = data[i + 3];
+		}
+		for (; i < n; i++)
+			if (data[i] > m0) m0 = data[i];
+		if (m1 > m0) m0 = m1;
+		if (m3 > m2) m2 = m3;
+		return (m2 > m0 ? m2 : m0);
+	}
+
+	public static int max(int[] data, int initial) {
+		int m0 = initial, m1 = initial, m2 = initial, m3 = initial;
+		int n = data.length, i = 0;
+		for (; i < n - 3; i += 4) {
+			m0 = Math.max(m0, data[i]);
+			m1 = Math.max(m1, data[i + 1]);
+			m2 = Math.max(m2, data[i + 2]);
+			m3 = Math.max(m3, data[i + 3]);
+		}
+		for (; i < n; i++)
+			m0 = Math.max(m0, data[i]);
+		return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+	}
+
+	public static long max(long[] data, long initial) {
+		long m0 = initial, m1 = initial, m2 = initial, m3 = initial;
+		int n = data.length, i = 0;
+		for (; i < n - 3; i += 4) {
+			m0 = Math.max(m0, data[i]);
+			m1 = Math.max(m1, data[i + 1]);
+			m2 = Math.max(m2, data[i + 2]);
+			m3 = Math.max(m3, data[i + 3]);
+		}
+		for (; i < n; i++)
+			m0 = Math.max(m0, data[i]);
+		return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+	}
+
+}
@@ -95,12 +95,13 @@ public class CountArrayFunction extends AbstractArrayFunction implements IDouble
 	 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 	 */
 	public double getDoubleValue(Enum<?> variableID) {
+		validate();
 		return (double) count;
 	}
 	
 	/* (non-Javadoc)
 	 * @see jas.statistics.functions.IArrayFunction#getInt()
 	 */
-	public int getIntValue(Enum<?> id) { return count; }
+	public int getIntValue(Enum<?> id) {	validate(); return count; }
 
 }
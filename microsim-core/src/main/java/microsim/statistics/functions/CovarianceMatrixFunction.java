@@ -0,0 +1,229 @@
+package microsim.statistics.functions;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import microsim.statistics.FilterRegistry;
+import microsim.statistics.ICollectionFilter;
+import microsim.statistics.IDoubleSource;
+import microsim.statistics.IUpdatableSource;
+import microsim.statistics.TimeSeries;
+import microsim.statistics.reflectors.DoubleInvoker;
+
+/**
+ * This class computes the covariance and the correlation matrix of <i>k</i> attributes of a
+ * collection of agents. At each update the collection is traversed once: the <i>k</i> values of
+ * each agent are read and accumulated by an <i>OnlineCovariance</i>, without storing the cross
+ * sections of the single attributes. Agents with a NaN value in any attribute are skipped.<br>
+ * The number of agents is returned through the <i>IDoubleSource</i> interface, while the single
+ * entries of the matrices are exposed as separate sources by <i>getCovarianceSource()</i> and
+ * <i>getCorrelationSource()</i>, or added to a <i>TimeSeries</i> by <i>addToTimeSeries()</i>.
+ * The accumulator of the last update can be merged with the ones of other partitions or runs.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class CovarianceMatrixFunction extends AbstractFunction implements IDoubleSource {
+
+	public enum Variables {
+		/** The number of agents accumulated at the last update. */
+		Count;
+	}
+
+	protected final Collection<?> source;
+	protected final String[] names;
+	protected final DoubleInvoker[] invokers;
+	protected final OnlineCovariance covariance;
+
+	protected ICollectionFilter filter = null;
+	protected FilterRegistry<?> registry = null;
+	protected String selectionName = null;
+
+	private final double[] row;
+
+	/** Create a covariance function on some attributes of a collection of objects.
+	 * @param source A collection of generic objects.
+	 * @param objectClass The class of the objects contained by the collection.
+	 * @param valueNames The names of the fields or the methods returning the attributes.
+	 * @param getFromMethod Specifies if the value names are methods or properties.
+	 */
+	public CovarianceMatrixFunction(Collection<?> source, Class<?> objectClass, String[] valueNames, boolean getFromMethod) {
+		super();
+		if (valueNames.length < 1)
+			throw new IllegalArgumentException("At least one attribute is needed.");
+		this.source = source;
+		names = valueNames.clone();
+		invokers = new DoubleInvoker[names.length];
+		for (int i = 0; i < names.length; i++)
+			invokers[i] = new DoubleInvoker(objectClass, names[i], getFromMethod);
+		covariance = new OnlineCovariance(names.length);
+		row = new double[names.length];
+	}
+
+	/** Set a filter selecting the agents of the collection to be accumulated.
+	 * @param filter The filter, or null to accumulate all the agents.
+	 */
+	public void setFilter(ICollectionFilter filter) {
+		this.filter = filter;
+	}
+
+	/** Restrict the function to the agents of a selection of a filter registry, instead of
+	 * iterating the source collection. The filter set by <i>setFilter()</i> is ignored.
+	 * @param registry The filter registry, or null to iterate the source collection again.
+	 * @param selectionName The name of a selection registered in the registry.
+	 */
+	public void setSelection(FilterRegistry<?> registry, String selectionName) {
+		this.registry = registry;
+		this.selectionName = selectionName;
+	}
+
+	/** Set whether the function is evaluated on demand, instead of at each update event.
+	 * @param lazy True to enable lazy evaluation.
+	 */
+	public void setLazy(boolean lazy) {
+		this.lazy = lazy;
+	}
+
+	public void applyFunction() {
+		covariance.reset();
+		if (registry != null) {
+			FilterRegistry.Selection<?> selection = registry.getSelection(selectionName);
+			for (int i = selection.nextSelected(0); i >= 0; i = selection.nextSelected(i + 1))
+				accumulate(selection.getAgent(i));
+		} else
+			for (Iterator<?> it = source.iterator(); it.hasNext(); ) {
+				Object obj = it.next();
+				if (filter == null || filter.isFiltered(obj))
+					accumulate(obj);
+			}
+	}
+
+	private void accumulate(Object obj) {
+		for (int i = 0; i < invokers.length; i++) {
+			double value = invokers[i].getDouble(obj);
+			if (java.lang.Double.isNaN(value))
+				return;
+			row[i] = value;
+		}
+		covariance.add(row);
+	}
+
+	/** @return The names of the attributes, in the order of the matrix rows. */
+	public String[] getNames() {
+		return names.clone();
+	}
+
+	/** @param name The name of an attribute.
+	 * @return The index of the attribute in the matrix. */
+	public int indexOf(String name) {
+		for (int i = 0; i < names.length; i++)
+			if (names[i].equals(name))
+				return i;
+		throw new IllegalArgumentException("The attribute " + name + " is not accumulated by this function.");
+	}
+
+	/** Return the accumulator of the last update, which can be merged with the ones of other partitions or runs.
+	 * @return The accumulator.
+	 */
+	public OnlineCovariance getCovariance() {
+		validate();
+		return covariance;
+	}
+
+	/** @param i The index of an attribute.
+	 * @param j The index of another attribute.
+	 * @return The sample covariance of the two attributes. */
+	public double getCovariance(int i, int j) {
+		validate();
+		return covariance.getCovariance(i, j);
+	}
+
+	/** @param i The index of an attribute.
+	 * @param j The index of another attribute.
+	 * @return The correlation of the two attributes. */
+	public double getCorrelation(int i, int j) {
+		validate();
+		return covariance.getCorrelation(i, j);
+	}
+
+	/** @return A new array holding the sample covariance matrix. */
+	public double[][] getCovarianceMatrix() {
+		validate();
+		return covariance.getCovarianceMatrix();
+	}
+
+	/** @return A new array holding the correlation matrix. */
+	public double[][] getCorrelationMatrix() {
+		validate();
+		return covariance.getCorrelationMatrix();
+	}
+
+	/** @param a The name of an attribute.
+	 * @param b The name of another attribute.
+	 * @return A source returning the covariance of the two attributes. */
+	public IDoubleSource getCovarianceSource(String a, String b) {
+		return new Entry(indexOf(a), indexOf(b), false);
+	}
+
+	/** @param a The name of an attribute.
+	 * @param b The name of another attribute.
+	 * @return A source returning the correlation of the two attributes. */
+	public IDoubleSource getCorrelationSource(String a, String b) {
+		return new Entry(indexOf(a), indexOf(b), true);
+	}
+
+	/**
+	 * Add one series per entry of the upper triangle of the matrix to the given time series. The
+	 * series are named <i>name.a.b</i>, after the attributes of the entry. The diagonal is included
+	 * for the covariance matrix (the variances) and excluded for the correlation one.
+	 * @param timeSeries The time series.
+	 * @param name The prefix of the series names.
+	 * @param correlation If true the correlations are collected, otherwise the covariances.
+	 */
+	public void addToTimeSeries(TimeSeries timeSeries, String name, boolean correlation) {
+		for (int i = 0; i < names.length; i++)
+			for (int j = (correlation ? i + 1 : i); j < names.length; j++)
+				timeSeries.addSeries(name + "." + names[i] + "." + names[j], new Entry(i, j, correlation), IDoubleSource.Variables.Default);
+	}
+
+	/* (non-Javadoc)
+	 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
+	 */
+	public double getDoubleValue(Enum<?> valueID) {
+		validate();
+		switch ((CovarianceMatrixFunction.Variables) valueID) {
+			case Count:		return covariance.getCount();
+			default:
+				throw new UnsupportedOperationException("The computer does not support an operation with id " + valueID);
+		}
+	}
+
+	/** A source exposing one entry of the matrix, updating the function before the value is read. */
+	private class Entry implements IDoubleSource, IUpdatableSource {
+		private final int i, j;
+		private final boolean correlation;
+
+		Entry(int i, int j, boolean correlation) {
+			this.i = i;
+			this.j = j;
+			this.correlation = correlation;
+		}
+
+		public void updateSource() {
+			CovarianceMatrixFunction.this.updateSource();
+		}
+
+		public double getDoubleValue(Enum<?> valueID) {
+			return (correlation ? getCorrelation(i, j) : getCovariance(i, j));
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+package microsim.statistics.functions;
+
+import microsim.statistics.IDoubleSource;
+import microsim.statistics.IFloatSource;
+import microsim.statistics.IIntSource;
+import microsim.statistics.ILongSource;
+
+/**
+ * This class computes the exponentially weighted moving mean and variance of the values collected
+ * from a data source. Each new value <i>x</i> updates the statistics as<br>
+ * <i>mean = mean + alpha * (x - mean)</i><br>
+ * <i>variance = (1 - alpha) * (variance + alpha * (x - mean_old)^2)</i><br>
+ * so the weight of a value decays geometrically with its age and no past value needs to be stored.
+ * The smoothing factor can be given directly or through the equivalent span <i>s</i>,
+ * with <i>alpha = 2 / (s + 1)</i>. The first value collected initialises the mean.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class ExponentialMovingTraceFunction extends AbstractTraceFunction {
+
+	public enum Variables {
+		LastValue,
+		Count,
+		Mean,
+		Variance,
+		StandardDeviation;
+	}
+
+	protected final double alpha;
+	protected long count = 0;
+	protected double lastRead;
+	protected double mean = 0.;
+	protected double variance = 0.;
+
+	/** Create an exponentially weighted function on a IDoubleSource object.
+	 *  @param source The IDoubleSource object.
+	 *  @param valueID The value identifier defined by source object.
+	 *  @param alpha The smoothing factor, in (0, 1]. */
+	public ExponentialMovingTraceFunction(IDoubleSource source, Enum<?> valueID, double alpha) {
+		super(source, valueID);
+		this.alpha = checkAlpha(alpha);
+	}
+
+	/** Create an exponentially weighted function on a IFloatSource object.
+	 *  @param source The IFloatSource object.
+	 *  @param valueID The value identifier defined by source object.
+	 *  @param alpha The smoothing factor, in (0, 1]. */
+	public ExponentialMovingTraceFunction(IFloatSource source, Enum<?> valueID, double alpha) {
+		super(source, valueID);
+		this.alpha = checkAlpha(alpha);
+	}
+
+	/** Create an exponentially weighted function on a ILongSource object.
+	 *  @param source The ILongSource object.
+	 *  @param valueID The value identifier defined by source object.
+	 *  @param alpha The smoothing factor, in (0, 1]. */
+	public ExponentialMovingTraceFunction(ILongSource source, Enum<?> valueID, double alpha) {
+		super(source, valueID);
+		this.alpha = checkAlpha(alpha);
+	}
+
+	/** Create an exponentially weighted function on a IIntSource object.
+	 *  @param source The IIntSource object.
+	 *  @param valueID The value identifier defined by source object.
+	 *  @param alpha The smoothing factor, in (0, 1]. */
+	public ExponentialMovingTraceFunction(IIntSource source, Enum<?> valueID, double alpha) {
+		super(source, valueID);
+		this.alpha = checkAlpha(alpha);
+	}
+
+	/** Create an exponentially weighted function on a generic object.
+	 *  @param source A generic source object.
+	 *  @param valueName The name of the field or the method returning the variable to be probed.
+	 *  @param getFromMethod Specifies if valueName is a method or a property value.
+	 *  @param alpha The smoothing factor, in (0, 1]. */
+	public ExponentialMovingTraceFunction(Object source, String valueName, boolean getFromMethod, double alpha) {
+		super(source, valueName, getFromMethod);
+		this.alpha = checkAlpha(alpha);
+	}
+
+	/** Convert a span into the equivalent smoothing factor.
+	 * @param span The span, at least 1.
+	 * @return The smoothing factor 2 / (span + 1). */
+	public static double alphaFromSpan(double span) {
+		if (span < 1.)
+			throw new IllegalArgumentException("The span must be at least 1, got " + span);
+		return 2. / (span + 1.);
+	}
+
+	private static double checkAlpha(double alpha) {
+		if (!(alpha > 0. && alpha <= 1.))
+			throw new IllegalArgumentException("The smoothing factor must be in (0, 1], got " + alpha);
+		return alpha;
+	}
+
+	/** Collect a value from the source. */
+	public void applyFunction() {
+		lastRead = readSource();
+		if (count++ == 0) {
+			mean = lastRead;
+			variance = 0.;
+		} else {
+			double delta = lastRead - mean;
+			double increment = alpha * delta;
+			mean += increment;
+			variance = (1. - alpha) * (variance + delta * increment);
+		}
+	}
+
+	/** @return The smoothing factor. */
+	public double getAlpha() {
+		return alpha;
+	}
+
+	/** @return The exponentially weighted mean. */
+	public double getMean() {
+		return mean;
+	}
+
+	/** @return The exponentially weighted variance. */
+	public double getVariance() {
+		return variance;
+	}
+
+	/** Return the result of a given statistic.
+	 *  @param valueID One of the Variables constants representing available statistics.
+	 *  @return The computed value.
+	 *  @throws UnsupportedOperationException If the given valueID is not supported.*/
+	public double getDoubleValue(Enum<?> valueID) {
+		switch ((ExponentialMovingTraceFunction.Variables) valueID) {
+			case LastValue:				return lastRead;
+			case Count:					return (double) count;
+			case Mean:					return mean;
+			case Variance:				return variance;
+			case StandardDeviation:		return Math.sqrt(variance);
+			default:
+				throw new UnsupportedOperationException("The computer does not support an operation with id " + valueID);
+		}
+	}
+
+}
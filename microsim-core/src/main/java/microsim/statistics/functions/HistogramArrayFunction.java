@@ -0,0 +1,235 @@
+package microsim.statistics.functions;
+
+import microsim.statistics.Histogram;
+import microsim.statistics.IDoubleArraySource;
+import microsim.statistics.IDoubleSource;
+import microsim.statistics.IFloatArraySource;
+import microsim.statistics.IIntArraySource;
+import microsim.statistics.ILongArraySource;
+import microsim.statistics.TimeSeries;
+
+/**
+ * This class computes the frequency distribution of an array of source values over a set of bins,
+ * using a primitive <i>Histogram</i>. The bins are either given in the constructor, or computed as
+ * quantiles of the data read at the first update, and then kept fixed so that the distributions of
+ * different time steps are comparable. By default the histogram is emptied at every update; in
+ * cumulative mode the values of all the updates are counted.<br>
+ * The count or the frequency of each bin can be collected per time step through a <i>TimeSeries</i>,
+ * see <i>addToTimeSeries()</i>.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class HistogramArrayFunction extends AbstractArrayFunction implements IDoubleSource {
+
+	public enum Variables {
+		Total,
+		Underflow,
+		Overflow;
+	}
+
+	protected Histogram histogram;
+	protected final int quantileBins;
+	protected boolean cumulative = false;
+
+	/** Create a histogram function on a double array source.
+	 * @param source The data source.
+	 * @param histogram The histogram defining the bins.
+	 */
+	public HistogramArrayFunction(IDoubleArraySource source, Histogram histogram) {
+		super(source);
+		this.histogram = histogram;
+		quantileBins = 0;
+	}
+
+	/** Create a histogram function on a double array source, with quantile based bins.
+	 * @param source The data source.
+	 * @param quantileBins The number of bins, computed as quantiles of the data read at the first update.
+	 */
+	public HistogramArrayFunction(IDoubleArraySource source, int quantileBins) {
+		super(source);
+		this.quantileBins = checkBins(quantileBins);
+	}
+
+	/** Create a histogram function on a float array source.
+	 * @param source The data source.
+	 * @param histogram The histogram defining the bins.
+	 */
+	public HistogramArrayFunction(IFloatArraySource source, Histogram histogram) {
+		super(source);
+		this.histogram = histogram;
+		quantileBins = 0;
+	}
+
+	/** Create a histogram function on a float array source, with quantile based bins.
+	 * @param source The data source.
+	 * @param quantileBins The number of bins, computed as quantiles of the data read at the first update.
+	 */
+	public HistogramArrayFunction(IFloatArraySource source, int quantileBins) {
+		super(source);
+		this.quantileBins = checkBins(quantileBins);
+	}
+
+	/** Create a histogram function on an integer array source.
+	 * @param source The data source.
+	 * @param histogram The histogram defining the bins.
+	 */
+	public HistogramArrayFunction(IIntArraySource source, Histogram histogram) {
+		super(source);
+		this.histogram = histogram;
+		quantileBins = 0;
+	}
+
+	/** Create a histogram function on an integer array source, with quantile based bins.
+	 * @param source The data source.
+	 * @param quantileBins The number of bins, computed as quantiles of the data read at the first update.
+	 */
+	public HistogramArrayFunction(IIntArraySource source, int quantileBins) {
+		super(source);
+		this.quantileBins = checkBins(quantileBins);
+	}
+
+	/** Create a histogram function on a long array source.
+	 * @param source The data source.
+	 * @param histogram The histogram defining the bins.
+	 */
+	public HistogramArrayFunction(ILongArraySource source, Histogram histogram) {
+		super(source);
+		this.histogram = histogram;
+		quantileBins = 0;
+	}
+
+	/** Create a histogram function on a long array source, with quantile based bins.
+	 * @param source The data source.
+	 * @param quantileBins The number of bins, computed as quantiles of the data read at the first update.
+	 */
+	public HistogramArrayFunction(ILongArraySource source, int quantileBins) {
+		super(source);
+		this.quantileBins = checkBins(quantileBins);
+	}
+
+	private static int checkBins(int bins) {
+		if (bins < 1)
+			throw new IllegalArgumentException("The number of bins must be positive, got " + bins);
+		return bins;
+	}
+
+	/** Set whether the values of all the updates are counted, instead of the last one only.
+	 * A cumulative function should not be lazy, otherwise the time steps in which no value is
+	 * requested would not be counted.
+	 * @param cumulative True to accumulate the counts over time.
+	 */
+	public void setCumulative(boolean cumulative) {
+		this.cumulative = cumulative;
+	}
+
+	/** Prepare the histogram for a new update.
+	 * @return True if the quantile bins have to be defined by the data of this update. */
+	private boolean prepare() {
+		if (histogram == null)
+			return true;
+		if (!cumulative)
+			histogram.reset();
+		return false;
+	}
+
+	private void defineBins(double[] values) {
+		histogram = new Histogram(Histogram.quantileEdges(values, null, quantileBins));
+	}
+
+	/* (non-Javadoc)
+	 * @see jas.statistics.functions.IArrayFunction#apply(double[])
+	 */
+	public void apply(double[] data) {
+		if (prepare())
+			defineBins(data);
+		histogram.addAll(data);
+	}
+
+	/* (non-Javadoc)
+	 * @see jas.statistics.functions.IArrayFunction#apply(float[])
+	 */
+	public void apply(float[] data) {
+		if (prepare()) {
+			double[] values = new double[data.length];
+			for (int i = 0; i < data.length; i++)
+				values[i] = data[i];
+			defineBins(values);
+		}
+		histogram.addAll(data);
+	}
+
+	/* (non-Javadoc)
+	 * @see jas.statistics.functions.IArrayFunction#apply(int[])
+	 */
+	public void apply(int[] data) {
+		if (prepare()) {
+			double[] values = new double[data.length];
+			for (int i = 0; i < data.length; i++)
+				values[i] = data[i];
+			defineBins(values);
+		}
+		histogram.addAll(data);
+	}
+
+	/* (non-Javadoc)
+	 * @see jas.statistics.functions.IArrayFunction#apply(long[])
+	 */
+	public void apply(long[] data) {
+		if (prepare()) {
+			double[] values = new double[data.length];
+			for (int i = 0; i < data.length; i++)
+				values[i] = data[i];
+			defineBins(values);
+		}
+		histogram.addAll(data);
+	}
+
+	/** Return the histogram, which can be merged with the ones of other partitions or runs.
+	 * A lazy function is evaluated first, so that the histogram holds the current data.
+	 * @return The histogram, or null if quantile bins are used and no update has been done yet.
+	 */
+	public Histogram getHistogram() {
+		validate();
+		return histogram;
+	}
+
+	/**
+	 * Add one series per bin to the given time series, collecting the count (or the frequency)
+	 * of the bin at each update. The series are named after the bin intervals. With quantile bins
+	 * the function is updated immediately, so that the bins are defined by the data available now.
+	 * @param timeSeries The time series.
+	 * @param name The prefix of the series names.
+	 * @param frequency If true the frequencies are collected, otherwise the counts.
+	 */
+	public void addToTimeSeries(TimeSeries timeSeries, String name, boolean frequency) {
+		if (histogram == null)
+			applyFunction();
+		for (int i = 0; i < histogram.getBinCount(); i++)
+			timeSeries.addSeries(name + histogram.getBinLabel(i),
+					new Histogram.BinSource(histogram, i, frequency, this), IDoubleSource.Variables.Default);
+	}
+
+	/* (non-Javadoc)
+	 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
+	 */
+	public double getDoubleValue(Enum<?> valueID) {
+		validate();
+		switch ((Variables) valueID) {
+			case Total:			return (histogram != null ? histogram.getTotal() : 0.);
+			case Underflow:		return (histogram != null ? histogram.getUnderflow() : 0.);
+			case Overflow:		return (histogram != null ? histogram.getOverflow() : 0.);
+			default:
+				throw new UnsupportedOperationException("The computer does not support an operation with id " + valueID);
+		}
+	}
+
+}
@@ -100,18 +100,14 @@ public abstract class MaxArrayFunction extends AbstractArrayFunction implements
 		 * @see jas.statistics.functions.IArrayFunction#apply(long[])
 		 */
 		public void apply(double[] data) {
-			dmax = java.lang.Double.MIN_VALUE;
-			
-			for (int i = 0; i < data.length; i++)
-				if (dmax < data[i])
-					dmax = data[i];
+			dmax = ArrayKernels.max(data, java.lang.Double.NEGATIVE_INFINITY);
 					
 		}
 
 		/* (non-Javadoc)
 		 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 		 */
-		public double getDoubleValue(Enum<?> id) {	return dmax; }
+		public double getDoubleValue(Enum<?> id) {	validate();	return dmax; }
 	}
 	
 	/**
@@ -151,23 +147,20 @@ public abstract class MaxArrayFunction extends AbstractArrayFunction implements
 		 * @see jas.statistics.functions.IArrayFunction#apply(long[])
 		 */
 		public void apply(long[] data) {
-			lmax = java.lang.Long.MIN_VALUE;
-			
-			for (int i = 0; i < data.length; i++)
-				if (lmax < data[i])
-					lmax = data[i];
+			lmax = ArrayKernels.max(data, java.lang.Long.MIN_VALUE);
 					
 		}
 
 		/* (non-Javadoc)
 		 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 		 */
-		public long getLongValue(Enum<?> id) {	return lmax; }
+		public long getLongValue(Enum<?> id) {	validate();	return lmax; }
 
 		/* (non-Javadoc)
 		 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 		 */
 		public double getDoubleValue(Enum<?> variableID) {
+			validate();
 			return lmax;
 		}
 	}
@@ -210,17 +203,14 @@ public abstract class MaxArrayFunction extends AbstractArrayFunction implements
 		 */
 		public void apply(int[] data) {
 			
-			imax = java.lang.Integer.MIN_VALUE;
-			
-			for (int i = 0; i < data.length; i++)
-				if (imax < data[i])
-					imax = data[i];
+			imax = ArrayKernels.max(data, java.lang.Integer.MIN_VALUE);
 		}
 
 		/* (non-Javadoc)
 		 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 		 */
 		public int getIntValue(Enum<?> id) {
+			validate();
 			return imax;
 		}
 
@@ -228,6 +218,7 @@ public abstract class MaxArrayFunction extends AbstractArrayFunction implements
 		 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 		 */
 		public double getDoubleValue(Enum<?> variableID) {
+			validate();
 			return imax;
 		}
 	}
@@ -269,18 +260,14 @@ public abstract class MaxArrayFunction extends AbstractArrayFunction implements
 		 * @see jas.statistics.functions.IArrayFunction#apply(long[])
 		 */
 		public void apply(float[] data) {			
-			fmax = java.lang.Float.MIN_VALUE;
-			
-			for (int i = 0; i < data.length; i++)
-//				if (fmax > data[i])
-				if (fmax < data[i])					//Corrected by Ross
-					fmax = data[i];
+			fmax = ArrayKernels.max(data, java.lang.Float.NEGATIVE_INFINITY);
 		}
 
 		/* (non-Javadoc)
 		 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 		 */
 		public float getFloatValue(Enum<?> id) {
+			validate();
 			return fmax;
 		}
 
@@ -288,6 +275,7 @@ public abstract class MaxArrayFunction extends AbstractArrayFunction implements
 		 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 		 */
 		public double getDoubleValue(Enum<?> variableID) {
+			validate();
 			return fmax;
 		}
 	}
@@ -68,14 +68,8 @@ public class MeanArrayFunction extends AbstractArrayFunction implements IDoubleS
 	public void apply(double[] data) {
 		
 		mean = 0.0;
-		if (data.length != 0) {
-		
-			double sum = 0.0;
-			for (int i = 0; i < data.length; i++) {
-				sum += data[i];
-			}
-			mean = sum / data.length;
-		}
+		if (data.length != 0)
+			mean = ArrayKernels.sum(data) / data.length;
 	}
 
 	/* (non-Javadoc)
@@ -84,14 +78,8 @@ public class MeanArrayFunction extends AbstractArrayFunction implements IDoubleS
 	public void apply(float[] data) {
 		
 		mean = 0.0;
-		if (data.length != 0) {
-		
-			double sum = 0.0;
-			for (int i = 0; i < data.length; i++) {
-				sum += data[i];
-			}
-			mean = sum / data.length;
-		}
+		if (data.length != 0)
+			mean = ArrayKernels.sum(data) / data.length;
 	}
 
 	/* (non-Javadoc)
@@ -100,14 +88,8 @@ public class MeanArrayFunction extends AbstractArrayFunction implements IDoubleS
 	public void apply(int[] data) {
 		
 		mean = 0.0;
-		if (data.length != 0) {
-		
-			double sum = 0.0;
-			for (int i = 0; i < data.length; i++) {
-				sum += data[i];
-			}
-			mean = sum / data.length;
-		}
+		if (data.length != 0)
+			mean = (double) ArrayKernels.sum(data) / data.length;
 	}
 
 	/* (non-Javadoc)
@@ -116,20 +98,15 @@ public class MeanArrayFunction extends AbstractArrayFunction implements IDoubleS
 	public void apply(long[] data) {
 
 		mean = 0.0;
-		if (data.length != 0) {
-		
-			double sum = 0.0;
-			for (int i = 0; i < data.length; i++) {
-				sum += data[i];
-			}
-			mean = sum / data.length;
-		}
+		if (data.length != 0)
+			mean = ArrayKernels.doubleSum(data) / data.length;
 	}
 
 	/* (non-Javadoc)
 	 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 	 */
 	public double getDoubleValue(Enum<?> variableID) {
+		validate();
 		return mean;
 	}
 	
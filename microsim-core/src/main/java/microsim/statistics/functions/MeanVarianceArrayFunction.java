@@ -71,6 +71,7 @@ public class MeanVarianceArrayFunction extends AbstractArrayFunction implements
 	}
 
 	protected double mean, variance;
+	private final double[] sums = new double[2];
 	
 	private void setValues(int count, double sum, double sumOfSquares)
 	{
@@ -84,75 +85,45 @@ public class MeanVarianceArrayFunction extends AbstractArrayFunction implements
 			mean = sum / (double) count;
 			variance = (sumOfSquares - mean * sum) / (double) count; 		//This is a population variance as it is the variance of the array's data.
 		}		
-		System.out.println("count " + count + ", mean " + mean + ", variance " + variance);
 	}
 	
 	/* (non-Javadoc)
 	 * @see jas.statistics.functions.IArrayFunction#apply(double[])
 	 */
 	public void apply(double[] data) {
-		
-		double sum = 0.0;
-		double sumOfSquares = 0.0;
-		for (int i = 0; i < data.length; i++)
-		{
-			double d = data[i];
-			sum += d;
-			sumOfSquares += (d * d);
-		}
-		setValues(data.length, sum, sumOfSquares);
+		ArrayKernels.sumAndSumOfSquares(data, sums);
+		setValues(data.length, sums[0], sums[1]);
 	}
 
 	/* (non-Javadoc)
 	 * @see jas.statistics.functions.IArrayFunction#apply(float[])
 	 */
 	public void apply(float[] data) {
-		double sum = 0.0;
-		double sumOfSquares = 0.0;
-		for (int i = 0; i < data.length; i++)
-		{
-			double d = data[i];
-			sum += d;
-			sumOfSquares += (d * d);
-		}
-		setValues(data.length, sum, sumOfSquares);
+		ArrayKernels.sumAndSumOfSquares(data, sums);
+		setValues(data.length, sums[0], sums[1]);
 	}
 
 	/* (non-Javadoc)
 	 * @see jas.statistics.functions.IArrayFunction#apply(int[])
 	 */
 	public void apply(int[] data) {
-
-		double sum = 0.0;
-		double sumOfSquares = 0.0;
-		for (int i = 0; i < data.length; i++)
-		{
-			double d = data[i];
-			sum += d;
-			sumOfSquares += (d * d);
-		}
-		setValues(data.length, sum, sumOfSquares);
+		ArrayKernels.sumAndSumOfSquares(data, sums);
+		setValues(data.length, sums[0], sums[1]);
 	}
 
 	/* (non-Javadoc)
 	 * @see jas.statistics.functions.IArrayFunction#apply(long[])
 	 */
 	public void apply(long[] data) {
-		double sum = 0.0;
-		double sumOfSquares = 0.0;
-		for (int i = 0; i < data.length; i++)
-		{
-			double d = data[i];
-			sum += d;
-			sumOfSquares += (d * d);
-		}
-		setValues(data.length, sum, sumOfSquares);
+		ArrayKernels.sumAndSumOfSquares(data, sums);
+		setValues(data.length, sums[0], sums[1]);
 	}
 
 	/* (non-Javadoc)
 	 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 	 */
 	public double getDoubleValue(Enum<?> variableID) {
+		validate();
 		switch ( (MeanVarianceArrayFunction.Variables) variableID)
 		{
 			case Mean: return mean;
@@ -91,11 +91,7 @@ public abstract class MinArrayFunction extends AbstractArrayFunction implements
 		 */
 		public void apply(double[] data) {
 			
-			min = java.lang.Double.MAX_VALUE;
-			
-			for (int i = 0; i < data.length; i++)
-				if (min > data[i])
-					min = data[i];
+			min = ArrayKernels.min(data, java.lang.Double.POSITIVE_INFINITY);
 				
 		}
 
@@ -103,6 +99,7 @@ public abstract class MinArrayFunction extends AbstractArrayFunction implements
 		 * @see jas.statistics.ILongSource#getLongValue(int)
 		 */
 		public double getDoubleValue(Enum<?> variableID) {
+			validate();
 			return min;
 		}
 	}
@@ -145,17 +142,14 @@ public abstract class MinArrayFunction extends AbstractArrayFunction implements
 		 */
 		public void apply(long[] data) {
 			
-			lmin = java.lang.Long.MAX_VALUE;
-			
-			for (int i = 0; i < data.length; i++)
-				if (lmin > data[i])
-					lmin = data[i];
+			lmin = ArrayKernels.min(data, java.lang.Long.MAX_VALUE);
 		}
 
 		/* (non-Javadoc)
 		 * @see jas.statistics.ILongSource#getLongValue(int)
 		 */
 		public long getLongValue(Enum<?> variableID) {
+			validate();
 			return lmin;
 		}
 
@@ -163,6 +157,7 @@ public abstract class MinArrayFunction extends AbstractArrayFunction implements
 		 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 		 */
 		public double getDoubleValue(Enum<?> variableID) {
+			validate();
 			return lmin;
 		}
 	}
@@ -205,17 +200,14 @@ public abstract class MinArrayFunction extends AbstractArrayFunction implements
 		 */
 		public void apply(int[] data) {
 			
-			imin = java.lang.Integer.MAX_VALUE;
-			
-			for (int i = 0; i < data.length; i++)
-				if (imin > data[i])
-					imin = data[i];
+			imin = ArrayKernels.min(data, java.lang.Integer.MAX_VALUE);
 		}
 
 		/* (non-Javadoc)
 		 * @see jas.statistics.ILongSource#getLongValue(int)
 		 */
 		public int getIntValue(Enum<?> variableID) {
+			validate();
 			return imin;
 		}
 
@@ -223,6 +215,7 @@ public abstract class MinArrayFunction extends AbstractArrayFunction implements
 		 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 		 */
 		public double getDoubleValue(Enum<?> variableID) {
+			validate();
 			return imin;
 		}
 	}
@@ -265,17 +258,14 @@ public abstract class MinArrayFunction extends AbstractArrayFunction implements
 		 */
 		public void apply(float[] data) {
 			
-			fmin = java.lang.Float.MAX_VALUE;
-			
-			for (int i = 0; i < data.length; i++)
-				if (fmin > data[i])
-					fmin = data[i];
+			fmin = ArrayKernels.min(data, java.lang.Float.POSITIVE_INFINITY);
 		}
 
 		/* (non-Javadoc)
 		 * @see jas.statistics.IFloatSource#getFloatValue(int)
 		 */
 		public float getFloatValue(Enum<?> variableID) {
+			validate();
 			return fmin;
 		}
 
@@ -283,6 +273,7 @@ public abstract class MinArrayFunction extends AbstractArrayFunction implements
 		 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 		 */
 		public double getDoubleValue(Enum<?> variableID) {
+			validate();
 			return fmin;
 		}
 	}
@@ -143,6 +143,7 @@ public class MovingAverageArrayFunction extends AbstractArrayFunction implements
 	 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 	 */
 	public double getDoubleValue(Enum<?> variableID) {
+		validate();
 		return mean;
 	}
 	
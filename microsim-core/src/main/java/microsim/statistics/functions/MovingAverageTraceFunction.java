@@ -12,6 +12,8 @@ import microsim.statistics.ILongSource;
  * The number of values used to compute the average value is specified in the constructor. 
  * The mean function return always double values, so it implements only the 
  * <i>IDoubleSource</i> interface.
+ * The values are kept in a ring buffer (see <i>MovingWindowTraceFunction</i>), so each update
+ * costs a constant time regardless of the window size.
  *
  * <p>Title: JAS</p>
  * <p>Description: Java Agent-based Simulation library</p>
@@ -32,140 +34,42 @@ import microsim.statistics.ILongSource;
  * @author Michele Sonnessa and Ross Richardson
  * <p>
  */
-public class MovingAverageTraceFunction extends AbstractFunction implements IDoubleSource  {
-			
-	protected static final int TYPE_DBL = 0;
-	protected static final int TYPE_FLT = 1;
-	protected static final int TYPE_INT = 2;
-	protected static final int TYPE_LNG = 3;
-
-	protected IDoubleSource dblSource;
-	protected IFloatSource fltSource;
-	protected IIntSource intSource;
-	protected ILongSource lngSource;
-
-	protected int type;
-	protected Enum<?> valueID;
-					
-	protected int len = 0;
-	protected double[] values;
-	protected double average;
-	
-	protected int valueCount = 0;
+public class MovingAverageTraceFunction extends MovingWindowTraceFunction  {
 	
 	/** Create a basic statistic probe on a IDoubleSource object.
 	 *  @param source The IDoubleSource object.
 	 *  @param valueID The value identifier defined by source object. */
 	public MovingAverageTraceFunction(IDoubleSource source, Enum<?> valueID, int windowSize) {
-		super();
-		dblSource = source;
-		len = windowSize;
-		this.valueID = valueID;
-		values = new double[len];
+		super(source, valueID, windowSize);
 	}
 
 	/** Create a basic statistic probe on a IFloatSource object.
 	 *  @param source The IFloatSource object.
 	 *  @param valueID The value identifier defined by source object. */
 	public MovingAverageTraceFunction(IFloatSource source, Enum<?> valueID, int windowSize) {
-		super();
-		fltSource = source;
-		len = windowSize;
-		this.valueID = valueID;
-		values = new double[len];
+		super(source, valueID, windowSize);
 	}
 	
 	/** Create a basic statistic probe on a ILongSource object.
 	 *  @param source The ILongSource object.
 	 *  @param valueID The value identifier defined by source object. */
 	public MovingAverageTraceFunction(ILongSource source, Enum<?> valueID, int windowSize) {
-		super();
-		lngSource = source;
-		len = windowSize;
-		this.valueID = valueID;
-		values = new double[len];
+		super(source, valueID, windowSize);
 	}
 	
 	/** Create a basic statistic probe on a IIntSource object.
 	 *  @param source The IIntSource object.
 	 *  @param valueID The value identifier defined by source object. */
 	public MovingAverageTraceFunction(IIntSource source, Enum<?> valueID, int windowSize) {
-		super();
-		intSource = source;
-		len = windowSize;
-		this.valueID = valueID;
-		values = new double[len];
+		super(source, valueID, windowSize);
 	}
 
-	/** Collect a value from the source. 
-	 * 
-	 * @author Ross Richardson
-	 * 
-	 * */
-	public void applyFunction() 
-	{
-		if(valueCount < len) {		//Slower calculation at startup as average is calculated directly by summing all entries in the values array
-			valueCount++;			//First time this method is called, valueCount is incremented to 1.
-			
-			average = 0.;				//Reset value
-			
-			for (int i = len - valueCount; i < len - 1; i++) {			//First time this method is called, skips for loop.  When valueCount == len, i starts from 0.
-				values[i] = values[i + 1];			//Thus, values[0] is oldest value, values[values.length] is latest value
-				average += values[i];
-			}
-			
-			switch(type)
-			{
-				case TYPE_DBL:
-					values[len - 1] = dblSource.getDoubleValue(valueID); break;
-				case TYPE_FLT:
-					values[len - 1] = fltSource.getFloatValue(valueID); break;
-				case TYPE_LNG:
-					values[len - 1] = lngSource.getLongValue(valueID); break;
-				case TYPE_INT:
-					values[len - 1] = intSource.getIntValue(valueID); break;				
-			}
-			 
-			average += values[len - 1]; 	
-			
-			average = average / ((double)valueCount);		//Divide by number of values included in calculation, instead of window length (len) which would give moving average values biased towards zero.
-			
-		} else {			//Faster calculation takes advantage of previously calculated average
-		
-			//No need to run through the whole array of values to update the average
-			average *= (double)len;
-			average -= values[0];
-			
-			//Still update the values array (though not the average value)
-			for (int i = 0; i < len - 1; i++) {
-				values[i] = values[i + 1];			//Thus, values[0] is oldest value, values[values.length] is latest value
-			}
-			
-			switch(type)
-			{
-				case TYPE_DBL:
-					values[len - 1] = dblSource.getDoubleValue(valueID); break;
-				case TYPE_FLT:
-					values[len - 1] = fltSource.getFloatValue(valueID); break;
-				case TYPE_LNG:
-					values[len - 1] = lngSource.getLongValue(valueID); break;
-				case TYPE_INT:
-					values[len - 1] = intSource.getIntValue(valueID); break;				
-			}
-			 
-			average += values[len - 1]; 	
-			
-			average = average / ((double)len);
-		}
-	}
-
-		
-	/** Return the result of a given statistic.
-			*  @param valueID One of the F_ constants representing available statistics.
-			*  @return The computed value.
-			*  @throws UnsupportedOperationException If the given valueID is not supported.*/
+	/** Return the average of the values in the window. Until the window is full the average
+	 * is computed on the values collected so far, so that it is not biased towards zero.
+	 *  @param valueID Ignored, the function computes only the average.
+	 *  @return The computed value. */
 	public double getDoubleValue(Enum<?> valueID) {
-		return average;
+		return window.getMean();
 	}
 		
 	/**
@@ -0,0 +1,178 @@
+package microsim.statistics.functions;
+
+/**
+ * An accumulator of the statistics of the last <i>windowSize</i> values of a stream.<br>
+ * The values are kept in a ring buffer, so adding a value never shifts the stored ones.
+ * The mean and the variance are updated in constant time with the sliding form of the Welford
+ * update (the oldest value is replaced by the newest one), and are recomputed from the buffer once
+ * every <i>windowSize</i> evictions, so that rounding errors cannot accumulate over long runs; the
+ * cost of the recomputation is amortised over the window. The minimum and the maximum are tracked
+ * with two monotonic deques of buffer positions, giving an amortised constant cost per value.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class MovingWindow {
+
+	private final int windowSize;
+	private final double[] values;
+	/** The number of values added since the last reset. Position i of the stream is stored at i % windowSize. */
+	private long added = 0;
+	private int count = 0;
+	private int evictions = 0;
+
+	private double mean = 0.;
+	private double m2 = 0.;
+
+	// Monotonic deques of stream positions, stored in ring arrays of windowSize elements.
+	private final long[] minDeque;
+	private final long[] maxDeque;
+	private int minHead = 0, minSize = 0;
+	private int maxHead = 0, maxSize = 0;
+
+	/** Create an empty window.
+	 * @param windowSize The number of most recent values the statistics are computed on.
+	 */
+	public MovingWindow(int windowSize) {
+		if (windowSize < 1)
+			throw new IllegalArgumentException("The window size must be positive, got " + windowSize);
+		this.windowSize = windowSize;
+		values = new double[windowSize];
+		minDeque = new long[windowSize];
+		maxDeque = new long[windowSize];
+	}
+
+	/** Add a value to the window, evicting the oldest one if the window is full.
+	 * @param x The value.
+	 */
+	public void add(double x) {
+		int slot = (int) (added % windowSize);
+		if (count < windowSize) {
+			count++;
+			double delta = x - mean;
+			mean += delta / count;
+			m2 += delta * (x - mean);
+		} else {
+			double old = values[slot];
+			double oldMean = mean;
+			mean += (x - old) / windowSize;
+			m2 += (x - old) * (x - mean + old - oldMean);
+			if (++evictions == windowSize) {
+				values[slot] = x;
+				recompute();
+			}
+		}
+		values[slot] = x;
+
+		long position = added++;
+		long expired = position - windowSize;
+		if (minSize > 0 && minDeque[minHead] == expired) {
+			minHead = (minHead + 1) % windowSize;
+			minSize--;
+		}
+		while (minSize > 0 && values[(int) (minDeque[(minHead + minSize - 1) % windowSize] % windowSize)] >= x)
+			minSize--;
+		minDeque[(minHead + minSize++) % windowSize] = position;
+
+		if (maxSize > 0 && maxDeque[maxHead] == expired) {
+			maxHead = (maxHead + 1) % windowSize;
+			maxSize--;
+		}
+		while (maxSize > 0 && values[(int) (maxDeque[(maxHead + maxSize - 1) % windowSize] % windowSize)] <= x)
+			maxSize--;
+		maxDeque[(maxHead + maxSize++) % windowSize] = position;
+	}
+
+	/** Recompute mean and squared deviations from the buffer, discarding the accumulated rounding errors. */
+	private void recompute() {
+		evictions = 0;
+		double sum = 0.;
+		for (int i = 0; i < count; i++)
+			sum += values[i];
+		mean = sum / count;
+		double s = 0.;
+		for (int i = 0; i < count; i++) {
+			double d = values[i] - mean;
+			s += d * d;
+		}
+		m2 = s;
+	}
+
+	/** Remove all the values from the window. */
+	public void reset() {
+		added = 0;
+		count = 0;
+		evictions = 0;
+		mean = m2 = 0.;
+		minHead = minSize = 0;
+		maxHead = maxSize = 0;
+	}
+
+	/** @return The maximum number of values in the window. */
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	/** @return The number of values currently in the window, at most <i>getWindowSize()</i>. */
+	public int getCount() {
+		return count;
+	}
+
+	/** @return True if the window contains <i>getWindowSize()</i> values. */
+	public boolean isFull() {
+		return count == windowSize;
+	}
+
+	/** @return The most recent value, or NaN if the window is empty. */
+	public double getLast() {
+		if (count == 0)
+			return Double.NaN;
+		return values[(int) ((added - 1) % windowSize)];
+	}
+
+	/** @return The mean of the values in the window, or 0 if empty. */
+	public double getMean() {
+		return mean;
+	}
+
+	/** @return The sum of the values in the window. */
+	public double getSum() {
+		return mean * count;
+	}
+
+	/** @return The sample (unbiased) variance of the values in the window, or 0 if less than two values are available. */
+	public double getVariance() {
+		if (count > 1)
+			return Math.max(m2, 0.) / (count - 1);
+		else
+			return 0.0;
+	}
+
+	/** @return The sample standard deviation of the values in the window. */
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+
+	/** @return The minimum value in the window, or NaN if empty. */
+	public double getMin() {
+		if (minSize == 0)
+			return Double.NaN;
+		return values[(int) (minDeque[minHead] % windowSize)];
+	}
+
+	/** @return The maximum value in the window, or NaN if empty. */
+	public double getMax() {
+		if (maxSize == 0)
+			return Double.NaN;
+		return values[(int) (maxDeque[maxHead] % windowSize)];
+	}
+
+}
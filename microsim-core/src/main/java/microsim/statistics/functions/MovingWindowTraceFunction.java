@@ -0,0 +1,116 @@
+package microsim.statistics.functions;
+
+import microsim.statistics.IDoubleSource;
+import microsim.statistics.IFloatSource;
+import microsim.statistics.IIntSource;
+import microsim.statistics.ILongSource;
+
+/**
+ * This class computes the statistics of the last values collected from a data source: mean,
+ * variance, minimum and maximum over a moving window whose length is specified in the constructor.
+ * Each update costs a constant (amortised) time, regardless of the window length, since the values
+ * are stored in a <i>MovingWindow</i> ring buffer. Until the window is full the statistics are
+ * computed on the values collected so far.
+ * The function returns always double values, so it implements only the <i>IDoubleSource</i> interface.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class MovingWindowTraceFunction extends AbstractTraceFunction {
+
+	public enum Variables {
+		LastValue,
+		Count,
+		Mean,
+		Variance,
+		StandardDeviation,
+		Min,
+		Max;
+	}
+
+	protected final MovingWindow window;
+
+	/** Create a moving window function on a IDoubleSource object.
+	 *  @param source The IDoubleSource object.
+	 *  @param valueID The value identifier defined by source object.
+	 *  @param windowSize The number of most recent values the statistics are computed on. */
+	public MovingWindowTraceFunction(IDoubleSource source, Enum<?> valueID, int windowSize) {
+		super(source, valueID);
+		window = new MovingWindow(windowSize);
+	}
+
+	/** Create a moving window function on a IFloatSource object.
+	 *  @param source The IFloatSource object.
+	 *  @param valueID The value identifier defined by source object.
+	 *  @param windowSize The number of most recent values the statistics are computed on. */
+	public MovingWindowTraceFunction(IFloatSource source, Enum<?> valueID, int windowSize) {
+		super(source, valueID);
+		window = new MovingWindow(windowSize);
+	}
+
+	/** Create a moving window function on a ILongSource object.
+	 *  @param source The ILongSource object.
+	 *  @param valueID The value identifier defined by source object.
+	 *  @param windowSize The number of most recent values the statistics are computed on. */
+	public MovingWindowTraceFunction(ILongSource source, Enum<?> valueID, int windowSize) {
+		super(source, valueID);
+		window = new MovingWindow(windowSize);
+	}
+
+	/** Create a moving window function on a IIntSource object.
+	 *  @param source The IIntSource object.
+	 *  @param valueID The value identifier defined by source object.
+	 *  @param windowSize The number of most recent values the statistics are computed on. */
+	public MovingWindowTraceFunction(IIntSource source, Enum<?> valueID, int windowSize) {
+		super(source, valueID);
+		window = new MovingWindow(windowSize);
+	}
+
+	/** Create a moving window function on a generic object.
+	 *  @param source A generic source object.
+	 *  @param valueName The name of the field or the method returning the variable to be probed.
+	 *  @param getFromMethod Specifies if valueName is a method or a property value.
+	 *  @param windowSize The number of most recent values the statistics are computed on. */
+	public MovingWindowTraceFunction(Object source, String valueName, boolean getFromMethod, int windowSize) {
+		super(source, valueName, getFromMethod);
+		window = new MovingWindow(windowSize);
+	}
+
+	/** Collect a value from the source. */
+	public void applyFunction() {
+		window.add(readSource());
+	}
+
+	/** Return the underlying window.
+	 * @return The moving window accumulator. */
+	public MovingWindow getWindow() {
+		return window;
+	}
+
+	/** Return the result of a given statistic.
+	 *  @param valueID One of the Variables constants representing available statistics.
+	 *  @return The computed value.
+	 *  @throws UnsupportedOperationException If the given valueID is not supported.*/
+	public double getDoubleValue(Enum<?> valueID) {
+		switch ((Variables) valueID) {
+			case LastValue:				return window.getLast();
+			case Count:					return (double) window.getCount();
+			case Mean:					return window.getMean();
+			case Variance:				return window.getVariance();
+			case StandardDeviation:		return window.getStandardDeviation();
+			case Min:					return window.getMin();
+			case Max:					return window.getMax();
+			default:
+				throw new UnsupportedOperationException("The computer does not support an operation with id " + valueID);
+		}
+	}
+
+}
@@ -59,17 +59,54 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 		/** Return the number of collected values. */
 		Count,
 		/** Return the sum of collected values. */
-		Sum;
+		Sum,
+		/** Return the skewness of the collected values. */
+		Skewness,
+		/** Return the excess kurtosis of the collected values. */
+		Kurtosis;
 	}
 	
+	/** The numerically stable accumulator of the moments of the collected values, which also counts them. */
+	protected final OnlineMoments moments = new OnlineMoments();
+	
+	/** The number of collected values.
+	 *  @deprecated Kept in sync with the moments for the subclasses reading it, use {@link #getCount()}. */
+	@Deprecated
 	protected int count = 0;
 	
-	/** Collect a value from the source. */
+	/** Collect a value from the source. The implementations read the value and add it to the moments,
+	 *  which count it. */
 	public void updateSource() { count++;	}
 	
-	public abstract double getMean();
-	public abstract double getVariance();
-	public int getCount() { return count;	}
+	/** The mean function.
+	 *  @return The mean value.*/
+	public double getMean() { return moments.getMean(); }
+	/** The variance function.
+	 *  @return The sample variance value.*/
+	public double getVariance() { return moments.getVariance(); }
+	/** The skewness function.
+	 *  @return The moment coefficient of skewness.*/
+	public double getSkewness() { return moments.getSkewness(); }
+	/** The kurtosis function.
+	 *  @return The excess kurtosis.*/
+	public double getKurtosis() { return moments.getKurtosis(); }
+	public int getCount() { return (int) moments.getCount();	}
+	
+	/** Return the accumulator of the moments of the collected values, which can be merged with
+	 *  the ones of other partitions or replications.
+	 *  @return The moments accumulator. */
+	public OnlineMoments getMoments() { return moments; }
+	
+	/** Merge the statistics collected by another function into this one, as if all the values
+	 *  had been collected by this object. The last value is not affected.
+	 *  @param other The function to be merged.
+	 *  @throws IllegalArgumentException If the other function does not manage the same data type. */
+	public void merge(MultiTraceFunction other) {
+		if (other.getClass() != getClass())
+			throw new IllegalArgumentException("Cannot merge a " + other.getClass().getName() + " into a " + getClass().getName() + ".");
+		moments.merge(other.moments);
+		count += other.count;
+	}
 	
 	/**
 	 * ISimEventListener callback function. It supports only jas.engine.Sim.EVENT_UPDATE event.
@@ -90,7 +127,9 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 		{			
 			case Mean: 			return getMean();
 			case Variance: 	return getVariance();
-			case Count:			return (double) getCount();
+			case Skewness: 	return getSkewness();
+			case Kurtosis: 	return getKurtosis();
+			case Count:			return (double) moments.getCount();
 			default:
 				throw new UnsupportedOperationException("The valueID " + valueID + " is not supported.");
 		}
@@ -121,7 +160,7 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 	public static class Long extends MultiTraceFunction implements ILongSource {
 		protected long max = java.lang.Long.MIN_VALUE;
 		protected long min = java.lang.Long.MAX_VALUE;
-		protected long sum = 0, sumSquare = 0;
+		protected long sum = 0;
 	
 		protected ILongSource target;
 		private Enum<?> valueID;
@@ -157,7 +196,7 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 			if (lastRead > max)
 				max = lastRead;
 			sum += lastRead;
-			sumSquare += (lastRead * lastRead);
+			moments.add(lastRead);
 		}
 
 		/** Return the result of a given statistic.
@@ -186,7 +225,7 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 				case LastValue:		return lastRead;
 				case Max :			return max;
 				case Min :			return min;
-				case Count :		return count;
+				case Count :		return moments.getCount();
 				case Sum:				return sum;	
 				default :
 					throw new UnsupportedOperationException(
@@ -195,16 +234,6 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 			}
 		}
 
-		/** The variance function.
-		 *  @return The variance value.*/
-		public double getVariance() {
-			if (count > 1)
-//				return (sumSquare - (sum * sum)) / (count - 1);
-				return (sumSquare - ( (sum * sum) / count) ) / (count - 1);		//Corrected by Ross
-			else
-				return 0.0;
-		}
-
 		/** Return the last long value read from the source object.
 			*  @return A long value collected at the last reading operation.*/
 		public long getLastValue() {
@@ -226,13 +255,19 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 		public long getMin() {
 			return min;
 		}
-		/** The mean function.
-			*  @return The mean value.*/
-		public double getMean() {
-			if (count > 0)
-				return sum / count;
-			else
-				return 0.0;
+
+		/** Merge the statistics collected by another function into this one, minimum, maximum and
+			*  sum included.
+			*  @param other The function to be merged.
+			*  @throws IllegalArgumentException If the other function is not of the same class.*/
+		public void merge(MultiTraceFunction other) {
+			super.merge(other);
+			MultiTraceFunction.Long o = (MultiTraceFunction.Long) other;
+			if (o.min < min)
+				min = o.min;
+			if (o.max > max)
+				max = o.max;
+			sum += o.sum;
 		}
 
 	}
@@ -260,9 +295,9 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 	 *
 	 */
 	public static class Double extends MultiTraceFunction implements IDoubleSource{
-		protected double max = java.lang.Double.MIN_VALUE;
-		protected double min = java.lang.Double.MAX_VALUE;
-		protected double sum = 0, sumSquare = 0;
+		protected double max = java.lang.Double.NEGATIVE_INFINITY;
+		protected double min = java.lang.Double.POSITIVE_INFINITY;
+		protected double sum = 0;
 		
 		protected IDoubleSource target;
 		private Enum<?> valueID;
@@ -298,7 +333,7 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 			if (lastRead > max)
 				max = lastRead;
 			sum += lastRead;
-			sumSquare += (lastRead * lastRead);
+			moments.add(lastRead);
 		}
 
 		/** Return the result of a given statistic.
@@ -318,16 +353,6 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 			}
 		}
 
-		/** The variance function.
-		 *  @return The variance value.*/
-		public double getVariance() {
-			if (count > 1)
-//				return (sumSquare - (sum * sum)) / (count - 1);
-				return (sumSquare - ( (sum * sum) / count) ) / (count - 1);		//Corrected by Ross
-			else
-				return 0.0;
-		}
-
 		/** Return the last double value read from the source object.
 			*  @return A double value collected at the last reading operation.*/
 		public double getLastValue() {
@@ -349,13 +374,19 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 		public double getMin() {
 			return min;
 		}
-		/** The mean function.
-			*  @return The mean value.*/
-		public double getMean() {
-			if (count > 0)
-				return sum / count;
-			else
-				return 0.0;
+
+		/** Merge the statistics collected by another function into this one, minimum, maximum and
+			*  sum included.
+			*  @param other The function to be merged.
+			*  @throws IllegalArgumentException If the other function is not of the same class.*/
+		public void merge(MultiTraceFunction other) {
+			super.merge(other);
+			MultiTraceFunction.Double o = (MultiTraceFunction.Double) other;
+			if (o.min < min)
+				min = o.min;
+			if (o.max > max)
+				max = o.max;
+			sum += o.sum;
 		}
 
 	}
@@ -385,8 +416,7 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 	public static class Integer	extends MultiTraceFunction implements IIntSource {
 		protected int max = java.lang.Integer.MIN_VALUE;
 		protected int min = java.lang.Integer.MAX_VALUE;
-		protected int sum = 0;
-		protected long sumSquare = 0;
+		protected long sum = 0;
 	
 		protected IIntSource target;
 		private Enum<?> valueID;
@@ -425,7 +455,7 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 			if (lastRead > max)
 				max = lastRead;
 			sum += lastRead;
-			sumSquare += (lastRead * lastRead);
+			moments.add(lastRead);
 		}
 
 		/** Return the result of a given statistic.
@@ -453,7 +483,7 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 				case LastValue :		return lastRead;
 				case Max :			return max;
 				case Min :			return min;
-				case Count :		return count;
+				case Count :		return getCount();
 				default :
 					throw new UnsupportedOperationException(
 						valueID
@@ -461,16 +491,6 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 			}
 		}
 
-		/** The variance function.
-		 *  @return The variance value.*/
-		public double getVariance() {
-			if (count > 1)
-//				return (sumSquare - (sum * sum)) / (count - 1);
-				return (sumSquare - ( (sum * sum) / count) ) / (count - 1);		//Corrected by Ross
-			else
-				return 0.0;
-		}
-
 		/** Return the last int value read from the source object.
 			*  @return A int value collected at the last reading operation.*/
 		public int getLastValue() {
@@ -483,8 +503,14 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 			return max;
 		}
 		/** The sum function.
-			*  @return The sum of collected values.*/
+			*  @return The sum of collected values, truncated to an int as in the previous versions.
+			*  @see #getLongSum()*/
 		public int getSum() {
+			return (int) sum;
+		}		
+		/** The sum function.
+			*  @return The sum of collected values, which does not overflow as an int could.*/
+		public long getLongSum() {
 			return sum;
 		}		
 		/** The minimum function.
@@ -492,13 +518,19 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 		public int getMin() {
 			return min;
 		}
-		/** The mean function.
-			*  @return The mean value.*/
-		public double getMean() {
-			if (count > 0)
-				return sum / count;
-			else
-				return 0.0;
+
+		/** Merge the statistics collected by another function into this one, minimum, maximum and
+			*  sum included.
+			*  @param other The function to be merged.
+			*  @throws IllegalArgumentException If the other function is not of the same class.*/
+		public void merge(MultiTraceFunction other) {
+			super.merge(other);
+			MultiTraceFunction.Integer o = (MultiTraceFunction.Integer) other;
+			if (o.min < min)
+				min = o.min;
+			if (o.max > max)
+				max = o.max;
+			sum += o.sum;
 		}
 	}
 
@@ -525,10 +557,9 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 	 *
 	 */
 	public static class Float extends MultiTraceFunction implements IFloatSource {
-		protected float max = java.lang.Float.MIN_VALUE;
-		protected float min = java.lang.Float.MAX_VALUE;
+		protected float max = java.lang.Float.NEGATIVE_INFINITY;
+		protected float min = java.lang.Float.POSITIVE_INFINITY;
 		protected float sum = 0.0f;
-		protected double sumSquare = 0.0;
 		
 		protected IFloatSource target;
 		private Enum<?> valueID;
@@ -564,7 +595,7 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 			if (lastRead > max)
 				max = lastRead;
 			sum += lastRead;
-			sumSquare += (lastRead * lastRead);
+			moments.add(lastRead);
 		}
 
 		/** Return the result of a given statistic.
@@ -595,6 +626,8 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 				case Min :			return min;
 				case Mean :			return (float) getMean();
 				case Variance :	return (float) getVariance();
+				case Skewness :	return (float) getSkewness();
+				case Kurtosis :	return (float) getKurtosis();
 				case Sum:				return sum;	
 				default :
 					throw new UnsupportedOperationException(
@@ -603,16 +636,6 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 			}
 		}
 
-		/** The variance function.
-		 *  @return The variance value.*/
-		public double getVariance() {
-			if (count > 1)
-//				return (sumSquare - (sum * sum)) / (count - 1);
-				return (sumSquare - ( (sum * sum) / count) ) / (count - 1);		//Corrected by Ross
-			else
-				return 0.0;
-		}
-
 		/** Return the last float value read from the source object.
 			*  @return A float value collected at the last reading operation.*/
 		public float getLastValue() {
@@ -634,13 +657,19 @@ public abstract class MultiTraceFunction implements IDoubleSource, IUpdatableSou
 		public float getMin() {
 			return min;
 		}
-		/** The mean function.
-			*  @return The mean value.*/
-		public double getMean() {
-			if (count > 0)
-				return sum / count;
-			else
-				return 0.0;
+
+		/** Merge the statistics collected by another function into this one, minimum, maximum and
+			*  sum included.
+			*  @param other The function to be merged.
+			*  @throws IllegalArgumentException If the other function is not of the same class.*/
+		public void merge(MultiTraceFunction other) {
+			super.merge(other);
+			MultiTraceFunction.Float o = (MultiTraceFunction.Float) other;
+			if (o.min < min)
+				min = o.min;
+			if (o.max > max)
+				max = o.max;
+			sum += o.sum;
 		}
 
 	}
@@ -0,0 +1,181 @@
+package microsim.statistics.functions;
+
+/**
+ * A memoryless accumulator of the means and of the covariance matrix of a stream of vectors of
+ * <i>k</i> values.<br>
+ * The vectors are accumulated with the multivariate form of the update of Welford, which keeps
+ * the co-moments (the sums of the products of the deviations from the current means) instead of
+ * raw sums of products, so that the results do not lose precision when the means are large
+ * compared to the dispersion. Two accumulators of the same dimension can be merged with the
+ * pairwise formulas of Chan et al., so the matrix of different partitions of a population, or
+ * of different replications, can be computed independently and combined afterwards.<br>
+ * Only the upper triangle of the symmetric matrix is stored.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class OnlineCovariance {
+
+	private final int dimension;
+	private long count = 0;
+	private final double[] mean;
+	/** The co-moments, row by row of the upper triangle: (i, j) with j &gt;= i is at index(i, j). */
+	private final double[] comoments;
+	private final double[] delta;
+
+	/** Create an empty accumulator.
+	 * @param dimension The number of values of each vector.
+	 */
+	public OnlineCovariance(int dimension) {
+		if (dimension < 1)
+			throw new IllegalArgumentException("The dimension must be positive, got " + dimension);
+		this.dimension = dimension;
+		mean = new double[dimension];
+		comoments = new double[dimension * (dimension + 1) / 2];
+		delta = new double[dimension];
+	}
+
+	private int index(int i, int j) {
+		if (i > j) {
+			int t = i; i = j; j = t;
+		}
+		return i * dimension - i * (i - 1) / 2 + (j - i);
+	}
+
+	/** Add a vector to the accumulator.
+	 * @param x The vector, of <i>getDimension()</i> values.
+	 */
+	public void add(double[] x) {
+		count++;
+		double n = count;
+		for (int i = 0; i < dimension; i++) {
+			delta[i] = x[i] - mean[i];
+			mean[i] += delta[i] / n;
+		}
+		// delta is taken before the update of the means, x - mean after it
+		int k = 0;
+		for (int i = 0; i < dimension; i++) {
+			double di = delta[i];
+			for (int j = i; j < dimension; j++)
+				comoments[k++] += di * (x[j] - mean[j]);
+		}
+	}
+
+	/** Merge the vectors accumulated by another object into this one. The other object is not modified.
+	 * @param other An accumulator of the same dimension.
+	 */
+	public void merge(OnlineCovariance other) {
+		if (other.dimension != dimension)
+			throw new IllegalArgumentException("Accumulators of dimension " + dimension + " and " + other.dimension + " cannot be merged.");
+		if (other.count == 0)
+			return;
+		if (count == 0) {
+			count = other.count;
+			System.arraycopy(other.mean, 0, mean, 0, dimension);
+			System.arraycopy(other.comoments, 0, comoments, 0, comoments.length);
+			return;
+		}
+
+		double na = count, nb = other.count;
+		double n = na + nb;
+		for (int i = 0; i < dimension; i++)
+			delta[i] = other.mean[i] - mean[i];
+		int k = 0;
+		for (int i = 0; i < dimension; i++)
+			for (int j = i; j < dimension; j++, k++)
+				comoments[k] += other.comoments[k] + delta[i] * delta[j] * na * nb / n;
+		for (int i = 0; i < dimension; i++)
+			mean[i] += delta[i] * nb / n;
+		count += other.count;
+	}
+
+	/** Remove all the accumulated vectors. */
+	public void reset() {
+		count = 0;
+		java.util.Arrays.fill(mean, 0.);
+		java.util.Arrays.fill(comoments, 0.);
+	}
+
+	/** @return The number of values of each vector. */
+	public int getDimension() {
+		return dimension;
+	}
+
+	/** @return The number of accumulated vectors. */
+	public long getCount() {
+		return count;
+	}
+
+	/** @param i The index of a variable.
+	 * @return The mean of the variable, or 0 if no vector has been accumulated. */
+	public double getMean(int i) {
+		return mean[i];
+	}
+
+	/** @param i The index of a variable.
+	 * @param j The index of another variable.
+	 * @return The sample (unbiased) covariance of the two variables, or 0 if less than two vectors are available. */
+	public double getCovariance(int i, int j) {
+		if (count > 1)
+			return comoments[index(i, j)] / (count - 1);
+		else
+			return 0.0;
+	}
+
+	/** @param i The index of a variable.
+	 * @param j The index of another variable.
+	 * @return The population covariance of the two variables, or 0 if no vector has been accumulated. */
+	public double getPopulationCovariance(int i, int j) {
+		if (count > 0)
+			return comoments[index(i, j)] / count;
+		else
+			return 0.0;
+	}
+
+	/** @param i The index of a variable.
+	 * @return The sample (unbiased) variance of the variable. */
+	public double getVariance(int i) {
+		return getCovariance(i, i);
+	}
+
+	/** @param i The index of a variable.
+	 * @param j The index of another variable.
+	 * @return The Pearson correlation of the two variables, or NaN if either of them is constant. */
+	public double getCorrelation(int i, int j) {
+		if (i == j)
+			return (comoments[index(i, i)] > 0. ? 1. : Double.NaN);
+		double sii = comoments[index(i, i)];
+		double sjj = comoments[index(j, j)];
+		if (!(sii > 0.) || !(sjj > 0.))
+			return Double.NaN;
+		double r = comoments[index(i, j)] / Math.sqrt(sii * sjj);
+		return Math.max(-1., Math.min(1., r));
+	}
+
+	/** @return A new k&times;k array holding the sample covariance matrix. */
+	public double[][] getCovarianceMatrix() {
+		double[][] matrix = new double[dimension][dimension];
+		for (int i = 0; i < dimension; i++)
+			for (int j = i; j < dimension; j++)
+				matrix[i][j] = matrix[j][i] = getCovariance(i, j);
+		return matrix;
+	}
+
+	/** @return A new k&times;k array holding the correlation matrix. */
+	public double[][] getCorrelationMatrix() {
+		double[][] matrix = new double[dimension][dimension];
+		for (int i = 0; i < dimension; i++)
+			for (int j = i; j < dimension; j++)
+				matrix[i][j] = matrix[j][i] = getCorrelation(i, j);
+		return matrix;
+	}
+
+}
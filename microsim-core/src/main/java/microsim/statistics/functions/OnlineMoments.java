@@ -0,0 +1,205 @@
+package microsim.statistics.functions;
+
+import microsim.statistics.IDoubleSource;
+
+/**
+ * A memoryless accumulator of the first four central moments of a stream of values.<br>
+ * Values are accumulated with the numerically stable update of Welford, extended to the third
+ * and fourth moments by Pebay, so that no large sums of squares are ever computed and the results
+ * do not lose precision nor overflow over long runs. Two accumulators can be merged with the
+ * pairwise formulas of Chan et al., which makes it possible to compute the statistics of different
+ * partitions of a population, or different replications of a simulation, independently and
+ * combine them afterwards. Merging gives the same result as accumulating all the values in one
+ * object, up to rounding errors.<br>
+ * The statistics are exposed through the <i>IDoubleSource</i> interface, using the
+ * <i>MultiTraceFunction.Variables</i> identifiers (LastValue excluded).
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class OnlineMoments implements IDoubleSource {
+
+	private long count = 0;
+	private double mean = 0., m2 = 0., m3 = 0., m4 = 0.;
+	private double sum = 0., sumCompensation = 0.;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	/** Add a value to the accumulator.
+	 * @param x The value.
+	 */
+	public void add(double x) {
+		long n1 = count;
+		count++;
+		double n = count;
+		double delta = x - mean;
+		double deltaN = delta / n;
+		double deltaN2 = deltaN * deltaN;
+		double term1 = delta * deltaN * n1;
+		mean += deltaN;
+		m4 += term1 * deltaN2 * (n * n - 3. * n + 3.) + 6. * deltaN2 * m2 - 4. * deltaN * m3;
+		m3 += term1 * deltaN * (n - 2.) - 3. * deltaN * m2;
+		m2 += term1;
+
+		addToSum(x);
+		if (x < min)
+			min = x;
+		if (x > max)
+			max = x;
+	}
+
+	/** Merge the values accumulated by another object into this one. The other object is not modified.
+	 * @param other The accumulator to be merged.
+	 */
+	public void merge(OnlineMoments other) {
+		if (other.count == 0)
+			return;
+		if (count == 0) {
+			count = other.count;
+			mean = other.mean;
+			m2 = other.m2;
+			m3 = other.m3;
+			m4 = other.m4;
+			sum = other.sum;
+			sumCompensation = other.sumCompensation;
+			min = other.min;
+			max = other.max;
+			return;
+		}
+
+		double na = count, nb = other.count;
+		double n = na + nb;
+		double delta = other.mean - mean;
+		double delta2 = delta * delta;
+		double delta3 = delta2 * delta;
+		double delta4 = delta2 * delta2;
+
+		double newMean = mean + delta * nb / n;
+		double newM2 = m2 + other.m2 + delta2 * na * nb / n;
+		double newM3 = m3 + other.m3 + delta3 * na * nb * (na - nb) / (n * n)
+				+ 3. * delta * (na * other.m2 - nb * m2) / n;
+		double newM4 = m4 + other.m4 + delta4 * na * nb * (na * na - na * nb + nb * nb) / (n * n * n)
+				+ 6. * delta2 * (na * na * other.m2 + nb * nb * m2) / (n * n)
+				+ 4. * delta * (na * other.m3 - nb * m3) / n;
+
+		count += other.count;
+		mean = newMean;
+		m2 = newM2;
+		m3 = newM3;
+		m4 = newM4;
+		addToSum(other.sum);
+		addToSum(-other.sumCompensation);
+		if (other.min < min)
+			min = other.min;
+		if (other.max > max)
+			max = other.max;
+	}
+
+	/** Kahan-Babuska compensated summation, so that the sum of many values keeps its precision. */
+	private void addToSum(double x) {
+		double y = x - sumCompensation;
+		double t = sum + y;
+		sumCompensation = (t - sum) - y;
+		sum = t;
+	}
+
+	/** Remove all the accumulated values. */
+	public void reset() {
+		count = 0;
+		mean = m2 = m3 = m4 = 0.;
+		sum = sumCompensation = 0.;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+	}
+
+	/** @return The number of accumulated values. */
+	public long getCount() {
+		return count;
+	}
+
+	/** @return The mean of the accumulated values, or 0 if empty. */
+	public double getMean() {
+		return mean;
+	}
+
+	/** @return The sum of the accumulated values. */
+	public double getSum() {
+		return sum;
+	}
+
+	/** @return The sample (unbiased) variance of the accumulated values, or 0 if less than two values have been collected. */
+	public double getVariance() {
+		if (count > 1)
+			return m2 / (count - 1);
+		else
+			return 0.0;
+	}
+
+	/** @return The population (biased) variance of the accumulated values, or 0 if empty. */
+	public double getPopulationVariance() {
+		if (count > 0)
+			return m2 / count;
+		else
+			return 0.0;
+	}
+
+	/** @return The sample standard deviation of the accumulated values. */
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+
+	/** @return The moment coefficient of skewness (m3 / m2^1.5) of the accumulated values,
+	 * or 0 if the values are constant or less than two. */
+	public double getSkewness() {
+		if (count < 2 || m2 == 0.)
+			return 0.0;
+		return Math.sqrt((double) count) * m3 / Math.pow(m2, 1.5);
+	}
+
+	/** @return The excess kurtosis (m4 / m2^2 - 3) of the accumulated values,
+	 * or 0 if the values are constant or less than two. */
+	public double getKurtosis() {
+		if (count < 2 || m2 == 0.)
+			return 0.0;
+		return count * m4 / (m2 * m2) - 3.;
+	}
+
+	/** @return The minimum accumulated value, or +Infinity if empty. */
+	public double getMin() {
+		return min;
+	}
+
+	/** @return The maximum accumulated value, or -Infinity if empty. */
+	public double getMax() {
+		return max;
+	}
+
+	/** Return one of the accumulated statistics.
+	 * @param valueID One of the <i>MultiTraceFunction.Variables</i> identifiers, LastValue excluded.
+	 * @return The computed value.
+	 * @throws UnsupportedOperationException If the given valueID is not supported.
+	 */
+	public double getDoubleValue(Enum<?> valueID) {
+		switch ((MultiTraceFunction.Variables) valueID) {
+			case Min:			return min;
+			case Max:			return max;
+			case Mean:			return getMean();
+			case Variance:		return getVariance();
+			case Skewness:		return getSkewness();
+			case Kurtosis:		return getKurtosis();
+			case Count:			return (double) count;
+			case Sum:			return sum;
+			default:
+				throw new UnsupportedOperationException("The valueID " + valueID + " is not supported.");
+		}
+	}
+
+}
@@ -111,6 +111,7 @@ public class PercentileArrayFunction extends AbstractArrayFunction implements ID
 	}
 	
 	public double getDoubleValue(Enum<?> variableID) {
+		validate();
 		switch ( (PercentileArrayFunction.Variables) variableID)
 		{
 			case P1: return p1;
@@ -100,17 +100,14 @@ public abstract class SumArrayFunction extends AbstractArrayFunction implements
 		 * @see jas.statistics.functions.IArrayFunction#apply(long[])
 		 */
 		public void apply(double[] data) {
-			dsum = 0.;
-			
-			for (int i = 0; i < data.length; i++)
-				dsum += data[i];
+			dsum = ArrayKernels.sum(data);
 					
 		}
 
 		/* (non-Javadoc)
 		 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 		 */
-		public double getDoubleValue(Enum<?> id) {	return dsum; }
+		public double getDoubleValue(Enum<?> id) {	validate();	return dsum; }
 	}
 	
 	/**
@@ -150,22 +147,20 @@ public abstract class SumArrayFunction extends AbstractArrayFunction implements
 		 * @see jas.statistics.functions.IArrayFunction#apply(long[])
 		 */
 		public void apply(long[] data) {
-			lsum = 0;
-			
-			for (int i = 0; i < data.length; i++)
-				lsum += data[i];
+			lsum = ArrayKernels.sum(data);
 					
 		}
 
 		/* (non-Javadoc)
 		 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 		 */
-		public long getLongValue(Enum<?> id) {	return lsum; }
+		public long getLongValue(Enum<?> id) {	validate();	return lsum; }
 
 		/* (non-Javadoc)
 		 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 		 */
 		public double getDoubleValue(Enum<?> variableID) {
+			validate();
 			return lsum;
 		}
 	}
@@ -208,16 +203,14 @@ public abstract class SumArrayFunction extends AbstractArrayFunction implements
 		 */
 		public void apply(int[] data) {
 			
-			isum = 0;
-			
-			for (int i = 0; i < data.length; i++)
-				isum += data[i];
+			isum = (int) ArrayKernels.sum(data);
 		}
 
 		/* (non-Javadoc)
 		 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 		 */
 		public int getIntValue(Enum<?> id) {
+			validate();
 			return isum;
 		}
 
@@ -225,6 +218,7 @@ public abstract class SumArrayFunction extends AbstractArrayFunction implements
 		 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 		 */
 		public double getDoubleValue(Enum<?> variableID) {
+			validate();
 			return isum;
 		}
 	}
@@ -266,16 +260,14 @@ public abstract class SumArrayFunction extends AbstractArrayFunction implements
 		 * @see jas.statistics.functions.IArrayFunction#apply(long[])
 		 */
 		public void apply(float[] data) {			
-			fsum = 0;
-			
-			for (int i = 0; i < data.length; i++)
-				fsum += data[i];
+			fsum = (float) ArrayKernels.sum(data);
 		}
 
 		/* (non-Javadoc)
 		 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 		 */
 		public float getFloatValue(Enum<?> id) {
+			validate();
 			return fsum;
 		}
 
@@ -283,6 +275,7 @@ public abstract class SumArrayFunction extends AbstractArrayFunction implements
 		 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 		 */
 		public double getDoubleValue(Enum<?> variableID) {
+			validate();
 			return fsum;
 		}
 	}
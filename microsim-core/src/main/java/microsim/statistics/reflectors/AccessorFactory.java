@@ -0,0 +1,193 @@
+package microsim.statistics.reflectors;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Not of interest for users. It generates, with javassist, a small class reading a given field or
+ * calling a given getter of a class with plain bytecode, so that the invokers can read the values of
+ * the agents without reflection, boxing or exception handling on each call.<br>
+ * An accessor is generated once per class, member and value type, and then shared by all the invokers
+ * built on the same member. The generated class is defined in the package of the target class, so
+ * public and package private members can be accessed. Private and static members, methods with
+ * parameters, classes of the <i>java</i> packages and members whose type cannot be converted to the
+ * requested one are not supported: in that case null is returned and the invokers keep using
+ * reflection.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class AccessorFactory {
+	private static Logger log = Logger.getLogger(AccessorFactory.class);
+
+	/** Marker of the members for which no accessor can be generated. */
+	private static final Object UNSUPPORTED = new Object();
+
+	private static final Map<Class<?>, Map<String, Object>> accessors = new HashMap<Class<?>, Map<String, Object>>();
+
+	public interface DoubleAccessor {
+		double getDouble(Object target);
+	}
+
+	public interface FloatAccessor {
+		float getFloat(Object target);
+	}
+
+	public interface IntAccessor {
+		int getInt(Object target);
+	}
+
+	public interface LongAccessor {
+		long getLong(Object target);
+	}
+
+	public interface StringAccessor {
+		String getString(Object target);
+	}
+
+	public interface ObjectAccessor {
+		Object getObject(Object target);
+	}
+
+	/** Return an accessor reading a double value.
+	 * @param trgClass The class of the target objects.
+	 * @param member The field or the getter, as returned by <i>ReflectionUtils</i>.
+	 * @return The accessor, or null if it cannot be generated for the member.
+	 */
+	public static DoubleAccessor getDoubleAccessor(Class<?> trgClass, Member member) {
+		return (DoubleAccessor) getAccessor(trgClass, member, DoubleAccessor.class, "getDouble", Double.TYPE, Double.class);
+	}
+
+	/** Return an accessor reading a float value.
+	 * @param trgClass The class of the target objects.
+	 * @param member The field or the getter, as returned by <i>ReflectionUtils</i>.
+	 * @return The accessor, or null if it cannot be generated for the member.
+	 */
+	public static FloatAccessor getFloatAccessor(Class<?> trgClass, Member member) {
+		return (FloatAccessor) getAccessor(trgClass, member, FloatAccessor.class, "getFloat", Float.TYPE, Float.class);
+	}
+
+	/** Return an accessor reading an int value.
+	 * @param trgClass The class of the target objects.
+	 * @param member The field or the getter, as returned by <i>ReflectionUtils</i>.
+	 * @return The accessor, or null if it cannot be generated for the member.
+	 */
+	public static IntAccessor getIntAccessor(Class<?> trgClass, Member member) {
+		return (IntAccessor) getAccessor(trgClass, member, IntAccessor.class, "getInt", Integer.TYPE, Integer.class);
+	}
+
+	/** Return an accessor reading a long value.
+	 * @param trgClass The class of the target objects.
+	 * @param member The field or the getter, as returned by <i>ReflectionUtils</i>.
+	 * @return The accessor, or null if it cannot be generated for the member.
+	 */
+	public static LongAccessor getLongAccessor(Class<?> trgClass, Member member) {
+		return (LongAccessor) getAccessor(trgClass, member, LongAccessor.class, "getLong", Long.TYPE, Long.class);
+	}
+
+	/** Return an accessor reading a String value.
+	 * @param trgClass The class of the target objects.
+	 * @param member The field or the getter, as returned by <i>ReflectionUtils</i>.
+	 * @return The accessor, or null if it cannot be generated for the member.
+	 */
+	public static StringAccessor getStringAccessor(Class<?> trgClass, Member member) {
+		return (StringAccessor) getAccessor(trgClass, member, StringAccessor.class, "getString", null, String.class);
+	}
+
+	/** Return an accessor reading a value of any type, primitive values being boxed.
+	 * @param trgClass The class of the target objects.
+	 * @param member The field or the getter, as returned by <i>ReflectionUtils</i>.
+	 * @return The accessor, or null if it cannot be generated for the member.
+	 */
+	public static ObjectAccessor getObjectAccessor(Class<?> trgClass, Member member) {
+		return (ObjectAccessor) getAccessor(trgClass, member, ObjectAccessor.class, "getObject", null, Object.class);
+	}
+
+	private static synchronized Object getAccessor(Class<?> trgClass, Member member, Class<?> accessorType,
+			String accessorMethod, Class<?> primitive, Class<?> wrapper) {
+		if (trgClass == null || member == null)
+			return null;
+		Map<String, Object> byMember = accessors.get(trgClass);
+		if (byMember == null) {
+			byMember = new HashMap<String, Object>();
+			accessors.put(trgClass, byMember);
+		}
+		String key = member.getDeclaringClass().getName() + "." + member.getName()
+				+ (member instanceof Method ? "()" : "") + ":" + accessorMethod;
+		Object accessor = byMember.get(key);
+		if (accessor == null) {
+			accessor = generate(trgClass, member, accessorType, accessorMethod, primitive, wrapper);
+			byMember.put(key, (accessor == null ? UNSUPPORTED : accessor));
+		}
+		return (accessor == UNSUPPORTED ? null : accessor);
+	}
+
+	private static Object generate(Class<?> trgClass, Member member, Class<?> accessorType,
+			String accessorMethod, Class<?> primitive, Class<?> wrapper) {
+		if (!ClassGenerator.isAccessible(trgClass, member))
+			return null;
+
+		Class<?> valueType;
+		String expression = "((" + trgClass.getName() + ") $1)." + member.getName();
+		if (member instanceof Field)
+			valueType = ((Field) member).getType();
+		else {
+			valueType = ((Method) member).getReturnType();
+			expression += "()";
+		}
+
+		String returnType;
+		if (wrapper == Object.class) {
+			if (valueType == Void.TYPE)
+				return null;
+			returnType = wrapper.getName();
+			if (valueType.isPrimitive())
+				expression = getWrapperName(valueType) + ".valueOf(" + expression + ")";
+		} else if (primitive == null) {
+			if (valueType != wrapper)
+				return null;
+			returnType = wrapper.getName();
+		} else {
+			returnType = primitive.getName();
+			if (valueType == wrapper)
+				expression += "." + returnType + "Value()";
+			else if (valueType.isPrimitive() && valueType != Boolean.TYPE && valueType != Void.TYPE)
+				expression = "(" + returnType + ") " + expression;
+			else
+				return null;
+		}
+
+		try {
+			return ClassGenerator.generate(trgClass, "Accessor", accessorType, "public " + returnType + " " + accessorMethod
+					+ "(Object target) { return " + expression + "; }");
+		} catch (Throwable e) {
+			log.debug("No accessor can be generated for " + member + ", reflection will be used: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private static String getWrapperName(Class<?> primitive) {
+		if (primitive == Double.TYPE) return Double.class.getName();
+		if (primitive == Float.TYPE) return Float.class.getName();
+		if (primitive == Long.TYPE) return Long.class.getName();
+		if (primitive == Integer.TYPE) return Integer.class.getName();
+		if (primitive == Short.TYPE) return Short.class.getName();
+		if (primitive == Byte.TYPE) return Byte.class.getName();
+		if (primitive == Character.TYPE) return Character.class.getName();
+		return Boolean.class.getName();
+	}
+
+}
@@ -0,0 +1,98 @@
+package microsim.statistics.reflectors;
+
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashSet;
+import java.util.Set;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+/**
+ * Not of interest for users. It holds the javassist class pool shared by the factories generating
+ * code for the classes of the agents (<i>AccessorFactory</i> and the <i>EvaluatorFactory</i> of the
+ * regressions), and defines their classes: each generated class implements an interface with a
+ * single method, has a default constructor, and is defined in the package of the class of the
+ * agents, so that it can access its public and package private members.<br>
+ * The class loaders of the agent classes are added to the class pool as they are met. The generated
+ * classes are never unloaded.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class ClassGenerator {
+
+	private static final ClassPool pool = new ClassPool(true);
+	private static final Set<ClassLoader> loaders = new HashSet<ClassLoader>();
+	private static int generated = 0;
+
+	private ClassGenerator() {
+	}
+
+	/** Generate a class and return a new instance of it.
+	 * @param trgClass The class of the agents, in whose package the class is defined.
+	 * @param kind The kind of the generated class, appended to the name of the class of the agents
+	 * with a counter to name it, e.g. <i>Accessor</i>.
+	 * @param interfaceType The interface implemented by the class.
+	 * @param method The source of the method of the interface, compiled by javassist.
+	 * @return The instance of the generated class.
+	 * @throws Exception If the method cannot be compiled or the class cannot be defined.
+	 */
+	public static synchronized Object generate(Class<?> trgClass, String kind, Class<?> interfaceType, String method) throws Exception {
+		ClassLoader loader = trgClass.getClassLoader();
+		if (loader != null && loaders.add(loader))
+			pool.appendClassPath(new LoaderClassPath(loader));
+		if (loaders.add(interfaceType.getClassLoader()))
+			pool.appendClassPath(new LoaderClassPath(interfaceType.getClassLoader()));
+
+		CtClass ctClass = pool.makeClass(trgClass.getName() + "$$" + kind + "$" + (generated++));
+		try {
+			ctClass.addInterface(pool.get(interfaceType.getName()));
+			ctClass.addConstructor(CtNewConstructor.defaultConstructor(ctClass));
+			ctClass.addMethod(CtNewMethod.make(method, ctClass));
+			Class<?> generatedClass = ctClass.toClass(trgClass);
+			return generatedClass.getDeclaredConstructor().newInstance();
+		} finally {
+			ctClass.detach();
+		}
+	}
+
+	/** @return True if classes can be generated in the package of the class: it is not an array, a
+	 * primitive type, a hidden class or a class of the <i>java</i> packages. */
+	public static boolean isSupported(Class<?> trgClass) {
+		return !(trgClass.isArray() || trgClass.isPrimitive() || trgClass.isHidden() || trgClass.getName().startsWith("java."));
+	}
+
+	/** Check that a class generated in the package of a class can read a member of its objects: a
+	 * field or a getter with no parameters, neither private nor static.
+	 * @param trgClass The class of the agents.
+	 * @param member The field or the getter.
+	 * @return True if the member can be read by the generated code.
+	 */
+	public static boolean isAccessible(Class<?> trgClass, Member member) {
+		int modifiers = member.getModifiers();
+		if (Modifier.isPrivate(modifiers) || Modifier.isStatic(modifiers))
+			return false;
+		if (member instanceof Method && ((Method) member).getParameterTypes().length > 0)
+			return false;
+		if (!isSupported(trgClass))
+			return false;
+		Class<?> declaring = member.getDeclaringClass();
+		boolean samePackage = declaring.getClassLoader() == trgClass.getClassLoader()
+				&& declaring.getPackageName().equals(trgClass.getPackageName());
+		return samePackage || (Modifier.isPublic(modifiers) && Modifier.isPublic(declaring.getModifiers()));
+	}
+
+}
@@ -48,6 +48,8 @@ public class DoubleInvoker implements IDoubleSource {
 	protected Method method;
 	protected Field field;
 	protected Object target;
+	protected AccessorFactory.DoubleAccessor accessor;
+	private boolean boxed;
 
 	/**
 	 * Constructor.
@@ -98,6 +100,9 @@ public class DoubleInvoker implements IDoubleSource {
 		if (field.getType() != Double.TYPE)
 			log.error("DoubleInvoker: Field " + fieldName + " of object "
 					+ target + " must return a double value!");
+
+		accessor = AccessorFactory.getDoubleAccessor(trgClass, field);
+		boxed = !field.getType().isPrimitive();
 	}
 
 	private void buildMethod(Class<?> trgClass, String methodName) {
@@ -111,6 +116,8 @@ public class DoubleInvoker implements IDoubleSource {
 		if (method.getReturnType() != Double.TYPE)
 			log.error("DoubleInvoker: Method " + methodName + " of object "
 					+ target + " must return a double value!");
+
+		accessor = AccessorFactory.getDoubleAccessor(trgClass, method);
 	}
 
 	/**
@@ -125,13 +132,22 @@ public class DoubleInvoker implements IDoubleSource {
 			throw new NullPointerException(
 					"The target object is null. This invoker may has built on a collection.");
 
+		if (accessor != null)
+			try {
+				return accessor.getDouble(target);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				log.error("DoubleInvoker: " + (method == null ? "Field " + field : "Method " + method)
+						+ " of object " + target + " raised the following error:\n" + e.getMessage());
+				return 0.0;
+			}
+
 		try {
 			if (method == null) {
-				try {
-					return field.getDouble(target);
-				} catch (IllegalArgumentException e) {
+				if (boxed)
 					return ((Double) field.get(target)).doubleValue();
-				}
+				else
+					return field.getDouble(target);
 			} else
 				return ((Double) method.invoke(target, null)).doubleValue();
 		} catch (InvocationTargetException ie) {
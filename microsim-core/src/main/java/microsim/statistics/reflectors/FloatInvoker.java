@@ -46,6 +46,8 @@ public class FloatInvoker implements IFloatSource {
 	protected Method method;
 	protected Field field;
 	protected Object target;
+	protected AccessorFactory.FloatAccessor accessor;
+	private boolean boxed;
 
 	/**
 	 * Constructor.
@@ -96,6 +98,9 @@ public class FloatInvoker implements IFloatSource {
 		if (field.getType() != Float.TYPE)
 			log.error("FloatInvoker: Field " + fieldName + " of object "
 					+ target + " must return a float value!");
+
+		accessor = AccessorFactory.getFloatAccessor(trgClass, field);
+		boxed = !field.getType().isPrimitive();
 	}
 
 	private void buildMethod(Class<?> trgClass, String methodName) {
@@ -109,6 +114,8 @@ public class FloatInvoker implements IFloatSource {
 		if (method.getReturnType() != Float.TYPE)
 			log.error("FloatInvoker: Method " + methodName + " of object "
 					+ target + " must return a float value!");
+
+		accessor = AccessorFactory.getFloatAccessor(trgClass, method);
 	}
 
 	/**
@@ -122,13 +129,22 @@ public class FloatInvoker implements IFloatSource {
 		if (target == null)
 			return 0.0f;
 
+		if (accessor != null)
+			try {
+				return accessor.getFloat(target);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				log.error("FloatInvoker: " + (method == null ? "Field " + field : "Method " + method)
+						+ " of object " + target + " raised the following error:\n" + e.getMessage());
+				return 0.0f;
+			}
+
 		try {
 			if (method == null) {
-				try {
-					return field.getFloat(target);
-				} catch (IllegalArgumentException e) {
+				if (boxed)
 					return ((Float) field.get(target)).floatValue();
-				}
+				else
+					return field.getFloat(target);
 			} else
 				return ((Float) method.invoke(target, null)).floatValue();
 		} catch (InvocationTargetException ie) {
@@ -46,6 +46,8 @@ public class IntegerInvoker implements IIntSource {
 	protected Method method;
 	protected Field field;
 	protected Object target;
+	protected AccessorFactory.IntAccessor accessor;
+	private boolean boxed;
 
 	/**
 	 * Constructor.
@@ -97,6 +99,9 @@ public class IntegerInvoker implements IIntSource {
 		if (field.getType() != Integer.TYPE)
 			log.error("IntegerInvoker: Field " + fieldName + " of object "
 					+ target + " must return an int value!");
+
+		accessor = AccessorFactory.getIntAccessor(trgClass, field);
+		boxed = !field.getType().isPrimitive();
 	}
 
 	private void buildMethod(Class<?> trgClass, String methodName) {
@@ -110,6 +115,8 @@ public class IntegerInvoker implements IIntSource {
 		if (method.getReturnType() != Integer.TYPE)
 			log.error("IntegerInvoker: Method " + methodName + " of object "
 					+ target + " must return an integer value!");
+
+		accessor = AccessorFactory.getIntAccessor(trgClass, method);
 	}
 
 	/**
@@ -123,13 +130,22 @@ public class IntegerInvoker implements IIntSource {
 		if (target == null)
 			return 0;
 
+		if (accessor != null)
+			try {
+				return accessor.getInt(target);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				log.error("IntegerInvoker: " + (method == null ? "Field " + field : "Method " + method)
+						+ " of object " + target + " raised the following error:\n" + e.getMessage());
+				return 0;
+			}
+
 		try {
 			if (method == null) {
-				try {
-					return field.getInt(target);
-				} catch (IllegalArgumentException e) {
+				if (boxed)
 					return ((Integer) field.get(target)).intValue();
-				}
+				else
+					return field.getInt(target);
 			} else
 				return ((Integer) method.invoke(target, null)).intValue();
 		} catch (InvocationTargetException ie) {
@@ -46,6 +46,8 @@ public class LongInvoker implements ILongSource {
 	protected Method method;
 	protected Field field;
 	protected Object target;
+	protected AccessorFactory.LongAccessor accessor;
+	private boolean boxed;
 
 	/**
 	 * Constructor.
@@ -96,6 +98,9 @@ public class LongInvoker implements ILongSource {
 		if (field.getType() != Long.TYPE)
 			log.error("LongInvoker: Field " + fieldName
 					+ " of object " + target + " must return a long value!");
+
+		accessor = AccessorFactory.getLongAccessor(trgClass, field);
+		boxed = !field.getType().isPrimitive();
 	}
 
 	private void buildMethod(Class<?> trgClass, String methodName) {
@@ -109,6 +114,8 @@ public class LongInvoker implements ILongSource {
 		if (method.getReturnType() != Long.TYPE)
 			log.error("LongInvoker: Method " + methodName
 					+ " of object " + target + " must return a long value!");
+
+		accessor = AccessorFactory.getLongAccessor(trgClass, method);
 	}
 
 	/**
@@ -122,13 +129,22 @@ public class LongInvoker implements ILongSource {
 		if (target == null)
 			return 0L;
 
+		if (accessor != null)
+			try {
+				return accessor.getLong(target);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				log.error("LongInvoker: " + (method == null ? "Field " + field : "Method " + method)
+						+ " of object " + target + " raised the following error:\n" + e.getMessage());
+				return 0L;
+			}
+
 		try {
 			if (method == null) {
-				try {
-					return field.getLong(target);
-				} catch (IllegalArgumentException e) {
+				if (boxed)
 					return ((Long) field.get(target)).longValue();
-				}
+				else
+					return field.getLong(target);
 			} else
 				return ((Long) method.invoke(target, null)).longValue();
 		} catch (InvocationTargetException ie) {
@@ -47,6 +47,7 @@ public class StringInvoker implements IStringSource {
 	protected Method method;
 	protected Field field;
 	protected Object target;
+	protected AccessorFactory.StringAccessor accessor;
 
 	/**
 	 * Constructor.
@@ -97,6 +98,8 @@ public class StringInvoker implements IStringSource {
 		if (field.getType() != String.class)
 			log.error("StringInvoker: Field " + fieldName + " of object "
 					+ target + " must return a String value!");
+
+		accessor = AccessorFactory.getStringAccessor(trgClass, field);
 	}
 
 	private void buildMethod(Class<?> trgClass, String methodName) {
@@ -110,6 +113,8 @@ public class StringInvoker implements IStringSource {
 		if (method.getReturnType() != String.class)
 			log.error("StringInvoker: Method " + methodName + " of object "
 					+ target + " must return a double value!");
+
+		accessor = AccessorFactory.getStringAccessor(trgClass, method);
 	}
 
 	/**
@@ -124,6 +129,16 @@ public class StringInvoker implements IStringSource {
 			throw new NullPointerException(
 					"The target object is null. This invoker may has built on a collection.");
 
+		if (accessor != null)
+			try {
+				return accessor.getString(target);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				log.error("StringInvoker: " + (method == null ? "Field " + field : "Method " + method)
+						+ " of object " + target + " raised the following error:\n" + e.getMessage());
+				return "";
+			}
+
 		try {
 			if (method == null)
 				return (String) field.get(target);
@@ -0,0 +1,272 @@
+package microsim.statistics.regression;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import microsim.data.MultiKeyCoefficientMap;
+import microsim.engine.SimulationEngine;
+
+import org.apache.commons.collections4.MapIterator;
+import org.apache.commons.collections4.keyvalue.MultiKey;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RectangularCholeskyDecomposition;
+
+/**
+ * The sampling distribution of the coefficients of a regression, prepared once to bootstrap new
+ * sets of coefficients many times, as in the parameter uncertainty experiments of a MultiRun.<br>
+ * The coefficients and their covariance matrix are read from the same MultiKeyCoefficientMaps accepted
+ * by <i>RegressionUtils.bootstrap()</i>, and the covariance matrix is checked and factorised by a
+ * (pivoted) Cholesky decomposition when the sampler is built, whereas <i>RegressionUtils.bootstrap()</i>
+ * parses the maps, factorises the matrix and builds a new MultiKeyCoefficientMap on every call.
+ * Each draw is then the vector of coefficients plus the Cholesky root times a vector of standard
+ * normal numbers, returned as an array, compiled into <i>CompiledCoefficients</i> or, when a
+ * regression object is needed, copied into a new MultiKeyCoefficientMap.<br>
+ * The coefficients are drawn from the same multivariate normal distribution as
+ * <i>RegressionUtils.bootstrap()</i>, but not with the same random numbers, so replacing one with the
+ * other changes the realisations of a simulation with a fixed seed.<br>
+ * The object is immutable and can be shared by threads, each using its own random generator.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class BootstrapSampler {
+
+	private static final double SYMMETRIC_MATRIX_EPS = 1.e-5;		//Relative tolerance of matrix symmetric test, as in RegressionUtils
+	private static final double RANK_EPS = 1.e-12;					//Diagonal elements below this fraction of the largest variance are considered linearly dependent
+
+	private final String[] keysNames;
+	private final String[] valuesNames;
+	/** The regressors, in the iteration order of the map of coefficients. */
+	private final String[] regressors;
+	private final double[] means;
+	/** The Cholesky root of the covariance matrix, by rows, with <i>rank</i> columns. */
+	private final double[] root;
+	private final int rank;
+
+	/** Build the sampler of a map containing both the regression coefficients and their covariance matrix.
+	 * @param map A MultiKeyCoefficientMap with one key named 'REGRESSOR', a value column named
+	 * 'COEFFICIENT' and a value column for each regressor, holding the (square, symmetric, positive
+	 * semi-definite) covariance matrix, as required by <i>RegressionUtils.bootstrap(MultiKeyCoefficientMap)</i>.
+	 * @throws IllegalArgumentException If the map does not have this structure, or a value is not a number.
+	 */
+	public BootstrapSampler(MultiKeyCoefficientMap map) {
+		String[] keys = map.getKeysNames();
+		if (keys.length != 1 || !keys[0].equals(RegressionColumnNames.REGRESSOR.toString()))
+			throw new IllegalArgumentException("The map of a BootstrapSampler must have a single key named " + RegressionColumnNames.REGRESSOR.toString() + ", its keys are " + Arrays.toString(keys) + ".  If map was loaded from an Excel spreadsheet, check there is a column with the heading '" + RegressionColumnNames.REGRESSOR.toString() + "'.");
+		String[] names = map.getValuesNames();
+		int estimateIndex = Arrays.asList(names).indexOf(RegressionColumnNames.COEFFICIENT.toString());
+		if (estimateIndex < 0)
+			throw new IllegalArgumentException("There is no value label named " + RegressionColumnNames.COEFFICIENT.toString() + " in the map of the BootstrapSampler.  If map was loaded from an Excel spreadsheet, check there is a column with the heading '" + RegressionColumnNames.COEFFICIENT.toString() + "'.");
+
+		keysNames = keys.clone();
+		valuesNames = new String[] { RegressionColumnNames.COEFFICIENT.toString() };
+		int n = map.size();
+		regressors = new String[n];
+		Object[][] rows = new Object[n][];
+		int r = 0;
+		for (MapIterator<?, ?> iterator = map.mapIterator(); iterator.hasNext(); r++) {
+			iterator.next();
+			regressors[r] = ((MultiKey<?>) iterator.getKey()).getKey(0).toString();
+			rows[r] = (Object[]) iterator.getValue();
+		}
+		int[] columns = new int[n];
+		for (int j = 0; j < n; j++) {
+			columns[j] = Arrays.asList(names).indexOf(regressors[j]);
+			if (columns[j] < 0)
+				throw new IllegalArgumentException("The map of the BootstrapSampler has no covariance column for regressor " + regressors[j] + ", its value columns are " + Arrays.toString(names));
+		}
+
+		means = new double[n];
+		double[][] covariance = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			Object[] row = rows[i];
+			means[i] = toDouble(row[estimateIndex], regressors[i], RegressionColumnNames.COEFFICIENT.toString());
+			for (int j = 0; j < n; j++)
+				covariance[i][j] = toDouble(row[columns[j]], regressors[i], regressors[j]);
+		}
+		double[][] factor = factorise(covariance);
+		rank = (factor.length == 0 ? 0 : factor[0].length);
+		root = flatten(factor);
+	}
+
+	/** Build the sampler of a set of regression coefficients and of their covariance matrix.
+	 * @param coefficients A MultiKeyCoefficientMap with one key, the name of the regressors, and one
+	 * value column with their coefficients.
+	 * @param covarianceMatrix A MultiKeyCoefficientMap with one key, the name of the regressors, and a
+	 * value column named as each regressor, as required by
+	 * <i>RegressionUtils.bootstrap(MultiKeyCoefficientMap, MultiKeyCoefficientMap)</i>.
+	 * @throws IllegalArgumentException If the maps do not have this structure, or a value is missing or is not a number.
+	 */
+	public BootstrapSampler(MultiKeyCoefficientMap coefficients, MultiKeyCoefficientMap covarianceMatrix) {
+		if (coefficients.getKeysNames().length != 1)
+			throw new IllegalArgumentException("The map of coefficients of a BootstrapSampler should only have one key entry in the MultiKey (and this should be a name of a covariate), its keys are " + Arrays.toString(coefficients.getKeysNames()));
+		if (coefficients.getValuesNames().length != 1)
+			throw new IllegalArgumentException("The map of coefficients of a BootstrapSampler should only have one value corresponding to each MultiKey (and this should be the value of a regression coefficient corresponding to the key's covariate), its values are " + Arrays.toString(coefficients.getValuesNames()));
+
+		keysNames = coefficients.getKeysNames().clone();
+		valuesNames = coefficients.getValuesNames().clone();
+		regressors = getRegressors(coefficients);
+		int n = regressors.length;
+		means = new double[n];
+		double[][] covariance = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			means[i] = toDouble(coefficients.getValue(regressors[i]), regressors[i], valuesNames[0]);
+			for (int j = 0; j < n; j++)
+				covariance[i][j] = toDouble(covarianceMatrix.getValue(regressors[i], regressors[j]), regressors[i], regressors[j]);
+		}
+		double[][] factor = factorise(covariance);
+		rank = (factor.length == 0 ? 0 : factor[0].length);
+		root = flatten(factor);
+	}
+
+	private static String[] getRegressors(MultiKeyCoefficientMap map) {
+		String[] regressors = new String[map.size()];
+		int i = 0;
+		for (MapIterator<?, ?> iterator = map.mapIterator(); iterator.hasNext();) {
+			iterator.next();
+			regressors[i++] = ((MultiKey<?>) iterator.getKey()).getKey(0).toString();
+		}
+		return regressors;
+	}
+
+	private static double toDouble(Object value, String row, String column) {
+		if (!(value instanceof Number))
+			throw new IllegalArgumentException("The value of row " + row + " and column " + column + " of the BootstrapSampler is not a number: " + value);
+		return ((Number) value).doubleValue();
+	}
+
+	/** Compute a root B of a covariance matrix, such that B times its transpose is the matrix.
+	 * @return The root, with as many rows as the matrix and as many columns as its rank.
+	 */
+	private static double[][] factorise(double[][] covariance) {
+		if (covariance.length == 0)
+			return new double[0][0];
+		RealMatrix matrix = new Array2DRowRealMatrix(covariance, false);
+		MatrixUtils.checkSymmetric(matrix, SYMMETRIC_MATRIX_EPS);
+		double maxVariance = 0.;
+		for (int i = 0; i < covariance.length; i++)
+			maxVariance = Math.max(maxVariance, covariance[i][i]);
+		if (maxVariance == 0.)				//Coefficients with no uncertainty are never changed by a draw
+			return new double[covariance.length][0];
+		return new RectangularCholeskyDecomposition(matrix, RANK_EPS * maxVariance).getRootMatrix().getData();
+	}
+
+	private static double[] flatten(double[][] factor) {
+		int columns = (factor.length == 0 ? 0 : factor[0].length);
+		double[] flat = new double[factor.length * columns];
+		for (int i = 0; i < factor.length; i++)
+			System.arraycopy(factor[i], 0, flat, i * columns, columns);
+		return flat;
+	}
+
+	/** Draw a new set of coefficients.
+	 * @param rnd The random number generator.
+	 * @param out The array receiving the coefficients, aligned with <i>getRegressors()</i>.
+	 */
+	public void sample(Random rnd, double[] out) {
+		RegressionBatch.checkLength(regressors.length, out.length);
+		double[] normals = new double[rank];
+		for (int k = 0; k < rank; k++)
+			normals[k] = rnd.nextGaussian();
+		for (int i = 0; i < regressors.length; i++) {
+			double sum = means[i];
+			int offset = i * rank;
+			for (int k = 0; k < rank; k++)
+				sum += root[offset + k] * normals[k];
+			out[i] = sum;
+		}
+	}
+
+	/** Draw a new set of coefficients.
+	 * @param rnd The random number generator.
+	 * @return The coefficients, aligned with <i>getRegressors()</i>.
+	 */
+	public double[] sample(Random rnd) {
+		double[] out = new double[regressors.length];
+		sample(rnd, out);
+		return out;
+	}
+
+	/** Draw a new set of coefficients with the random number generator of the simulation engine.
+	 * @return The coefficients, aligned with <i>getRegressors()</i>.
+	 */
+	public double[] sample() {
+		return sample(SimulationEngine.getRnd());
+	}
+
+	/** Draw many sets of coefficients.<br>
+	 * Each draw gets its own random generator, seeded by a number drawn from <i>rnd</i> before any draw
+	 * is made, so the results are the same in sequential and in parallel mode.
+	 * @param draws The number of sets of coefficients.
+	 * @param rnd The random generator seeding the draws.
+	 * @param parallel True to generate the draws in the common fork-join pool.
+	 * @return The coefficients of each draw, aligned with <i>getRegressors()</i>.
+	 */
+	public double[][] sample(int draws, Random rnd, final boolean parallel) {
+		final double[][] out = new double[draws][regressors.length];
+		RegressionBatch.run(draws, 1, parallel, rnd, new RegressionBatch.ChunkTask() {
+			public void run(int from, int to, Random random) {
+				for (int d = from; d < to; d++)
+					sample(random, out[d]);
+			}
+		});
+		return out;
+	}
+
+	/** Draw a new set of coefficients, compiled for the <i>IDoubleSource</i> agents.
+	 * @param enumType The enum type of the regressors, whose constants are named as the regressors of the map.
+	 * @param rnd The random number generator.
+	 * @return The compiled coefficients.
+	 */
+	public <T extends Enum<T>> CompiledCoefficients<T> sample(Class<T> enumType, Random rnd) {
+		return compile(sample(rnd), enumType);
+	}
+
+	/** Compile a set of coefficients drawn by this sampler.
+	 * @param coefficients The coefficients, aligned with <i>getRegressors()</i>.
+	 * @param enumType The enum type of the regressors, whose constants are named as the regressors of the map.
+	 * @return The compiled coefficients.
+	 */
+	public <T extends Enum<T>> CompiledCoefficients<T> compile(double[] coefficients, Class<T> enumType) {
+		return new CompiledCoefficients<T>(enumType, regressors, coefficients);
+	}
+
+	/** Copy a set of coefficients drawn by this sampler into a new map, to build a regression object.
+	 * @param coefficients The coefficients, aligned with <i>getRegressors()</i>.
+	 * @return A MultiKeyCoefficientMap with the key of the maps of the sampler and a single value
+	 * column, with the same structure as the maps returned by <i>RegressionUtils.bootstrap()</i>.
+	 */
+	public MultiKeyCoefficientMap toMap(double[] coefficients) {
+		RegressionBatch.checkLength(regressors.length, coefficients.length);
+		MultiKeyCoefficientMap map = new MultiKeyCoefficientMap(keysNames, valuesNames);
+		for (int i = 0; i < regressors.length; i++)
+			map.putValue(regressors[i], coefficients[i]);
+		return map;
+	}
+
+	/** @return A new array with the regressors, in the order of the coefficients of the draws. */
+	public String[] getRegressors() {
+		return regressors.clone();
+	}
+
+	/** @return A new array with the estimated coefficients, the means of the draws. */
+	public double[] getMeans() {
+		return means.clone();
+	}
+
+	/** @return The rank of the covariance matrix, i.e. the number of standard normal numbers used by each draw. */
+	public int getRank() {
+		return rank;
+	}
+
+}
@@ -0,0 +1,526 @@
+package microsim.statistics.regression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import microsim.data.MultiKeyCoefficientMap;
+import microsim.statistics.ColumnStore;
+import microsim.statistics.IDoubleSource;
+import microsim.statistics.IObjectSource;
+
+import org.apache.commons.collections4.MapIterator;
+import org.apache.commons.collections4.keyvalue.MultiKey;
+
+/**
+ * An index of the coefficients of a regression whose MultiKeyCoefficientMap has conditioning
+ * keys besides the regressor (e.g. gender or region).<br>
+ * The entries of the map are grouped once into cells, one per combination of the values of the
+ * conditioning keys, each holding the regressors and the coefficients that apply to the agents
+ * with those values. Scoring an agent then reads its conditioning attributes once, finds its cell
+ * with one hash look up and computes one dot product, instead of scanning all the entries of the
+ * map and comparing their keys. The attributes are matched by their string representation, as in
+ * <i>LinearRegression.computeScore()</i>, and the regressors of each cell keep the iteration order
+ * of the map, so the scores are the same.<br>
+ * The index is built from the content of the map at construction time.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class CoefficientIndex {
+
+	private final String[] conditioningKeys;
+	private final Map<Object, Cell> cells = new HashMap<Object, Cell>();
+	/** The only cell of a map without conditioning keys, null otherwise. */
+	private final Cell singleCell;
+	/** The accessors of the conditioning keys, per class of agents. */
+	private final Map<Class<?>, PropertyAccessor[]> keyAccessors = new ConcurrentHashMap<Class<?>, PropertyAccessor[]>();
+
+	/** The distinct values of each conditioning key in the map. */
+	private final String[][] conditioningValues;
+
+	private volatile ObjectKeys objectKeys = null;
+
+	/** Build the index of a map.
+	 * @param map A MultiKeyCoefficientMap with a key named as <i>RegressionColumnNames.REGRESSOR</i>.
+	 * @throws IllegalArgumentException If the map has no regressor key or no coefficient column.
+	 */
+	public CoefficientIndex(MultiKeyCoefficientMap map) {
+		String[] keysNames = map.getKeysNames();
+		int regressorColumn = Arrays.asList(keysNames).indexOf(RegressionColumnNames.REGRESSOR.toString());
+		if (regressorColumn < 0)
+			throw new IllegalArgumentException("The MultiKeyCoefficientMap has no key named " + RegressionColumnNames.REGRESSOR.toString() + ", its keys are " + Arrays.toString(keysNames));
+		conditioningKeys = new String[keysNames.length - 1];
+		int[] conditioningColumns = new int[conditioningKeys.length];
+		for (int i = 0, k = 0; i < keysNames.length; i++)
+			if (i != regressorColumn) {
+				conditioningKeys[k] = keysNames[i];
+				conditioningColumns[k++] = i;
+			}
+
+		int column = CompiledCoefficients.getCoefficientColumn(map);
+		Map<Object, List<String>> regressors = new HashMap<Object, List<String>>();
+		Map<Object, List<Double>> values = new HashMap<Object, List<Double>>();
+		List<Set<String>> distinctValues = new ArrayList<Set<String>>();
+		for (int k = 0; k < conditioningKeys.length; k++)
+			distinctValues.add(new LinkedHashSet<String>());
+		for (MapIterator<?, ?> iterator = map.mapIterator(); iterator.hasNext();) {
+			iterator.next();
+			MultiKey<?> multiKey = (MultiKey<?>) iterator.getKey();
+			String[] cellValues = new String[conditioningKeys.length];
+			for (int k = 0; k < cellValues.length; k++) {
+				cellValues[k] = multiKey.getKey(conditioningColumns[k]).toString();
+				distinctValues.get(k).add(cellValues[k]);
+			}
+			Object key = toKey(cellValues);
+			if (!regressors.containsKey(key)) {
+				regressors.put(key, new ArrayList<String>());
+				values.put(key, new ArrayList<Double>());
+			}
+			String regressor = multiKey.getKey(regressorColumn).toString();
+			regressors.get(key).add(regressor);
+			values.get(key).add(CompiledCoefficients.getCoefficient(iterator.getValue(), column, regressor));
+		}
+		for (Object key : regressors.keySet()) {
+			List<String> r = regressors.get(key);
+			List<Double> v = values.get(key);
+			double[] coefficients = new double[v.size()];
+			for (int i = 0; i < coefficients.length; i++)
+				coefficients[i] = v.get(i);
+			cells.put(key, new Cell(r.toArray(new String[r.size()]), coefficients));
+		}
+		singleCell = (conditioningKeys.length == 0 ? cells.get(toKey(new String[0])) : null);
+		conditioningValues = new String[conditioningKeys.length][];
+		for (int k = 0; k < conditioningValues.length; k++)
+			conditioningValues[k] = distinctValues.get(k).toArray(new String[distinctValues.get(k).size()]);
+	}
+
+	private static Object toKey(String[] values) {
+		// a single conditioning key is looked up by its value, several by the list of their values
+		return (values.length == 1 ? values[0] : Arrays.asList(values));
+	}
+
+	/** @return The names of the conditioning keys, in the order of the values passed to <i>getCell()</i>. */
+	public String[] getConditioningKeys() {
+		return conditioningKeys.clone();
+	}
+
+	/** @return The number of distinct combinations of the conditioning values in the map. */
+	public int getCellCount() {
+		return cells.size();
+	}
+
+	/** @return The cells of the index. */
+	public Collection<Cell> getCells() {
+		return cells.values();
+	}
+
+	/** Return the cell of a combination of conditioning values.
+	 * @param values The string representation of the conditioning values, in the order of <i>getConditioningKeys()</i>.
+	 * @return The cell, or null if no entry of the map applies to the values.
+	 */
+	public Cell getCell(String[] values) {
+		for (String value : values)
+			if (value == null)
+				return null;
+		return cells.get(toKey(values));
+	}
+
+	/** Return the cell of the conditioning values of an agent.
+	 * @throws IllegalArgumentException If a value is null or no entry of the map applies to the values.
+	 */
+	private Cell getAgentCell(String[] values, Object agent) {
+		Cell cell = getCell(values);
+		if (cell == null)
+			throw new IllegalArgumentException("No entry of the regression map applies to the " + agent.getClass().getCanonicalName() + " object, whose values of the conditioning keys " + Arrays.toString(conditioningKeys) + " are " + Arrays.toString(values) + ".  Check that the map has coefficients for these values, and that the values of the object are not null.");
+		return cell;
+	}
+
+	/** Read the conditioning values of an agent from its bean properties. The getters of the
+	 * conditioning keys are resolved once per class of agents.
+	 * @param agent An agent with a getter for each conditioning key.
+	 * @return The string representation of the values, null for the null ones and the ones of a type not used as key.
+	 * @throws IllegalArgumentException If the agent has no readable property named as a conditioning key.
+	 */
+	public String[] getConditioningValues(Object agent) {
+		PropertyAccessor[] accessors = getAccessors(keyAccessors, agent.getClass(), conditioningKeys);
+		String[] values = new String[accessors.length];
+		for (int k = 0; k < values.length; k++)
+			values[k] = accessors[k].getKeyValue(agent);
+		return values;
+	}
+
+	private static PropertyAccessor[] getAccessors(Map<Class<?>, PropertyAccessor[]> byClass, Class<?> agentClass, String[] names) {
+		PropertyAccessor[] accessors = byClass.get(agentClass);
+		if (accessors == null) {
+			accessors = PropertyAccessor.get(agentClass, names);
+			byClass.put(agentClass, accessors);
+		}
+		return accessors;
+	}
+
+	/** Read the conditioning values of an agent implementing <i>IObjectSource</i>.
+	 * @param iObjSrc The agent.
+	 * @param enumTypeObject The enum type whose constants are named as the conditioning keys.
+	 * @return The string representation of the values, null for the null ones.
+	 */
+	public <U extends Enum<U>> String[] getConditioningValues(IObjectSource iObjSrc, Class<U> enumTypeObject) {
+		ObjectKeys o = objectKeys;
+		if (o == null || o.enumType != enumTypeObject) {
+			Enum<?>[] keys = new Enum<?>[conditioningKeys.length];
+			for (int k = 0; k < keys.length; k++)
+				keys[k] = Enum.valueOf(enumTypeObject, conditioningKeys[k]);
+			o = new ObjectKeys(enumTypeObject, keys);
+			objectKeys = o;
+		}
+		Enum<?>[] keys = o.keys;
+		String[] values = new String[keys.length];
+		for (int k = 0; k < values.length; k++) {
+			Object value = iObjSrc.getObjectValue(keys[k]);
+			values[k] = (value == null ? null : value.toString());
+		}
+		return values;
+	}
+
+	/** Generate the evaluators of all the cells for the agents of a class (see <i>Cell.generateEvaluator()</i>).
+	 * @param agentClass The class of the agents.
+	 * @return The number of cells whose evaluator has been generated.
+	 */
+	public int generateEvaluators(Class<?> agentClass) {
+		int count = 0;
+		for (Cell cell : cells.values())
+			if (cell.generateEvaluator(agentClass))
+				count++;
+		return count;
+	}
+
+	/** Compute the score of an agent, reading its conditioning values from its bean properties.
+	 * @param iDblSrc The agent, exposing the regressors through <i>getDoubleValue()</i>.
+	 * @param enumType The enum type whose constants are named as the regressors.
+	 * @return The score.
+	 * @throws IllegalArgumentException If the agent has no readable property named as a conditioning key, or no entry of the map applies to its values.
+	 */
+	public <T extends Enum<T>> double score(IDoubleSource iDblSrc, Class<T> enumType) {
+		return getAgentCell(getConditioningValues(iDblSrc), iDblSrc).compile(enumType).score(iDblSrc);
+	}
+
+	/** Compute the score of an agent, reading its conditioning values through <i>IObjectSource</i>.
+	 * @param iDblSrc The agent, exposing the regressors through <i>getDoubleValue()</i>.
+	 * @param enumTypeDouble The enum type whose constants are named as the regressors.
+	 * @param iObjSrc The agent, exposing the conditioning values through <i>getObjectValue()</i>.
+	 * @param enumTypeObject The enum type whose constants are named as the conditioning keys.
+	 * @return The score.
+	 * @throws IllegalArgumentException If no entry of the map applies to the values of the agent.
+	 */
+	public <T extends Enum<T>, U extends Enum<U>> double score(IDoubleSource iDblSrc, Class<T> enumTypeDouble, IObjectSource iObjSrc, Class<U> enumTypeObject) {
+		return getAgentCell(getConditioningValues(iObjSrc, enumTypeObject), iObjSrc).compile(enumTypeDouble).score(iDblSrc);
+	}
+
+	/** Compute the score of an agent, reading both its conditioning values and its regressors from its bean properties.
+	 * @param agent The agent.
+	 * @return The score.
+	 * @throws IllegalArgumentException If the agent has no readable property named as a key or a regressor, a regressor is not a number or a boolean, or no entry of the map applies to its conditioning values.
+	 */
+	public double score(Object agent) {
+		if (singleCell != null)
+			return singleCell.score(agent);
+		return getAgentCell(getConditioningValues(agent), agent).score(agent);
+	}
+
+	/**
+	 * Compute the scores of all the agents of a column store, reading both the conditioning values
+	 * and the regressors from its columns, which must be named as the keys and the regressors of the
+	 * map. The store is updated before the scores are computed. The score of a slot whose conditioning
+	 * values are null or have no entry in the map is 0.
+	 * @param store The column store.
+	 * @param out The array receiving the scores, indexed by the slots of the store.
+	 * @param parallel True to score chunks of slots in parallel.
+	 * @throws IllegalArgumentException If a key or a regressor has no column in the store.
+	 */
+	public void score(ColumnStore<?> store, final double[] out, boolean parallel) {
+		store.updateSource();
+		final KeyColumn[] keyColumns = new KeyColumn[conditioningKeys.length];
+		for (int k = 0; k < keyColumns.length; k++)
+			keyColumns[k] = KeyColumn.get(store.getColumn(conditioningKeys[k]), conditioningValues[k]);
+		final Map<Cell, ColumnStore.Column[]> regressorColumns = new IdentityHashMap<Cell, ColumnStore.Column[]>();
+		for (Cell cell : cells.values()) {
+			ColumnStore.Column[] columns = new ColumnStore.Column[cell.regressors.length];
+			for (int i = 0; i < columns.length; i++)
+				columns[i] = store.getColumn(cell.regressors[i]);
+			regressorColumns.put(cell, columns);
+		}
+
+		RegressionBatch.checkLength(store.size(), out.length);
+		RegressionBatch.run(store.size(), parallel, null, new RegressionBatch.ChunkTask() {
+			public void run(int from, int to, Random random) {
+				String[] values = new String[keyColumns.length];
+				for (int slot = from; slot < to; slot++) {
+					for (int k = 0; k < values.length; k++)
+						values[k] = keyColumns[k].getKeyValue(slot);
+					Cell cell = getCell(values);
+					out[slot] = (cell == null ? 0. : cell.score(regressorColumns.get(cell), slot));
+				}
+			}
+		});
+	}
+
+	/**
+	 * The reader of a conditioning key from a column of a store, resolved once per scoring of the store.
+	 * The value of a slot is matched against the values of the key in the map as the string
+	 * representation of the bean property it was read from would be, but without building that string.
+	 */
+	private static abstract class KeyColumn {
+
+		/** @return The value of the key in the map matching the value of a slot, or null if none matches. */
+		abstract String getKeyValue(int slot);
+
+		/** Resolve the reader of a column.
+		 * @param column The column of the conditioning key.
+		 * @param keyValues The distinct values of the key in the map.
+		 */
+		static KeyColumn get(ColumnStore.Column column, String[] keyValues) {
+			if (column instanceof ColumnStore.EnumColumn) {
+				final int[] ordinals = ((ColumnStore.EnumColumn) column).getIntArray();
+				Object[] constants = ((ColumnStore.EnumColumn) column).getConstants();
+				final String[] byOrdinal = new String[constants.length];
+				List<String> values = Arrays.asList(keyValues);
+				for (int i = 0; i < constants.length; i++) {
+					int k = values.indexOf(constants[i].toString());
+					byOrdinal[i] = (k < 0 ? null : keyValues[k]);
+				}
+				return new KeyColumn() {
+					String getKeyValue(int slot) {
+						return (ordinals[slot] < 0 ? null : byOrdinal[ordinals[slot]]);
+					}
+				};
+			}
+			final NumberColumn reader;
+			if (column instanceof ColumnStore.IntColumn) {
+				final int[] ints = ((ColumnStore.IntColumn) column).getIntArray();
+				reader = new NumberColumn() {
+					long getNumber(int slot) {
+						return ints[slot];
+					}
+					String toString(long number) {
+						return Integer.toString((int) number);
+					}
+					long parse(String value) {
+						return Integer.parseInt(value);
+					}
+				};
+			} else if (column instanceof ColumnStore.LongColumn) {
+				final long[] longs = ((ColumnStore.LongColumn) column).getLongArray();
+				reader = new NumberColumn() {
+					long getNumber(int slot) {
+						return longs[slot];
+					}
+					String toString(long number) {
+						return Long.toString(number);
+					}
+					long parse(String value) {
+						return Long.parseLong(value);
+					}
+				};
+			} else if (column instanceof ColumnStore.FloatColumn) {
+				final float[] floats = ((ColumnStore.FloatColumn) column).getFloatArray();
+				reader = new NumberColumn() {
+					long getNumber(int slot) {
+						return Float.floatToIntBits(floats[slot]);
+					}
+					String toString(long number) {
+						return Float.toString(Float.intBitsToFloat((int) number));
+					}
+					long parse(String value) {
+						return Float.floatToIntBits(Float.parseFloat(value));
+					}
+				};
+			} else {
+				final ColumnStore.Column doubles = column;
+				reader = new NumberColumn() {
+					long getNumber(int slot) {
+						return Double.doubleToLongBits(doubles.getDouble(slot));
+					}
+					String toString(long number) {
+						return Double.toString(Double.longBitsToDouble(number));
+					}
+					long parse(String value) {
+						return Double.doubleToLongBits(Double.parseDouble(value));
+					}
+				};
+			}
+			reader.setKeyValues(keyValues);
+			return reader;
+		}
+	}
+
+	/**
+	 * The reader of a conditioning key from a column of numbers. The values of the key in the map
+	 * that are the string representation of a number of the column are kept sorted by the number,
+	 * which is the value itself for the integers and the bits of the value for the floating point
+	 * numbers, so that two values have the same number if and only if they have the same string.
+	 */
+	private static abstract class NumberColumn extends KeyColumn {
+		private long[] numbers;
+		private String[] strings;
+
+		/** @return The number of the value of a slot. */
+		abstract long getNumber(int slot);
+
+		/** @return The string representation of the value of a number. */
+		abstract String toString(long number);
+
+		/** @return The number of a string representation of a value.
+		 * @throws NumberFormatException If the string is not a number. */
+		abstract long parse(String value);
+
+		void setKeyValues(String[] keyValues) {
+			TreeMap<Long, String> sorted = new TreeMap<Long, String>();
+			for (String value : keyValues) {
+				try {
+					long number = parse(value);
+					if (toString(number).equals(value))
+						sorted.put(number, value);
+				} catch (NumberFormatException e) {
+					//No value of the column is represented by the string
+				}
+			}
+			numbers = new long[sorted.size()];
+			strings = new String[sorted.size()];
+			int i = 0;
+			for (Map.Entry<Long, String> entry : sorted.entrySet()) {
+				numbers[i] = entry.getKey();
+				strings[i++] = entry.getValue();
+			}
+		}
+
+		String getKeyValue(int slot) {
+			int i = Arrays.binarySearch(numbers, getNumber(slot));
+			return (i < 0 ? null : strings[i]);
+		}
+	}
+
+	/** The regressors and the coefficients applying to one combination of conditioning values. */
+	public static class Cell {
+
+		private final String[] regressors;
+		private final double[] coefficients;
+		private volatile CompiledCoefficients<?> compiled = null;
+		private final Map<Class<?>, PropertyAccessor[]> regressorAccessors = new ConcurrentHashMap<Class<?>, PropertyAccessor[]>();
+		/** The evaluator generated for a class of agents, if any. */
+		private volatile Generated generated = null;
+
+		Cell(String[] regressors, double[] coefficients) {
+			this.regressors = regressors;
+			this.coefficients = coefficients;
+		}
+
+		/** @return A new array with the regressors of the cell, in the iteration order of the map. */
+		public String[] getRegressors() {
+			return regressors.clone();
+		}
+
+		/** @return A new array with the coefficients of the regressors. */
+		public double[] getCoefficients() {
+			return coefficients.clone();
+		}
+
+		/** Return the coefficients of the cell bound to an enum of regressors, compiling them on the
+		 * first call for the enum type.
+		 * @param enumType The enum type whose constants are named as the regressors.
+		 * @return The compiled coefficients.
+		 */
+		@SuppressWarnings("unchecked")
+		public <T extends Enum<T>> CompiledCoefficients<T> compile(Class<T> enumType) {
+			CompiledCoefficients<?> c = compiled;
+			if (c == null || c.getEnumType() != enumType) {
+				c = new CompiledCoefficients<T>(enumType, regressors, coefficients);
+				compiled = c;
+			}
+			return (CompiledCoefficients<T>) c;
+		}
+
+		/** Compute the score of a slot of a column store.
+		 * @param columns The columns of the regressors of the cell, in the order of <i>getRegressors()</i>.
+		 * @param slot The slot.
+		 * @return The sum of the products of the regressors with their coefficients.
+		 */
+		public double score(ColumnStore.Column[] columns, int slot) {
+			double sum = 0.;
+			for (int i = 0; i < columns.length; i++)
+				sum += columns[i].getDouble(slot) * coefficients[i];
+			return sum;
+		}
+
+		/** Compute the score of an agent, reading the regressors from its bean properties. The
+		 * getters of the regressors are resolved once per class of agents.
+		 * @param agent The agent.
+		 * @return The sum of the products of the regressors with their coefficients.
+		 * @throws IllegalArgumentException If a regressor is not a readable number or boolean property of the agent.
+		 */
+		public double score(Object agent) {
+			Generated g = generated;
+			if (g != null && agent.getClass() == g.agentClass)
+				return g.evaluator.score(agent);
+			PropertyAccessor[] accessors = getAccessors(regressorAccessors, agent.getClass(), regressors);
+			double sum = 0.;
+			for (int i = 0; i < accessors.length; i++)
+				sum += accessors[i].getDoubleValue(agent) * coefficients[i];
+			return sum;
+		}
+
+		/** Generate the evaluator of the cell for the agents of a class, used by <i>score(Object)</i>
+		 * for the agents of exactly that class instead of the accessors. It replaces the evaluator
+		 * generated for another class, if any.
+		 * @param agentClass The class of the agents.
+		 * @return True if the evaluator has been generated, false if the class is not supported by <i>EvaluatorFactory</i>.
+		 */
+		public boolean generateEvaluator(Class<?> agentClass) {
+			EvaluatorFactory.Evaluator evaluator = EvaluatorFactory.getEvaluator(regressors, coefficients, agentClass);
+			if (evaluator == null)
+				return false;
+			generated = new Generated(agentClass, evaluator);
+			return true;
+		}
+
+	}
+
+	/** The constants of the conditioning keys in an enum type and the enum type, published together. */
+	private static class ObjectKeys {
+		final Class<?> enumType;
+		final Enum<?>[] keys;
+
+		ObjectKeys(Class<?> enumType, Enum<?>[] keys) {
+			this.enumType = enumType;
+			this.keys = keys;
+		}
+	}
+
+	/** An evaluator and the class of agents it has been generated for, published together. */
+	private static class Generated {
+		final Class<?> agentClass;
+		final EvaluatorFactory.Evaluator evaluator;
+
+		Generated(Class<?> agentClass, EvaluatorFactory.Evaluator evaluator) {
+			this.agentClass = agentClass;
+			this.evaluator = evaluator;
+		}
+	}
+
+}
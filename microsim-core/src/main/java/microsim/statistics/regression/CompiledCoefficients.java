@@ -0,0 +1,171 @@
+package microsim.statistics.regression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import microsim.data.MultiKeyCoefficientMap;
+import microsim.statistics.IDoubleSource;
+
+import org.apache.commons.collections4.MapIterator;
+import org.apache.commons.collections4.keyvalue.MultiKey;
+
+/**
+ * The coefficients of a linear regression bound to the enum of regressors used by the
+ * <i>IDoubleSource</i> agents to expose their covariates.<br>
+ * The coefficients are resolved once from the <i>MultiKeyCoefficientMap</i> into a dense array
+ * indexed by the ordinals of the enum, so that the score of an agent is a plain dot product, with
+ * no iteration over the map, no <i>Enum.valueOf()</i> and no look up of the coefficient column per
+ * call. Only the regressors appearing in the map are read from the agents, in the iteration order
+ * of the map, so the scores are the same as the ones of
+ * <i>LinearRegression.computeScore(MultiKeyCoefficientMap, IDoubleSource, Class, boolean)</i>.<br>
+ * The object is immutable: if the map is modified, a new object must be compiled.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class CompiledCoefficients<T extends Enum<T>> {
+
+	private final Class<T> enumType;
+	private final T[] constants;
+	/** The coefficients indexed by the ordinals of the regressors, 0 for the regressors not in the map. */
+	private final double[] coefficients;
+	/** The ordinals of the regressors appearing in the map, in the order they are summed. */
+	private final int[] ordinals;
+
+	/** Create the coefficients of a set of regressors.
+	 * @param enumType The enum type of the regressors.
+	 * @param regressors The names of the regressors, matching the names of the enum constants.
+	 * @param values The coefficients of the regressors.
+	 * @throws IllegalArgumentException If a regressor is not a constant of the enum or appears more than once.
+	 */
+	public CompiledCoefficients(Class<T> enumType, String[] regressors, double[] values) {
+		if (regressors.length != values.length)
+			throw new IllegalArgumentException("The number of regressors (" + regressors.length + ") and of coefficients (" + values.length + ") differ.");
+		this.enumType = enumType;
+		constants = enumType.getEnumConstants();
+		coefficients = new double[constants.length];
+		ordinals = new int[regressors.length];
+		boolean[] seen = new boolean[constants.length];
+		for (int i = 0; i < regressors.length; i++) {
+			int ordinal = Enum.valueOf(enumType, regressors[i]).ordinal();
+			if (seen[ordinal])
+				throw new IllegalArgumentException("Regressor " + regressors[i] + " appears more than once among the coefficients.");
+			seen[ordinal] = true;
+			coefficients[ordinal] = values[i];
+			ordinals[i] = ordinal;
+		}
+	}
+
+	/**
+	 * Compile the coefficients of a map whose only key is the regressor.
+	 * @param map A MultiKeyCoefficientMap with one key (the regressor), and either one value
+	 * column or a value column named as <i>RegressionColumnNames.COEFFICIENT</i>.
+	 * @param enumType The enum type of the regressors, whose constants are named as the regressors of the map.
+	 * @return The compiled coefficients.
+	 * @throws IllegalArgumentException If the map has more than one key, or a regressor is not a constant of the enum.
+	 */
+	public static <T extends Enum<T>> CompiledCoefficients<T> compile(MultiKeyCoefficientMap map, Class<T> enumType) {
+		if (map.getKeysNames().length != 1)
+			throw new IllegalArgumentException("Only the coefficients of a MultiKeyCoefficientMap with a single key (the regressor) can be compiled, the map has keys " + Arrays.toString(map.getKeysNames()));
+		int column = getCoefficientColumn(map);
+		List<String> regressors = new ArrayList<String>();
+		List<Double> values = new ArrayList<Double>();
+		for (MapIterator<?, ?> iterator = map.mapIterator(); iterator.hasNext();) {
+			iterator.next();
+			String regressor = ((MultiKey<?>) iterator.getKey()).getKey(0).toString();
+			regressors.add(regressor);
+			values.add(getCoefficient(iterator.getValue(), column, regressor));
+		}
+		double[] v = new double[values.size()];
+		for (int i = 0; i < v.length; i++)
+			v[i] = values.get(i);
+		return new CompiledCoefficients<T>(enumType, regressors.toArray(new String[regressors.size()]), v);
+	}
+
+	/** Return the index of the coefficient column in the value vectors of a map.
+	 * @param map A MultiKeyCoefficientMap.
+	 * @return The index of the column, or -1 if the map has a single value column, whose values are stored directly.
+	 */
+	static int getCoefficientColumn(MultiKeyCoefficientMap map) {
+		String[] valuesNames = map.getValuesNames();
+		if (valuesNames.length == 1)
+			return -1;
+		int column = Arrays.asList(valuesNames).indexOf(RegressionColumnNames.COEFFICIENT.toString());
+		if (column < 0)
+			throw new IllegalArgumentException("The MultiKeyCoefficientMap has no value column named " + RegressionColumnNames.COEFFICIENT.toString() + ", its value columns are " + Arrays.toString(valuesNames));
+		return column;
+	}
+
+	/** Extract the coefficient from the value of an entry of a map.
+	 * @param value The value of the entry.
+	 * @param column The index returned by <i>getCoefficientColumn()</i>.
+	 * @param regressor The regressor of the entry, for the error messages.
+	 * @return The coefficient.
+	 */
+	static double getCoefficient(Object value, int column, String regressor) {
+		Object coefficient = (column < 0 ? value : ((Object[]) value)[column]);
+		if (!(coefficient instanceof Number))
+			throw new IllegalArgumentException("The coefficient of regressor " + regressor + " is not a number: " + coefficient);
+		return ((Number) coefficient).doubleValue();
+	}
+
+	/** Compute the score of an agent.
+	 * @param iDblSrc The agent, exposing the regressors through <i>getDoubleValue()</i>.
+	 * @return The sum of the products of the regressors with their coefficients.
+	 */
+	public double score(IDoubleSource iDblSrc) {
+		double sum = 0.;
+		for (int i = 0; i < ordinals.length; i++) {
+			int ordinal = ordinals[i];
+			sum += iDblSrc.getDoubleValue(constants[ordinal]) * coefficients[ordinal];
+		}
+		return sum;
+	}
+
+	/** Compute the score of a vector of covariates.
+	 * @param values The covariates, indexed by the ordinals of the regressors.
+	 * @return The sum of the products of the covariates with their coefficients.
+	 */
+	public double score(double[] values) {
+		double sum = 0.;
+		for (int i = 0; i < ordinals.length; i++) {
+			int ordinal = ordinals[i];
+			sum += values[ordinal] * coefficients[ordinal];
+		}
+		return sum;
+	}
+
+	/** @return The enum type of the regressors. */
+	public Class<T> getEnumType() {
+		return enumType;
+	}
+
+	/** @param regressor A regressor.
+	 * @return The coefficient of the regressor, 0 if it does not appear in the map. */
+	public double getCoefficient(T regressor) {
+		return coefficients[regressor.ordinal()];
+	}
+
+	/** @return A new array with the coefficients indexed by the ordinals of the regressors. */
+	public double[] getCoefficients() {
+		return coefficients.clone();
+	}
+
+	/** @return A new list of the regressors appearing in the map, in the order they are summed. */
+	public List<T> getRegressors() {
+		List<T> regressors = new ArrayList<T>();
+		for (int ordinal : ordinals)
+			regressors.add(constants[ordinal]);
+		return regressors;
+	}
+
+}
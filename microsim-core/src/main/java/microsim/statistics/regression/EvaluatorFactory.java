@@ -0,0 +1,176 @@
+package microsim.statistics.regression;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import microsim.data.MultiKeyCoefficientMap;
+import microsim.statistics.reflectors.ClassGenerator;
+
+import org.apache.commons.collections4.MapIterator;
+import org.apache.commons.collections4.keyvalue.MultiKey;
+import org.apache.log4j.Logger;
+
+/**
+ * It generates, with javassist, a class computing the score of a linear regression for the agents
+ * of a given class: the getters of the regressors are called directly and the coefficients are
+ * inlined in the code as constants, so that the JIT compiler can optimise the whole linear
+ * predictor as hand written code, with no array of coefficients, no accessor objects and no
+ * boxing of the values.<br>
+ * The regressors are read from the bean properties of the agents, with the same conversions as
+ * <i>LinearRegression.getScore(Object)</i>: numbers are converted to double, booleans to 1 and 0,
+ * and a null wrapper raises the same IllegalArgumentException. The products are summed in the
+ * iteration order of the map, so the scores are the same.<br>
+ * An evaluator is generated once per class of agents, regressors and coefficients, and shared.
+ * The generated class is defined in the package of the agent class, so public and package private
+ * getters can be called. Private getters, getters declared by non public classes of other packages,
+ * classes of the <i>java</i> packages and regressors of types other than numbers and booleans are
+ * not supported: in that case null is returned and the regressions keep using the accessors.<br>
+ * The generated classes are never unloaded, so the evaluators should be generated for the
+ * coefficients used through a simulation, not for each bootstrapped draw.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class EvaluatorFactory {
+	private static Logger log = Logger.getLogger(EvaluatorFactory.class);
+
+	/** Marker of the regressions for which no evaluator can be generated. */
+	private static final Object UNSUPPORTED = new Object();
+
+	private static final Map<Class<?>, Map<String, Object>> evaluators = new HashMap<Class<?>, Map<String, Object>>();
+
+	/** The score of a regression for the agents of one class. */
+	public interface Evaluator {
+		/**
+		 * @param agent An agent of the class the evaluator has been generated for.
+		 * @return The sum of the products of the regressors of the agent with their coefficients.
+		 * @throws IllegalArgumentException If a regressor returned by a getter of a wrapper type is null.
+		 */
+		double score(Object agent);
+	}
+
+	/** Return the evaluator of a map whose only key is the regressor.
+	 * @param map A MultiKeyCoefficientMap with one key (the regressor), and either one value column or
+	 * a value column named as <i>RegressionColumnNames.COEFFICIENT</i>.
+	 * @param agentClass The class of the agents.
+	 * @return The evaluator, or null if it cannot be generated for the class.
+	 * @throws IllegalArgumentException If the map has more than one key.
+	 */
+	public static Evaluator getEvaluator(MultiKeyCoefficientMap map, Class<?> agentClass) {
+		if (map.getKeysNames().length != 1)
+			throw new IllegalArgumentException("Only the evaluator of a MultiKeyCoefficientMap with a single key (the regressor) can be generated, the map has keys " + Arrays.toString(map.getKeysNames()) + ".  Use LinearRegression.generateEvaluators() to generate one per cell of conditioning values.");
+		int column = CompiledCoefficients.getCoefficientColumn(map);
+		List<String> regressors = new ArrayList<String>();
+		List<Double> values = new ArrayList<Double>();
+		for (MapIterator<?, ?> iterator = map.mapIterator(); iterator.hasNext();) {
+			iterator.next();
+			String regressor = ((MultiKey<?>) iterator.getKey()).getKey(0).toString();
+			regressors.add(regressor);
+			values.add(CompiledCoefficients.getCoefficient(iterator.getValue(), column, regressor));
+		}
+		double[] coefficients = new double[values.size()];
+		for (int i = 0; i < coefficients.length; i++)
+			coefficients[i] = values.get(i);
+		return getEvaluator(regressors.toArray(new String[regressors.size()]), coefficients, agentClass);
+	}
+
+	/** Return the evaluator of a set of regressors and coefficients.
+	 * @param regressors The names of the regressors, matching the bean properties of the agents.
+	 * @param coefficients The coefficients of the regressors.
+	 * @param agentClass The class of the agents.
+	 * @return The evaluator, or null if it cannot be generated for the class.
+	 */
+	public static synchronized Evaluator getEvaluator(String[] regressors, double[] coefficients, Class<?> agentClass) {
+		if (agentClass == null || regressors.length != coefficients.length)
+			return null;
+		Map<String, Object> byCoefficients = evaluators.get(agentClass);
+		if (byCoefficients == null) {
+			byCoefficients = new HashMap<String, Object>();
+			evaluators.put(agentClass, byCoefficients);
+		}
+		String key = Arrays.toString(regressors) + Arrays.toString(coefficients);
+		Object evaluator = byCoefficients.get(key);
+		if (evaluator == null) {
+			evaluator = generate(regressors, coefficients, agentClass);
+			byCoefficients.put(key, (evaluator == null ? UNSUPPORTED : evaluator));
+		}
+		return (evaluator == UNSUPPORTED ? null : (Evaluator) evaluator);
+	}
+
+	private static Object generate(String[] regressors, double[] coefficients, Class<?> agentClass) {
+		if (agentClass.isInterface() || !ClassGenerator.isSupported(agentClass))
+			return null;
+
+		String className = agentClass.getName();
+		StringBuilder body = new StringBuilder();
+		body.append("public double score(Object target) { ");
+		body.append(className).append(" agent = (").append(className).append(") $1; ");
+		body.append("double sum = 0.0; ");
+		for (int i = 0; i < regressors.length; i++) {
+			Method getter = PropertyAccessor.get(agentClass, regressors[i]).getGetter();
+			if (getter == null || !ClassGenerator.isAccessible(agentClass, getter)) {
+				log.debug("No evaluator can be generated for " + className + ", the getter of regressor " + regressors[i] + " cannot be called.");
+				return null;
+			}
+			String value = getValue(agentClass, regressors[i], getter, "v" + i, body);
+			if (value == null) {
+				log.debug("No evaluator can be generated for " + className + ", regressor " + regressors[i] + " is of type " + getter.getReturnType().getName() + ".");
+				return null;
+			}
+			body.append("sum = sum + ").append(value).append(" * ").append(toLiteral(coefficients[i])).append("; ");
+		}
+		body.append("return sum; }");
+
+		try {
+			return ClassGenerator.generate(agentClass, "Evaluator", Evaluator.class, body.toString());
+		} catch (Throwable e) {
+			log.debug("No evaluator can be generated for " + className + ", the accessors will be used: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/** Return the expression of the value of a regressor as a double, appending the statements it needs to the body.
+	 * @return The expression, or null if the type of the regressor is not supported.
+	 */
+	private static String getValue(Class<?> agentClass, String regressor, Method getter, String local, StringBuilder body) {
+		Class<?> type = getter.getReturnType();
+		String call = "agent." + getter.getName() + "()";
+		if (type == Double.TYPE)
+			return call;
+		if (type == Float.TYPE || type == Long.TYPE || type == Integer.TYPE)
+			return "((double) " + call + ")";
+		if (type == Boolean.TYPE)
+			return "(" + call + " ? 1.0 : 0.0)";
+		if (type == Double.class || type == Float.class || type == Long.class || type == Integer.class || type == Boolean.class) {
+			//A null wrapper is not a number, as for the accessors
+			body.append(type.getName()).append(" ").append(local).append(" = ").append(call).append("; ");
+			body.append("if (").append(local).append(" == null) throw new IllegalArgumentException(\"")
+					.append(PropertyAccessor.getNotNumericMessage(agentClass, regressor).replace("\\", "\\\\").replace("\"", "\\\"")).append("\"); ");
+			return (type == Boolean.class ? "(" + local + ".booleanValue() ? 1.0 : 0.0)" : local + ".doubleValue()");
+		}
+		return null;
+	}
+
+	/** @return The source of a double constant, the same value once compiled. */
+	private static String toLiteral(double value) {
+		if (Double.isNaN(value))
+			return "(0.0 / 0.0)";
+		if (Double.isInfinite(value))
+			return (value > 0 ? "(1.0 / 0.0)" : "(-1.0 / 0.0)");
+		String literal = Double.toString(value);
+		return (literal.startsWith("-") ? "(" + literal + ")" : literal);
+	}
+
+}
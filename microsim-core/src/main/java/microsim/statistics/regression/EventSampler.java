@@ -0,0 +1,171 @@
+package microsim.statistics.regression;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A categorical distribution over a fixed set of events, prepared once to be sampled many times,
+ * as the age specific fertility or mortality rates of a table.<br>
+ * The weights are validated and normalised when the sampler is built, and turned into the tables of
+ * the alias method (Walker, in the formulation of Vose), so that each draw takes constant time and
+ * a single random number, whatever the number of events. <i>RegressionUtils.event(T[], double[],
+ * Random, boolean)</i> instead validates and normalises the weights and scans their cumulative sum
+ * on every draw, and <i>RegressionUtils.event(Map, Random)</i> also copies the map.<br>
+ * The frequencies of the events are the same as the ones of <i>RegressionUtils.event()</i>, but not
+ * the event drawn for a given random number, so replacing one with the other changes the
+ * realisations of a simulation with a fixed seed.<br>
+ * The object is immutable and can be shared by threads, each using its own random generator.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class EventSampler<T> {
+
+	private final Object[] events;
+	private final double[] probabilities;
+	/** The probability of keeping the event of each column of the alias table. */
+	private final double[] threshold;
+	/** The index of the event drawn when the event of a column is not kept. */
+	private final int[] alias;
+
+	/** Build the sampler of a set of events.
+	 * @param events The events.
+	 * @param weights The weights of the events, aligned with the events by index. They are normalised
+	 * by their sum, and the array is not modified.
+	 * @throws IllegalArgumentException If the arrays have different lengths, are empty, contain a
+	 * negative or non finite weight, or the weights sum to 0.
+	 */
+	public EventSampler(T[] events, double[] weights) {
+		this(new Entries<T>(events.clone(), weights));
+	}
+
+	/** Build the sampler of the events of a map.
+	 * @param map A map with the events as keys and their weights as values.
+	 * @throws IllegalArgumentException If the map is empty, or a weight is null, negative or not
+	 * finite, or the weights sum to 0.
+	 */
+	public EventSampler(Map<T, ? extends Number> map) {
+		this(new Entries<T>(map));
+	}
+
+	private EventSampler(Entries<T> entries) {
+		Object[] events = entries.events;
+		double[] weights = entries.weights;
+		if (events.length != weights.length)
+			throw new IllegalArgumentException("The number of events (" + events.length + ") and of weights (" + weights.length + ") differ.");
+		if (events.length == 0)
+			throw new IllegalArgumentException("An EventSampler needs at least one event.");
+
+		double sum = 0.;
+		for (int i = 0; i < weights.length; i++) {
+			if (!(weights[i] >= 0.) || Double.isInfinite(weights[i]))
+				throw new IllegalArgumentException("Negative or non finite weights (probabilities) are not allowed!  Check 'weights' array element number " + i + ", which currently has the value " + weights[i] + ".");
+			sum += weights[i];
+		}
+		if (sum <= 0.)
+			throw new IllegalArgumentException("The weights of the events sum to 0, no event can be drawn.");
+
+		int n = events.length;
+		this.events = events;
+		probabilities = new double[n];
+		threshold = new double[n];
+		alias = new int[n];
+
+		//Columns whose scaled probability is below 1 are filled up with the excess of the columns above 1.
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int smallCount = 0, largeCount = 0;
+		for (int i = 0; i < n; i++) {
+			probabilities[i] = weights[i] / sum;
+			threshold[i] = probabilities[i] * n;
+			alias[i] = i;
+			if (threshold[i] < 1.)
+				small[smallCount++] = i;
+			else
+				large[largeCount++] = i;
+		}
+		while (smallCount > 0 && largeCount > 0) {
+			int s = small[--smallCount];
+			int l = large[--largeCount];
+			alias[s] = l;
+			threshold[l] = (threshold[l] + threshold[s]) - 1.;
+			if (threshold[l] < 1.)
+				small[smallCount++] = l;
+			else
+				large[largeCount++] = l;
+		}
+		//What is left is only off 1 by rounding errors.
+		while (largeCount > 0)
+			threshold[large[--largeCount]] = 1.;
+		while (smallCount > 0)
+			threshold[small[--smallCount]] = 1.;
+	}
+
+	/** The events and their weights, as passed to the constructors. */
+	private static class Entries<T> {
+		private final Object[] events;
+		private final double[] weights;
+
+		Entries(Object[] events, double[] weights) {
+			this.events = events;
+			this.weights = weights;
+		}
+
+		/** Read the events and the weights of a map in one pass over its entries. */
+		Entries(Map<T, ? extends Number> map) {
+			events = new Object[map.size()];
+			weights = new double[map.size()];
+			int i = 0;
+			for (Map.Entry<T, ? extends Number> entry : map.entrySet()) {
+				if (entry.getValue() == null)
+					throw new IllegalArgumentException("The weight of event " + entry.getKey() + " is null.");
+				events[i] = entry.getKey();
+				weights[i++] = entry.getValue().doubleValue();
+			}
+		}
+	}
+
+	/** Draw an event.
+	 * @param rnd The random number generator.
+	 * @return The event drawn.
+	 */
+	@SuppressWarnings("unchecked")
+	public T sample(Random rnd) {
+		double u = rnd.nextDouble() * events.length;
+		int column = Math.min((int) u, events.length - 1);
+		return (T) events[(u - column < threshold[column]) ? column : alias[column]];
+	}
+
+	/** @return The number of events. */
+	public int size() {
+		return events.length;
+	}
+
+	/** @param index The index of an event, in the order given when building the sampler.
+	 * @return The event. */
+	@SuppressWarnings("unchecked")
+	public T getEvent(int index) {
+		return (T) events[index];
+	}
+
+	/** @param index The index of an event, in the order given when building the sampler.
+	 * @return The probability of the event, i.e. its weight divided by the sum of the weights. */
+	public double getProbability(int index) {
+		return probabilities[index];
+	}
+
+	@Override
+	public String toString() {
+		return "EventSampler " + Arrays.toString(events) + " " + Arrays.toString(probabilities);
+	}
+
+}
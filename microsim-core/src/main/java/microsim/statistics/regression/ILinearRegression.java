@@ -1,6 +1,8 @@
 package microsim.statistics.regression;
 
+import java.util.Collection;
 import java.util.Map;
+import java.util.Random;
 
 import microsim.statistics.IDoubleSource;
 import microsim.statistics.IObjectSource;
@@ -14,4 +16,35 @@ public interface ILinearRegression {
 	<T extends Enum<T>> double getScore(IDoubleSource iDblSrc, Class<T> enumType);
 	
 	<T extends Enum<T>, U extends Enum<U>> double getScore(IDoubleSource iDblSrc, Class<T> enumTypeDouble, IObjectSource iObjSrc, Class<U> enumTypeObject);
+	
+	/**
+	 * Compute the scores of a collection of agents with <i>getScore(Object)</i>.
+	 * 
+	 * @param individuals the agents
+	 * @param out the array receiving the scores, in the iteration order of the collection
+	 * @param parallel true to score chunks of agents in parallel, in which case the agents must be safe to read from several threads
+	 */
+	default void getScores(Collection<?> individuals, final double[] out, boolean parallel) {
+		RegressionBatch.forEach(individuals, out.length, parallel, null, new RegressionBatch.AgentTask() {
+			public void run(Object agent, int index, Random random) {
+				out[index] = getScore(agent);
+			}
+		});
+	}
+	
+	/**
+	 * Compute the scores of a collection of agents with <i>getScore(IDoubleSource, Class)</i>.
+	 * 
+	 * @param individuals the agents
+	 * @param enumType the enum type whose constants are named as the regressors
+	 * @param out the array receiving the scores, in the iteration order of the collection
+	 * @param parallel true to score chunks of agents in parallel, in which case the agents must be safe to read from several threads
+	 */
+	default <T extends Enum<T>> void getScores(Collection<? extends IDoubleSource> individuals, final Class<T> enumType, final double[] out, boolean parallel) {
+		RegressionBatch.forEach(individuals, out.length, parallel, null, new RegressionBatch.AgentTask() {
+			public void run(Object agent, int index, Random random) {
+				out[index] = getScore((IDoubleSource) agent, enumType);
+			}
+		});
+	}
 }
@@ -1,17 +1,16 @@
 package microsim.statistics.regression;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import microsim.data.MultiKeyCoefficientMap;
+import microsim.statistics.ColumnStore;
 import microsim.statistics.IDoubleSource;
 import microsim.statistics.IObjectSource;
 
-import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.collections4.MapIterator;
 import org.apache.commons.collections4.keyvalue.MultiKey;
 
@@ -19,6 +18,21 @@ public class LinearRegression implements ILinearRegression {
 	
 	private MultiKeyCoefficientMap map = null;
 	
+	/** The coefficients and the index built from the current version of the map, null until the first score that needs them. */
+	private volatile Compiled compiled = null;
+	
+	/** The coefficients compiled for each enum type of regressors, used when the map has only one key, 
+	 * and the index of the coefficients by the values of the conditioning keys, built from a version of the map. */
+	private static class Compiled {
+		private final long version;
+		private final Map<Class<?>, CompiledCoefficients<?>> coefficients = new ConcurrentHashMap<Class<?>, CompiledCoefficients<?>>();
+		private volatile CoefficientIndex index = null;
+		
+		private Compiled(long version) {
+			this.version = version;
+		}
+	}
+	
 	/**
 	 * Linear Regression object.
 	 * 
@@ -142,13 +156,104 @@ public class LinearRegression implements ILinearRegression {
 	
 	public <T extends Enum<T>> double getScore(IDoubleSource iDblSrc, Class<T> enumType) {
 		if(map.getKeysNames().length == 1) {
-			return computeScore(map, iDblSrc, enumType, true);			//No additional conditioning regression keys used, so no need to check for them
+			return compile(enumType).score(iDblSrc);			//No additional conditioning regression keys used, so the compiled coefficients can be used
 		}
 		else {
-			return computeScore(map, iDblSrc, enumType);		//Additional conditioning regression keys used (map has more than one key in the multiKey, so need to use reflection (perhaps slow) in order to extract the underlying agents' properties e.g. gender or civil status, in order to determine the relevant regression co-efficients.  If time is critical, consider making the underlying agent (the IDoubleSource) also implement the IObjectSource interface, which uses a faster method to retrieve information about the agent instead of reflection.
+			try {
+				return getIndex().score(iDblSrc, enumType);		//Additional conditioning regression keys used (map has more than one key in the multiKey, so need to use reflection (perhaps slow) in order to extract the underlying agents' properties e.g. gender or civil status, in order to determine the relevant cell of regression co-efficients.  If time is critical, consider making the underlying agent (the IDoubleSource) also implement the IObjectSource interface, which uses a faster method to retrieve information about the agent instead of reflection.
+			} catch (IllegalArgumentException e) {
+				System.err.println(e.getMessage());
+				return 0;
+			}
 		}
 	}	
 
+	/**
+	 * Return the coefficients of the regression bound to an enum of regressors, compiling them on
+	 * the first call for the enum type.  Only maps with one key (the regressor) can be compiled.
+	 * The compiled coefficients are kept for each enum type until the map is modified through its 
+	 * methods (see <i>MultiKeyCoefficientMap.getVersion()</i>).  <i>clearCompiled()</i> must be called 
+	 * if the map is modified otherwise, e.g. through its iterators or by changing its arrays of values.
+	 * 
+	 * @param enumType specifies the enum type whose constants are named as the regressors of the map
+	 * @return the compiled coefficients
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Enum<T>> CompiledCoefficients<T> compile(Class<T> enumType) {
+		Compiled c = getCompiled();
+		CompiledCoefficients<?> coefficients = c.coefficients.get(enumType);
+		if(coefficients == null) {
+			coefficients = CompiledCoefficients.compile(map, enumType);
+			c.coefficients.put(enumType, coefficients);
+		}
+		return (CompiledCoefficients<T>) coefficients;
+	}
+	
+	/**
+	 * Return the index of the coefficients by the values of the conditioning keys of the map,
+	 * building it on the first call, and again after the map has been modified through its methods.
+	 * 
+	 * @return the index of the coefficients
+	 */
+	public CoefficientIndex getIndex() {
+		Compiled c = getCompiled();
+		CoefficientIndex i = c.index;
+		if(i == null) {
+			i = new CoefficientIndex(map);
+			c.index = i;
+		}
+		return i;
+	}
+	
+	/** Return the coefficients and the index built from the current version of the map, discarding them if the map has been modified. */
+	private Compiled getCompiled() {
+		long version = map.getVersion();
+		Compiled c = compiled;
+		if(c == null || c.version != version) {
+			c = new Compiled(version);
+			compiled = c;
+		}
+		return c;
+	}
+	
+	/**
+	 * Generate with javassist the code computing the scores of the agents of a class, with the getters 
+	 * of the regressors called directly and the coefficients inlined as constants (see <i>EvaluatorFactory</i>).  
+	 * <i>getScore(Object)</i> then uses it for the agents of exactly that class, and the probabilities 
+	 * of the logit and probit regressions too.  If the map has conditioning keys, one evaluator is generated
+	 * for each combination of their values, and the cell of each agent is still found from its bean properties.
+	 * The evaluators are discarded by <i>clearCompiled()</i> and when the map is modified, so this method must be called again after that.
+	 * 
+	 * @param agentClass the class of the agents
+	 * @return true if the code has been generated for all the cells of the map, false if the class is not 
+	 * supported, in which case the scores of (some of) the cells keep being computed through the accessors
+	 */
+	public boolean generateEvaluators(Class<?> agentClass) {
+		CoefficientIndex i = getIndex();
+		return (i.generateEvaluators(agentClass) == i.getCellCount());
+	}
+	
+	/**
+	 * Compute the scores of all the agents of a column store, whose columns must be named as the 
+	 * regressors and the conditioning keys of the map.  The store is updated before the scores are
+	 * computed.  The scores are the same as the ones of <i>getScore(Object)</i> on the agents, as long as 
+	 * the columns are in sync with them.
+	 * 
+	 * @param store the column store
+	 * @param out the array receiving the scores, indexed by the slots of the store
+	 * @param parallel true to score chunks of slots in parallel
+	 */
+	public void getScores(ColumnStore<?> store, double[] out, boolean parallel) {
+		getIndex().score(store, out, parallel);
+	}
+	
+	/**
+	 * Discard the compiled coefficients and the index of the conditioning keys, so that they are 
+	 * built again from the map at the next score.
+	 */
+	public void clearCompiled() {
+		compiled = null;
+	}
 	
 	/**
 	 * Use this method when the underlying agent does not have any additional conditioning regression keys (such as the gender or civil status) to determine the appropriate regression co-efficients, i.e. the regression co-efficients do not depend on any properties of the underlying model. 
@@ -205,39 +310,16 @@ public class LinearRegression implements ILinearRegression {
 //		System.out.println("Reflection method");
 		String[] coeffMultiMapKeysNames = coeffMultiMap.getKeysNames();
 		try {			
-			Map<?, ?> describedData = PropertyUtils.describe(iDblSrc);
 			Map<String, String> propertyMap = new HashMap<String, String>();
 			
 			for(String key : coeffMultiMapKeysNames) {
 
 				if(!key.equals(RegressionColumnNames.REGRESSOR.toString())) {
-					if(describedData.containsKey(key)) {
-						Object value = describedData.get(key);
-						if(value != null)
-						{
-							if (value.getClass().equals(Double.class)) {
-								final Double r = (Double) value;
-								propertyMap.put(key, ((Double)(r != null ? r : 0.0)).toString());				
-							} else if (value.getClass().equals(Integer.class)) {
-								Integer r = (Integer) value;
-								propertyMap.put(key, ((Integer)(r != null ? r : 0)).toString());				
-							} else if (value.getClass().equals(Boolean.class)) {
-								Boolean r = (Boolean) value;
-								boolean b = (Boolean)(r != null ? r : false);
-								propertyMap.put(key, (b ? "true" : "false"));				
-							} else if (value.getClass().equals(String.class)) {
-								final String s = (String) value;
-								propertyMap.put(key, s);	
-							} else if (value.getClass().equals(Long.class)) {
-								final Long r = (Long) value;
-								propertyMap.put(key, ((Long)(r != null ? r : 0L)).toString());				
-							} else if (value.getClass().isEnum()) {
-								final String e = value.toString();
-								propertyMap.put(key, e);								
-							} else if (value.getClass().equals(Float.class)) {
-								final Float r = (Float) value;
-								propertyMap.put(key, ((Float)(r != null ? r : 0.0f)).toString());				
-							} 
+					PropertyAccessor accessor = PropertyAccessor.get(iDblSrc.getClass(), key);		//The getter is resolved once per class of agent, instead of describing the agent at each call
+					if(accessor.isReadable()) {
+						String value = accessor.getKeyValue(iDblSrc);
+						if(value != null) {
+							propertyMap.put(key, value);
 						}
 					}
 					else throw new NoSuchFieldException("Error in Regression: Could not find LinearRegression.map key named \'" + key + "\' among the fields of the iDoubleSource argument to computeScore(MultiKeyCoefficientMap, IDoubleSource, Class<T>).  Check the character cases of \'" + key + "\' match, if the field exists in object implementing iDoubleSource, to ensure they match.  If they do match, check that a getter method for the field exists following the Java Beans convention.");
@@ -295,15 +377,6 @@ public class LinearRegression implements ILinearRegression {
 		} catch (IllegalArgumentException e) {
 			System.err.println(e.getMessage());
 			return 0;
-		} catch (IllegalAccessException e) {
-			System.err.println(e.getMessage());
-			return 0;
-		} catch (InvocationTargetException e) {
-			System.err.println(e.getMessage());
-			return 0;
-		} catch (NoSuchMethodException e) {
-			System.err.println(e.getMessage());
-			return 0;
 		} catch (NoSuchFieldException e) {
 			System.err.println(e.getMessage());
 			return 0;
@@ -321,7 +394,12 @@ public class LinearRegression implements ILinearRegression {
 	 * @author Ross Richardson  
 	 */
 	public double getScore(Object agent) {
-		return computeScore(map, agent);
+		try {
+			return getIndex().score(agent);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			return 0;
+		}
 	}
 
 	/** 
@@ -336,8 +414,7 @@ public class LinearRegression implements ILinearRegression {
 	 */
 	public static double computeScore(MultiKeyCoefficientMap coeffMultiMap, Object agent) {		
 		try {			
-			final Map<String, String> propertyMap = extractMapNumbersBooleansEnumsAndStrings(agent);	//Extract fields of agent as strings
-			final Map<String, Double> valueMap = extractMapNumbersAndBooleans(agent);		//Extract numerical fields of agent
+			final Class<?> agentClass = agent.getClass();		//The getters of the keys and of the regressors are resolved once per class of agent, instead of describing the agent at each call
 			
 			String[] coeffMultiMapKeysNames = coeffMultiMap.getKeysNames();
 			int iMax = coeffMultiMapKeysNames.length;
@@ -350,10 +427,9 @@ public class LinearRegression implements ILinearRegression {
 					attributes[i] = "";		//So we don't get null pointer exceptions later
 				}
 				else {
-					if(propertyMap.containsKey(key)) {
-						attributes[i] = propertyMap.get(key);
-					}
-					else {
+					PropertyAccessor accessor = PropertyAccessor.get(agentClass, key);
+					attributes[i] = (accessor.isReadable() ? accessor.getKeyValue(agent) : null);		//Conditioning value read as a string
+					if(attributes[i] == null) {
 						throw new IllegalArgumentException("The " + agent.getClass().getCanonicalName() + " object does not contain a member field called '" + key + "' to match the conditioning key of the Regression object.  If you believe this should not be the case, consider checking the spelling and case (lower / upper) of the member field in the " + agent.getClass().getSimpleName() + " object." 
 								+  "\nThe stack trace is "
 								+ "\n" + Arrays.toString(Thread.currentThread().getStackTrace()));
@@ -379,8 +455,9 @@ public class LinearRegression implements ILinearRegression {
 				if(coeffMKapplicable == true) {
 					String regressor = coeffMK.getKey(regressorColumnIndex).toString();
 					double covariate = Double.MIN_VALUE;
-					if(valueMap.containsKey(regressor)) {
-						covariate = valueMap.get(regressor);		//Gets value of variable with key that matches the regressor string from object implementing IDoubleSource interface	
+					PropertyAccessor accessor = PropertyAccessor.get(agentClass, regressor);
+					if(accessor.isReadable()) {
+						covariate = accessor.getDoubleValue(agent);		//Gets value of numerical or boolean field with name that matches the regressor string	
 					}
 					else {
 						throw new IllegalArgumentException(agent.getClass().getCanonicalName() + " object does not contain a field called " + regressor + ".  If there is supposed to be such a field, check the upper/lower case of the regressor specified in the MultiKeyCoefficientMap of the Regression object to ensure that it matches the name of the " + agent.getClass().getSimpleName() + "object's field."
@@ -413,18 +490,6 @@ public class LinearRegression implements ILinearRegression {
 		} catch (IllegalArgumentException e) {
 			System.err.println(e.getMessage());
 			return 0;
-		} catch (IllegalAccessException e) {
-			System.err.println(e.getMessage());
-			return 0;
-		} catch (InvocationTargetException e) {
-			System.err.println(e.getMessage());
-			return 0;
-		} catch (NoSuchMethodException e) {
-			System.err.println(e.getMessage());
-			return 0;
-//		} catch (NoSuchFieldException e) {
-//			System.err.println(e.getMessage());
-//			return 0;
 		}
 	}
 	
@@ -459,7 +524,12 @@ public class LinearRegression implements ILinearRegression {
 	 * @author Ross Richardson  
 	 */
 	public <T extends Enum<T>, U extends Enum<U>> double getScore(IDoubleSource iDblSrc, Class<T> enumTypeDouble, IObjectSource iObjSrc, Class<U> enumTypeObject) {
-		return computeScore(map, iDblSrc, enumTypeDouble, iObjSrc, enumTypeObject);
+		try {
+			return getIndex().score(iDblSrc, enumTypeDouble, iObjSrc, enumTypeObject);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			return 0;
+		}
 	}	
 	
 	/**
@@ -528,77 +598,4 @@ public class LinearRegression implements ILinearRegression {
 			return sum;
 	}
 	
-	private static Map<String, Double> extractMapNumbersAndBooleans(Object object) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException, NoSuchMethodException {
-		Map<String, Double> resultMap = new HashMap<String, Double>();
-		
-		Map<?, ?> describedData = PropertyUtils.describe(object);
-		
-		for (Iterator<?> iterator = describedData.keySet().iterator(); iterator.hasNext();) {
-			String key = (String) iterator.next();
-			Object value = describedData.get(key);
-			if(value != null)
-			{
-				if (value.getClass().equals(Double.class)) {
-					final Double r = (Double) value;
-					resultMap.put(key, (r != null ? r : 0.0));				
-				} else if (value.getClass().equals(Float.class)) {
-					final Float r = (Float) value;
-					resultMap.put(key, ((Float)(r != null ? r : 0.0f)).doubleValue());				
-				} else if (value.getClass().equals(Long.class)) {
-					final Long r = (Long) value;
-					resultMap.put(key, ((Long)(r != null ? r : 0L)).doubleValue());				
-				} else if (value.getClass().equals(Integer.class)) {
-					final Integer r = (Integer) value;
-					resultMap.put(key, ((Integer)(r != null ? r : 0)).doubleValue());				
-				} else if (value.getClass().equals(Boolean.class)) {
-					Boolean r = (Boolean) value;
-					boolean b = (Boolean)(r != null ? r : false);
-					resultMap.put(key, (b ? 1.0 : 0.0));				
-				}
-			} 
-		}
-		
-		return resultMap;
-	}
-	
-	private static Map<String, String> extractMapNumbersBooleansEnumsAndStrings(Object object) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException, NoSuchMethodException {
-		
-		Map<String, String> resultMap = new HashMap<String, String>();
-		
-		Map<?, ?> describedData = PropertyUtils.describe(object);
-		
-		for (Iterator<?> iterator = describedData.keySet().iterator(); iterator.hasNext();) {
-			String key = (String) iterator.next();
-			Object value = describedData.get(key);
-			if(value != null)
-			{
-				if (value.getClass().equals(Double.class)) {
-					final Double r = (Double) value;
-					resultMap.put(key, ((Double)(r != null ? r : 0.0)).toString());				
-				} else if (value.getClass().equals(Integer.class)) {
-					Integer r = (Integer) value;
-					resultMap.put(key, ((Integer)(r != null ? r : 0)).toString());				
-				} else if (value.getClass().equals(Boolean.class)) {
-					Boolean r = (Boolean) value;
-					boolean b = (Boolean)(r != null ? r : false);
-					resultMap.put(key, (b ? "true" : "false"));				
-				} else if (value.getClass().equals(String.class)) {
-					final String s = (String) value;
-					resultMap.put(key, s);	
-				} else if (value.getClass().equals(Long.class)) {
-					final Long r = (Long) value;
-					resultMap.put(key, ((Long)(r != null ? r : 0L)).toString());				
-				} else if (value.getClass().isEnum()) {
-					final String e = value.toString();
-					resultMap.put(key, e);								
-				} else if (value.getClass().equals(Float.class)) {
-					final Float r = (Float) value;
-					resultMap.put(key, ((Float)(r != null ? r : 0.0f)).toString());				
-				} 
-			} 
-		}
-		
-		return resultMap;
-	}
-	
 }
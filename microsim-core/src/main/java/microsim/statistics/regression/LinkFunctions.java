@@ -0,0 +1,186 @@
+package microsim.statistics.regression;
+
+import cern.jet.stat.Probability;
+
+/**
+ * The link functions of the binary and multiple choice regressions, mapping the scores of the
+ * agents to probabilities: the logistic function of the logit models and the standard normal
+ * cumulative distribution function of the probit models.<br>
+ * Besides the exact functions, computed with <i>Math.exp()</i> and with the CDF of the colt library,
+ * it provides fast approximations, used by the regression objects in fast math mode
+ * (<i>setFastMath(true)</i>). The approximations compute the exponential with a polynomial on
+ * the reduced argument, scaled by a power of two built from its bits, and the normal CDF with the
+ * rational approximation 26.2.17 of Abramowitz and Stegun. They have no table look up and no
+ * branch other than selects, so that compilers able to vectorise the loops of the array versions
+ * can do so. The gain is on the normal CDF, about three times faster than the colt one on
+ * HotSpot 17. The logistic function is not faster there than with <i>Math.exp()</i>, which HotSpot
+ * compiles to an intrinsic: it is provided so that logit and probit models can be switched in the
+ * same way, and for the JVMs without the intrinsic.<br>
+ * The maximum absolute error of the approximations over the whole real line is given by
+ * <i>FAST_LOGISTIC_MAX_ERROR</i> and <i>FAST_NORMAL_CDF_MAX_ERROR</i>. Since the probabilities are
+ * compared with uniform random numbers to draw the events, an error of this size changes the
+ * outcome of a draw with the same probability, i.e. about once every ten million draws for the
+ * normal CDF, and much less often for the logistic function.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public final class LinkFunctions {
+
+	/** The maximum absolute difference between <i>fastLogistic()</i> and <i>logistic()</i>. */
+	public static final double FAST_LOGISTIC_MAX_ERROR = 1.e-9;
+
+	/** The maximum absolute difference between <i>fastNormalCdf()</i> and <i>normalCdf()</i>. */
+	public static final double FAST_NORMAL_CDF_MAX_ERROR = 1.e-7;
+
+	private static final double LOG2E = 1.4426950408889634;
+	private static final double LN2 = 0.6931471805599453;
+	private static final double MIN_EXP_ARGUMENT = -700.;			//exp() of smaller arguments is below 1e-304, and returned as 0
+	private static final double SHIFTER = 0x1.8p52;					//Adding it rounds a double to an integer, held by the low bits of the sum
+
+	//Coefficients of the approximation 26.2.17 of Abramowitz and Stegun, with an absolute error below 7.5e-8
+	private static final double P = 0.2316419;
+	private static final double B1 = 0.319381530;
+	private static final double B2 = -0.356563782;
+	private static final double B3 = 1.781477937;
+	private static final double B4 = -1.821255978;
+	private static final double B5 = 1.330274429;
+	private static final double INV_SQRT_2PI = 0.3989422804014327;
+
+	private LinkFunctions() {
+	}
+
+	/** @param x A score.
+	 * @return The logistic function of the score, 1 / (1 + exp(-x)). */
+	public static double logistic(double x) {
+		return (double) 1 / (1 + Math.exp(- x));
+	}
+
+	/** @param x A score.
+	 * @return The standard normal cumulative distribution function of the score. */
+	public static double normalCdf(double x) {
+		return Probability.normal(0., 1., x);
+	}
+
+	/** @param x A score.
+	 * @return The logistic function of the score, within <i>FAST_LOGISTIC_MAX_ERROR</i>. */
+	public static double fastLogistic(double x) {
+		double e = fastExpNegative(- Math.abs(x));
+		double d = 1. / (1. + e);
+		return (x >= 0. ? d : e * d);
+	}
+
+	/** @param x A score.
+	 * @return The standard normal cumulative distribution function of the score, within <i>FAST_NORMAL_CDF_MAX_ERROR</i>. */
+	public static double fastNormalCdf(double x) {
+		double z = Math.abs(x);
+		double t = 1. / (1. + P * z);
+		double tail = INV_SQRT_2PI * fastExpNegative(-0.5 * z * z) * t * (B1 + t * (B2 + t * (B3 + t * (B4 + t * B5))));
+		return (x >= 0. ? 1. - tail : tail);
+	}
+
+	/** Compute the logistic function of an array of scores.
+	 * @param scores The scores.
+	 * @param out The array receiving the probabilities, which can be the array of scores.
+	 * @param length The number of scores, starting from index 0.
+	 */
+	public static void fastLogistic(double[] scores, double[] out, int length) {
+		for (int i = 0; i < length; i++)
+			out[i] = fastLogistic(scores[i]);
+	}
+
+	/** Compute the standard normal cumulative distribution function of an array of scores.
+	 * @param scores The scores.
+	 * @param out The array receiving the probabilities, which can be the array of scores.
+	 * @param length The number of scores, starting from index 0.
+	 */
+	public static void fastNormalCdf(double[] scores, double[] out, int length) {
+		for (int i = 0; i < length; i++)
+			out[i] = fastNormalCdf(scores[i]);
+	}
+
+	/**
+	 * The link function of a regression object, either logit or probit, computed with the exact
+	 * function or with its fast approximation according to the fast math mode of the object.
+	 * Not of interest for users: the regressions expose the mode through their <i>setFastMath()</i>
+	 * and <i>isFastMath()</i> methods.
+	 */
+	static final class Link {
+		private final boolean probit;
+		private boolean fastMath = false;
+
+		private Link(boolean probit) {
+			this.probit = probit;
+		}
+
+		/** @return A new logit link, with the exact logistic function. */
+		static Link logit() {
+			return new Link(false);
+		}
+
+		/** @return A new probit link, with the exact standard normal cumulative distribution function. */
+		static Link probit() {
+			return new Link(true);
+		}
+
+		/** @return True if the fast approximation is used, false if the exact function is. */
+		boolean isFastMath() {
+			return fastMath;
+		}
+
+		/** @param fastMath True to use the fast approximation, false to use the exact function. */
+		void setFastMath(boolean fastMath) {
+			this.fastMath = fastMath;
+		}
+
+		/** @param score A score.
+		 * @return The probability of the score. */
+		double apply(double score) {
+			if (probit)
+				return (fastMath ? fastNormalCdf(score) : normalCdf(score));
+			else
+				return (fastMath ? fastLogistic(score) : logistic(score));
+		}
+
+		/** Compute the probabilities of an array of scores.
+		 * @param scores The scores.
+		 * @param out The array receiving the probabilities, which can be the array of scores.
+		 * @param length The number of scores, starting from index 0.
+		 */
+		void apply(double[] scores, double[] out, int length) {
+			if (fastMath) {
+				if (probit)
+					fastNormalCdf(scores, out, length);
+				else
+					fastLogistic(scores, out, length);
+			} else
+				for (int i = 0; i < length; i++)
+					out[i] = apply(scores[i]);
+		}
+	}
+
+	/** Approximate exp(x) for x &le; 0 (or NaN), with a relative error below 1e-9, and 0 below
+	 * <i>MIN_EXP_ARGUMENT</i>, where the absolute error is below 1e-304.<br>
+	 * exp(x) = 2^n * exp(r), where n is the integer nearest to x / ln(2), |r| &le; ln(2) / 2, and
+	 * exp(r) is computed by its Taylor polynomial of degree 8. 2^n is built from the exponent bits,
+	 * taking n from the low bits of x / ln(2) + SHIFTER rather than converting it to a long.
+	 */
+	private static double fastExpNegative(double x) {
+		double y = Math.max(x, MIN_EXP_ARGUMENT);
+		double shifted = y * LOG2E + SHIFTER;
+		double n = shifted - SHIFTER;
+		double r = y - n * LN2;
+		double p = 1. + r * (1. + r * (1. / 2 + r * (1. / 6 + r * (1. / 24 + r * (1. / 120 + r * (1. / 720 + r * (1. / 5040 + r * (1. / 40320))))))));
+		double e = p * Double.longBitsToDouble((Double.doubleToRawLongBits(shifted) + 1023) << 52);
+		return (x < MIN_EXP_ARGUMENT ? 0. : e);
+	}
+
+}
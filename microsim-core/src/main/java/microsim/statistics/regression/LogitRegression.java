@@ -1,10 +1,12 @@
 package microsim.statistics.regression;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.Random;
 
 import microsim.data.MultiKeyCoefficientMap;
 import microsim.engine.SimulationEngine;
+import microsim.statistics.ColumnStore;
 import microsim.statistics.IDoubleSource;
 import microsim.statistics.IObjectSource;
 
@@ -12,6 +14,9 @@ public class LogitRegression extends LinearRegression implements IBinaryChoiceRe
 
 	private Random random;
 	
+	/** The link function, computing the probabilities with the exact function or its fast approximation. */
+	private final LinkFunctions.Link link = LinkFunctions.Link.logit();
+	
 	public LogitRegression(MultiKeyCoefficientMap map) {
 		super(map);
 		random = SimulationEngine.getRnd();
@@ -25,12 +30,12 @@ public class LogitRegression extends LinearRegression implements IBinaryChoiceRe
 
 	public double getProbability(Map<String, Double> values) {
 		final double score = super.getScore(values);		
-		return (double) 1 / (1 + Math.exp(- score));
+		return link.apply(score);
 	}
 	
 	public double getProbability(Object individual) {
 		final double score = super.getScore(individual);		
-		return (double) 1 / (1 + Math.exp(- score));			
+		return link.apply(score);			
 	}
 	
 //	@Override
@@ -53,7 +58,7 @@ public class LogitRegression extends LinearRegression implements IBinaryChoiceRe
 	
 	public <T extends Enum<T>> double getProbability(IDoubleSource iDblSrc, Class<T> enumType) {
 		final double score = super.getScore(iDblSrc, enumType);		
-		return (double) 1 / (1 + Math.exp(- score));			
+		return link.apply(score);			
 	}
 	
 	public <T extends Enum<T>> boolean event(IDoubleSource iDblSrc, Class<T> enumType) {
@@ -63,12 +68,119 @@ public class LogitRegression extends LinearRegression implements IBinaryChoiceRe
 	
 	public <T extends Enum<T>, U extends Enum<U>> double getProbability(IDoubleSource iDblSrc, Class<T> enumTypeDbl, IObjectSource iObjSrc, Class<U> enumTypeObj) {
 		final double score = super.getScore(iDblSrc, enumTypeDbl, iObjSrc, enumTypeObj);		
-		return (double) 1 / (1 + Math.exp(- score));			
+		return link.apply(score);			
 	}
 	
 	public <T extends Enum<T>, U extends Enum<U>> boolean event(IDoubleSource iDblSrc, Class<T> enumTypeDbl, IObjectSource iObjSrc, Class<U> enumTypeObj) {
 		final double probability = getProbability(iDblSrc, enumTypeDbl, iObjSrc, enumTypeObj);
 		return (random.nextDouble() < probability);		
 	}
+	
+	/**
+	 * Compute the probabilities of a collection of agents with <i>getProbability(Object)</i>.
+	 * 
+	 * @param individuals the agents
+	 * @param out the array receiving the probabilities, in the iteration order of the collection
+	 * @param parallel true to process chunks of agents in parallel, in which case the agents must be safe to read from several threads
+	 */
+	public void getProbabilities(Collection<?> individuals, final double[] out, boolean parallel) {
+		RegressionBatch.forEach(individuals, out.length, parallel, null, new RegressionBatch.AgentTask() {
+			public void run(Object agent, int index, Random random) {
+				out[index] = getProbability(agent);
+			}
+		});
+	}
+	
+	/**
+	 * Compute the probabilities of a collection of agents with <i>getProbability(IDoubleSource, Class)</i>.
+	 * 
+	 * @param individuals the agents
+	 * @param enumType the enum type whose constants are named as the regressors
+	 * @param out the array receiving the probabilities, in the iteration order of the collection
+	 * @param parallel true to process chunks of agents in parallel, in which case the agents must be safe to read from several threads
+	 */
+	public <T extends Enum<T>> void getProbabilities(Collection<? extends IDoubleSource> individuals, final Class<T> enumType, final double[] out, boolean parallel) {
+		RegressionBatch.forEach(individuals, out.length, parallel, null, new RegressionBatch.AgentTask() {
+			public void run(Object agent, int index, Random random) {
+				out[index] = getProbability((IDoubleSource) agent, enumType);
+			}
+		});
+	}
+	
+	/**
+	 * Draw the events of a collection of agents, with the probabilities of <i>getProbability(Object)</i>.
+	 * The agents are split into chunks, each drawing from its own generator seeded by <i>random</i>, so 
+	 * the outcomes are the same in sequential and in parallel mode.  They differ from the ones of calling
+	 * <i>event(Object)</i> on each agent in turn.
+	 * 
+	 * @param individuals the agents
+	 * @param out the array receiving the events, in the iteration order of the collection
+	 * @param random the generator seeding the generators of the chunks
+	 * @param parallel true to process chunks of agents in parallel, in which case the agents must be safe to read from several threads
+	 */
+	public void events(Collection<?> individuals, final boolean[] out, Random random, boolean parallel) {
+		RegressionBatch.forEach(individuals, out.length, parallel, random, new RegressionBatch.AgentTask() {
+			public void run(Object agent, int index, Random random) {
+				out[index] = (random.nextDouble() < getProbability(agent));
+			}
+		});
+	}
+	
+	/**
+	 * Draw the events of a collection of agents, with the probabilities of <i>getProbability(IDoubleSource, Class)</i>.
+	 * The agents are split into chunks, each drawing from its own generator seeded by <i>random</i>, so 
+	 * the outcomes are the same in sequential and in parallel mode.  They differ from the ones of calling
+	 * <i>event(IDoubleSource, Class)</i> on each agent in turn.
+	 * 
+	 * @param individuals the agents
+	 * @param enumType the enum type whose constants are named as the regressors
+	 * @param out the array receiving the events, in the iteration order of the collection
+	 * @param random the generator seeding the generators of the chunks
+	 * @param parallel true to process chunks of agents in parallel, in which case the agents must be safe to read from several threads
+	 */
+	public <T extends Enum<T>> void events(Collection<? extends IDoubleSource> individuals, final Class<T> enumType, final boolean[] out, Random random, boolean parallel) {
+		RegressionBatch.forEach(individuals, out.length, parallel, random, new RegressionBatch.AgentTask() {
+			public void run(Object agent, int index, Random random) {
+				out[index] = (random.nextDouble() < getProbability((IDoubleSource) agent, enumType));
+			}
+		});
+	}
+	
+	/**
+	 * Select the fast approximation of the logistic function of LinkFunctions, whose absolute error is below 
+	 * LinkFunctions.FAST_LOGISTIC_MAX_ERROR, instead of the exact one, to compute the probabilities.
+	 * 
+	 * @param fastMath true to use the approximation, false (the default) to use the exact function
+	 */
+	public void setFastMath(boolean fastMath) {
+		link.setFastMath(fastMath);
+	}
+	
+	/**
+	 * Return the fast math mode, see <i>setFastMath()</i>.
+	 * 
+	 * @return true if the approximation is used, false if the exact function is
+	 */
+	public boolean isFastMath() {
+		return link.isFastMath();
+	}
+	
+	/** @return The link function of the regression. */
+	LinkFunctions.Link getLink() {
+		return link;
+	}
+	
+	/**
+	 * Compute the probabilities of all the agents of a column store, whose columns must be named as the 
+	 * regressors and the conditioning keys of the map.
+	 * 
+	 * @param store the column store
+	 * @param out the array receiving the probabilities, indexed by the slots of the store
+	 * @param parallel true to score chunks of slots in parallel
+	 */
+	public void getProbabilities(ColumnStore<?> store, double[] out, boolean parallel) {
+		getScores(store, out, parallel);
+		link.apply(out, out, store.size());
+	}
 
 }
@@ -0,0 +1,303 @@
+package microsim.statistics.regression;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import microsim.event.CommonEventType;
+import microsim.event.EventListener;
+import microsim.statistics.IDoubleSource;
+import microsim.statistics.TimeChecker;
+
+/**
+ * A cache of the scores and probabilities of a regression by covariate profile, for the models
+ * whose regressors are only categorical or binned variables (age band, sex, education, region...),
+ * so that millions of agents share a small number of distinct profiles.<br>
+ * The profile of an agent is the vector of the values of the regressors appearing in the map, read
+ * through <i>IDoubleSource</i>. It is hashed into a 64 bit key, which addresses an open addressing
+ * table of primitive arrays; the values of the profile are kept with its entry and compared on
+ * each hit, so a collision of the keys never returns the score of another profile. On a miss the
+ * score is computed with the compiled coefficients of the regression, and the probability of a
+ * <i>LogitRegression</i> or <i>ProbitRegression</i> with its link function, on the first request.
+ * The results are therefore the same as the ones of the regression.<br>
+ * The table holds at most <i>maxProfiles</i> profiles: when it is full, it is cleared before the
+ * next profile is stored. It is also cleared by <i>invalidate()</i>, by the
+ * <i>CommonEventType.Update</i> event, which can be scheduled at every tick, and at the first request
+ * of each simulation time when time checking is enabled. It must be invalidated when the
+ * coefficients of the regression change (the regression compiles them again from its modified map,
+ * see <i>LinearRegression.compile()</i>), and when its fast math mode is switched.<br>
+ * Only maps whose only key is the regressor are supported: conditioning keys can be turned into
+ * dummy regressors, or each cell can be given its own regression. The object is not thread safe.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class MemoizedRegression<T extends Enum<T>> implements EventListener {
+
+	/** The default maximum number of profiles. */
+	public static final int DEFAULT_MAX_PROFILES = 4096;
+
+	private final LinearRegression regression;
+	/** The link function of a LogitRegression or ProbitRegression, null for the other regressions. */
+	private final LinkFunctions.Link link;
+	private final Class<T> enumType;
+	private final int maxProfiles;
+
+	private CompiledCoefficients<T> compiled;
+	/** The regressors read to build the profiles, in the order they are summed. */
+	private T[] regressors;
+
+	//The table, with a power of two capacity at least twice maxProfiles.
+	private final long[] keys;
+	private final boolean[] used;
+	/** The bits of the values of the profiles, regressors.length values per slot. */
+	private long[] profiles;
+	private final int capacity;
+	private final double[] scores;
+	/** The probabilities, NaN until requested. */
+	private final double[] probabilities;
+	private final int mask;
+	private int size = 0;
+
+	/** The bits of the values of the profile of the last agent. */
+	private long[] profile;
+
+	private final TimeChecker timeChecker = new TimeChecker();
+	private boolean checkingTime = false;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long overflows = 0;
+
+	/** Create the cache of a regression, holding up to DEFAULT_MAX_PROFILES profiles.
+	 * @param regression A LinearRegression, LogitRegression or ProbitRegression, whose map has only one key, the regressor.
+	 * @param enumType The enum type whose constants are named as the regressors.
+	 */
+	public MemoizedRegression(LinearRegression regression, Class<T> enumType) {
+		this(regression, enumType, DEFAULT_MAX_PROFILES);
+	}
+
+	/** Create the cache of a regression.
+	 * @param regression A LinearRegression, LogitRegression or ProbitRegression, whose map has only one key, the regressor.
+	 * @param enumType The enum type whose constants are named as the regressors.
+	 * @param maxProfiles The maximum number of profiles held.
+	 * @throws IllegalArgumentException If the map of the regression has more than one key, a regressor
+	 * is not a constant of the enum, or maxProfiles is not positive.
+	 */
+	public MemoizedRegression(LinearRegression regression, Class<T> enumType, int maxProfiles) {
+		if (maxProfiles < 1 || maxProfiles > (1 << 24))
+			throw new IllegalArgumentException("The maximum number of profiles must be between 1 and " + (1 << 24) + ", not " + maxProfiles + ".");
+		this.regression = regression;
+		if (regression instanceof LogitRegression)
+			link = ((LogitRegression) regression).getLink();
+		else if (regression instanceof ProbitRegression)
+			link = ((ProbitRegression) regression).getLink();
+		else
+			link = null;
+		this.enumType = enumType;
+		this.maxProfiles = maxProfiles;
+		capacity = Integer.highestOneBit(maxProfiles * 2 - 1) << 1;
+		keys = new long[capacity];
+		used = new boolean[capacity];
+		scores = new double[capacity];
+		probabilities = new double[capacity];
+		mask = capacity - 1;
+		compileRegressors();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void compileRegressors() {
+		compiled = regression.compile(enumType);
+		List<T> list = compiled.getRegressors();
+		regressors = list.toArray((T[]) Array.newInstance(enumType, list.size()));
+		profile = new long[regressors.length];
+		profiles = new long[capacity * regressors.length];
+	}
+
+	/** Compute the score of an agent, or return the score of its profile if it has been computed already.
+	 * @param iDblSrc The agent, exposing the regressors through <i>getDoubleValue()</i>.
+	 * @return The score, the same as <i>LinearRegression.getScore(iDblSrc, enumType)</i>.
+	 */
+	public double getScore(IDoubleSource iDblSrc) {
+		return scores[find(iDblSrc)];
+	}
+
+	/** Compute the probability of an agent, or return the probability of its profile if it has been computed already.
+	 * @param iDblSrc The agent, exposing the regressors through <i>getDoubleValue()</i>.
+	 * @return The probability, the same as <i>getProbability(iDblSrc, enumType)</i> of the regression.
+	 * @throws UnsupportedOperationException If the regression is not a LogitRegression or a ProbitRegression.
+	 */
+	public double getProbability(IDoubleSource iDblSrc) {
+		int slot = find(iDblSrc);
+		double probability = probabilities[slot];
+		if (Double.isNaN(probability)) {
+			if (link == null)
+				throw new UnsupportedOperationException("The MemoizedRegression of a " + regression.getClass().getSimpleName() + " has no probabilities: only LogitRegression and ProbitRegression are supported.");
+			probability = link.apply(scores[slot]);
+			probabilities[slot] = probability;
+		}
+		return probability;
+	}
+
+	/** Draw the event of an agent, with the probability of its profile.
+	 * @param iDblSrc The agent, exposing the regressors through <i>getDoubleValue()</i>.
+	 * @param random The random number generator.
+	 * @return True if the event occurs.
+	 * @throws UnsupportedOperationException If the regression is not a LogitRegression or a ProbitRegression.
+	 */
+	public boolean event(IDoubleSource iDblSrc, Random random) {
+		return (random.nextDouble() < getProbability(iDblSrc));
+	}
+
+	/** Return the slot of the profile of an agent, storing it with its score if it is not in the table. */
+	private int find(IDoubleSource iDblSrc) {
+		if (checkingTime && !timeChecker.isUpToDate())
+			clear();
+
+		long key = 0;
+		for (int i = 0; i < regressors.length; i++) {
+			long bits = Double.doubleToLongBits(iDblSrc.getDoubleValue(regressors[i]));
+			profile[i] = bits;
+			key = (key + bits) * 0x9E3779B97F4A7C15L;
+		}
+		key = mix(key);
+
+		int slot = (int) key & mask;
+		while (used[slot]) {
+			if (keys[slot] == key && matches(slot)) {
+				hits++;
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		misses++;
+		if (size == maxProfiles) {
+			clear();
+			overflows++;
+			slot = (int) key & mask;
+		}
+		keys[slot] = key;
+		used[slot] = true;
+		System.arraycopy(profile, 0, profiles, slot * profile.length, profile.length);
+		scores[slot] = compiled.score(iDblSrc);
+		probabilities[slot] = Double.NaN;
+		size++;
+		return slot;
+	}
+
+	/** The finaliser of the 64 bit MurmurHash3, spreading the bits of the profile over the whole key. */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private boolean matches(int slot) {
+		int offset = slot * profile.length;
+		for (int i = 0; i < profile.length; i++)
+			if (profiles[offset + i] != profile[i])
+				return false;
+		return true;
+	}
+
+	private void clear() {
+		Arrays.fill(used, false);
+		size = 0;
+	}
+
+	/** Remove all the profiles, and take the coefficients of the regression again, compiled from the
+	 * current version of its map. */
+	public void invalidate() {
+		clear();
+		compileRegressors();
+	}
+
+	/**
+	 * EventListener callback function. It supports only the CommonEventType.Update event, which
+	 * invalidates the cache.
+	 * @throws UnsupportedOperationException If type is not supported.
+	 */
+	public void onEvent(Enum<?> type) {
+		if (type.equals(CommonEventType.Update))
+			invalidate();
+		else
+			throw new UnsupportedOperationException("The MemoizedRegression object does not support " + type + " operation.");
+	}
+
+	/** Return the current status of the time checker. When enabled, the profiles are removed at the
+	 * first request of each simulation time. The default value is disabled (false).
+	 * @return True if the cache is cleared at every simulation time.
+	 */
+	public boolean isCheckingTime() {
+		return checkingTime;
+	}
+
+	/** Set the current status of the time checker. When enabled, the profiles are removed at the
+	 * first request of each simulation time. The default value is disabled (false).
+	 * @param b True to clear the cache at every simulation time.
+	 */
+	public void setCheckingTime(boolean b) {
+		checkingTime = b;
+	}
+
+	/** @return The number of requests answered with a stored profile since the last reset of the statistics. */
+	public long getHits() {
+		return hits;
+	}
+
+	/** @return The number of requests whose profile had to be scored since the last reset of the statistics. */
+	public long getMisses() {
+		return misses;
+	}
+
+	/** @return The fraction of the requests answered with a stored profile since the last reset of the statistics, NaN if there was none. */
+	public double getHitRate() {
+		return (double) hits / (hits + misses);
+	}
+
+	/** @return The number of times the table has been cleared because it was full, since the last reset of the statistics. */
+	public long getOverflows() {
+		return overflows;
+	}
+
+	/** Set the hit, miss and overflow counts to 0. */
+	public void resetStatistics() {
+		hits = 0;
+		misses = 0;
+		overflows = 0;
+	}
+
+	/** @return The number of profiles currently stored. */
+	public int getSize() {
+		return size;
+	}
+
+	/** @return The maximum number of profiles stored. */
+	public int getMaxProfiles() {
+		return maxProfiles;
+	}
+
+	/** @return The regression whose scores are cached. */
+	public LinearRegression getRegression() {
+		return regression;
+	}
+
+	@Override
+	public String toString() {
+		return "MemoizedRegression [profiles " + size + "/" + maxProfiles + ", hits " + hits + ", misses " + misses + ", overflows " + overflows + "]";
+	}
+
+}
@@ -1,10 +1,12 @@
 package microsim.statistics.regression;
 
-import java.util.HashMap;
+import java.lang.reflect.Array;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import microsim.data.MultiKeyCoefficientMap;
 import microsim.engine.SimulationEngine;
@@ -16,9 +18,47 @@ public class MultiProbitRegression<T extends Enum<T>> implements IMultipleChoice
 
 	private Random random;
 	
+	/** The link function, computing the probabilities with the exact function or its fast approximation. */
+	private final LinkFunctions.Link link = LinkFunctions.Link.probit();
+	
+	/** Not used since the probabilities are computed by the link function, but still built so that the draws of the random generator are unchanged. */
+	@SuppressWarnings("unused")
 	private Normal normalRV;
 	
 	private Map<T, MultiKeyCoefficientMap> maps = null;
+	
+	/** The coefficients and the index of the map of each event, built on the first score of the event from the current version of its map. */
+	private final Map<T, Compiled> compiled = new ConcurrentHashMap<T, Compiled>();
+	
+	/** The coefficients compiled for each enum type of regressors, used when the map has only one key, 
+	 * and the index of the coefficients by the values of the conditioning keys, built from a version of a map. */
+	private static class Compiled {
+		private final MultiKeyCoefficientMap map;
+		private final long version;
+		private final Map<Class<?>, CompiledCoefficients<?>> coefficients = new ConcurrentHashMap<Class<?>, CompiledCoefficients<?>>();
+		private volatile CoefficientIndex index = null;
+		
+		private Compiled(MultiKeyCoefficientMap map, long version) {
+			this.map = map;
+			this.version = version;
+		}
+	}
+	
+	/** The event constants, indexed by ordinal. */
+	private T[] events = null;
+	
+	/** The events with a regression map, in the iteration order of the maps. */
+	private T[] specified = null;
+	
+	/** The ordinal of the event without a regression map (the base case), -1 if all the events have one, -2 if more than one event has none. */
+	private int baseOrdinal = -1;
+	
+	/** The scratch arrays of the probabilities of eventType(), one per thread. */
+	private final ThreadLocal<double[]> probabilities = new ThreadLocal<double[]>() {
+		protected double[] initialValue() {
+			return new double[events.length];
+		}
+	};
 		
 	public MultiProbitRegression(Map<T, MultiKeyCoefficientMap> maps) {		
 		random = SimulationEngine.getRnd();
@@ -45,6 +85,7 @@ public class MultiProbitRegression<T extends Enum<T>> implements IMultipleChoice
 			count++;
 		}
 		normalRV = new Normal(0.0, 1.0, new MersenneTwister(random.nextInt()));
+		indexEvents();
 	}
 
 	public MultiProbitRegression(Map<T, MultiKeyCoefficientMap> maps, Random random) {			
@@ -72,6 +113,7 @@ public class MultiProbitRegression<T extends Enum<T>> implements IMultipleChoice
 			count++;
 		}
 		normalRV = new Normal(0.0, 1.0, new MersenneTwister(random.nextInt()));
+		indexEvents();
 	}
 	
 	/**
@@ -82,57 +124,27 @@ public class MultiProbitRegression<T extends Enum<T>> implements IMultipleChoice
 	 */
 	public double getProbitTransformOfScore(T event, Map<String, Double> values) {		
 		final double score = LinearRegression.computeScore(maps.get(event), values);		
-		return (double) normalRV.cdf(score);
+		return link.apply(score);
 	}
 	
 	public double getProbitTransformOfScore(T event, Object individual) {
-		final double score = LinearRegression.computeScore(maps.get(event), individual);
-		return (double) normalRV.cdf(score);		
+		double score;
+		try {
+			score = getIndex(event).score(individual);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			score = 0.;
+		}
+		return link.apply(score);		
 	}
 	
 	//Original version was incorrect - did not normalise probabilities.  Corrected by Ross Richardson.
 //	@Override
-	public T eventType(Object individual) {		
-		Map<T, Double> probs = new HashMap<T, Double>();
-
-		double denominator = 0.; 
-		
-		for (T event : maps.keySet()) {
-			double probitTransformOfScore = getProbitTransformOfScore(event, individual);
-			probs.put(event, probitTransformOfScore);
-			denominator += probitTransformOfScore;			
-		}
-		
-		//Check whether there is a base case that has not been included in the regression specification variable (maps).
-		T k = null;
-		T[] eventProbs = (T[]) k.getClass().getEnumConstants();
-		int countNullEventProbs = 0;
-		for (int i = 0; i < eventProbs.length; i++) {
-			if (probs.get(eventProbs[i]) == null) {						//The multiprobit regression can go without specifying coefficients for 1 of the outcomes as the probability of this event can be determined by the residual of the other probabilities.
-				countNullEventProbs++;									//Check no more than one event has null prob, so that it is valid to take the residual to find the probability
-				if(countNullEventProbs > 1) {
-//					throw new RuntimeException("countNullEventProbs > 1 in MultiProbitRegression object!  More than one event does not have a probability, so the residual cannot be used for the missing probabilities.");
-					throw new RuntimeException("MultiProbitRegression has been constructed with a map that does not contain enough of the possible values of the type T.  The map should contain the full number of T values, or one less than the full number of T values (in which case, the missing value is considered the 'default' case whose regression betas are all zero).");
-				}
-				else {
-					denominator += 0.5;		//We include the base case, where score = 0 (as betas are set to zero).  The normalRV.cdf(0) = 0.5 (as the standard normal distribution is symmetric).  The other cases have already been incremented into the denominator.
-					probs.put((T) eventProbs[i], 0.5/denominator);		//The normalised probability of the base case is 0.5/denominator as the 0.5 comes from applying the probit transform (the cumulative standard normal distribution) to the score of 0, and the denominator is the sum of probit transforms for all events.				
-				}						
-			}			
-		}
-		
-		//Normalise the probabilities of the events specified in the regression maps
-		for (T event : maps.keySet()) {		//Only iterate through the cases specified in the regression maps - the base case has already been normalised.
-			double probitTransformOfScoreForEvent = probs.get(event);
-			probs.put(event, probitTransformOfScoreForEvent/denominator);		//Normalise the probit transform of score (the application of the standard normal cumulative distribution to the score) of the event by the sum for all events
-		}
-		
-		double[] probArray = new double[probs.size()]; 
-		for (int i = 0; i < eventProbs.length; i++) {
-			probArray[i] = probs.get(eventProbs[i]);
-		}
-		
-		return RegressionUtils.event(eventProbs, probArray, random);				
+	public T eventType(Object individual) {
+		checkEvents();
+		double[] probs = probabilities.get();
+		getProbabilities(individual, probs);
+		return RegressionUtils.event(events, probs, random);
 	}
 
 //	@Override
@@ -143,46 +155,10 @@ public class MultiProbitRegression<T extends Enum<T>> implements IMultipleChoice
 	 * @return
 	 */
 	public T eventType(Map<String, Double> values) {
-		Map<T, Double> probs = new HashMap<T, Double>();
-
-		double denominator = 0.0;
-
-		for (T event : maps.keySet()) {
-			double probitTransformOfScore = getProbitTransformOfScore(event, values);
-			probs.put(event, probitTransformOfScore);
-			denominator += probitTransformOfScore;			
-		}
-
-		//Check whether there is a base case that has not been included in the regression specification variable (maps).
-		T k = null;
-		T[] eventProbs = (T[]) k.getClass().getEnumConstants();
-		int countNullEventProbs = 0;
-		for (int i = 0; i < eventProbs.length; i++) {
-			if (probs.get(eventProbs[i]) == null) {						//The multiprobit regression can go without specifying coefficients for 1 of the outcomes as the probability of this event can be determined by the residual of the other probabilities.
-				countNullEventProbs++;									//Check no more than one event has null prob, so that it is valid to take the residual to find the probability
-				if(countNullEventProbs > 1) {
-//					throw new RuntimeException("countNullEventProbs > 1 in MultiProbitRegression object!  More than one event does not have a probability, so the residual cannot be used for the missing probabilities.");
-					throw new RuntimeException("MultiProbitRegression has been constructed with a map that does not contain enough of the possible values of the type T.  The map should contain the full number of T values, or one less than the full number of T values (in which case, the missing value is considered the 'default' case whose regression betas are all zero).");
-				}
-				else {
-					denominator += 0.5;		//We include the base case, where score = 0 (as betas are set to zero).  The normalRV.cdf(0) = 0.5 (as the standard normal distribution is symmetric).  The other cases have already been incremented into the denominator.
-					probs.put((T) eventProbs[i], 0.5/denominator);		//The normalised probability of the base case is 0.5/denominator as the 0.5 comes from applying the probit transform (the cumulative standard normal distribution) to the score of 0, and the denominator is the sum of probit transforms for all events.				
-				}						
-			}			
-		}
-
-		//Normalise the probabilities of the events specified in the regression maps
-		for (T event : maps.keySet()) {		//Only iterate through the cases specified in the regression maps - the base case has already been normalised.
-			double probitTransformOfScoreForEvent = probs.get(event);
-			probs.put(event, probitTransformOfScoreForEvent/denominator);		//Normalise the probit transform of score (the application of the standard normal cumulative distribution to the score) of the event by the sum for all events
-		}
-
-		double[] probArray = new double[probs.size()]; 
-		for (int i = 0; i < eventProbs.length; i++) {
-			probArray[i] = probs.get(eventProbs[i]);
-		}
-
-		return RegressionUtils.event(eventProbs, probArray, random);		
+		checkEvents();
+		double[] probs = probabilities.get();
+		getProbabilities(values, probs);
+		return RegressionUtils.event(events, probs, random);
 	}
 	
 	//////////////////////////////////////////////////////////////////////////////////////////////
@@ -190,62 +166,232 @@ public class MultiProbitRegression<T extends Enum<T>> implements IMultipleChoice
 	// @author Ross Richardson
 	//////////////////////////////////////////////////////////////////////////////////////////////
 	
+	/**
+	 * Return the coefficients of the regression of an event bound to an enum of regressors, compiling
+	 * them on the first call for the enum type.  Only maps with one key (the regressor) can be compiled.
+	 * The compiled coefficients are kept until the map of the event is modified through its methods 
+	 * (see <i>MultiKeyCoefficientMap.getVersion()</i>).  <i>clearCompiled()</i> must be called if a map 
+	 * is modified otherwise, e.g. through its iterators or by changing its arrays of values.
+	 * @param event the event whose regression map is compiled
+	 * @param Regressors the enum type whose constants are named as the regressors of the map
+	 * @return the compiled coefficients
+	 */
+	@SuppressWarnings("unchecked")
+	public <E extends Enum<E>> CompiledCoefficients<E> compile(T event, Class<E> Regressors) {
+		Compiled c = getCompiled(event);
+		CompiledCoefficients<?> coefficients = c.coefficients.get(Regressors);
+		if(coefficients == null) {
+			coefficients = CompiledCoefficients.compile(c.map, Regressors);
+			c.coefficients.put(Regressors, coefficients);
+		}
+		return (CompiledCoefficients<E>) coefficients;
+	}
+	
+	/**
+	 * Return the index of the regression map of an event by the values of its conditioning keys,
+	 * building it on the first call, and again after the map has been modified through its methods.
+	 * @param event the event whose regression map is indexed
+	 * @return the index of the coefficients
+	 */
+	public CoefficientIndex getIndex(T event) {
+		Compiled c = getCompiled(event);
+		CoefficientIndex index = c.index;
+		if(index == null) {
+			index = new CoefficientIndex(c.map);
+			c.index = index;
+		}
+		return index;
+	}
+	
+	/** Return the coefficients and the index built from the current version of the map of an event, discarding them if the map has been modified or replaced. */
+	private Compiled getCompiled(T event) {
+		MultiKeyCoefficientMap map = maps.get(event);
+		long version = map.getVersion();
+		Compiled c = compiled.get(event);
+		if(c == null || c.map != map || c.version != version) {
+			c = new Compiled(map, version);
+			compiled.put(event, c);
+		}
+		return c;
+	}
+	
+	/**
+	 * Discard the compiled coefficients and the indices of the conditioning keys of all the events, 
+	 * so that they are built again from the maps at the next score.
+	 */
+	public void clearCompiled() {
+		compiled.clear();
+	}
+	
 	public <E extends Enum<E>> double getProbitTransformOfScore(T event, IDoubleSource iDblSrc, Class<E> Regressors) {
       MultiKeyCoefficientMap map = maps.get(event);
       double score;
       if(map.getKeysNames().length == 1) {
-          score = LinearRegression.computeScore(map, iDblSrc, Regressors, true);            //No additional conditioning regression keys used, so no need to check for them
+          score = compile(event, Regressors).score(iDblSrc);            //No additional conditioning regression keys used, so the compiled coefficients can be used
       }
       else {
-          score = LinearRegression.computeScore(map, iDblSrc, Regressors);        //Additional conditioning regression keys used (map has more than one key in the multiKey, so need to use reflection (perhaps slow) in order to extract the underlying agents' properties e.g. gender or civil status, in order to determine the relevant regression co-efficients.  If time is critical, consider making the underlying agent (the IDoubleSource) also implement the IObjectSource interface, which uses a faster method to retrieve information about the agent instead of reflection.
+          try {
+              score = getIndex(event).score(iDblSrc, Regressors);        //Additional conditioning regression keys used (map has more than one key in the multiKey, so need to use reflection (perhaps slow) in order to extract the underlying agents' properties e.g. gender or civil status, in order to determine the relevant cell of regression co-efficients.  If time is critical, consider making the underlying agent (the IDoubleSource) also implement the IObjectSource interface, which uses a faster method to retrieve information about the agent instead of reflection.
+          } catch (IllegalArgumentException e) {
+              System.err.println(e.getMessage());
+              score = 0.;
+          }
       }
 
-      return (double) normalRV.cdf(score);
+      return link.apply(score);
   }
 
 	
-	public <E extends Enum<E>> T eventType(IDoubleSource iDblSrc, Class<E> Regressors, Class<T> enumType) {		
-		Map<T, Double> probs = new HashMap<T, Double>();
-
-		double denominator = 0.; 
-		
-		for (T event : maps.keySet()) {
+	public <E extends Enum<E>> T eventType(IDoubleSource iDblSrc, Class<E> Regressors, Class<T> enumType) {
+		return eventType(iDblSrc, Regressors, enumType, random);
+	}
+	
+	public <E extends Enum<E>> T eventType(IDoubleSource iDblSrc, Class<E> Regressors, Class<T> enumType, Random random) {
+		checkEvents();
+		double[] probs = probabilities.get();
+		getProbabilities(iDblSrc, Regressors, probs);
+		return RegressionUtils.event(events, probs, random);
+	}
+	
+	/**
+	 * Compute the normalised probabilities of the events for an agent, as used by eventType(Object).
+	 * 
+	 * @param individual the agent
+	 * @param out the array receiving the probabilities, indexed by the ordinals of the events
+	 */
+	public void getProbabilities(Object individual, double[] out) {
+		checkEvents();
+		checkOutput(out);
+		double denominator = 0.;
+		for (T event : specified) {
+			double probitTransformOfScore = getProbitTransformOfScore(event, individual);
+			out[event.ordinal()] = probitTransformOfScore;
+			denominator += probitTransformOfScore;
+		}
+		normalise(out, denominator);
+	}
+	
+	/**
+	 * Compute the normalised probabilities of the events for a set of values, as used by eventType(Map).
+	 * 
+	 * @param values the values of the regressors
+	 * @param out the array receiving the probabilities, indexed by the ordinals of the events
+	 */
+	public void getProbabilities(Map<String, Double> values, double[] out) {
+		checkEvents();
+		checkOutput(out);
+		double denominator = 0.;
+		for (T event : specified) {
+			double probitTransformOfScore = getProbitTransformOfScore(event, values);
+			out[event.ordinal()] = probitTransformOfScore;
+			denominator += probitTransformOfScore;
+		}
+		normalise(out, denominator);
+	}
+	
+	/**
+	 * Compute the normalised probabilities of the events for an agent, as used by eventType(IDoubleSource, Class, Class).
+	 * 
+	 * @param iDblSrc the agent
+	 * @param Regressors the enum type whose constants are named as the regressors
+	 * @param out the array receiving the probabilities, indexed by the ordinals of the events
+	 */
+	public <E extends Enum<E>> void getProbabilities(IDoubleSource iDblSrc, Class<E> Regressors, double[] out) {
+		checkEvents();
+		checkOutput(out);
+		double denominator = 0.;
+		for (T event : specified) {
 			double probitTransformOfScore = getProbitTransformOfScore(event, iDblSrc, Regressors);
-			probs.put(event, probitTransformOfScore);
-			denominator += probitTransformOfScore;			
+			out[event.ordinal()] = probitTransformOfScore;
+			denominator += probitTransformOfScore;
 		}
-		
-		//Check whether there is a base case that has not been included in the regression specification variable (maps).
-		T[] eventProbs = enumType.getEnumConstants();
-//		T[] eventProbs = (T[]) maps.keySet().getClass().getEnumConstants();		//Results in Null Pointer Exception
-
-		int countNullEventProbs = 0;
-		for (int i = 0; i < eventProbs.length; i++) {
-			if (probs.get(eventProbs[i]) == null) {						//The multiprobit regression can go without specifying coefficients for 1 of the outcomes as the probability of this event can be determined by the residual of the other probabilities.
-				countNullEventProbs++;									//Check no more than one event has null prob, so that it is valid to take the residual to find the probability
-				if(countNullEventProbs > 1) {
-//					throw new RuntimeException("countNullEventProbs > 1 in MultiProbitRegression object!  More than one event does not have a probability, so the residual cannot be used for the missing probabilities.");
-					throw new RuntimeException("MultiProbitRegression has been constructed with a map that does not contain enough of the possible values of the type T.  The map should contain the full number of T values, or one less than the full number of T values (in which case, the missing value is considered the 'default' case whose regression betas are all zero).");
-				}
-				else {
-					denominator += 0.5;		//We include the base case, where score = 0 (as betas are set to zero).  The normalRV.cdf(0) = 0.5 (as the standard normal distribution is symmetric).  The other cases have already been incremented into the denominator.
-					probs.put((T) eventProbs[i], 0.5/denominator);		//The normalised probability of the base case is 0.5/denominator as the 0.5 comes from applying the probit transform (the cumulative standard normal distribution) to the score of 0, and the denominator is the sum of probit transforms for all events.				
-				}						
-			}			
+		normalise(out, denominator);
+	}
+	
+	/**
+	 * Draw the events of a collection of agents with <i>eventType(IDoubleSource, Class, Class, Random)</i>.
+	 * The agents are split into chunks, each drawing from its own generator seeded by <i>random</i>, so 
+	 * the outcomes are the same in sequential and in parallel mode.
+	 * 
+	 * @param individuals the agents
+	 * @param Regressors the enum type whose constants are named as the regressors
+	 * @param enumType the enum type of the events
+	 * @param out the array receiving the events, in the iteration order of the collection
+	 * @param random the generator seeding the generators of the chunks
+	 * @param parallel true to process chunks of agents in parallel, in which case the agents must be safe to read from several threads
+	 */
+	public <E extends Enum<E>> void eventTypes(Collection<? extends IDoubleSource> individuals, final Class<E> Regressors, final Class<T> enumType, final T[] out, Random random, boolean parallel) {
+		RegressionBatch.forEach(individuals, out.length, parallel, random, new RegressionBatch.AgentTask() {
+			public void run(Object agent, int index, Random random) {
+				out[index] = eventType((IDoubleSource) agent, Regressors, enumType, random);
+			}
+		});
+	}
+	
+	/**
+	 * Select the fast approximation of the standard normal cumulative distribution function of LinkFunctions, whose absolute error is below 
+	 * LinkFunctions.FAST_NORMAL_CDF_MAX_ERROR, instead of the exact one, to compute the probabilities.
+	 * 
+	 * @param fastMath true to use the approximation, false (the default) to use the exact function
+	 */
+	public void setFastMath(boolean fastMath) {
+		link.setFastMath(fastMath);
+	}
+	
+	/**
+	 * Return the fast math mode, see <i>setFastMath()</i>.
+	 * 
+	 * @return true if the approximation is used, false if the exact function is
+	 */
+	public boolean isFastMath() {
+		return link.isFastMath();
+	}
+	
+	/**
+	 * Find the event constants and the base case once, so that the probabilities can be stored in arrays indexed by the ordinals of the events.
+	 */
+	@SuppressWarnings("unchecked")
+	private void indexEvents() {
+		if(maps.isEmpty()) {
+			return;
 		}
-		
-		//Normalise the probabilities of the events specified in the regression maps
-		for (T event : maps.keySet()) {		//Only iterate through the cases specified in the regression maps - the base case has already been normalised.
-			double probitTransformOfScoreForEvent = probs.get(event);
-			probs.put(event, probitTransformOfScoreForEvent/denominator);		//Normalise the probit transform of score (the application of the standard normal cumulative distribution to the score) of the event by the sum for all events
+		Class<T> eventClass = maps.keySet().iterator().next().getDeclaringClass();
+		events = eventClass.getEnumConstants();
+		specified = maps.keySet().toArray((T[]) Array.newInstance(eventClass, maps.size()));		//Same order as iterating the maps, so the sums are the same
+		boolean[] hasMap = new boolean[events.length];
+		for (T event : specified) {
+			hasMap[event.ordinal()] = true;
 		}
-		
-		double[] probArray = new double[probs.size()]; 
-		for (int i = 0; i < eventProbs.length; i++) {
-			probArray[i] = probs.get(eventProbs[i]);
+		for (int i = 0; i < events.length; i++) {
+			if(!hasMap[i]) {
+				baseOrdinal = (baseOrdinal == -1 ? i : -2);
+			}
+		}
+	}
+	
+	private void checkEvents() {
+		if(events == null || baseOrdinal == -2) {
+			throw new RuntimeException("MultiProbitRegression has been constructed with a map that does not contain enough of the possible values of the type T.  The map should contain the full number of T values, or one less than the full number of T values (in which case, the missing value is considered the 'default' case whose regression betas are all zero).");
+		}
+	}
+	
+	private void checkOutput(double[] out) {
+		if(out.length < events.length) {
+			throw new IllegalArgumentException("The output array has length " + out.length + ", but there are " + events.length + " events.");
+		}
+	}
+	
+	/**
+	 * Normalise the probit transforms of the scores of the events by their sum, including the base case if there is one.
+	 */
+	private void normalise(double[] out, double denominator) {
+		if(baseOrdinal >= 0) {
+			denominator += 0.5;		//We include the base case, where score = 0 (as betas are set to zero), whose transform is 0.5.
+			out[baseOrdinal] = 0.5/denominator;
+		}
+		for (T event : specified) {
+			out[event.ordinal()] /= denominator;
 		}
-		
-		return RegressionUtils.event(eventProbs, probArray, random);				
 	}
 
 	
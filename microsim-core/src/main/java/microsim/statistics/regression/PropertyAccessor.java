@@ -0,0 +1,152 @@
+package microsim.statistics.regression;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import microsim.statistics.reflectors.AccessorFactory;
+
+import org.apache.commons.beanutils.PropertyUtils;
+
+/**
+ * Not of interest for users. It reads one bean property of the agents of a class for the
+ * regressions, replacing <i>PropertyUtils.describe()</i>, which introspected all the properties of
+ * an agent and built a map of them on every evaluation.<br>
+ * The getter of the property is resolved once per class and name, and read through an accessor
+ * generated by <i>AccessorFactory</i> when possible, or through reflection otherwise. The values are
+ * converted with the same rules used by the regressions on the described properties: the
+ * conditioning keys are matched by the string representation of numbers, booleans, strings and
+ * enums, and the regressors must be numbers or booleans.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+class PropertyAccessor {
+
+	private static final Map<Class<?>, Map<String, PropertyAccessor>> cache = new ConcurrentHashMap<Class<?>, Map<String, PropertyAccessor>>();
+
+	private final String name;
+	private final Method getter;
+	private final AccessorFactory.ObjectAccessor accessor;
+
+	private PropertyAccessor(Class<?> beanClass, String name, Method getter) {
+		this.name = name;
+		this.getter = getter;
+		accessor = (getter == null ? null : AccessorFactory.getObjectAccessor(beanClass, getter));
+	}
+
+	/** Return the accessor of a property of a class, resolving it on the first call.
+	 * @param beanClass The class of the agents.
+	 * @param name The name of the property.
+	 * @return The accessor. If the class has no readable property with the given name, the accessor
+	 * throws an IllegalArgumentException when it is used.
+	 */
+	static PropertyAccessor get(final Class<?> beanClass, String name) {
+		return cache.computeIfAbsent(beanClass, new Function<Class<?>, Map<String, PropertyAccessor>>() {
+			public Map<String, PropertyAccessor> apply(Class<?> c) {
+				return new ConcurrentHashMap<String, PropertyAccessor>();
+			}
+		}).computeIfAbsent(name, new Function<String, PropertyAccessor>() {
+			public PropertyAccessor apply(String n) {
+				return new PropertyAccessor(beanClass, n, getReadMethods(beanClass).get(n));
+			}
+		});
+	}
+
+	/** Return the accessors of some properties of a class.
+	 * @param beanClass The class of the agents.
+	 * @param names The names of the properties.
+	 * @return The accessors, in the order of the names.
+	 */
+	static PropertyAccessor[] get(Class<?> beanClass, String[] names) {
+		PropertyAccessor[] accessors = new PropertyAccessor[names.length];
+		for (int i = 0; i < names.length; i++)
+			accessors[i] = get(beanClass, names[i]);
+		return accessors;
+	}
+
+	private static Map<String, Method> getReadMethods(Class<?> beanClass) {
+		Map<String, Method> methods = new HashMap<String, Method>();
+		for (PropertyDescriptor descriptor : PropertyUtils.getPropertyDescriptors(beanClass)) {
+			Method method = PropertyUtils.getReadMethod(descriptor);
+			if (method != null)
+				methods.put(descriptor.getName(), method);
+		}
+		return methods;
+	}
+
+	/** Read the property of an agent.
+	 * @param agent The agent.
+	 * @return The value of the property.
+	 * @throws IllegalArgumentException If the property is not readable or its getter raises an exception.
+	 */
+	Object getValue(Object agent) {
+		if (accessor != null)
+			return accessor.getObject(agent);
+		if (getter == null)
+			throw new IllegalArgumentException("The " + agent.getClass().getCanonicalName() + " object does not contain a member field called '" + name + "' with a getter following the Java Beans convention, to match the key or regressor of the Regression object.  If you believe this should not be the case, consider checking the spelling and case (lower / upper) of the member field in the " + agent.getClass().getSimpleName() + " object.");
+		try {
+			return getter.invoke(agent);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("The property " + name + " of " + agent.getClass().getCanonicalName() + " cannot be accessed: " + e.getMessage());
+		} catch (InvocationTargetException e) {
+			throw new IllegalArgumentException("The getter of property " + name + " of " + agent.getClass().getCanonicalName() + " raised the following error: " + e.getCause());
+		}
+	}
+
+	/** Read the property of an agent as a conditioning key.
+	 * @param agent The agent.
+	 * @return The string representation of the value, or null if the value is null or of a type not used as key.
+	 */
+	String getKeyValue(Object agent) {
+		Object value = getValue(agent);
+		if (value instanceof Double || value instanceof Float || value instanceof Long || value instanceof Integer
+				|| value instanceof Boolean || value instanceof String || value instanceof Enum)
+			return value.toString();
+		else
+			return null;
+	}
+
+	/** Read the property of an agent as a regressor.
+	 * @param agent The agent.
+	 * @return The value of the property, booleans being converted to 1 and 0.
+	 * @throws IllegalArgumentException If the value is not a number or a boolean.
+	 */
+	double getDoubleValue(Object agent) {
+		Object value = getValue(agent);
+		if (value instanceof Double || value instanceof Float || value instanceof Long || value instanceof Integer)
+			return ((Number) value).doubleValue();
+		else if (value instanceof Boolean)
+			return (((Boolean) value) ? 1.0 : 0.0);
+		else
+			throw new IllegalArgumentException(getNotNumericMessage(agent.getClass(), name));
+	}
+
+	/** @return The message of the exception thrown when a regressor is not a number or a boolean. */
+	static String getNotNumericMessage(Class<?> agentClass, String name) {
+		return agentClass.getCanonicalName() + " object does not contain a numerical or boolean field called " + name + ".  If there is supposed to be such a field, check the upper/lower case of the regressor specified in the MultiKeyCoefficientMap of the Regression object to ensure that it matches the name of the " + agentClass.getSimpleName() + "object's field.";
+	}
+
+	/** @return True if the agents of the class have a getter for the property. */
+	boolean isReadable() {
+		return (getter != null);
+	}
+
+	/** @return The getter of the property, or null if it is not readable. */
+	Method getGetter() {
+		return getter;
+	}
+
+}
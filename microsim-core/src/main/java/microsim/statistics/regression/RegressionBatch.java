@@ -0,0 +1,143 @@
+package microsim.statistics.regression;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import microsim.exception.SimulationRuntimeException;
+
+/**
+ * Not of interest for users. It runs the batch methods of the regressions over the agents of a
+ * population, split into chunks of a fixed size.<br>
+ * In parallel mode the chunks are processed by the common fork-join pool, otherwise in order by the
+ * calling thread. When the batch draws random events, each chunk gets its own random generator,
+ * seeded by a number drawn from the random generator of the call before any chunk is processed, in
+ * chunk order. The draws of each agent therefore depend only on the population, on the state of the
+ * generator of the call and on the chunk size, and are the same in sequential and in parallel mode,
+ * whatever the number of threads.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+class RegressionBatch {
+
+	/** The number of agents processed by each chunk. */
+	static final int CHUNK_SIZE = 4096;
+
+	/** The processing of the agents of a chunk. */
+	interface ChunkTask {
+		/**
+		 * @param from The index of the first agent of the chunk.
+		 * @param to The index following the last agent of the chunk.
+		 * @param random The random generator of the chunk, or null if the batch draws no events.
+		 */
+		void run(int from, int to, Random random);
+	}
+
+	/** The processing of one agent of a collection. */
+	interface AgentTask {
+		/**
+		 * @param agent The agent.
+		 * @param index The index of the agent in the iteration order of the collection, where its result is stored.
+		 * @param random The random generator of the chunk of the agent, or null if the batch draws no events.
+		 */
+		void run(Object agent, int index, Random random);
+	}
+
+	/** Process the agents of a collection one by one.
+	 * @param individuals The agents.
+	 * @param length The length of the output array receiving the results.
+	 * @param parallel True to process the chunks in the common fork-join pool.
+	 * @param random The generator seeding the generators of the chunks, or null if no random number is needed.
+	 * @param task The processing of an agent.
+	 * @throws IllegalArgumentException If the output array is shorter than the collection.
+	 */
+	static void forEach(Collection<?> individuals, int length, boolean parallel, Random random, final AgentTask task) {
+		final Object[] agents = individuals.toArray();
+		checkLength(agents.length, length);
+		run(agents.length, parallel, random, new ChunkTask() {
+			public void run(int from, int to, Random random) {
+				for (int i = from; i < to; i++)
+					task.run(agents[i], i, random);
+			}
+		});
+	}
+
+	/** Process the agents of a population.
+	 * @param size The number of agents.
+	 * @param parallel True to process the chunks in the common fork-join pool.
+	 * @param random The generator seeding the generators of the chunks, or null if no random number is needed.
+	 * @param task The processing of a chunk.
+	 */
+	static void run(int size, boolean parallel, Random random, final ChunkTask task) {
+		run(size, CHUNK_SIZE, parallel, random, task);
+	}
+
+	/** Process the items of a batch, split into chunks of a given size.
+	 * @param size The number of items.
+	 * @param chunkSize The number of items processed by each chunk.
+	 * @param parallel True to process the chunks in the common fork-join pool.
+	 * @param random The generator seeding the generators of the chunks, or null if no random number is needed.
+	 * @param task The processing of a chunk.
+	 */
+	static void run(int size, int chunkSize, boolean parallel, Random random, final ChunkTask task) {
+		int chunks = (size + chunkSize - 1) / chunkSize;
+		final long[] seeds = new long[chunks];
+		if (random != null)
+			for (int c = 0; c < chunks; c++)
+				seeds[c] = random.nextLong();
+
+		if (!parallel || chunks < 2) {
+			for (int c = 0; c < chunks; c++)
+				task.run(c * chunkSize, Math.min((c + 1) * chunkSize, size), (random != null ? new Random(seeds[c]) : null));
+			return;
+		}
+
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int c = 0; c < chunks; c++) {
+			final int from = c * chunkSize;
+			final int to = Math.min(from + chunkSize, size);
+			final Random chunkRandom = (random != null ? new Random(seeds[c]) : null);
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					task.run(from, to, chunkRandom);
+					return null;
+				}
+			});
+		}
+		try {
+			for (Future<Object> future : ForkJoinPool.commonPool().invokeAll(tasks))
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SimulationRuntimeException("Regression batch: the computation has been interrupted.");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new SimulationRuntimeException("Regression batch: the computation raised the following error:\n" + e.getCause(), e.getCause());
+		}
+	}
+
+	/** Check that an output array can hold the results of a population.
+	 * @param size The number of agents.
+	 * @param length The length of the output array.
+	 */
+	static void checkLength(int size, int length) {
+		if (length < size)
+			throw new IllegalArgumentException("The output array has length " + length + ", but the population has " + size + " agents.");
+	}
+
+}
@@ -125,6 +125,30 @@ public class RegressionUtils {
 		}
 		else return rnd.nextDouble() < prob;
 	}
+
+	/**
+	 * Returns an event drawn from a distribution prepared once by an EventSampler, with the random
+	 * number generator of the simulation engine.
+	 * 
+	 * @param sampler - the events and their probabilities
+	 * @return - the randomly chosen event
+	 */
+	public static <T> T event(EventSampler<T> sampler) {
+		return sampler.sample(SimulationEngine.getRnd());
+	}
+
+	/**
+	 * Returns an event drawn from a distribution prepared once by an EventSampler.  When the same 
+	 * distribution is sampled many times, this takes constant time per draw, whereas event(T[], double[], Random, boolean) 
+	 * checks the weights and scans their cumulative sum on every call, and event(Map, Random) also copies the map.
+	 * 
+	 * @param sampler - the events and their probabilities
+	 * @param rnd - Random number generator
+	 * @return - the randomly chosen event
+	 */
+	public static <T> T event(EventSampler<T> sampler, Random rnd) {
+		return sampler.sample(rnd);
+	}
 	
 	/////////////////////////////////////////
 	// New methods 
@@ -86,6 +86,15 @@ public abstract class AbstractWeightedArrayFunction extends AbstractFunction {
 		lngSource = source;
 	}		
 	
+	/** Enable or disable the lazy evaluation of the function. When enabled, the update events
+	 * only mark the function as out of date, and the source is read and the function computed when
+	 * a value is requested, at most once per simulation time. The default is disabled.
+	 * @param lazy True to evaluate the function on demand.
+	 */
+	public void setLazy(boolean lazy) {
+		this.lazy = lazy;
+	}
+
 	/**
 	 * Force the function to update itself. If the data source implements the <i>IUpdatableSource</i> 
 	 * interface it is updated before reading data.
@@ -0,0 +1,140 @@
+package microsim.statistics.weighted.functions;
+
+import cern.colt.GenericSorting;
+import cern.colt.Swapper;
+import cern.colt.function.IntComparator;
+import microsim.statistics.weighted.IWeightedDoubleArraySource;
+import microsim.statistics.weighted.IWeightedFloatArraySource;
+import microsim.statistics.weighted.IWeightedIntArraySource;
+import microsim.statistics.weighted.IWeightedLongArraySource;
+
+/**
+ * The skeleton of the weighted functions which need the values sorted in ascending order,
+ * such as quantiles and inequality measures.<br>
+ * The source values of any native type are copied, together with their weights, into internal
+ * buffers which are reused across updates. The (value, weight) pairs are sorted once by value,
+ * and the inheriting class computes its statistics in a single cumulative pass implementing
+ * the <i>applySorted()</i> method. Elements with non-positive weights are discarded.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public abstract class AbstractWeightedSortedArrayFunction extends AbstractWeightedArrayFunction {
+
+	private double[] sortedValues = new double[0];
+	private double[] sortedWeights = new double[0];
+
+	public AbstractWeightedSortedArrayFunction(IWeightedDoubleArraySource source) {
+		super(source);
+	}
+
+	public AbstractWeightedSortedArrayFunction(IWeightedFloatArraySource source) {
+		super(source);
+	}
+
+	public AbstractWeightedSortedArrayFunction(IWeightedIntArraySource source) {
+		super(source);
+	}
+
+	public AbstractWeightedSortedArrayFunction(IWeightedLongArraySource source) {
+		super(source);
+	}
+
+	/**
+	 * Compute the function on the sorted values.
+	 * @param values The values in ascending order. Only the first <i>n</i> elements are valid.
+	 * @param weights The weights corresponding to the sorted values, all strictly positive.
+	 * @param n The number of valid elements.
+	 * @param totalWeight The sum of the first <i>n</i> weights.
+	 */
+	protected abstract void applySorted(double[] values, double[] weights, int n, double totalWeight);
+
+	public void apply(double[] data, double[] weights) {
+		checkLengths(data.length, weights.length);
+		ensureCapacity(data.length);
+		int n = 0;
+		for (int i = 0; i < data.length; i++)
+			if (weights[i] > 0.) {
+				sortedValues[n] = data[i];
+				sortedWeights[n++] = weights[i];
+			}
+		sortAndApply(n);
+	}
+
+	public void apply(float[] data, double[] weights) {
+		checkLengths(data.length, weights.length);
+		ensureCapacity(data.length);
+		int n = 0;
+		for (int i = 0; i < data.length; i++)
+			if (weights[i] > 0.) {
+				sortedValues[n] = data[i];
+				sortedWeights[n++] = weights[i];
+			}
+		sortAndApply(n);
+	}
+
+	public void apply(int[] data, double[] weights) {
+		checkLengths(data.length, weights.length);
+		ensureCapacity(data.length);
+		int n = 0;
+		for (int i = 0; i < data.length; i++)
+			if (weights[i] > 0.) {
+				sortedValues[n] = data[i];
+				sortedWeights[n++] = weights[i];
+			}
+		sortAndApply(n);
+	}
+
+	public void apply(long[] data, double[] weights) {
+		checkLengths(data.length, weights.length);
+		ensureCapacity(data.length);
+		int n = 0;
+		for (int i = 0; i < data.length; i++)
+			if (weights[i] > 0.) {
+				sortedValues[n] = data[i];
+				sortedWeights[n++] = weights[i];
+			}
+		sortAndApply(n);
+	}
+
+	private void checkLengths(int dataLength, int weightsLength) {
+		if (dataLength != weightsLength)
+			throw new IllegalArgumentException("Error: length of data array ( = " + dataLength + ") and length of weights array ( = " + weightsLength + ") do not match!");
+	}
+
+	private void ensureCapacity(int size) {
+		if (sortedValues.length < size) {
+			sortedValues = new double[size];
+			sortedWeights = new double[size];
+		}
+	}
+
+	private void sortAndApply(int n) {
+		final double[] v = sortedValues;
+		final double[] w = sortedWeights;
+		GenericSorting.quickSort(0, n, new IntComparator() {
+			public int compare(int a, int b) {
+				return Double.compare(v[a], v[b]);
+			}
+		}, new Swapper() {
+			public void swap(int a, int b) {
+				double t = v[a]; v[a] = v[b]; v[b] = t;
+				t = w[a]; w[a] = w[b]; w[b] = t;
+			}
+		});
+
+		double totalWeight = 0.;
+		for (int i = 0; i < n; i++)
+			totalWeight += w[i];
+		applySorted(v, w, n, totalWeight);
+	}
+
+}
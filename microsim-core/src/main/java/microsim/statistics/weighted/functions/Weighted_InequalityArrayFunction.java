@@ -0,0 +1,156 @@
+package microsim.statistics.weighted.functions;
+
+import microsim.statistics.IDoubleSource;
+import microsim.statistics.weighted.IWeightedDoubleArraySource;
+import microsim.statistics.weighted.IWeightedFloatArraySource;
+import microsim.statistics.weighted.IWeightedIntArraySource;
+import microsim.statistics.weighted.IWeightedLongArraySource;
+
+/**
+ * This function computes inequality measures of a weighted cross section of (typically non-negative)
+ * values, such as incomes. All the measures are computed in a single pass over the sorted
+ * (value, weight) pairs:
+ * <ul>
+ * <li>Gini: the Gini coefficient, computed as one minus twice the area under the weighted Lorenz curve;</li>
+ * <li>Theil: the Theil T index, sum (w * x/mean * ln(x/mean)) / sum (w), where zero values contribute zero;</li>
+ * <li>MeanLogDeviation: the Theil L index, sum (w * ln(mean/x)) / sum (w), which is undefined (NaN) if any value is zero;</li>
+ * <li>ShareBottom50, ShareTop10, ShareTop1: the share of the total weighted sum held by the bottom 50%,
+ * the top 10% and the top 1% of the weighted population.</li>
+ * </ul>
+ * Theil and MeanLogDeviation are NaN when negative values are present.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class Weighted_InequalityArrayFunction extends AbstractWeightedSortedArrayFunction implements IDoubleSource {
+
+	public enum Variables {
+		/**	Represent the function arguments for the getDoubleValue method. */
+		Gini,
+		Theil,
+		MeanLogDeviation,
+		ShareBottom50,
+		ShareTop10,
+		ShareTop1;
+	}
+
+	protected double gini, theil, meanLogDeviation, shareBottom50, shareTop10, shareTop1;
+
+	/** Create an inequality function on a float array source.
+	 * @param source The weighted data source.
+	 */
+	public Weighted_InequalityArrayFunction(IWeightedFloatArraySource source) {
+		super(source);
+	}
+
+	/** Create an inequality function on an integer array source.
+	 * @param source The weighted data source.
+	 */
+	public Weighted_InequalityArrayFunction(IWeightedIntArraySource source) {
+		super(source);
+	}
+
+	/** Create an inequality function on a long array source.
+	 * @param source The weighted data source.
+	 */
+	public Weighted_InequalityArrayFunction(IWeightedLongArraySource source) {
+		super(source);
+	}
+
+	/** Create an inequality function on a double array source.
+	 * @param source The weighted data source.
+	 */
+	public Weighted_InequalityArrayFunction(IWeightedDoubleArraySource source) {
+		super(source);
+	}
+
+	protected void applySorted(double[] values, double[] weights, int n, double totalWeight) {
+		if (n == 0) {
+			gini = theil = meanLogDeviation = shareBottom50 = shareTop10 = shareTop1 = Double.NaN;
+			return;
+		}
+
+		double totalSum = 0.;
+		for (int i = 0; i < n; i++)
+			totalSum += values[i] * weights[i];
+		double mean = totalSum / totalWeight;
+
+		double cumulatedWeight = 0., cumulatedSum = 0.;
+		double lorenzArea = 0.;
+		double theilSum = 0., mldSum = 0.;
+		boolean negative = false;
+		double sumBelow50 = Double.NaN, sumBelow90 = Double.NaN, sumBelow99 = Double.NaN;
+		double w50 = 0.5 * totalWeight, w90 = 0.9 * totalWeight, w99 = 0.99 * totalWeight;
+
+		for (int i = 0; i < n; i++) {
+			double x = values[i];
+			double w = weights[i];
+			double previousSum = cumulatedSum;
+			double previousWeight = cumulatedWeight;
+			cumulatedSum += x * w;
+			cumulatedWeight += w;
+
+			// Trapezoid under the Lorenz curve, in population share times value share units
+			lorenzArea += w * (previousSum + cumulatedSum);
+
+			// Shares up to population fractions, interpolating within the element crossing the threshold
+			if (Double.isNaN(sumBelow50) && cumulatedWeight >= w50)
+				sumBelow50 = previousSum + x * (w50 - previousWeight);
+			if (Double.isNaN(sumBelow90) && cumulatedWeight >= w90)
+				sumBelow90 = previousSum + x * (w90 - previousWeight);
+			if (Double.isNaN(sumBelow99) && cumulatedWeight >= w99)
+				sumBelow99 = previousSum + x * (w99 - previousWeight);
+
+			if (x < 0.)
+				negative = true;
+			else if (x > 0.) {
+				double ratio = x / mean;
+				double log = Math.log(ratio);
+				theilSum += w * ratio * log;
+				mldSum -= w * log;
+			}
+			else
+				mldSum = Double.POSITIVE_INFINITY;
+		}
+		if (Double.isNaN(sumBelow50))
+			sumBelow50 = cumulatedSum;
+		if (Double.isNaN(sumBelow90))
+			sumBelow90 = cumulatedSum;
+		if (Double.isNaN(sumBelow99))
+			sumBelow99 = cumulatedSum;
+
+		gini = 1. - lorenzArea / (totalWeight * totalSum);
+		shareBottom50 = sumBelow50 / totalSum;
+		shareTop10 = (totalSum - sumBelow90) / totalSum;
+		shareTop1 = (totalSum - sumBelow99) / totalSum;
+		if (negative || mean <= 0.) {
+			theil = Double.NaN;
+			meanLogDeviation = Double.NaN;
+		} else {
+			theil = theilSum / totalWeight;
+			meanLogDeviation = Double.isInfinite(mldSum) ? Double.NaN : mldSum / totalWeight;
+		}
+	}
+
+	public double getDoubleValue(Enum<?> variableID) {
+		validate();
+		switch ((Variables) variableID)
+		{
+			case Gini: return gini;
+			case Theil: return theil;
+			case MeanLogDeviation: return meanLogDeviation;
+			case ShareBottom50: return shareBottom50;
+			case ShareTop10: return shareTop10;
+			case ShareTop1: return shareTop1;
+			default: throw new UnsupportedOperationException("The function result with id " + variableID + " is not supported.");
+		}
+	}
+}
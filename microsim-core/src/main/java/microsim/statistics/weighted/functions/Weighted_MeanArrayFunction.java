@@ -157,6 +157,7 @@ public class Weighted_MeanArrayFunction extends AbstractWeightedArrayFunction im
 	 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 	 */
 	public double getDoubleValue(Enum<?> variableID) {
+		validate();
 		return weightedMean;
 	}
 	
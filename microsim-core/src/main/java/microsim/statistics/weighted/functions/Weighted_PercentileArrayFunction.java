@@ -0,0 +1,155 @@
+package microsim.statistics.weighted.functions;
+
+import microsim.statistics.IDoubleSource;
+import microsim.statistics.weighted.IWeightedDoubleArraySource;
+import microsim.statistics.weighted.IWeightedFloatArraySource;
+import microsim.statistics.weighted.IWeightedIntArraySource;
+import microsim.statistics.weighted.IWeightedLongArraySource;
+
+/**
+ * This function calculates the weighted percentiles (p1, p5, p10-p90, p95, p99) of a weighted
+ * cross section of data. The p-th percentile is the smallest value x such that the weights of the
+ * elements not greater than x sum up to at least p% of the total weight (the inverse of the weighted
+ * empirical distribution function). With unit weights this is the classical lower percentile.<br>
+ * All the percentiles are computed in a single pass over the sorted (value, weight) pairs.
+ * Further probability levels can be computed through the <i>getQuantile()</i> method.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class Weighted_PercentileArrayFunction extends AbstractWeightedSortedArrayFunction implements IDoubleSource {
+
+	public enum Variables {
+		/**	Represent the function arguments for the getDoubleValue method. */
+		P1(0.01),
+		P5(0.05),
+		P10(0.1),
+		P20(0.2),
+		P30(0.3),
+		P40(0.4),
+		P50(0.5),
+		P60(0.6),
+		P70(0.7),
+		P80(0.8),
+		P90(0.9),
+		P95(0.95),
+		P99(0.99);
+
+		private final double probability;
+
+		private Variables(double probability) {
+			this.probability = probability;
+		}
+
+		/** @return The probability level of the percentile, between 0 and 1. */
+		public double getProbability() {
+			return probability;
+		}
+	}
+
+	private static final Variables[] LEVELS = Variables.values();
+
+	protected double[] percentiles = new double[LEVELS.length];
+
+	protected double[] sortedValues;
+	protected double[] sortedWeights;
+	protected int size;
+	protected double totalWeight;
+
+	/** Create a weighted percentile function on a float array source.
+	 * @param source The weighted data source.
+	 */
+	public Weighted_PercentileArrayFunction(IWeightedFloatArraySource source) {
+		super(source);
+	}
+
+	/** Create a weighted percentile function on an integer array source.
+	 * @param source The weighted data source.
+	 */
+	public Weighted_PercentileArrayFunction(IWeightedIntArraySource source) {
+		super(source);
+	}
+
+	/** Create a weighted percentile function on a long array source.
+	 * @param source The weighted data source.
+	 */
+	public Weighted_PercentileArrayFunction(IWeightedLongArraySource source) {
+		super(source);
+	}
+
+	/** Create a weighted percentile function on a double array source.
+	 * @param source The weighted data source.
+	 */
+	public Weighted_PercentileArrayFunction(IWeightedDoubleArraySource source) {
+		super(source);
+	}
+
+	protected void applySorted(double[] values, double[] weights, int n, double totalWeight) {
+		this.sortedValues = values;
+		this.sortedWeights = weights;
+		this.size = n;
+		this.totalWeight = totalWeight;
+
+		if (n == 0) {
+			java.util.Arrays.fill(percentiles, Double.NaN);
+			return;
+		}
+
+		int level = 0;
+		double threshold = LEVELS[0].getProbability() * totalWeight;
+		double cumulated = 0.;
+		for (int i = 0; i < n && level < LEVELS.length; i++) {
+			cumulated += weights[i];
+			while (level < LEVELS.length && cumulated >= threshold) {
+				percentiles[level++] = values[i];
+				if (level < LEVELS.length)
+					threshold = LEVELS[level].getProbability() * totalWeight;
+			}
+		}
+		// Rounding errors in the cumulated weights can leave the top levels unassigned
+		while (level < LEVELS.length)
+			percentiles[level++] = values[n - 1];
+	}
+
+	/** Compute the weighted quantile at any probability level on the data of the last update.
+	 * @param p The probability level, between 0 and 1.
+	 * @return The weighted quantile, or NaN if the cross section is empty.
+	 */
+	public double getQuantile(double p) {
+		validate();
+		if (p < 0. || p > 1.)
+			throw new IllegalArgumentException("The quantile probability must lie in [0, 1], got " + p);
+		if (size == 0)
+			return Double.NaN;
+
+		double threshold = p * totalWeight;
+		double cumulated = 0.;
+		for (int i = 0; i < size; i++) {
+			cumulated += sortedWeights[i];
+			if (cumulated >= threshold)
+				return sortedValues[i];
+		}
+		return sortedValues[size - 1];
+	}
+
+	/** @return The total weight of the elements considered at the last update. */
+	public double getTotalWeight() {
+		validate();
+		return totalWeight;
+	}
+
+	public double getDoubleValue(Enum<?> variableID) {
+		validate();
+		if (variableID instanceof Variables)
+			return percentiles[variableID.ordinal()];
+		throw new UnsupportedOperationException("The function result with id " + variableID + " is not supported.");
+	}
+}
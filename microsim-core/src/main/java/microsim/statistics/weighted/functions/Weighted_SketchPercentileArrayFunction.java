@@ -0,0 +1,152 @@
+package microsim.statistics.weighted.functions;
+
+import microsim.statistics.IDoubleSource;
+import microsim.statistics.QuantileSketch;
+import microsim.statistics.weighted.IWeightedDoubleArraySource;
+import microsim.statistics.weighted.IWeightedFloatArraySource;
+import microsim.statistics.weighted.IWeightedIntArraySource;
+import microsim.statistics.weighted.IWeightedLongArraySource;
+
+/**
+ * An approximate version of the <i>Weighted_PercentileArrayFunction</i> for very large populations.
+ * Instead of copying and sorting the whole cross section, the (value, weight) pairs are streamed
+ * into a <i>QuantileSketch</i> whose memory occupancy does not depend on the population size.
+ * The percentiles are then interpolated from the sketch, with an accuracy controlled by the
+ * compression parameter.<br>
+ * The function returns the same <i>Weighted_PercentileArrayFunction.Variables</i> identifiers.
+ * The underlying sketch can be retrieved to be merged with the ones of other partitions or runs.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class Weighted_SketchPercentileArrayFunction extends AbstractWeightedArrayFunction implements IDoubleSource {
+
+	protected final QuantileSketch sketch;
+
+	/** Create an approximate weighted percentile function on a double array source.
+	 * @param source The weighted data source.
+	 * @param compression The compression of the underlying sketch.
+	 */
+	public Weighted_SketchPercentileArrayFunction(IWeightedDoubleArraySource source, double compression) {
+		super(source);
+		sketch = new QuantileSketch(compression);
+	}
+
+	/** Create an approximate weighted percentile function on a float array source.
+	 * @param source The weighted data source.
+	 * @param compression The compression of the underlying sketch.
+	 */
+	public Weighted_SketchPercentileArrayFunction(IWeightedFloatArraySource source, double compression) {
+		super(source);
+		sketch = new QuantileSketch(compression);
+	}
+
+	/** Create an approximate weighted percentile function on an integer array source.
+	 * @param source The weighted data source.
+	 * @param compression The compression of the underlying sketch.
+	 */
+	public Weighted_SketchPercentileArrayFunction(IWeightedIntArraySource source, double compression) {
+		super(source);
+		sketch = new QuantileSketch(compression);
+	}
+
+	/** Create an approximate weighted percentile function on a long array source.
+	 * @param source The weighted data source.
+	 * @param compression The compression of the underlying sketch.
+	 */
+	public Weighted_SketchPercentileArrayFunction(IWeightedLongArraySource source, double compression) {
+		super(source);
+		sketch = new QuantileSketch(compression);
+	}
+
+	/** Create an approximate weighted percentile function on a double array source, using the default compression.
+	 * @param source The weighted data source.
+	 */
+	public Weighted_SketchPercentileArrayFunction(IWeightedDoubleArraySource source) {
+		this(source, QuantileSketch.DEFAULT_COMPRESSION);
+	}
+
+	/** Create an approximate weighted percentile function on a float array source, using the default compression.
+	 * @param source The weighted data source.
+	 */
+	public Weighted_SketchPercentileArrayFunction(IWeightedFloatArraySource source) {
+		this(source, QuantileSketch.DEFAULT_COMPRESSION);
+	}
+
+	/** Create an approximate weighted percentile function on an integer array source, using the default compression.
+	 * @param source The weighted data source.
+	 */
+	public Weighted_SketchPercentileArrayFunction(IWeightedIntArraySource source) {
+		this(source, QuantileSketch.DEFAULT_COMPRESSION);
+	}
+
+	/** Create an approximate weighted percentile function on a long array source, using the default compression.
+	 * @param source The weighted data source.
+	 */
+	public Weighted_SketchPercentileArrayFunction(IWeightedLongArraySource source) {
+		this(source, QuantileSketch.DEFAULT_COMPRESSION);
+	}
+
+	public void apply(double[] data, double[] weights) {
+		checkLengths(data.length, weights.length);
+		sketch.reset();
+		for (int i = 0; i < data.length; i++)
+			sketch.add(data[i], weights[i]);
+	}
+
+	public void apply(float[] data, double[] weights) {
+		checkLengths(data.length, weights.length);
+		sketch.reset();
+		for (int i = 0; i < data.length; i++)
+			sketch.add(data[i], weights[i]);
+	}
+
+	public void apply(int[] data, double[] weights) {
+		checkLengths(data.length, weights.length);
+		sketch.reset();
+		for (int i = 0; i < data.length; i++)
+			sketch.add(data[i], weights[i]);
+	}
+
+	public void apply(long[] data, double[] weights) {
+		checkLengths(data.length, weights.length);
+		sketch.reset();
+		for (int i = 0; i < data.length; i++)
+			sketch.add(data[i], weights[i]);
+	}
+
+	private void checkLengths(int dataLength, int weightsLength) {
+		if (dataLength != weightsLength)
+			throw new IllegalArgumentException("Error: length of data array ( = " + dataLength + ") and length of weights array ( = " + weightsLength + ") do not match!");
+	}
+
+	/** Estimate the weighted quantile at any probability level on the data of the last update.
+	 * @param p The probability level, between 0 and 1.
+	 * @return The estimated quantile, or NaN if the cross section is empty.
+	 */
+	public double getQuantile(double p) {
+		validate();
+		return sketch.getQuantile(p);
+	}
+
+	/** @return The sketch summarising the data of the last update. */
+	public QuantileSketch getSketch() {
+		validate();
+		return sketch;
+	}
+
+	public double getDoubleValue(Enum<?> variableID) {
+		validate();
+		if (variableID instanceof Weighted_PercentileArrayFunction.Variables)
+			return sketch.getQuantile(((Weighted_PercentileArrayFunction.Variables) variableID).getProbability());
+		throw new UnsupportedOperationException("The function result with id " + variableID + " is not supported.");
+	}
+}
@@ -110,7 +110,7 @@ public abstract class Weighted_SumArrayFunction extends AbstractWeightedArrayFun
 		/* (non-Javadoc)
 		 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 		 */
-		public double getDoubleValue(Enum<?> id) {	return dsum; }
+		public double getDoubleValue(Enum<?> id) {	validate();	return dsum; }
 	}
 	
 	/**
@@ -167,6 +167,7 @@ public abstract class Weighted_SumArrayFunction extends AbstractWeightedArrayFun
 //		 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 //		 */
 		public double getDoubleValue(Enum<?> variableID) {
+			validate();
 			return lsum;
 		}
 	}
@@ -227,6 +228,7 @@ public abstract class Weighted_SumArrayFunction extends AbstractWeightedArrayFun
 		 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 		 */
 		public double getDoubleValue(Enum<?> variableID) {
+			validate();
 			return isum;
 		}
 	}
@@ -286,6 +288,7 @@ public abstract class Weighted_SumArrayFunction extends AbstractWeightedArrayFun
 		 * @see jas.statistics.IDoubleSource#getDoubleValue(int)
 		 */
 		public double getDoubleValue(Enum<?> variableID) {
+			validate();
 			return fsum;
 		}
 	}
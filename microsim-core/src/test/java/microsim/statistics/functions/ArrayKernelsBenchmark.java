@@ -0,0 +1,152 @@
+package microsim.statistics.functions;
+
+import java.util.Random;
+
+/**
+ * Runnable benchmark of the reduction kernels of <i>ArrayKernels</i> against the plain loops used by
+ * the array functions before them. It is not run by the build: start it with<br>
+ * <code>java -cp target/classes:target/test-classes microsim.statistics.functions.ArrayKernelsBenchmark [rounds]</code><br>
+ * For each array length it prints the nanoseconds per element and the read bandwidth of each loop,
+ * and of a reference loop reading the same number of bytes that the JIT compiler vectorises.
+ * The lengths go from an array held in the L1 cache to one much larger than the last level cache.<br>
+ * The figures support keeping the kernels on plain Java rather than on the incubating Vector API:
+ * on arrays larger than the caches, which are the ones whose reductions take measurable time, the
+ * unrolled sum runs close to the vectorised reference, that is about as fast as the memory delivers
+ * the data, so wider vectors cannot make it much faster. The gain of the Vector API would be limited to cache resident arrays, which are
+ * reduced in a few microseconds anyway, and it would require <i>--add-modules jdk.incubator.vector</i>
+ * to compile and to run every model.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class ArrayKernelsBenchmark {
+
+	private static final int[] LENGTHS = { 1000, 100000, 4000000 };
+	private static final long ELEMENTS_PER_ROUND = 200000000L;
+
+	/** Collects the results, so that the JIT compiler cannot remove the measured loops. */
+	private static double sink;
+
+	private interface Loop {
+		double run(double[] data);
+	}
+
+	private static final Loop PLAIN_SUM = new Loop() {
+		public double run(double[] data) {
+			double sum = 0.;
+			for (int i = 0; i < data.length; i++)
+				sum += data[i];
+			return sum;
+		}
+	};
+
+	private static final Loop KERNEL_SUM = new Loop() {
+		public double run(double[] data) {
+			return ArrayKernels.sum(data);
+		}
+	};
+
+	private static final Loop PLAIN_SUM_OF_SQUARES = new Loop() {
+		public double run(double[] data) {
+			double sum = 0., sumSquare = 0.;
+			for (int i = 0; i < data.length; i++) {
+				sum += data[i];
+				sumSquare += data[i] * data[i];
+			}
+			return sum + sumSquare;
+		}
+	};
+
+	private static final double[] result = new double[2];
+
+	private static final Loop KERNEL_SUM_OF_SQUARES = new Loop() {
+		public double run(double[] data) {
+			ArrayKernels.sumAndSumOfSquares(data, result);
+			return result[0] + result[1];
+		}
+	};
+
+	private static final Loop PLAIN_MAX = new Loop() {
+		public double run(double[] data) {
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < data.length; i++)
+				if (data[i] > max)
+					max = data[i];
+			return max;
+		}
+	};
+
+	private static final Loop KERNEL_MAX = new Loop() {
+		public double run(double[] data) {
+			return ArrayKernels.max(data, Double.NEGATIVE_INFINITY);
+		}
+	};
+
+	private static long[] bits;
+
+	/** The bandwidth reference: a long sum over the bits of the same values, which C2 vectorises. */
+	private static final Loop VECTORISED_REFERENCE = new Loop() {
+		public double run(double[] data) {
+			long sum = 0;
+			for (int i = 0; i < bits.length; i++)
+				sum += bits[i];
+			return sum;
+		}
+	};
+
+	public static void main(String[] args) {
+		int rounds = (args.length > 0 ? Integer.parseInt(args[0]) : 5);
+		Random random = new Random(42);
+
+		System.out.println("length\tloop\tns/element\tGB/s");
+		for (int length : LENGTHS) {
+			double[] data = new double[length];
+			for (int i = 0; i < length; i++)
+				data[i] = random.nextGaussian();
+			bits = new long[length];
+			for (int i = 0; i < length; i++)
+				bits[i] = Double.doubleToRawLongBits(data[i]);
+
+			measure("plain sum", PLAIN_SUM, data, rounds);
+			measure("kernel sum", KERNEL_SUM, data, rounds);
+			measure("plain sum of squares", PLAIN_SUM_OF_SQUARES, data, rounds);
+			measure("kernel sum of squares", KERNEL_SUM_OF_SQUARES, data, rounds);
+			measure("plain max", PLAIN_MAX, data, rounds);
+			measure("kernel max", KERNEL_MAX, data, rounds);
+			measure("vectorised reference", VECTORISED_REFERENCE, data, rounds);
+		}
+		System.out.println("(ignore) " + sink);
+	}
+
+	/** Run the loop over about ELEMENTS_PER_ROUND elements per round, and print the best round. */
+	private static void measure(String name, Loop loop, double[] data, int rounds) {
+		int repetitions = (int) Math.max(1, ELEMENTS_PER_ROUND / data.length);
+		//Warm up, so that the loop is compiled by C2 before it is measured
+		for (int r = 0; r < repetitions; r++)
+			sink += loop.run(data);
+
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < rounds; round++) {
+			long start = System.nanoTime();
+			for (int r = 0; r < repetitions; r++)
+				sink += loop.run(data);
+			long elapsed = System.nanoTime() - start;
+			if (elapsed < best)
+				best = elapsed;
+		}
+
+		double elements = (double) repetitions * data.length;
+		double nsPerElement = best / elements;
+		double gbPerSecond = elements * 8 / best;
+		System.out.println(data.length + "\t" + name + "\t" + String.format("%.3f", nsPerElement) + "\t" + String.format("%.2f", gbPerSecond));
+	}
+
+}
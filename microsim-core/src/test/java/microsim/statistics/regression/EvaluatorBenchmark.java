@@ -0,0 +1,172 @@
+package microsim.statistics.regression;
+
+import java.util.Random;
+
+import microsim.data.MultiKeyCoefficientMap;
+
+/**
+ * Runnable benchmark of the scores computed by the code generated by <i>EvaluatorFactory</i>
+ * against the scores computed through the accessors of <i>CoefficientIndex</i>, and against the
+ * same linear predictor written by hand. It is not run by the build: start it with<br>
+ * <code>java -cp target/classes:target/test-classes:&lt;dependencies&gt; microsim.statistics.regression.EvaluatorBenchmark [agents] [rounds]</code><br>
+ * It scores a population of agents with six regressors of different types, first with a map whose
+ * only key is the regressor, then with a map conditioned on the gender of the agents, checks that
+ * the generated evaluators give the same scores as the accessors, and prints the best time per agent
+ * of each path.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class EvaluatorBenchmark {
+
+	private static final String[] REGRESSORS = { "age", "income", "employed", "children", "hours", "wealth" };
+	private static final double[] COEFFICIENTS = { 0.031, 1.5e-5, -0.42, 0.2, 0.01, -2.e-7 };
+
+	/** Collects the results, so that the JIT compiler cannot remove the measured loops. */
+	private static double sink;
+
+	public enum Gender {
+		Male, Female
+	}
+
+	/** An agent whose regressors are a primitive int, double, boolean, float and long, and an Integer. */
+	public static class Agent {
+		private final int age;
+		private final double income;
+		private final boolean employed;
+		private final Integer children;
+		private final float hours;
+		private final long wealth;
+		private final Gender gender;
+
+		public Agent(Random random) {
+			age = 18 + random.nextInt(60);
+			income = random.nextDouble() * 80000;
+			employed = random.nextBoolean();
+			children = random.nextInt(4);
+			hours = age * 0.5f;
+			wealth = age * 1000L;
+			gender = (random.nextBoolean() ? Gender.Male : Gender.Female);
+		}
+
+		public int getAge() {
+			return age;
+		}
+
+		public double getIncome() {
+			return income;
+		}
+
+		public boolean isEmployed() {
+			return employed;
+		}
+
+		public Integer getChildren() {
+			return children;
+		}
+
+		public float getHours() {
+			return hours;
+		}
+
+		public long getWealth() {
+			return wealth;
+		}
+
+		public Gender getGender() {
+			return gender;
+		}
+	}
+
+	private interface Scorer {
+		double score(Agent agent);
+	}
+
+	/** The linear predictor of the map without conditioning keys, written by hand in the iteration order of the map. */
+	private static final Scorer HAND_WRITTEN = new Scorer() {
+		public double score(Agent agent) {
+			double score = 0.;
+			score = score + agent.getAge() * 0.031;
+			score = score + agent.getIncome() * 1.5e-5;
+			score = score + (agent.isEmployed() ? 1. : 0.) * -0.42;
+			score = score + agent.getChildren().doubleValue() * 0.2;
+			score = score + agent.getHours() * 0.01;
+			score = score + agent.getWealth() * -2.e-7;
+			return score;
+		}
+	};
+
+	public static void main(String[] args) {
+		int agents = (args.length > 0 ? Integer.parseInt(args[0]) : 1000000);
+		int rounds = (args.length > 1 ? Integer.parseInt(args[1]) : 5);
+
+		Random random = new Random(42);
+		Agent[] population = new Agent[agents];
+		for (int i = 0; i < agents; i++)
+			population[i] = new Agent(random);
+
+		MultiKeyCoefficientMap single = new MultiKeyCoefficientMap(new String[] { RegressionColumnNames.REGRESSOR.toString() }, new String[] { RegressionColumnNames.COEFFICIENT.toString() });
+		for (int i = 0; i < REGRESSORS.length; i++)
+			single.putValue(REGRESSORS[i], COEFFICIENTS[i]);
+		MultiKeyCoefficientMap conditioned = new MultiKeyCoefficientMap(new String[] { RegressionColumnNames.REGRESSOR.toString(), "gender" }, new String[] { RegressionColumnNames.COEFFICIENT.toString() });
+		for (int i = 0; i < REGRESSORS.length; i++) {
+			conditioned.putValue(REGRESSORS[i], Gender.Male.toString(), COEFFICIENTS[i]);
+			conditioned.putValue(REGRESSORS[i], Gender.Female.toString(), COEFFICIENTS[i] * 1.1);
+		}
+
+		System.out.println("map\tpath\tns/agent");
+		run("single key", single, population, rounds, HAND_WRITTEN);
+		run("gender", conditioned, population, rounds, null);
+		System.out.println("(ignore) " + sink);
+	}
+
+	private static void run(String name, MultiKeyCoefficientMap map, Agent[] population, int rounds, Scorer handWritten) {
+		final LinearRegression accessors = new LinearRegression(map);
+		final LinearRegression generated = new LinearRegression(map);
+		if (!generated.generateEvaluators(Agent.class))
+			throw new IllegalStateException("The evaluators could not be generated for " + Agent.class.getName());
+
+		for (Agent agent : population)
+			if (accessors.getScore(agent) != generated.getScore(agent))
+				throw new IllegalStateException("The generated evaluator and the accessors give different scores");
+
+		measure(name, "accessors", new Scorer() {
+			public double score(Agent agent) {
+				return accessors.getScore(agent);
+			}
+		}, population, rounds);
+		measure(name, "generated", new Scorer() {
+			public double score(Agent agent) {
+				return generated.getScore(agent);
+			}
+		}, population, rounds);
+		if (handWritten != null)
+			measure(name, "hand written", handWritten, population, rounds);
+	}
+
+	/** Score the population once to warm up, then rounds times, and print the best round. */
+	private static void measure(String name, String path, Scorer scorer, Agent[] population, int rounds) {
+		for (Agent agent : population)
+			sink += scorer.score(agent);
+
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < rounds; round++) {
+			long start = System.nanoTime();
+			for (Agent agent : population)
+				sink += scorer.score(agent);
+			long elapsed = System.nanoTime() - start;
+			if (elapsed < best)
+				best = elapsed;
+		}
+		System.out.println(name + "\t" + path + "\t" + String.format("%.1f", (double) best / population.length));
+	}
+
+}
@@ -0,0 +1,101 @@
+package microsim.statistics.regression;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks the fast approximations of <i>LinkFunctions</i> against the exact functions, within
+ * the maximum errors they declare, over the range where the probabilities vary, at the points
+ * where the exponential is clamped or underflows, and for infinite and NaN scores.
+ *
+ * <p>Title: JAS-mine</p>
+ * <p>Description: Java Agent-based Simulation library.  Modelling in a Networked Environment</p>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+public class LinkFunctionsTest {
+
+	/** The scores at the edges of the range of the approximations, where the exponential is clamped or underflows. */
+	private static final double[] EDGES = { 0., -0., 1.e-300, -1.e-300, 700., -700., 700.5, -700.5, 709., -709., 710., -710.,
+			745., -745., 746., -746., 1.e10, -1.e10, 1.e300, -1.e300, Double.MAX_VALUE, -Double.MAX_VALUE };
+
+	@Test
+	public void fastLogisticIsWithinItsMaximumError() {
+		for (double x = -50.; x <= 50.; x += 1.e-3)
+			assertWithin(LinkFunctions.logistic(x), LinkFunctions.fastLogistic(x), LinkFunctions.FAST_LOGISTIC_MAX_ERROR, x);
+		for (double x : EDGES)
+			assertWithin(LinkFunctions.logistic(x), LinkFunctions.fastLogistic(x), LinkFunctions.FAST_LOGISTIC_MAX_ERROR, x);
+	}
+
+	@Test
+	public void fastNormalCdfIsWithinItsMaximumError() {
+		for (double x = -50.; x <= 50.; x += 1.e-3)
+			assertWithin(LinkFunctions.normalCdf(x), LinkFunctions.fastNormalCdf(x), LinkFunctions.FAST_NORMAL_CDF_MAX_ERROR, x);
+		for (double x : EDGES)
+			assertWithin(LinkFunctions.normalCdf(x), LinkFunctions.fastNormalCdf(x), LinkFunctions.FAST_NORMAL_CDF_MAX_ERROR, x);
+	}
+
+	@Test
+	public void infiniteScoresGiveExactProbabilities() {
+		assertEquals(0., LinkFunctions.fastLogistic(Double.NEGATIVE_INFINITY), 0.);
+		assertEquals(1., LinkFunctions.fastLogistic(Double.POSITIVE_INFINITY), 0.);
+		assertEquals(0., LinkFunctions.fastNormalCdf(Double.NEGATIVE_INFINITY), 0.);
+		assertEquals(1., LinkFunctions.fastNormalCdf(Double.POSITIVE_INFINITY), 0.);
+		assertEquals(LinkFunctions.logistic(Double.NEGATIVE_INFINITY), LinkFunctions.fastLogistic(Double.NEGATIVE_INFINITY), 0.);
+		assertEquals(LinkFunctions.logistic(Double.POSITIVE_INFINITY), LinkFunctions.fastLogistic(Double.POSITIVE_INFINITY), 0.);
+	}
+
+	@Test
+	public void scoresBelowTheClampGiveZero() {
+		assertEquals(0., LinkFunctions.fastLogistic(-701.), 0.);
+		assertEquals(0., LinkFunctions.fastLogistic(-Double.MAX_VALUE), 0.);
+		assertEquals(1., LinkFunctions.fastLogistic(Double.MAX_VALUE), 0.);
+	}
+
+	@Test
+	public void nanScoresGiveNaN() {
+		assertTrue(Double.isNaN(LinkFunctions.logistic(Double.NaN)));
+		assertTrue(Double.isNaN(LinkFunctions.fastLogistic(Double.NaN)));
+		assertTrue(Double.isNaN(LinkFunctions.fastNormalCdf(Double.NaN)));
+	}
+
+	@Test
+	public void arrayVersionsMatchTheScalarOnes() {
+		double[] scores = new double[1001];
+		for (int i = 0; i < scores.length; i++)
+			scores[i] = (i - 500) * 0.02;
+		double[] logistic = new double[scores.length];
+		double[] normal = new double[scores.length];
+		LinkFunctions.fastLogistic(scores, logistic, scores.length);
+		LinkFunctions.fastNormalCdf(scores, normal, scores.length);
+		for (int i = 0; i < scores.length; i++) {
+			assertEquals(LinkFunctions.fastLogistic(scores[i]), logistic[i], 0.);
+			assertEquals(LinkFunctions.fastNormalCdf(scores[i]), normal[i], 0.);
+		}
+	}
+
+	@Test
+	public void linkSwitchesBetweenExactAndFastFunctions() {
+		LinkFunctions.Link logit = LinkFunctions.Link.logit();
+		LinkFunctions.Link probit = LinkFunctions.Link.probit();
+		assertEquals(LinkFunctions.logistic(0.3), logit.apply(0.3), 0.);
+		assertEquals(LinkFunctions.normalCdf(0.3), probit.apply(0.3), 0.);
+		logit.setFastMath(true);
+		probit.setFastMath(true);
+		assertEquals(LinkFunctions.fastLogistic(0.3), logit.apply(0.3), 0.);
+		assertEquals(LinkFunctions.fastNormalCdf(0.3), probit.apply(0.3), 0.);
+	}
+
+	private static void assertWithin(double expected, double actual, double maxError, double x) {
+		assertEquals("score " + x, expected, actual, maxError);
+	}
+
+}